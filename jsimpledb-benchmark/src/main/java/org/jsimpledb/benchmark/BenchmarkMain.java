@@ -0,0 +1,74 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark launcher.
+ *
+ * <p>
+ * Accepts the same command line flags as {@link org.openjdk.jmh.Main}, except that unless otherwise specified
+ * results are written in JSON format to {@value #DEFAULT_RESULT_FILE}, so that runs can be compared by tools.
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Default result file.
+     */
+    public static final String DEFAULT_RESULT_FILE = "jsimpledb-benchmark.json";
+
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Main entry point.
+     *
+     * @param args command line arguments
+     * @throws RunnerException if a benchmark fails
+     * @throws IOException if an I/O error occurs displaying help
+     */
+    public static void main(String[] args) throws RunnerException, IOException {
+
+        // Parse command line
+        final CommandLineOptions cmdline;
+        try {
+            cmdline = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Handle informational options
+        if (cmdline.shouldHelp()) {
+            cmdline.showHelp();
+            return;
+        }
+        if (cmdline.shouldList()) {
+            new Runner(cmdline).list();
+            return;
+        }
+
+        // Default to machine-readable output
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdline);
+        if (!cmdline.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!cmdline.getResult().hasValue())
+            options.result(DEFAULT_RESULT_FILE);
+
+        // Run benchmarks
+        new Runner(options.build()).run();
+    }
+}
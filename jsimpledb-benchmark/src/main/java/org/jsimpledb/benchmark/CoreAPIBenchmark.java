@@ -0,0 +1,263 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jsimpledb.core.Database;
+import org.jsimpledb.core.ObjId;
+import org.jsimpledb.core.SnapshotTransaction;
+import org.jsimpledb.core.Transaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.schema.SchemaModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Core API layer benchmarks: object reads, object creation, index queries, copying into a snapshot transaction,
+ * and schema version upgrades.
+ *
+ * <p>
+ * The {@link #upgrade} and {@link #copy} benchmarks roll back their transactions so that every invocation
+ * performs the same amount of work.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CoreAPIBenchmark {
+
+    /** Number of objects read per transaction in {@link #read}. */
+    public static final int READS_PER_TRANSACTION = 100;
+
+    /** Number of objects created per transaction in {@link #create}. */
+    public static final int CREATES_PER_TRANSACTION = 10;
+
+    /** Number of objects copied per transaction in {@link #copy}. */
+    public static final int COPIES_PER_TRANSACTION = 100;
+
+    /** Number of objects upgraded per transaction in {@link #upgrade}. */
+    public static final int UPGRADES_PER_TRANSACTION = 100;
+
+    /** Number of distinct {@code age} values; each index query returns about {@code numObjects / NUM_AGES} objects. */
+    public static final int NUM_AGES = 1000;
+
+    static final int PERSON_STORAGE_ID = 1;
+    static final int NAME_STORAGE_ID = 10;
+    static final int AGE_STORAGE_ID = 11;
+    static final int SCORE_STORAGE_ID = 12;
+
+    private static final int POPULATE_BATCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 100;
+
+    private static final String SCHEMA_V1 = ""
+      + "<Schema formatVersion=\"2\">\n"
+      + "  <ObjectType name=\"Person\" storageId=\"" + PERSON_STORAGE_ID + "\">\n"
+      + "    <SimpleField name=\"name\" type=\"java.lang.String\" storageId=\"" + NAME_STORAGE_ID + "\" indexed=\"true\"/>\n"
+      + "    <SimpleField name=\"age\" type=\"int\" storageId=\"" + AGE_STORAGE_ID + "\" indexed=\"true\"/>\n"
+      + "  </ObjectType>\n"
+      + "</Schema>\n";
+
+    // Version 2 adds a new indexed field, so upgrading an object adds an index entry
+    private static final String SCHEMA_V2 = ""
+      + "<Schema formatVersion=\"2\">\n"
+      + "  <ObjectType name=\"Person\" storageId=\"" + PERSON_STORAGE_ID + "\">\n"
+      + "    <SimpleField name=\"name\" type=\"java.lang.String\" storageId=\"" + NAME_STORAGE_ID + "\" indexed=\"true\"/>\n"
+      + "    <SimpleField name=\"age\" type=\"int\" storageId=\"" + AGE_STORAGE_ID + "\" indexed=\"true\"/>\n"
+      + "    <SimpleField name=\"score\" type=\"int\" storageId=\"" + SCORE_STORAGE_ID + "\" indexed=\"true\"/>\n"
+      + "  </ObjectType>\n"
+      + "</Schema>\n";
+
+    /** The {@link org.jsimpledb.kv.KVDatabase} type; see {@link KVDatabaseSetup}. */
+    @Param({
+        KVDatabaseSetup.SIMPLE,
+        KVDatabaseSetup.ARRAY,
+        KVDatabaseSetup.LEVELDB,
+        KVDatabaseSetup.ROCKSDB,
+        KVDatabaseSetup.SQLITE,
+        KVDatabaseSetup.RAFT
+    })
+    public String kvdbType;
+
+    /** The number of objects to populate the database with. */
+    @Param("10000")
+    public int numObjects;
+
+    private KVDatabaseSetup setup;
+    private Database db;
+    private SchemaModel schema1;
+    private SchemaModel schema2;
+    private ObjId[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.setup = new KVDatabaseSetup(this.kvdbType);
+        this.db = new Database(this.setup.getKVDatabase());
+        this.schema1 = CoreAPIBenchmark.parseSchema(SCHEMA_V1);
+        this.schema2 = CoreAPIBenchmark.parseSchema(SCHEMA_V2);
+
+        // Create objects
+        this.ids = new ObjId[this.numObjects];
+        for (int base = 0; base < this.numObjects; base += POPULATE_BATCH_SIZE) {
+            final int start = base;
+            final int end = Math.min(base + POPULATE_BATCH_SIZE, this.numObjects);
+            this.doInTransaction(this.schema1, 1, tx -> {
+                for (int i = start; i < end; i++)
+                    this.ids[i] = this.createPerson(tx, i);
+            });
+        }
+
+        // Record schema version 2 up front so the upgrade benchmark doesn't have to
+        this.doInTransaction(this.schema2, 2, tx -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.setup != null) {
+            this.setup.close();
+            this.setup = null;
+        }
+        this.db = null;
+        this.ids = null;
+    }
+
+// Benchmarks
+
+    /**
+     * Read a field from random objects.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(READS_PER_TRANSACTION)
+    public void read(Blackhole bh) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.doInTransaction(this.schema1, 1, tx -> {
+            for (int i = 0; i < READS_PER_TRANSACTION; i++)
+                bh.consume(tx.readSimpleField(this.randomId(random), NAME_STORAGE_ID, false));
+        });
+    }
+
+    /**
+     * Create new objects and commit.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CREATES_PER_TRANSACTION)
+    public void create() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.doInTransaction(this.schema1, 1, tx -> {
+            for (int i = 0; i < CREATES_PER_TRANSACTION; i++)
+                this.createPerson(tx, random.nextInt());
+        });
+    }
+
+    /**
+     * Query an index for all objects having a random {@code age}.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    public void indexQuery(Blackhole bh) {
+        final Integer age = ThreadLocalRandom.current().nextInt(NUM_AGES);
+        this.doInTransaction(this.schema1, 1, tx -> {
+            final NavigableSet<ObjId> ids = tx.queryIndex(AGE_STORAGE_ID).asMap().get(age);
+            if (ids != null) {
+                for (ObjId id : ids)
+                    bh.consume(id);
+            }
+        });
+    }
+
+    /**
+     * Copy random objects into a snapshot transaction.
+     */
+    @Benchmark
+    @OperationsPerInvocation(COPIES_PER_TRANSACTION)
+    public void copy() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final Transaction tx = this.db.createTransaction(this.schema1, 1, false);
+        try {
+            final SnapshotTransaction snapshot = tx.createSnapshotTransaction();
+            for (int i = 0; i < COPIES_PER_TRANSACTION; i++)
+                tx.copy(this.randomId(random), snapshot, false, false, null, null);
+        } finally {
+            tx.rollback();
+        }
+    }
+
+    /**
+     * Upgrade random objects from schema version 1 to schema version 2.
+     */
+    @Benchmark
+    @OperationsPerInvocation(UPGRADES_PER_TRANSACTION)
+    public void upgrade() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final Transaction tx = this.db.createTransaction(this.schema2, 2, false);
+        try {
+            for (int i = 0; i < UPGRADES_PER_TRANSACTION; i++)
+                tx.updateSchemaVersion(this.randomId(random));
+        } finally {
+            tx.rollback();
+        }
+    }
+
+// Internal methods
+
+    private ObjId createPerson(Transaction tx, int index) {
+        final ObjId id = tx.create(PERSON_STORAGE_ID);
+        tx.writeSimpleField(id, NAME_STORAGE_ID, "Person#" + index, false);
+        tx.writeSimpleField(id, AGE_STORAGE_ID, Math.floorMod(index, NUM_AGES), false);
+        return id;
+    }
+
+    private ObjId randomId(ThreadLocalRandom random) {
+        return this.ids[random.nextInt(this.ids.length)];
+    }
+
+    private void doInTransaction(SchemaModel schema, int version, Consumer<? super Transaction> action) {
+        for (int attempt = 1; true; attempt++) {
+            final Transaction tx = this.db.createTransaction(schema, version, true);
+            boolean success = false;
+            try {
+                action.accept(tx);
+                tx.commit();
+                success = true;
+                return;
+            } catch (RetryTransactionException e) {
+                if (attempt >= MAX_ATTEMPTS)
+                    throw e;
+            } finally {
+                if (!success)
+                    tx.rollback();
+            }
+        }
+    }
+
+    static SchemaModel parseSchema(String xml) throws IOException {
+        return SchemaModel.fromXML(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
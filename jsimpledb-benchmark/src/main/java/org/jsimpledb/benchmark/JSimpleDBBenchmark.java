@@ -0,0 +1,238 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jsimpledb.CopyState;
+import org.jsimpledb.JObject;
+import org.jsimpledb.JSimpleDB;
+import org.jsimpledb.JSimpleDBFactory;
+import org.jsimpledb.JTransaction;
+import org.jsimpledb.ValidationMode;
+import org.jsimpledb.annotation.JField;
+import org.jsimpledb.annotation.JSimpleClass;
+import org.jsimpledb.core.Database;
+import org.jsimpledb.core.ObjId;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JSimpleDB (Java model) layer benchmarks: object reads, object creation, index queries, and
+ * {@link JTransaction#copyTo(JTransaction, CopyState, Iterable) copyTo()} into a snapshot transaction.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JSimpleDBBenchmark {
+
+    /** Number of objects read per transaction in {@link #read}. */
+    public static final int READS_PER_TRANSACTION = 100;
+
+    /** Number of objects created per transaction in {@link #create}. */
+    public static final int CREATES_PER_TRANSACTION = 10;
+
+    /** Number of objects copied per transaction in {@link #copyTo}. */
+    public static final int COPIES_PER_TRANSACTION = 100;
+
+    /** Number of distinct {@code age} values; each index query returns about {@code numObjects / NUM_AGES} objects. */
+    public static final int NUM_AGES = 1000;
+
+    private static final int POPULATE_BATCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 100;
+
+    /** The {@link org.jsimpledb.kv.KVDatabase} type; see {@link KVDatabaseSetup}. */
+    @Param({
+        KVDatabaseSetup.SIMPLE,
+        KVDatabaseSetup.ARRAY,
+        KVDatabaseSetup.LEVELDB,
+        KVDatabaseSetup.ROCKSDB,
+        KVDatabaseSetup.SQLITE,
+        KVDatabaseSetup.RAFT
+    })
+    public String kvdbType;
+
+    /** The number of objects to populate the database with. */
+    @Param("10000")
+    public int numObjects;
+
+    private KVDatabaseSetup setup;
+    private JSimpleDB jdb;
+    private ObjId[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.setup = new KVDatabaseSetup(this.kvdbType);
+        this.jdb = new JSimpleDBFactory()
+          .setModelClasses(Person.class)
+          .setDatabase(new Database(this.setup.getKVDatabase()))
+          .setSchemaVersion(1)
+          .newJSimpleDB();
+
+        // Create objects, each referring to the previously created object
+        this.ids = new ObjId[this.numObjects];
+        for (int base = 0; base < this.numObjects; base += POPULATE_BATCH_SIZE) {
+            final int start = base;
+            final int end = Math.min(base + POPULATE_BATCH_SIZE, this.numObjects);
+            this.doInTransaction(jtx -> {
+                for (int i = start; i < end; i++) {
+                    final Person person = this.createPerson(jtx, i);
+                    if (i > 0)
+                        person.setFriend(jtx.get(this.ids[i - 1], Person.class));
+                    this.ids[i] = person.getObjId();
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.setup != null) {
+            this.setup.close();
+            this.setup = null;
+        }
+        this.jdb = null;
+        this.ids = null;
+    }
+
+// Benchmarks
+
+    /**
+     * Read a field from random objects.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(READS_PER_TRANSACTION)
+    public void read(Blackhole bh) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.doInTransaction(jtx -> {
+            for (int i = 0; i < READS_PER_TRANSACTION; i++)
+                bh.consume(jtx.get(this.randomId(random), Person.class).getName());
+        });
+    }
+
+    /**
+     * Create new objects and commit.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CREATES_PER_TRANSACTION)
+    public void create() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.doInTransaction(jtx -> {
+            for (int i = 0; i < CREATES_PER_TRANSACTION; i++)
+                this.createPerson(jtx, random.nextInt());
+        });
+    }
+
+    /**
+     * Query an index for all objects having a random {@code age}.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    public void indexQuery(Blackhole bh) {
+        final Integer age = ThreadLocalRandom.current().nextInt(NUM_AGES);
+        this.doInTransaction(jtx -> {
+            final NavigableSet<Person> people = jtx.queryIndex(Person.class, "age", Integer.class).asMap().get(age);
+            if (people != null) {
+                for (Person person : people)
+                    bh.consume(person);
+            }
+        });
+    }
+
+    /**
+     * Copy random objects into the transaction's snapshot transaction.
+     */
+    @Benchmark
+    @OperationsPerInvocation(COPIES_PER_TRANSACTION)
+    public void copyTo() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final JTransaction jtx = this.jdb.createTransaction(false, ValidationMode.DISABLED);
+        try {
+            final ArrayList<Person> people = new ArrayList<>(COPIES_PER_TRANSACTION);
+            for (int i = 0; i < COPIES_PER_TRANSACTION; i++)
+                people.add(jtx.get(this.randomId(random), Person.class));
+            jtx.copyTo(jtx.getSnapshotTransaction(), new CopyState(), people);
+        } finally {
+            jtx.rollback();
+        }
+    }
+
+// Internal methods
+
+    private Person createPerson(JTransaction jtx, int index) {
+        final Person person = jtx.create(Person.class);
+        person.setName("Person#" + index);
+        person.setAge(Math.floorMod(index, NUM_AGES));
+        return person;
+    }
+
+    private ObjId randomId(ThreadLocalRandom random) {
+        return this.ids[random.nextInt(this.ids.length)];
+    }
+
+    private void doInTransaction(Consumer<? super JTransaction> action) {
+        for (int attempt = 1; true; attempt++) {
+            final JTransaction jtx = this.jdb.createTransaction(true, ValidationMode.DISABLED);
+            boolean success = false;
+            try {
+                action.accept(jtx);
+                jtx.commit();
+                success = true;
+                return;
+            } catch (RetryTransactionException e) {
+                if (attempt >= MAX_ATTEMPTS)
+                    throw e;
+            } finally {
+                if (!success)
+                    jtx.rollback();
+            }
+        }
+    }
+
+// Model classes
+
+    /**
+     * Benchmark model class.
+     */
+    @JSimpleClass
+    public abstract static class Person implements JObject {
+
+        @JField(indexed = true)
+        public abstract String getName();
+        public abstract void setName(String name);
+
+        @JField(indexed = true)
+        public abstract int getAge();
+        public abstract void setAge(int age);
+
+        public abstract Person getFriend();
+        public abstract void setFriend(Person friend);
+    }
+}
@@ -0,0 +1,203 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.util.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Key/value layer benchmarks: point reads, range scans, small write transactions, and a conflict-heavy
+ * read-modify-write workload.
+ *
+ * <p>
+ * Each benchmark operation is a complete transaction, so the results include transaction setup and commit overhead.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KVBenchmark {
+
+    /** Number of point reads per transaction in {@link #get}. */
+    public static final int GETS_PER_TRANSACTION = 100;
+
+    /** Number of key/value pairs read per transaction in {@link #scan}. */
+    public static final int PAIRS_PER_SCAN = 100;
+
+    /** Number of keys written per transaction in {@link #put}. */
+    public static final int PUTS_PER_TRANSACTION = 10;
+
+    /** Number of distinct keys contended for in {@link #conflict}. */
+    public static final int NUM_HOT_KEYS = 4;
+
+    private static final int POPULATE_BATCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 100;
+    private static final int VALUE_SIZE = 100;
+
+    /** The {@link KVDatabase} type; see {@link KVDatabaseSetup}. */
+    @Param({
+        KVDatabaseSetup.SIMPLE,
+        KVDatabaseSetup.ARRAY,
+        KVDatabaseSetup.LEVELDB,
+        KVDatabaseSetup.ROCKSDB,
+        KVDatabaseSetup.SQLITE,
+        KVDatabaseSetup.RAFT
+    })
+    public String kvdbType;
+
+    /** The number of keys to populate the database with. */
+    @Param("100000")
+    public int numKeys;
+
+    private KVDatabaseSetup setup;
+    private KVDatabase kvdb;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.setup = new KVDatabaseSetup(this.kvdbType);
+        this.kvdb = this.setup.getKVDatabase();
+        for (int base = 0; base < this.numKeys; base += POPULATE_BATCH_SIZE) {
+            final int start = base;
+            final int end = Math.min(base + POPULATE_BATCH_SIZE, this.numKeys);
+            KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> {
+                for (int i = start; i < end; i++)
+                    kvt.put(KVBenchmark.dataKey(i), KVBenchmark.value(i));
+            });
+        }
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> {
+            for (int i = 0; i < NUM_HOT_KEYS; i++)
+                kvt.put(KVBenchmark.hotKey(i), kvt.encodeCounter(0));
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.setup != null) {
+            this.setup.close();
+            this.setup = null;
+        }
+        this.kvdb = null;
+    }
+
+// Benchmarks
+
+    /**
+     * Random point reads.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(GETS_PER_TRANSACTION)
+    public void get(Blackhole bh) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> {
+            for (int i = 0; i < GETS_PER_TRANSACTION; i++)
+                bh.consume(kvt.get(KVBenchmark.dataKey(random.nextInt(this.numKeys))));
+        });
+    }
+
+    /**
+     * Forward range scans starting at a random key.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    public void scan(Blackhole bh) {
+        final int start = ThreadLocalRandom.current().nextInt(Math.max(1, this.numKeys - PAIRS_PER_SCAN));
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> this.scan(kvt, start, false, bh));
+    }
+
+    /**
+     * Reverse range scans starting at a random key.
+     *
+     * @param bh blackhole
+     */
+    @Benchmark
+    public void reverseScan(Blackhole bh) {
+        final int start = ThreadLocalRandom.current().nextInt(Math.max(1, this.numKeys - PAIRS_PER_SCAN));
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> this.scan(kvt, start, true, bh));
+    }
+
+    /**
+     * Small write transactions that overwrite random existing keys.
+     */
+    @Benchmark
+    public void put() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS, kvt -> {
+            for (int i = 0; i < PUTS_PER_TRANSACTION; i++) {
+                final int index = random.nextInt(this.numKeys);
+                kvt.put(KVBenchmark.dataKey(index), KVBenchmark.value(index + random.nextInt()));
+            }
+        });
+    }
+
+    /**
+     * Concurrent read-modify-write transactions on a small number of hot keys, retrying on conflict.
+     *
+     * <p>
+     * A counter is read, incremented, and written back using plain {@code get()} and {@code put()}, so concurrent
+     * transactions on the same key conflict.
+     */
+    @Benchmark
+    @Threads(4)
+    public void conflict() {
+        final byte[] key = KVBenchmark.hotKey(ThreadLocalRandom.current().nextInt(NUM_HOT_KEYS));
+        KVDatabaseSetup.doInTransaction(this.kvdb, MAX_ATTEMPTS,
+          kvt -> kvt.put(key, kvt.encodeCounter(kvt.decodeCounter(kvt.get(key)) + 1)));
+    }
+
+// Internal methods
+
+    private void scan(KVTransaction kvt, int start, boolean reverse, Blackhole bh) {
+        final byte[] minKey = reverse ? KVBenchmark.dataKey(0) : KVBenchmark.dataKey(start);
+        final byte[] maxKey = reverse ? KVBenchmark.dataKey(start + PAIRS_PER_SCAN) : KVBenchmark.dataKey(this.numKeys);
+        int count = 0;
+        try (CloseableIterator<KVPair> i = kvt.getRange(minKey, maxKey, reverse)) {
+            while (count++ < PAIRS_PER_SCAN && i.hasNext())
+                bh.consume(i.next());
+        }
+    }
+
+    static byte[] dataKey(int index) {
+        return new byte[] { (byte)0x01, (byte)(index >> 24), (byte)(index >> 16), (byte)(index >> 8), (byte)index };
+    }
+
+    static byte[] hotKey(int index) {
+        return new byte[] { (byte)0x02, (byte)index };
+    }
+
+    static byte[] value(int seed) {
+        final byte[] value = new byte[VALUE_SIZE];
+        for (int i = 0; i < value.length; i++)
+            value[i] = (byte)(seed + i);
+        return value;
+    }
+}
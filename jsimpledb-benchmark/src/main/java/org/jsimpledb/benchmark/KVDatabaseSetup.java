@@ -0,0 +1,291 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.benchmark;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.dellroad.stuff.net.TCPNetwork;
+import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.array.ArrayKVDatabase;
+import org.jsimpledb.kv.array.AtomicArrayKVStore;
+import org.jsimpledb.kv.leveldb.LevelDBAtomicKVStore;
+import org.jsimpledb.kv.leveldb.LevelDBKVDatabase;
+import org.jsimpledb.kv.raft.RaftKVDatabase;
+import org.jsimpledb.kv.raft.RaftKVTransaction;
+import org.jsimpledb.kv.rocksdb.RocksDBAtomicKVStore;
+import org.jsimpledb.kv.rocksdb.RocksDBKVDatabase;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.kv.sqlite.SQLiteKVDatabase;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates, starts, and eventually tears down one of the in-tree local {@link KVDatabase} implementations,
+ * using a private temporary directory for any persistent state.
+ *
+ * <p>
+ * The {@link KVDatabase} type is identified by name (see {@link #SIMPLE}, {@link #ARRAY}, etc.) so that it can be
+ * supplied as a JMH {@code @Param}.
+ */
+public class KVDatabaseSetup implements Closeable {
+
+    /** {@link SimpleKVDatabase} on top of a {@link NavigableMapKVStore}. */
+    public static final String SIMPLE = "simple";
+
+    /** {@link ArrayKVDatabase} on top of an {@link AtomicArrayKVStore}. */
+    public static final String ARRAY = "array";
+
+    /** {@link LevelDBKVDatabase} on top of a {@link LevelDBAtomicKVStore}. */
+    public static final String LEVELDB = "leveldb";
+
+    /** {@link RocksDBKVDatabase} on top of a {@link RocksDBAtomicKVStore}. */
+    public static final String ROCKSDB = "rocksdb";
+
+    /** {@link SQLiteKVDatabase} using WAL journaling and exclusive locking. */
+    public static final String SQLITE = "sqlite";
+
+    /** In-process {@link RaftKVDatabase} cluster of {@link #RAFT_CLUSTER_SIZE} nodes talking TCP over the loopback interface. */
+    public static final String RAFT = "raft";
+
+    /** Number of nodes in a {@link #RAFT} cluster. */
+    public static final int RAFT_CLUSTER_SIZE = 3;
+
+    private static final int MAX_CONFIG_CHANGE_ATTEMPTS = 100;
+
+    protected final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final String type;
+    private final File directory;
+    private final KVDatabase kvdb;
+    private final ArrayList<KVDatabase> started = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Creates and starts the {@link KVDatabase}; in the case of {@link #RAFT}, also forms the cluster.
+     *
+     * @param type {@link KVDatabase} type name
+     * @throws IllegalArgumentException if {@code type} is null or unknown
+     * @throws IOException if an I/O error occurs
+     */
+    public KVDatabaseSetup(String type) throws IOException {
+        Preconditions.checkArgument(type != null, "null type");
+        this.type = type;
+        this.directory = Files.createTempDirectory("jsimpledb-benchmark-" + type + "-").toFile();
+        boolean success = false;
+        try {
+            this.kvdb = this.createKVDatabase();
+            success = true;
+        } finally {
+            if (!success)
+                this.close();
+        }
+    }
+
+    /**
+     * Get the {@link KVDatabase} type name.
+     *
+     * @return type name
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * Get the started {@link KVDatabase}.
+     *
+     * <p>
+     * In the case of {@link #RAFT}, this is the node that initially formed the cluster.
+     *
+     * @return database under test
+     */
+    public KVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+
+    /**
+     * Stop the {@link KVDatabase}(s) and delete all associated persistent state.
+     */
+    @Override
+    public void close() {
+        for (int i = this.started.size() - 1; i >= 0; i--) {
+            try {
+                this.started.get(i).stop();
+            } catch (RuntimeException e) {
+                this.log.warn("error stopping " + this.started.get(i), e);
+            }
+        }
+        this.started.clear();
+        try {
+            KVDatabaseSetup.deleteDirectoryHierarchy(this.directory.toPath());
+        } catch (IOException e) {
+            this.log.warn("error deleting " + this.directory, e);
+        }
+    }
+
+    /**
+     * Perform the given action within a new transaction, retrying if necessary.
+     *
+     * @param kvdb database
+     * @param maxAttempts maximum number of attempts
+     * @param action transactional action
+     * @throws RetryTransactionException if all {@code maxAttempts} attempts fail with a retryable error
+     */
+    public static void doInTransaction(KVDatabase kvdb, int maxAttempts, Consumer<? super KVTransaction> action) {
+        for (int attempt = 1; true; attempt++) {
+            final KVTransaction kvt = kvdb.createTransaction();
+            boolean success = false;
+            try {
+                action.accept(kvt);
+                kvt.commit();
+                success = true;
+                return;
+            } catch (RetryTransactionException e) {
+                if (attempt >= maxAttempts)
+                    throw e;
+            } finally {
+                if (!success)
+                    kvt.rollback();
+            }
+        }
+    }
+
+// Internal methods
+
+    private KVDatabase createKVDatabase() throws IOException {
+        switch (this.type) {
+        case SIMPLE:
+            return this.start(new SimpleKVDatabase(new NavigableMapKVStore(), 250, 5000));
+        case ARRAY:
+        {
+            final ArrayKVDatabase arraydb = new ArrayKVDatabase();
+            arraydb.setKVStore(this.createArrayKVStore(this.directory));
+            return this.start(arraydb);
+        }
+        case LEVELDB:
+        {
+            final LevelDBAtomicKVStore leveldb = new LevelDBAtomicKVStore();
+            leveldb.setDirectory(this.directory);
+            leveldb.setCreateIfMissing(true);
+            final LevelDBKVDatabase leveldbdb = new LevelDBKVDatabase();
+            leveldbdb.setKVStore(leveldb);
+            return this.start(leveldbdb);
+        }
+        case ROCKSDB:
+        {
+            final RocksDBAtomicKVStore rocksdb = new RocksDBAtomicKVStore();
+            rocksdb.setDirectory(this.directory);
+            final RocksDBKVDatabase rocksdbdb = new RocksDBKVDatabase();
+            rocksdbdb.setKVStore(rocksdb);
+            return this.start(rocksdbdb);
+        }
+        case SQLITE:
+        {
+            final SQLiteKVDatabase sqlite = new SQLiteKVDatabase();
+            sqlite.setDatabaseFile(new File(this.directory, "kvstore.sqlite3"));
+            sqlite.setExclusiveLocking(true);
+            sqlite.setPragmas(Arrays.asList("journal_mode=WAL"));
+            return this.start(sqlite);
+        }
+        case RAFT:
+            return this.createRaftCluster();
+        default:
+            throw new IllegalArgumentException("unknown k/v database type `" + this.type + "'");
+        }
+    }
+
+    private AtomicArrayKVStore createArrayKVStore(File dir) {
+        final AtomicArrayKVStore arraykv = new AtomicArrayKVStore();
+        arraykv.setDirectory(dir);
+        return arraykv;
+    }
+
+    private KVDatabase createRaftCluster() throws IOException {
+
+        // Create and start nodes
+        final RaftKVDatabase[] rafts = new RaftKVDatabase[RAFT_CLUSTER_SIZE];
+        final String[] addresses = new String[RAFT_CLUSTER_SIZE];
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < RAFT_CLUSTER_SIZE; i++) {
+            final File nodeDir = new File(this.directory, "node" + i);
+            final File logDir = new File(nodeDir, "log");
+            final File kvDir = new File(nodeDir, "kv");
+            if (!logDir.mkdirs() || !kvDir.mkdirs())
+                throw new IOException("error creating directories in " + nodeDir);
+            final int port = KVDatabaseSetup.findFreePort(loopback);
+            addresses[i] = loopback.getHostAddress() + ":" + port;
+            final TCPNetwork network = new TCPNetwork(port);
+            network.setListenAddress(new InetSocketAddress(loopback, port));
+            rafts[i] = new RaftKVDatabase();
+            rafts[i].setKVStore(this.createArrayKVStore(kvDir));
+            rafts[i].setLogDirectory(logDir);
+            rafts[i].setNetwork(network);
+            rafts[i].setIdentity("node" + i);
+            this.start(rafts[i]);
+        }
+
+        // Form the cluster: node zero creates it by adding itself, then adds the others
+        for (int i = 0; i < RAFT_CLUSTER_SIZE; i++) {
+            final String identity = rafts[i].getIdentity();
+            final String address = addresses[i];
+            if (this.log.isDebugEnabled())
+                this.log.debug("adding node \"" + identity + "\" at " + address + " to benchmark cluster");
+            KVDatabaseSetup.doInTransaction(rafts[0], MAX_CONFIG_CHANGE_ATTEMPTS,
+              kvt -> ((RaftKVTransaction)kvt).configChange(identity, address));
+        }
+        return rafts[0];
+    }
+
+    private <T extends KVDatabase> T start(T db) {
+        db.start();
+        this.started.add(db);
+        return db;
+    }
+
+    private static int findFreePort(InetAddress address) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, address)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteDirectoryHierarchy(Path root) throws IOException {
+        if (!Files.exists(root))
+            return;
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null)
+                    throw e;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
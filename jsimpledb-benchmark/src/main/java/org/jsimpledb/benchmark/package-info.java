@@ -0,0 +1,35 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+/**
+ * <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a> benchmarks for JSimpleDB.
+ *
+ * <p>
+ * Benchmarks are provided for each layer:
+ * <ul>
+ *  <li>{@link org.jsimpledb.benchmark.KVBenchmark} - key/value point reads, range scans, commits, and conflicting commits</li>
+ *  <li>{@link org.jsimpledb.benchmark.CoreAPIBenchmark} - core API reads, creates, index queries, copies,
+ *      and schema upgrades</li>
+ *  <li>{@link org.jsimpledb.benchmark.JSimpleDBBenchmark} - Java model layer reads, creates, index queries,
+ *      and {@code copyTo()}</li>
+ * </ul>
+ *
+ * <p>
+ * Each benchmark is parameterized by {@code kvdbType}, which selects one of the local {@link org.jsimpledb.kv.KVDatabase}
+ * implementations created by {@link org.jsimpledb.benchmark.KVDatabaseSetup}: {@code simple}, {@code array},
+ * {@code leveldb}, {@code rocksdb}, {@code sqlite}, or {@code raft} (an in-process three node cluster).
+ *
+ * <p>
+ * Building this module creates a self-contained {@code target/benchmarks.jar}. For example, to run the
+ * key/value benchmarks against RocksDB and SQLite only:
+ * <pre>
+ *  java -jar target/benchmarks.jar KVBenchmark -p kvdbType=rocksdb,sqlite
+ * </pre>
+ *
+ * <p>
+ * All standard JMH command line flags are supported. Unless {@code -rf} or {@code -rff} is given, results are written
+ * in JSON format to {@code jsimpledb-benchmark.json}.
+ */
+package org.jsimpledb.benchmark;
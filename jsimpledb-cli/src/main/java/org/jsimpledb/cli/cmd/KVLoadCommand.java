@@ -8,32 +8,44 @@ package org.jsimpledb.cli.cmd;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.UncheckedIOException;
 import java.util.EnumSet;
 import java.util.Map;
 
 import org.jsimpledb.Session;
 import org.jsimpledb.SessionMode;
 import org.jsimpledb.cli.CliSession;
+import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.jsimpledb.kv.util.BinarySerializer;
 import org.jsimpledb.kv.util.XMLSerializer;
 import org.jsimpledb.parse.Parser;
+import org.jsimpledb.util.CloseableIterator;
 import org.jsimpledb.util.ParseContext;
 
 public class KVLoadCommand extends AbstractKVCommand {
 
     public KVLoadCommand() {
-        super("kvload -R:reset file.xml:file");
+        super("kvload -R:reset -b:binary -bulk:bulk -threads:threads:int file.xml:file");
     }
 
     @Override
     public String getHelpSummary() {
-        return "Load key/value pairs from an XML file";
+        return "Load key/value pairs from an XML or binary file";
     }
 
     @Override
     public String getHelpDetail() {
         return "Imports key/value pairs from an XML file created previously via `kvsave'. Does NOT remove any key/value pairs"
           + "already in the database unless the `-R' flag is given, in which case the database is completely wiped first."
+          + "\n\nThe `-b' flag indicates the file was written by `kvsave -b' in binary format; in that case, `-threads'"
+          + " specifies the number of threads used to decompress and decode it."
+          + "\n\nThe `-bulk' flag (which requires `-b') loads the file directly into the underlying key/value store,"
+          + " bypassing transactions entirely; this is much faster when restoring into an empty database. It is only supported"
+          + " by key/value databases built on an atomic key/value store (e.g., array, LevelDB, RocksDB), and requires that"
+          + " no other transactions be open."
           + "\n\nWARNING: this command can corrupt a JSimpleDB database.";
     }
 
@@ -49,17 +61,31 @@ public class KVLoadCommand extends AbstractKVCommand {
 
     @Override
     public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
-        return new LoadAction(params.containsKey("reset"), (File)params.get("file.xml"));
+        final int threads = params.containsKey("threads") ? (Integer)params.get("threads") : 1;
+        if (threads < 1)
+            throw new IllegalArgumentException("invalid number of threads " + threads);
+        if (params.containsKey("bulk")) {
+            if (!params.containsKey("binary"))
+                throw new IllegalArgumentException("`-bulk' requires `-b'");
+            if (params.containsKey("reset"))
+                throw new IllegalArgumentException("`-bulk' cannot be combined with `-R'");
+            return new BulkLoadAction((File)params.get("file.xml"), threads);
+        }
+        return new LoadAction(params.containsKey("reset"), (File)params.get("file.xml"), params.containsKey("binary"), threads);
     }
 
     private static class LoadAction implements CliSession.Action, Session.RetryableAction {
 
         private final boolean reset;
         private final File file;
+        private final boolean binary;
+        private final int threads;
 
-        LoadAction(boolean reset, File file) {
+        LoadAction(boolean reset, File file, boolean binary, int threads) {
             this.reset = reset;
             this.file = file;
+            this.binary = binary;
+            this.threads = threads;
         }
 
         @Override
@@ -67,12 +93,43 @@ public class KVLoadCommand extends AbstractKVCommand {
             final KVTransaction kvt = session.getKVTransaction();
             if (this.reset)
                 kvt.removeRange(null, null);
-            final int count;
+            final long count;
             try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(this.file))) {
-                count = new XMLSerializer(kvt).read(input);
+                if (this.binary) {
+                    final BinarySerializer serializer = new BinarySerializer(kvt);
+                    serializer.setThreads(this.threads);
+                    count = serializer.read(input);
+                } else
+                    count = new XMLSerializer(kvt).read(input);
             }
             session.getWriter().println("Read " + count + " key/value pairs from `" + this.file + "'");
         }
     }
-}
 
+    private static class BulkLoadAction implements CliSession.Action {
+
+        private final File file;
+        private final int threads;
+
+        BulkLoadAction(File file, int threads) {
+            this.file = file;
+            this.threads = threads;
+        }
+
+        @Override
+        public void run(CliSession session) throws Exception {
+            final KVDatabase kvdb = session.getKVDatabase();
+            if (!(kvdb instanceof SnapshotKVDatabase))
+                throw new IllegalArgumentException("bulk loading is not supported by " + kvdb.getClass().getSimpleName());
+            final long count;
+            try (
+              BufferedInputStream input = new BufferedInputStream(new FileInputStream(this.file));
+              CloseableIterator<KVPair> i = BinarySerializer.readPairs(input, this.threads)) {
+                count = ((SnapshotKVDatabase)kvdb).bulkLoad(i);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            session.getWriter().println("Bulk loaded " + count + " key/value pairs from `" + this.file + "'");
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.dellroad.stuff.xml.IndentXMLStreamWriter;
 import org.jsimpledb.Session;
 import org.jsimpledb.SessionMode;
 import org.jsimpledb.cli.CliSession;
+import org.jsimpledb.kv.util.BinarySerializer;
 import org.jsimpledb.kv.util.XMLSerializer;
 import org.jsimpledb.parse.Parser;
 import org.jsimpledb.util.ParseContext;
@@ -29,12 +30,12 @@ import org.jsimpledb.util.ParseContext;
 public class KVSaveCommand extends AbstractCommand {
 
     public KVSaveCommand() {
-        super("kvsave -i:indent -w:weak file.xml:file minKey? maxKey?");
+        super("kvsave -i:indent -w:weak -b:binary -u:uncompressed -threads:threads:int file.xml:file minKey? maxKey?");
     }
 
     @Override
     public String getHelpSummary() {
-        return "Exports key/value pairs to an XML file";
+        return "Exports key/value pairs to an XML or binary file";
     }
 
     @Override
@@ -43,6 +44,9 @@ public class KVSaveCommand extends AbstractCommand {
           + "\n\nIf `minKey' and/or `maxKey' are specified, the keys are restricted to the specified range."
           + " `minKey' and `maxKey' may be given as hexadecimal strings or C-style doubly-quoted strings.\n"
           + "The `-i' flag causes the output XML to be indented.\n"
+          + "The `-b' flag selects a compact, checksummed binary format instead of XML; this is much faster and smaller"
+          + " for large databases. Binary output is compressed unless the `-u' flag is given, and `-threads' specifies"
+          + " the number of threads used to encode and compress it.\n"
           + "If the `-w' flag is given, for certain key/value stores a weaker consistency level is used for"
           + " the tranasction to reduce the chance of conflicts.";
     }
@@ -66,9 +70,14 @@ public class KVSaveCommand extends AbstractCommand {
         final boolean weak = params.containsKey("weak");
         final byte[] minKey = (byte[])params.get("minKey");
         final byte[] maxKey = (byte[])params.get("maxKey");
+        final boolean binary = params.containsKey("binary");
+        final boolean compress = !params.containsKey("uncompressed");
+        final int threads = params.containsKey("threads") ? (Integer)params.get("threads") : 1;
+        if (threads < 1)
+            throw new IllegalArgumentException("invalid number of threads " + threads);
 
         // Return action
-        return new SaveAction(file, indent, weak, minKey, maxKey);
+        return new SaveAction(file, indent, weak, minKey, maxKey, binary, compress, threads);
     }
 
     private static class SaveAction implements CliSession.Action, Session.RetryableAction, Session.HasTransactionOptions {
@@ -78,13 +87,20 @@ public class KVSaveCommand extends AbstractCommand {
         private final boolean weak;
         private final byte[] minKey;
         private final byte[] maxKey;
+        private final boolean binary;
+        private final boolean compress;
+        private final int threads;
 
-        SaveAction(File file, boolean indent, boolean weak, byte[] minKey, byte[] maxKey) {
+        SaveAction(File file, boolean indent, boolean weak, byte[] minKey, byte[] maxKey,
+          boolean binary, boolean compress, int threads) {
             this.file = file;
             this.indent = indent;
             this.weak = weak;
             this.minKey = minKey;
             this.maxKey = maxKey;
+            this.binary = binary;
+            this.compress = compress;
+            this.threads = threads;
         }
 
         @Override
@@ -93,14 +109,21 @@ public class KVSaveCommand extends AbstractCommand {
               new AtomicUpdateFileOutputStream(this.file) : new FileOutputStream(this.file);
             final BufferedOutputStream output = new BufferedOutputStream(updateOutput);
             boolean success = false;
-            final int count;
+            final long count;
             try {
-                XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
-                if (this.indent)
-                    writer = new IndentXMLStreamWriter(writer);
-                writer.writeStartDocument("UTF-8", "1.0");
-                final XMLSerializer serializer = new XMLSerializer(session.getKVTransaction());
-                count = serializer.write(writer, this.minKey, this.maxKey);
+                if (this.binary) {
+                    final BinarySerializer serializer = new BinarySerializer(session.getKVTransaction());
+                    serializer.setCompress(this.compress);
+                    serializer.setThreads(this.threads);
+                    count = serializer.write(output, this.minKey, this.maxKey);
+                } else {
+                    XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+                    if (this.indent)
+                        writer = new IndentXMLStreamWriter(writer);
+                    writer.writeStartDocument("UTF-8", "1.0");
+                    final XMLSerializer serializer = new XMLSerializer(session.getKVTransaction());
+                    count = serializer.write(writer, this.minKey, this.maxKey);
+                }
                 output.flush();
                 success = true;
             } finally {
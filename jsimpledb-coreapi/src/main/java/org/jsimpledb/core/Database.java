@@ -78,6 +78,7 @@ public class Database {
     private final KVDatabase kvdb;
 
     private volatile Schemas lastSchemas;
+    private volatile int newDatabaseFormatVersion = Layout.CURRENT_FORMAT_VERSION;
 
     /**
      * Constructor.
@@ -108,6 +109,36 @@ public class Database {
         return this.kvdb;
     }
 
+    /**
+     * Get the layout format version used when initializing an empty database.
+     *
+     * <p>
+     * Default is {@link Layout#CURRENT_FORMAT_VERSION}.
+     *
+     * @return format version for new databases
+     */
+    public int getNewDatabaseFormatVersion() {
+        return this.newDatabaseFormatVersion;
+    }
+
+    /**
+     * Configure the layout format version used when initializing an empty database.
+     *
+     * <p>
+     * Format version {@link Layout#FORMAT_VERSION_3} adds a schema fingerprint that allows transactions to validate
+     * cached schema information with a single read, but databases having that format version cannot be opened by
+     * earlier versions of JSimpleDB, so it must be explicitly enabled here. Existing databases always keep their
+     * format version.
+     *
+     * @param formatVersion format version for new databases
+     * @throws IllegalArgumentException if {@code formatVersion} is not a supported format version
+     */
+    public void setNewDatabaseFormatVersion(int formatVersion) {
+        Preconditions.checkArgument(formatVersion >= Layout.FORMAT_VERSION_1 && formatVersion <= Layout.MAX_FORMAT_VERSION,
+          "unsupported format version " + formatVersion);
+        this.newDatabaseFormatVersion = formatVersion;
+    }
+
     /**
      * Create a new transaction.
      *
@@ -383,6 +414,11 @@ public class Database {
               + (version != 0 ? "schema version " + version : "highest recorded schema version"));
         }
 
+        // If the recorded schema fingerprint matches our cached schemas, we can skip reading all the meta-data
+        final Schemas cachedSchemas = this.lastSchemas;
+        if (cachedSchemas != null && this.isCachedSchemasValid(kvstore, cachedSchemas, schemaModel, version))
+            return cachedSchemas;
+
         // Get iterator over meta-data key/value pairs
         final int formatVersion;
         final boolean uninitialized;
@@ -434,7 +470,7 @@ public class Database {
                 this.checkAddNewSchema(schemaModel, version, allowNewSchema);
 
                 // Initialize database
-                formatVersion = Layout.CURRENT_FORMAT_VERSION;
+                formatVersion = this.newDatabaseFormatVersion;
                 this.log.debug("detected an uninitialized database; initializing now (format version " + formatVersion + ")");
                 final byte[] encodedFormatVersion = UnsignedIntEncoder.encode(formatVersion);
                 kvstore.put(Layout.getFormatVersionKey(), encodedFormatVersion);
@@ -463,6 +499,7 @@ public class Database {
                 switch (formatVersion) {
                 case Layout.FORMAT_VERSION_1:
                 case Layout.FORMAT_VERSION_2:
+                case Layout.FORMAT_VERSION_3:
                     break;
                 default:
                     throw new InconsistentDatabaseException("database contains unrecognized format version "
@@ -559,6 +596,14 @@ public class Database {
             break;
         }
 
+        // Update the recorded schema fingerprint if needed, but only if the caller allows meta-data changes. Databases
+        // with older format versions may be modified by older JSimpleDB versions, which don't know to update it.
+        if (allowNewSchema && formatVersion >= Layout.FORMAT_VERSION_3
+          && !Arrays.equals(kvstore.get(Layout.getSchemaFingerprintKey()), schemas.fingerprint)) {
+            this.log.debug("recording schema fingerprint for schema versions " + schemas.versions.keySet() + " into database");
+            kvstore.put(Layout.getSchemaFingerprintKey(), schemas.fingerprint);
+        }
+
         // Save schema for next time
         this.lastSchemas = schemas;
 
@@ -658,6 +703,37 @@ public class Database {
         }
     }
 
+    /**
+     * Determine whether the given cached {@link Schemas} are still current for the given {@link KVStore}
+     * and satisfy the given request, using only a single read of the recorded schema fingerprint.
+     *
+     * <p>
+     * Only databases with format version {@link Layout#FORMAT_VERSION_3} or later contain a fingerprint, so for older
+     * databases this always returns false. If this method returns false, the full meta-data check must be performed,
+     * which will report any errors.
+     */
+    private boolean isCachedSchemasValid(KVStore kvstore, Schemas schemas, SchemaModel schemaModel, int version) {
+
+        // Compare fingerprints
+        final byte[] fingerprint = kvstore.get(Layout.getSchemaFingerprintKey());
+        if (fingerprint == null || !Arrays.equals(fingerprint, schemas.fingerprint) || schemas.versions.isEmpty())
+            return false;
+
+        // Find the requested schema version; if not found, it needs to be recorded
+        final Schema schema = schemas.versions.get(version != 0 ? version : schemas.versions.lastKey());
+        if (schema == null)
+            return false;
+
+        // Verify the provided schema matches
+        if (schemaModel != null && !schemaModel.isCompatibleWith(schema.getSchemaModel()))
+            return false;
+
+        // Done
+        if (this.log.isTraceEnabled())
+            this.log.trace("schema fingerprint matches; using cached schema versions " + schemas.versions.keySet());
+        return true;
+    }
+
     private void checkAddNewSchema(SchemaModel schemaModel, int version, boolean allowNewSchema) {
         if (version == 0)
             throw new SchemaMismatchException("database is uninitialized and no schema version was provided");
@@ -12,6 +12,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -30,7 +34,8 @@ import org.jsimpledb.util.UnsignedIntEncoder;
  * <p>
  * The key/value space is divided into a data area and a meta-data area. The data area contains object data as
  * well as simple and composite index data. The meta-data area contains a recognizable signature, encoding format version,
- * each recorded schema version, the object version index data, and a range reserved for user applications.
+ * each recorded schema version, a fingerprint of the recorded schema versions, the object version index data, and a range
+ * reserved for user applications.
  *
  * @see <a href="https://github.com/archiecobbs/jsimpledb/blob/master/LAYOUT.txt">LAYOUT.txt</a>
  */
@@ -49,11 +54,36 @@ public final class Layout {
      */
     public static final int FORMAT_VERSION_2 = 2;                                       // added compressed schema XML
 
+    /**
+     * {@link Database} layout format version #3.
+     *
+     * <p>
+     * This version added the {@linkplain #getSchemaFingerprintKey schema fingerprint}, which every writer must keep up to date.
+     * Because older versions of JSimpleDB refuse to open a database with an unrecognized format version, they can never
+     * modify recorded schemas without also updating the fingerprint. Databases created with an earlier format version
+     * keep that version, and never contain a schema fingerprint.
+     *
+     * <p>
+     * <b>Compatibility note:</b> databases having this format version cannot be opened by earlier versions of JSimpleDB.
+     * Therefore, this format version is only used for new databases if explicitly requested via
+     * {@link Database#setNewDatabaseFormatVersion Database.setNewDatabaseFormatVersion()}.
+     */
+    public static final int FORMAT_VERSION_3 = 3;                                       // added schema fingerprint
+
     /**
      * The current {@link Database} layout format version ({@value #CURRENT_FORMAT_VERSION}).
+     *
+     * <p>
+     * This is the format version used by default for new databases; see
+     * {@link Database#setNewDatabaseFormatVersion Database.setNewDatabaseFormatVersion()}.
      */
     public static final int CURRENT_FORMAT_VERSION = FORMAT_VERSION_2;
 
+    /**
+     * The highest {@link Database} layout format version supported by this version of JSimpleDB ({@value #MAX_FORMAT_VERSION}).
+     */
+    public static final int MAX_FORMAT_VERSION = FORMAT_VERSION_3;
+
     /**
      * The single byte value that is a prefix of all meta-data keys.
      */
@@ -69,6 +99,9 @@ public final class Layout {
     private static final byte[] SCHEMA_KEY_PREFIX = new byte[] {
       METADATA_PREFIX_BYTE, (byte)0x01
     };
+    private static final byte[] SCHEMA_FINGERPRINT_KEY = new byte[] {
+      METADATA_PREFIX_BYTE, (byte)0x02
+    };
     private static final byte[] VERSION_INDEX_PREFIX = new byte[] {
       METADATA_PREFIX_BYTE, (byte)0x80
     };
@@ -186,6 +219,51 @@ public final class Layout {
         return writer.getBytes();
     }
 
+    /**
+     * Get the key under which the fingerprint of all recorded schema versions is stored.
+     *
+     * <p>
+     * This key is present if and only if the database's format version is {@link #FORMAT_VERSION_3} or later, which
+     * is only the case for databases created with that format version explicitly enabled; its value
+     * must equal {@link #buildSchemaFingerprint buildSchemaFingerprint()} applied to the recorded schema versions.
+     * It allows a {@link Database} to verify that its cached schema information is still current with a single
+     * {@link KVStore#get get()} instead of reading all recorded schema versions.
+     *
+     * <p>
+     * The fingerprint is only reliable if every writer updates it whenever it modifies the recorded schema versions;
+     * this is guaranteed by the format version check performed by all versions of JSimpleDB. Tools that modify the
+     * recorded schema keys directly must also update (or remove) this key.
+     *
+     * @return schema fingerprint key
+     */
+    public static byte[] getSchemaFingerprintKey() {
+        return SCHEMA_FINGERPRINT_KEY.clone();
+    }
+
+    /**
+     * Compute the fingerprint of a set of recorded schema versions.
+     *
+     * @param schemaBytes mapping from schema version number to encoded schema, as stored under the corresponding schema key
+     * @return schema fingerprint
+     * @throws IllegalArgumentException if {@code schemaBytes} is null
+     */
+    public static byte[] buildSchemaFingerprint(SortedMap<Integer, byte[]> schemaBytes) {
+        Preconditions.checkArgument(schemaBytes != null, "null schemaBytes");
+        final MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("unexpected exception", e);
+        }
+        for (Map.Entry<Integer, byte[]> entry : schemaBytes.entrySet()) {
+            final byte[] bytes = entry.getValue();
+            sha256.update(UnsignedIntEncoder.encode(entry.getKey()));
+            sha256.update(UnsignedIntEncoder.encode(bytes.length));
+            sha256.update(bytes);
+        }
+        return sha256.digest();
+    }
+
     /**
      * Get the common prefix of all object version index entries.
      *
@@ -256,6 +334,7 @@ public final class Layout {
         switch (formatVersion) {
         case FORMAT_VERSION_1:
         case FORMAT_VERSION_2:
+        case FORMAT_VERSION_3:
             compressed = formatVersion >= FORMAT_VERSION_2;
             break;
         default:
@@ -309,6 +388,7 @@ public final class Layout {
         switch (formatVersion) {
         case FORMAT_VERSION_1:
         case FORMAT_VERSION_2:
+        case FORMAT_VERSION_3:
             compress = formatVersion >= FORMAT_VERSION_2;
             break;
         default:
@@ -28,11 +28,15 @@ class ObjInfo {
 
     // Constructor that reads from key/value store
     ObjInfo(Transaction tx, ObjId id) {
+        this(tx, id, tx.kvt.get(id.getBytes()));
+    }
+
+    // Constructor that decodes meta-data already read from the key/value store
+    ObjInfo(Transaction tx, ObjId id, byte[] value) {
         assert tx != null;
         assert id != null;
         this.tx = tx;
         this.id = id;
-        final byte[] value = tx.kvt.get(this.id.getBytes());
         if (value == null)
             throw new DeletedObjectException(tx, this.id);
         final ByteReader reader = new ByteReader(value);
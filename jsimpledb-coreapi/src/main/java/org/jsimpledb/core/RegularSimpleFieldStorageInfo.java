@@ -36,6 +36,16 @@ class RegularSimpleFieldStorageInfo<T> extends SimpleFieldStorageInfo<T> {
             values.add(value);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    void readAllNonNull(Transaction tx, Iterable<? extends ObjId> ids, Set<T> values, Predicate<? super T> filter) {
+        tx.readSimpleFields(ids, this.storageId, (id, obj) -> {
+            final T value = (T)obj;
+            if (value != null && (filter == null || filter.test(value)))
+                values.add(value);
+        });
+    }
+
 // Object
 
     @Override
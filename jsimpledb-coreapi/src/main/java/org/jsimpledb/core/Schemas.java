@@ -37,6 +37,7 @@ public class Schemas {
     final ArrayList<SimpleFieldStorageInfo<?>> referenceFieldIndexStorageInfos = new ArrayList<>();
     final TreeSet<Integer> objTypeStorageIds = new TreeSet<>();
     KeyRanges objTypesKeyRanges;
+    byte[] fingerprint;
 
     Schemas(SortedMap<Integer, Schema> versions) {
         this.initialize(versions);
@@ -101,6 +102,12 @@ public class Schemas {
 
         // Calculate the KeyRanges containing all object types
         this.objTypesKeyRanges = new KeyRanges(Iterables.transform(this.objTypeStorageIds, ObjId::getKeyRange));
+
+        // Calculate the fingerprint of the encoded schemas
+        final TreeMap<Integer, byte[]> bytesMap = new TreeMap<>();
+        for (Schema version : this.versions.values())
+            bytesMap.put(version.versionNumber, version.encodedXML);
+        this.fingerprint = Layout.buildSchemaFingerprint(bytesMap);
     }
 
     /**
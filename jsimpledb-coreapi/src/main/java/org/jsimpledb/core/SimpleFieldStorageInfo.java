@@ -48,6 +48,23 @@ abstract class SimpleFieldStorageInfo<T> extends IndexStorageInfo {
      */
     abstract void readAllNonNull(Transaction tx, ObjId id, Set<T> values, Predicate<? super T> filter);
 
+    /**
+     * Read this field from the given objects and add non-null value(s) to the given set.
+     *
+     * <p>
+     * The implementation in {@link SimpleFieldStorageInfo} invokes
+     * {@link #readAllNonNull(Transaction, ObjId, Set, Predicate) readAllNonNull()} for each object.
+     *
+     * @param tx transaction
+     * @param ids objects being accessed
+     * @param values read values
+     * @param filter optional filter to apply
+     */
+    void readAllNonNull(Transaction tx, Iterable<? extends ObjId> ids, Set<T> values, Predicate<? super T> filter) {
+        for (ObjId id : ids)
+            this.readAllNonNull(tx, id, values, filter);
+    }
+
 // Object
 
     @Override
@@ -68,6 +68,7 @@ public class SnapshotTransaction extends Transaction {
         if (this.stale)
             throw new StaleTransactionException(this);
         Layout.deleteObjectData(this.kvt);
+        this.resetObjectCaches();
     }
 
     /**
@@ -6,6 +6,8 @@
 package org.jsimpledb.core;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 
 import java.util.ArrayList;
@@ -13,6 +15,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -20,9 +23,16 @@ import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -151,6 +161,8 @@ import org.slf4j.LoggerFactory;
  *      of starting objects through a specified reference path</li>
  *  <li>{@link #invertReferencePath invertReferencePath()} - Find all objects that refer to any element in a given set
  *      of target objects through a specified reference path</li>
+ *  <li>{@link #streamReferencePath streamReferencePath()} - Lazily stream all objects referred to by any element in a given
+ *      set of starting objects through a specified reference path</li>
  * </ul>
  *
  * <p>
@@ -191,6 +203,12 @@ public class Transaction {
       = Integer.parseInt(System.getProperty(Transaction.class.getName() + ".MAX_GENERATED_KEY_ATTEMPTS", "64"));
     private static final int MAX_OBJ_INFO_CACHE_ENTRIES
       = Integer.parseInt(System.getProperty(Transaction.class.getName() + ".MAX_OBJ_INFO_CACHE_ENTRIES", "1000"));
+    private static final int MAX_PREFETCH_CACHE_ENTRIES
+      = Integer.parseInt(System.getProperty(Transaction.class.getName() + ".MAX_PREFETCH_CACHE_ENTRIES", "1000"));
+    private static final int MAX_BATCH_READ_SIZE
+      = Integer.parseInt(System.getProperty(Transaction.class.getName() + ".MAX_BATCH_READ_SIZE", "1000"));
+    private static final int PARALLEL_TRAVERSAL_CHUNK_SIZE
+      = Integer.parseInt(System.getProperty(Transaction.class.getName() + ".PARALLEL_TRAVERSAL_CHUNK_SIZE", "1000"));
 
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -201,14 +219,16 @@ public class Transaction {
     final Schema schema;
 
     // TX state
-    @GuardedBy("this")
-    boolean stale;
+    volatile boolean stale;
     @GuardedBy("this")
     boolean ending;
     @GuardedBy("this")
     boolean rollbackOnly;
     @GuardedBy("this")
     boolean disableListenerNotifications;
+    private volatile boolean concurrentReads;
+    private volatile ForkJoinPool traversalPool;
+    private volatile Set<Integer> prefetchTypes = Collections.emptySet();           // copy-on-write
 
     // Listeners
     @GuardedBy("this")
@@ -231,8 +251,12 @@ public class Transaction {
     // Misc
     @GuardedBy("this")
     private final ThreadLocal<TreeMap<Integer, ArrayList<FieldChangeNotifier<?>>>> pendingNotifications = new ThreadLocal<>();
-    @GuardedBy("this")
+    @GuardedBy("objInfoCache")
     private final ObjIdMap<ObjInfo> objInfoCache = new ObjIdMap<>();
+    @GuardedBy("objInfoCache")
+    private final ObjIdMap<Map<Integer, byte[]>> prefetchCache = new ObjIdMap<>();  // simple field values; maps are immutable
+    @GuardedBy("objInfoCache")
+    private long objInfoCacheStamp;                                                 // incremented when object data changes
     @GuardedBy("this")
     private Object userObject;
 
@@ -319,6 +343,8 @@ public class Transaction {
         if (!this.schemas.deleteVersion(version))
             return false;
         this.kvt.remove(Layout.getSchemaKey(version));
+        if (this.kvt.get(Layout.getSchemaFingerprintKey()) != null)                    // only present in newer formats
+            this.kvt.put(Layout.getSchemaFingerprintKey(), this.schemas.fingerprint);
         return true;
     }
 
@@ -535,6 +561,124 @@ public class Transaction {
         this.kvt.setReadOnly(readOnly);
     }
 
+    /**
+     * Determine whether concurrent reads are enabled for this transaction.
+     *
+     * @return true if concurrent reads are enabled
+     * @see #setConcurrentReads setConcurrentReads()
+     */
+    public boolean isConcurrentReads() {
+        return this.concurrentReads;
+    }
+
+    /**
+     * Enable or disable concurrent reads.
+     *
+     * <p>
+     * Normally, all methods in this class are serialized by locking this instance. When concurrent reads are enabled,
+     * the following read-only methods no longer acquire that lock, so multiple threads sharing this transaction
+     * may invoke them in parallel: {@link #exists exists()}, {@link #getSchemaVersion getSchemaVersion()},
+     * {@link #readSimpleField readSimpleField()}, {@link #readCounterField readCounterField()},
+     * {@link #getAll()}, {@link #getAll(int)}, {@link #queryVersion}, {@link #queryIndex queryIndex()},
+     * {@link #queryListElementIndex queryListElementIndex()}, and {@link #queryMapValueIndex queryMapValueIndex()}.
+     * Mutations, listener changes, and reads that require an object's schema version to be updated
+     * are still serialized as before.
+     *
+     * <p>
+     * Concurrent reads should only be enabled when the underlying {@link KVTransaction} supports concurrent access
+     * from multiple threads.
+     *
+     * <p>
+     * Default is false.
+     *
+     * @param concurrentReads true to allow read-only methods to proceed without locking this instance
+     */
+    public void setConcurrentReads(boolean concurrentReads) {
+        this.concurrentReads = concurrentReads;
+    }
+
+    /**
+     * Get the {@link ForkJoinPool} used for parallel reference path traversal, if any.
+     *
+     * @return pool used for parallel reference path traversal, or null if parallel traversal is disabled
+     * @see #setTraversalPool setTraversalPool()
+     */
+    public ForkJoinPool getTraversalPool() {
+        return this.traversalPool;
+    }
+
+    /**
+     * Enable or disable parallel reference path traversal.
+     *
+     * <p>
+     * When a pool is configured and {@linkplain #setConcurrentReads concurrent reads} are enabled,
+     * {@link #followReferencePath followReferencePath()} and {@link #invertReferencePath invertReferencePath()}
+     * split the objects reached at each step of the path into chunks and traverse the next reference from each
+     * chunk as a separate task in the given pool. In that case, the objects reached at each step are gathered
+     * eagerly, so the returned set is a snapshot rather than a view backed by the underlying indexes.
+     *
+     * <p>
+     * Parallel traversal is not used when the current thread holds this instance's lock.
+     *
+     * <p>
+     * Default is null.
+     *
+     * @param traversalPool pool for parallel reference path traversal, or null to disable
+     */
+    public void setTraversalPool(ForkJoinPool traversalPool) {
+        this.traversalPool = traversalPool;
+    }
+
+    /**
+     * Determine whether whole-object prefetch is enabled for the specified object type.
+     *
+     * @param storageId object type storage ID
+     * @return true if prefetch is enabled for objects of the specified type
+     * @see #setPrefetchEnabled setPrefetchEnabled()
+     */
+    public boolean isPrefetchEnabled(int storageId) {
+        return this.prefetchTypes.contains(storageId);
+    }
+
+    /**
+     * Enable or disable whole-object prefetch for the specified object type.
+     *
+     * <p>
+     * Normally, {@link #readSimpleField readSimpleField()} reads each field value from the underlying {@link KVTransaction}
+     * separately. When prefetch is enabled for an object type, the first field read from an object of that type instead
+     * reads the object's meta-data and all of its simple field values using a single range query (or a few range queries,
+     * if the object's simple fields are interleaved with complex fields), and the values are cached for the remainder
+     * of the transaction, so subsequent field reads from the same object don't access the key/value store at all.
+     * The cached values are kept up to date with this transaction's own changes.
+     *
+     * <p>
+     * This can greatly reduce the number of round trips when the key/value store is remote and objects are typically
+     * read in their entirety. However, range queries may cost more than individual key lookups, and in some key/value
+     * stores they result in coarser read conflict detection; prefetch is not useful for objects having only one or two
+     * fields read per transaction.
+     *
+     * <p>
+     * Default is disabled for all object types.
+     *
+     * @param storageId object type storage ID
+     * @param enabled true to enable prefetch for objects of the specified type, false to disable
+     * @throws UnknownTypeException if {@code storageId} does not correspond to any known object type
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    public synchronized void setPrefetchEnabled(int storageId, boolean enabled) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        this.schemas.verifyStorageInfo(storageId, ObjTypeStorageInfo.class);
+        if (enabled == this.prefetchTypes.contains(storageId))
+            return;
+        final HashSet<Integer> newPrefetchTypes = new HashSet<>(this.prefetchTypes);
+        if (enabled)
+            newPrefetchTypes.add(storageId);
+        else
+            newPrefetchTypes.remove(storageId);
+        this.prefetchTypes = newPrefetchTypes;
+    }
+
     /**
      * Determine whether this transaction is marked rollback only.
      *
@@ -765,13 +909,10 @@ public class Transaction {
         if (this.stale)
             throw new StaleTransactionException(this);
         assert this.kvt.get(id.getBytes()) == null;
-        assert this.objInfoCache.get(id) == null;
 
         // Write object meta-data and update object info cache
         ObjInfo.write(this, id, versionNumber, false);
-        if (this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
-            this.objInfoCache.removeOne();
-        this.objInfoCache.put(id, new ObjInfo(this, id, versionNumber, false, schema, objType));
+        this.updateObjInfoCache(id, new ObjInfo(this, id, versionNumber, false, schema, objType));
 
         // Write object version index entry
         this.kvt.put(Layout.buildVersionIndexKey(id, objType.schema.versionNumber), ByteUtil.EMPTY);
@@ -879,7 +1020,7 @@ public class Transaction {
 
             // Set "delete notified" flag and update object info cache
             ObjInfo.write(this, id, info.getVersion(), true);
-            this.objInfoCache.put(id, new ObjInfo(this, id, info.getVersion(), true, info.schema, info.objType));
+            this.updateObjInfoCache(id, new ObjInfo(this, id, info.getVersion(), true, info.schema, info.objType));
 
             // Issue delete notifications and retry
             if (!this.disableListenerNotifications && this.deleteListeners != null) {
@@ -954,7 +1095,7 @@ public class Transaction {
         this.kvt.remove(Layout.buildVersionIndexKey(id, info.getVersion()));
 
         // Update ObjInfo cache
-        this.objInfoCache.remove(id);
+        this.updateObjInfoCache(id, null);
     }
 
     /**
@@ -969,7 +1110,12 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized boolean exists(ObjId id) {
+    public boolean exists(ObjId id) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.getObjectInfoIfExists(id, false) != null;
+            }
+        }
         return this.getObjectInfoIfExists(id, false) != null;
     }
 
@@ -1302,7 +1448,16 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized int getSchemaVersion(ObjId id) {
+    public int getSchemaVersion(ObjId id) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doGetSchemaVersion(id);
+            }
+        }
+        return this.doGetSchemaVersion(id);
+    }
+
+    private int doGetSchemaVersion(ObjId id) {
 
         // Sanity check
         if (this.stale)
@@ -1600,7 +1755,7 @@ public class Transaction {
 
         // Change object version and update object info cache
         ObjInfo.write(this, id, newVersion, info.isDeleteNotified());
-        this.objInfoCache.put(id, new ObjInfo(this, id, newVersion, info.isDeleteNotified(), targetVersion, newType));
+        this.updateObjInfoCache(id, new ObjInfo(this, id, newVersion, info.isDeleteNotified(), targetVersion, newType));
 
         // Update object version index entry
         this.kvt.remove(Layout.buildVersionIndexKey(id, oldVersion));
@@ -1647,7 +1802,16 @@ public class Transaction {
      * @return read-only, real-time view of all database objects indexed by schema version
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex<Integer, ObjId> queryVersion() {
+    public CoreIndex<Integer, ObjId> queryVersion() {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doQueryVersion();
+            }
+        }
+        return this.doQueryVersion();
+    }
+
+    private CoreIndex<Integer, ObjId> doQueryVersion() {
         if (this.stale)
             throw new StaleTransactionException(this);
         return Layout.getVersionIndex(this.kvt);
@@ -1708,7 +1872,16 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @see #getAll(int)
      */
-    public synchronized NavigableSet<ObjId> getAll() {
+    public NavigableSet<ObjId> getAll() {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doGetAll();
+            }
+        }
+        return this.doGetAll();
+    }
+
+    private NavigableSet<ObjId> doGetAll() {
 
         // Sanity check
         if (this.stale)
@@ -1731,7 +1904,16 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @see #getAll()
      */
-    public synchronized NavigableSet<ObjId> getAll(int storageId) {
+    public NavigableSet<ObjId> getAll(int storageId) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doGetAll(storageId);
+            }
+        }
+        return this.doGetAll(storageId);
+    }
+
+    private NavigableSet<ObjId> doGetAll(int storageId) {
 
         // Sanity check
         if (this.stale)
@@ -1762,14 +1944,26 @@ public class Transaction {
      * @throws TypeNotInSchemaVersionException {@code updateVersion} is true and the object could not be updated because
      *   the object's type does not exist in the schema version associated with this transaction
      */
-    public synchronized Object readSimpleField(ObjId id, int storageId, boolean updateVersion) {
+    public Object readSimpleField(ObjId id, int storageId, boolean updateVersion) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doReadSimpleField(id, storageId, updateVersion);
+            }
+        }
+        return this.doReadSimpleField(id, storageId, updateVersion);
+    }
+
+    private Object doReadSimpleField(ObjId id, int storageId, boolean updateVersion) {
 
         // Sanity check
         if (this.stale)
             throw new StaleTransactionException(this);
         Preconditions.checkArgument(id != null, "null id");
 
-        // Get object info
+        // Get object info; if prefetching, read the object's meta-data along with its fields if not already cached
+        final boolean prefetch = this.prefetchTypes.contains(id.getStorageId());
+        if (prefetch && this.getCachedObjInfo(id) == null)
+            this.prefetch(id, null);
         final ObjInfo info = this.getObjectInfo(id, updateVersion);
 
         // Find field
@@ -1778,13 +1972,150 @@ public class Transaction {
             throw new UnknownFieldException(info.getObjType(), storageId, "simple field");
 
         // Read field
-        final byte[] key = field.buildKey(id);
-        final byte[] value = this.kvt.get(key);
+        final byte[] value = prefetch ? this.prefetch(id, info).get(storageId) : this.kvt.get(field.buildKey(id));
 
         // Decode value
         return value != null ? field.fieldType.read(new ByteReader(value)) : field.fieldType.getDefaultValueObject();
     }
 
+    /**
+     * Read the value of a {@link SimpleField} in multiple objects, batching the underlying key/value store reads.
+     *
+     * <p>
+     * This is equivalent to invoking {@link #readSimpleField readSimpleField}{@code (id, storageId, false)} for each
+     * object and passing the result to {@code action}, except that the objects' meta-data and field values are
+     * retrieved using {@link org.jsimpledb.kv.KVStore#getMulti KVStore.getMulti()}, in batches.
+     *
+     * @param ids object IDs
+     * @param storageId storage ID of the {@link SimpleField}
+     * @param action receives each object ID and the corresponding field value, in order
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws DeletedObjectException if any object in {@code ids} is not found
+     * @throws UnknownTypeException if any object in {@code ids} has an unknown object type
+     * @throws UnknownFieldException if no {@link SimpleField} corresponding to {@code storageId} exists in some object
+     * @throws IllegalArgumentException if {@code ids} or any element therein is null
+     */
+    void readSimpleFields(Iterable<? extends ObjId> ids, int storageId, BiConsumer<? super ObjId, Object> action) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                this.doReadSimpleFields(ids, storageId, action);
+                return;
+            }
+        }
+        this.doReadSimpleFields(ids, storageId, action);
+    }
+
+    private void doReadSimpleFields(Iterable<? extends ObjId> ids, int storageId, BiConsumer<? super ObjId, Object> action) {
+
+        // Sanity check
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        Preconditions.checkArgument(ids != null, "null ids");
+
+        // Process objects in batches
+        final ArrayList<ObjId> batch = new ArrayList<>();
+        for (ObjId id : ids) {
+            Preconditions.checkArgument(id != null, "null id");
+            batch.add(id);
+            if (batch.size() >= MAX_BATCH_READ_SIZE) {
+                this.readSimpleFieldBatch(batch, storageId, action);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            this.readSimpleFieldBatch(batch, storageId, action);
+    }
+
+    private void readSimpleFieldBatch(List<ObjId> ids, int storageId, BiConsumer<? super ObjId, Object> action) {
+        final int size = ids.size();
+
+        // Get cached object info and note the current modification stamp
+        final ObjInfo[] infos = new ObjInfo[size];
+        final long stamp;
+        synchronized (this.objInfoCache) {
+            for (int i = 0; i < size; i++)
+                infos[i] = this.objInfoCache.get(ids.get(i));
+            stamp = this.objInfoCacheStamp;
+        }
+
+        // Read the meta-data of all uncached objects at once
+        final ArrayList<byte[]> metaKeys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (infos[i] == null) {
+                final ObjId id = ids.get(i);
+                this.schemas.verifyStorageInfo(id.getStorageId(), ObjTypeStorageInfo.class);
+                metaKeys.add(id.getBytes());
+            }
+        }
+        if (!metaKeys.isEmpty()) {
+            final List<byte[]> metaValues = this.kvt.getMulti(metaKeys);
+            final ArrayList<ObjInfo> loaded = new ArrayList<>(metaKeys.size());
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if (infos[i] == null) {
+                    infos[i] = new ObjInfo(this, ids.get(i), metaValues.get(j++));      // throws if object doesn't exist
+                    loaded.add(infos[i]);
+                }
+            }
+
+            // Add object info to the cache, unless some object's meta-data was changed (by another thread) in the meantime
+            synchronized (this.objInfoCache) {
+                if (this.objInfoCacheStamp == stamp) {
+                    for (ObjInfo info : loaded) {
+                        if (this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
+                            this.objInfoCache.removeOne();
+                        this.objInfoCache.put(info.getId(), info);
+                    }
+                }
+            }
+        }
+
+        // Find field in each object
+        final SimpleField<?>[] fields = new SimpleField<?>[size];
+        for (int i = 0; i < size; i++) {
+            final ObjType objType = infos[i].getObjType();
+            if ((fields[i] = objType.simpleFields.get(storageId)) == null)
+                throw new UnknownFieldException(objType, storageId, "simple field");
+        }
+
+        // Get any values already in the prefetch cache
+        final byte[][] values = new byte[size][];
+        final boolean[] found = new boolean[size];
+        if (!this.prefetchTypes.isEmpty()) {
+            synchronized (this.objInfoCache) {
+                for (int i = 0; i < size; i++) {
+                    final Map<Integer, byte[]> fieldValues = this.prefetchCache.get(ids.get(i));
+                    if (fieldValues != null) {
+                        values[i] = fieldValues.get(storageId);
+                        found[i] = true;
+                    }
+                }
+            }
+        }
+
+        // Read all other values at once
+        final ArrayList<byte[]> fieldKeys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (!found[i])
+                fieldKeys.add(fields[i].buildKey(ids.get(i)));
+        }
+        if (!fieldKeys.isEmpty()) {
+            final List<byte[]> fieldValues = this.kvt.getMulti(fieldKeys);
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if (!found[i])
+                    values[i] = fieldValues.get(j++);
+            }
+        }
+
+        // Decode values
+        for (int i = 0; i < size; i++) {
+            final FieldType<?> fieldType = fields[i].fieldType;
+            action.accept(ids.get(i),
+              values[i] != null ? fieldType.read(new ByteReader(values[i])) : fieldType.getDefaultValueObject());
+        }
+    }
+
     /**
      * Change the value of a {@link SimpleField} in an object, optionally updating the object's schema version.
      *
@@ -1855,6 +2186,7 @@ public class Transaction {
             this.kvt.put(key, newValue);
         else
             this.kvt.remove(key);
+        this.updatePrefetchCache(id, storageId, newValue);
 
         // Update simple index, if any
         if (field.indexed) {
@@ -2025,7 +2357,16 @@ public class Transaction {
      *   the object's type does not exist in the schema version associated with this transaction
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized long readCounterField(ObjId id, int storageId, boolean updateVersion) {
+    public long readCounterField(ObjId id, int storageId, boolean updateVersion) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doReadCounterField(id, storageId, updateVersion);
+            }
+        }
+        return this.doReadCounterField(id, storageId, updateVersion);
+    }
+
+    private long doReadCounterField(ObjId id, int storageId, boolean updateVersion) {
 
         // Sanity check
         if (this.stale)
@@ -2298,7 +2639,7 @@ public class Transaction {
      * @throws IllegalArgumentException if {@code id} is null
      */
     private ObjInfo getObjectInfoIfExists(ObjId id, boolean update) {
-        assert Thread.holdsLock(this);
+        assert Thread.holdsLock(this) || this.concurrentReads;
         try {
             return this.getObjectInfo(id, update);
         } catch (DeletedObjectException | UnknownTypeException e) {
@@ -2319,10 +2660,10 @@ public class Transaction {
     private ObjInfo getObjectInfo(ObjId id, boolean update) {
 
         // Sanity check
-        assert Thread.holdsLock(this);
+        assert Thread.holdsLock(this) || this.concurrentReads;
 
         // Load object info into cache, if not already there
-        ObjInfo info = this.objInfoCache.get(id);
+        ObjInfo info = this.getCachedObjInfo(id);
         if (info == null) {
 
             // Verify that the object type encoded within the object ID is valid
@@ -2336,6 +2677,13 @@ public class Transaction {
         if (!update || info.getVersion() == this.schema.versionNumber)
             return info;
 
+        // Schema updates are mutations, so they require the lock even when reading concurrently
+        if (!Thread.holdsLock(this)) {
+            synchronized (this) {
+                return this.getObjectInfo(id, update);
+            }
+        }
+
         // Update schema version
         final ObjInfo info2 = info;
         this.mutateAndNotify(new Mutation<Void>() {
@@ -2356,18 +2704,189 @@ public class Transaction {
      * @throws DeletedObjectException if object does not exist
      */
     private ObjInfo loadIntoCache(ObjId id) {
-        ObjInfo info = this.objInfoCache.get(id);
-        if (info == null) {
 
-            // Create info; we'll get an exception here if object does not exist
-            info = new ObjInfo(this, id);
+        // Check cache and note the current modification stamp
+        final long stamp;
+        synchronized (this.objInfoCache) {
+            final ObjInfo info = this.objInfoCache.get(id);
+            if (info != null)
+                return info;
+            stamp = this.objInfoCacheStamp;
+        }
+
+        // Create info; we'll get an exception here if object does not exist
+        final ObjInfo info = new ObjInfo(this, id);
+
+        // Add object info to the cache, unless some object's meta-data was changed (by another thread) in the meantime
+        synchronized (this.objInfoCache) {
+            if (this.objInfoCacheStamp == stamp) {
+                if (this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
+                    this.objInfoCache.removeOne();
+                this.objInfoCache.put(id, info);
+            }
+        }
+        return info;
+    }
+
+    private ObjInfo getCachedObjInfo(ObjId id) {
+        synchronized (this.objInfoCache) {
+            return this.objInfoCache.get(id);
+        }
+    }
 
-            // Add object info to the cache
-            if (this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
+    /**
+     * Record a change to an object's meta-data in the object info cache.
+     *
+     * @param id object ID
+     * @param info object's new info, or null if object was deleted
+     */
+    private void updateObjInfoCache(ObjId id, ObjInfo info) {
+        assert Thread.holdsLock(this);
+        synchronized (this.objInfoCache) {
+            this.objInfoCacheStamp++;
+            this.prefetchCache.remove(id);
+            if (info == null) {
+                this.objInfoCache.remove(id);
+                return;
+            }
+            if (!this.objInfoCache.containsKey(id) && this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
                 this.objInfoCache.removeOne();
             this.objInfoCache.put(id, info);
         }
-        return info;
+    }
+
+    /**
+     * Discard all cached object meta-data and field values.
+     */
+    void resetObjectCaches() {
+        assert Thread.holdsLock(this);
+        synchronized (this.objInfoCache) {
+            this.objInfoCacheStamp++;
+            this.objInfoCache.clear();
+            this.prefetchCache.clear();
+        }
+    }
+
+    /**
+     * Get an object's simple field values from the prefetch cache, reading them if necessary.
+     *
+     * <p>
+     * If {@code info} is null, the object's meta-data is not cached yet; in that case, the object's meta-data is read
+     * and cached along with its field values, assuming the object has this transaction's schema version. If that turns
+     * out to be wrong, only the meta-data is cached.
+     *
+     * @param id object ID
+     * @param info object info, or null to also read the object's meta-data
+     * @return mapping from simple field storage ID to encoded value (absent for fields having their default values),
+     *  or null if {@code info} is null and the field values could not be prefetched
+     * @throws DeletedObjectException if {@code info} is null and the object does not exist
+     */
+    private Map<Integer, byte[]> prefetch(ObjId id, ObjInfo info) {
+
+        // Sanity check
+        assert Thread.holdsLock(this) || this.concurrentReads;
+
+        // Check cache and note the current modification stamp
+        final long stamp;
+        synchronized (this.objInfoCache) {
+            if (info != null) {
+                final Map<Integer, byte[]> values = this.prefetchCache.get(id);
+                if (values != null)
+                    return values;
+            }
+            stamp = this.objInfoCacheStamp;
+        }
+
+        // Determine object type; if we don't know the object's schema version yet, guess it's the same as ours
+        final ObjType objType = info != null ? info.getObjType() : this.schema.objTypeMap.get(id.getStorageId());
+        if (objType == null)
+            return null;
+
+        // Build the key ranges containing the object's meta-data (if needed) and simple fields, skipping complex field content
+        final byte[] idBytes = id.getBytes();
+        final ArrayList<KeyRange> ranges = new ArrayList<>(1);
+        byte[] minKey = info == null ? idBytes : null;
+        byte[] maxKey = info == null ? ByteUtil.getNextKey(idBytes) : null;
+        for (Field<?> field : objType.fields.values()) {
+            if (field instanceof ComplexField) {
+                if (minKey != null) {
+                    ranges.add(new KeyRange(minKey, maxKey));
+                    minKey = null;
+                }
+                continue;
+            }
+            final byte[] key = field.buildKey(id);
+            if (minKey == null)
+                minKey = key;
+            maxKey = ByteUtil.getNextKey(key);
+        }
+        if (minKey != null)
+            ranges.add(new KeyRange(minKey, maxKey));
+
+        // Read meta-data and simple field values
+        byte[] metaData = null;
+        final HashMap<Integer, byte[]> values = new HashMap<>(objType.simpleFields.size());
+        for (KeyRange range : ranges) {
+            try (final CloseableIterator<KVPair> i = this.kvt.getRange(range)) {
+                while (i.hasNext()) {
+                    final KVPair kv = i.next();
+                    final byte[] key = kv.getKey();
+                    if (key.length == ObjId.NUM_BYTES) {
+                        metaData = kv.getValue();
+                        continue;
+                    }
+                    final ByteReader reader = new ByteReader(key);
+                    reader.skip(ObjId.NUM_BYTES);
+                    final int storageId = UnsignedIntEncoder.read(reader);
+                    if (objType.simpleFields.containsKey(storageId))
+                        values.put(storageId, kv.getValue());
+                }
+            }
+        }
+
+        // Decode meta-data if needed (we'll get an exception here if object does not exist)
+        final ObjInfo newInfo = info == null ? new ObjInfo(this, id, metaData) : null;
+        final boolean valuesValid = newInfo == null || newInfo.getVersion() == objType.schema.versionNumber;
+
+        // Add info and/or values to the caches, unless some object's data was changed (by another thread) in the meantime
+        synchronized (this.objInfoCache) {
+            if (this.objInfoCacheStamp == stamp) {
+                if (newInfo != null) {
+                    if (this.objInfoCache.size() >= MAX_OBJ_INFO_CACHE_ENTRIES)
+                        this.objInfoCache.removeOne();
+                    this.objInfoCache.put(id, newInfo);
+                }
+                if (valuesValid) {
+                    if (this.prefetchCache.size() >= MAX_PREFETCH_CACHE_ENTRIES)
+                        this.prefetchCache.removeOne();
+                    this.prefetchCache.put(id, values);
+                }
+            }
+        }
+        return valuesValid ? values : null;
+    }
+
+    /**
+     * Record a change to an object's simple field value in the prefetch cache.
+     *
+     * @param id object ID
+     * @param storageId simple field storage ID
+     * @param value field's new encoded value, or null for the default value
+     */
+    private void updatePrefetchCache(ObjId id, int storageId, byte[] value) {
+        assert Thread.holdsLock(this);
+        synchronized (this.objInfoCache) {
+            this.objInfoCacheStamp++;
+            final Map<Integer, byte[]> values = this.prefetchCache.get(id);
+            if (values == null)
+                return;
+            final HashMap<Integer, byte[]> newValues = new HashMap<>(values);       // copy, because readers may be using it
+            if (value != null)
+                newValues.put(storageId, value);
+            else
+                newValues.remove(storageId);
+            this.prefetchCache.put(id, newValues);
+        }
     }
 
 // Field Change Notifications
@@ -2934,6 +3453,18 @@ public class Transaction {
         if (path.length == 0)
             return startIds.sortedSnapshot();
 
+        // Traverse in parallel if possible
+        final ForkJoinPool pool = this.traversalPool;
+        if (pool != null && this.concurrentReads && !Thread.holdsLock(this)) {
+            ObjIdSet ids = startIds;
+            for (int i = 0; i < path.length; i++) {
+                final KeyRanges filter = filters != null ? filters[i + 1] : null;
+                if ((ids = this.traverseReferenceParallel(pool, ids, path[i], filter)).isEmpty())
+                    break;
+            }
+            return ids.sortedSnapshot();
+        }
+
         // Traverse each reference in the path
         Set<ObjId> ids = startIds;
         for (int i = 0; i < path.length; i++) {
@@ -3005,6 +3536,55 @@ public class Transaction {
         return this.followReferencePath(targetObjects, invertedPath, invertedFilters);
     }
 
+    /**
+     * Find all objects referred to by any object in the given start set through the specified path of references,
+     * returning them in a lazily computed {@link Stream}.
+     *
+     * <p>
+     * This method produces the same objects as {@link #followReferencePath followReferencePath()}, but instead of
+     * finding all of the objects reached at each step of the path before moving on to the next step, it pulls objects
+     * through the path in batches that start small and grow, so the first target objects become available quickly.
+     * Each target object appears only once in the returned stream, but not necessarily in sorted order.
+     *
+     * <p>
+     * The returned stream is sequential and must be consumed before this transaction ends.
+     *
+     * @param startObjects starting objects
+     * @param path path of zero or more reference fields (represented by storage IDs) through which to reach the target objects;
+     *  negated values denote an inverse traversal of the corresponding reference field
+     * @param filters if not null, an array of length {@code path.length + 1} containing optional filters to be applied
+     *  to object ID's after the corresponding steps in the path
+     * @return stream of the objects referred to by the {@code startObjects} via {@code path} restricted by {@code filters}
+     * @throws UnknownFieldException if {@code path} contains a storage ID that does not correspond to a {@link ReferenceField}
+     * @throws IllegalArgumentException if {@code startObjects} or {@code path} is null
+     * @throws IllegalArgumentException if {@code filters} is not null and does not have length {@code path.length + 1}
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @see #followReferencePath followReferencePath()
+     */
+    public Stream<ObjId> streamReferencePath(Iterable<? extends ObjId> startObjects, int[] path, KeyRanges[] filters) {
+
+        // Sanity check
+        Preconditions.checkArgument(startObjects != null, "null startObjects");
+        Preconditions.checkArgument(path != null, "null path");
+        Preconditions.checkArgument(filters == null || filters.length == path.length + 1, "invalid filters length");
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        this.verifyReferencePath(path);
+
+        // Apply initial filter and discard duplicates
+        final KeyRanges firstFilter = filters != null ? filters[0] : null;
+        final ObjIdSet startIds = new ObjIdSet();
+        Iterator<ObjId> i = Iterators.filter(Iterators.transform(startObjects.iterator(), ObjId.class::cast),
+          id -> (firstFilter == null || firstFilter.contains(id.getBytes())) && startIds.add(id));
+
+        // Chain together the steps in the path
+        for (int step = 0; step < path.length; step++)
+            i = new StepIterator(i, path[step], filters != null ? filters[step + 1] : null);
+
+        // Done
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(i, Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
     private ArrayList<NavigableSet<ObjId>> traverseReference(Iterable<? extends ObjId> objects, int referenceId, KeyRanges filter) {
         assert objects != null;
 
@@ -3032,8 +3612,7 @@ public class Transaction {
         } else {
             final ObjIdSet refs = new ObjIdSet();
             final Predicate<ObjId> idFilter = filter != null ? id -> filter.contains(id.getBytes()) : null;
-            for (ObjId id : objects)
-                info.readAllNonNull(this, id, refs, idFilter);
+            info.readAllNonNull(this, objects, refs, idFilter);
             if (!refs.isEmpty())
                 refsList.add(refs.sortedSnapshot());
         }
@@ -3042,6 +3621,13 @@ public class Transaction {
         return refsList;
     }
 
+    // Traverse a reference from objects in parallel, splitting them into chunks
+    private ObjIdSet traverseReferenceParallel(ForkJoinPool pool, ObjIdSet objects, int referenceId, KeyRanges filter) {
+        this.verifyReferenceFieldStorageInfo(referenceId < 0 ? -referenceId : referenceId);
+        final ObjId[] ids = objects.toArray();
+        return pool.invoke(new TraverseTask(ids, 0, ids.length, referenceId, filter));
+    }
+
     // Verify all fields in the path are reference fields
     private void verifyReferencePath(int[] path) {
         for (int pathId : path) {
@@ -3077,7 +3663,16 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link SimpleField} corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex<?, ObjId> queryIndex(int storageId) {
+    public CoreIndex<?, ObjId> queryIndex(int storageId) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doQueryIndex(storageId);
+            }
+        }
+        return this.doQueryIndex(storageId);
+    }
+
+    private CoreIndex<?, ObjId> doQueryIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final SimpleFieldStorageInfo<?> info = this.schemas.verifyStorageInfo(storageId, SimpleFieldStorageInfo.class);
@@ -3097,7 +3692,16 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link ListField} element sub-field corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex2<?, ObjId, Integer> queryListElementIndex(int storageId) {
+    public CoreIndex2<?, ObjId, Integer> queryListElementIndex(int storageId) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doQueryListElementIndex(storageId);
+            }
+        }
+        return this.doQueryListElementIndex(storageId);
+    }
+
+    private CoreIndex2<?, ObjId, Integer> doQueryListElementIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final ListElementStorageInfo<?> info = this.schemas.verifyStorageInfo(storageId, ListElementStorageInfo.class);
@@ -3117,7 +3721,16 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link MapField} value sub-field corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex2<?, ObjId, ?> queryMapValueIndex(int storageId) {
+    public CoreIndex2<?, ObjId, ?> queryMapValueIndex(int storageId) {
+        if (!this.concurrentReads) {
+            synchronized (this) {
+                return this.doQueryMapValueIndex(storageId);
+            }
+        }
+        return this.doQueryMapValueIndex(storageId);
+    }
+
+    private CoreIndex2<?, ObjId, ?> doQueryMapValueIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final MapValueStorageInfo<?, ?> info = this.schemas.verifyStorageInfo(storageId, MapValueStorageInfo.class);
@@ -3552,5 +4165,94 @@ public class Transaction {
             return filter == null || filter.contains(this.objTypeBytes);
         }
     }
+
+// TraverseTask
+
+    @SuppressWarnings("serial")
+    private class TraverseTask extends RecursiveTask<ObjIdSet> {
+
+        private final ObjId[] ids;
+        private final int min;
+        private final int max;
+        private final int referenceId;
+        private final KeyRanges filter;
+
+        TraverseTask(ObjId[] ids, int min, int max, int referenceId, KeyRanges filter) {
+            this.ids = ids;
+            this.min = min;
+            this.max = max;
+            this.referenceId = referenceId;
+            this.filter = filter;
+        }
+
+        @Override
+        protected ObjIdSet compute() {
+
+            // Split large chunks in half
+            if (this.max - this.min > PARALLEL_TRAVERSAL_CHUNK_SIZE) {
+                final int mid = (this.min + this.max) >>> 1;
+                final TraverseTask task = new TraverseTask(this.ids, this.min, mid, this.referenceId, this.filter);
+                task.fork();
+                final ObjIdSet refs1 = new TraverseTask(this.ids, mid, this.max, this.referenceId, this.filter).compute();
+                final ObjIdSet refs2 = task.join();
+                if (refs1.size() >= refs2.size()) {
+                    refs1.addAll(refs2);
+                    return refs1;
+                }
+                refs2.addAll(refs1);
+                return refs2;
+            }
+
+            // Traverse reference from this chunk, reading in the results
+            final ObjIdSet refs = new ObjIdSet();
+            final List<ObjId> chunk = Arrays.asList(this.ids).subList(this.min, this.max);
+            for (NavigableSet<ObjId> set : Transaction.this.traverseReference(chunk, this.referenceId, this.filter))
+                refs.addAll(set);
+            return refs;
+        }
+    }
+
+// StepIterator
+
+    // Iterates the distinct objects reached by traversing one reference from the objects produced by the previous step
+    private class StepIterator extends AbstractIterator<ObjId> {
+
+        private final Iterator<ObjId> input;
+        private final int referenceId;
+        private final KeyRanges filter;
+        private final ObjIdSet seen = new ObjIdSet();
+
+        private Iterator<ObjId> batch = Collections.emptyIterator();
+        private int batchSize = 1;
+
+        StepIterator(Iterator<ObjId> input, int referenceId, KeyRanges filter) {
+            this.input = input;
+            this.referenceId = referenceId;
+            this.filter = filter;
+        }
+
+        @Override
+        protected ObjId computeNext() {
+            while (true) {
+
+                // Return the next new object from the current batch, if any
+                while (this.batch.hasNext()) {
+                    final ObjId id = this.batch.next();
+                    if (this.seen.add(id))
+                        return id;
+                }
+
+                // Traverse reference from the next batch of input objects
+                if (!this.input.hasNext())
+                    return this.endOfData();
+                final ArrayList<ObjId> ids = new ArrayList<>(this.batchSize);
+                while (ids.size() < this.batchSize && this.input.hasNext())
+                    ids.add(this.input.next());
+                this.batchSize = Math.min(this.batchSize * 2, MAX_BATCH_READ_SIZE);
+                this.batch = Iterators.concat(Iterators.transform(
+                  Transaction.this.traverseReference(ids, this.referenceId, this.filter).iterator(), Set::iterator));
+            }
+        }
+    }
 }
 
@@ -0,0 +1,85 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConcurrentReadsTest extends CoreAPITestSupport {
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+
+        final SchemaModel schema1 = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"1\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"10\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"20\" indexed=\"true\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n").getBytes("UTF-8")));
+        final SchemaModel schema2 = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"1\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"10\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"20\" indexed=\"true\"/>\n"
+          + "    <CounterField name=\"c\" storageId=\"21\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n").getBytes("UTF-8")));
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        // Create objects using schema version 1
+        final int numObjects = 200;
+        final ObjId[] ids = new ObjId[numObjects];
+        final Transaction tx1 = db.createTransaction(schema1, 1, true);
+        for (int i = 0; i < numObjects; i++) {
+            ids[i] = tx1.create(10);
+            tx1.writeSimpleField(ids[i], 20, i, true);
+        }
+        tx1.commit();
+
+        // Read them from multiple threads, upgrading some of them to schema version 2 along the way
+        final Transaction tx2 = db.createTransaction(schema2, 2, true);
+        tx2.setConcurrentReads(true);
+        Assert.assertTrue(tx2.isConcurrentReads());
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final boolean update = (t & 1) != 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < numObjects; i++) {
+                        Assert.assertTrue(tx2.exists(ids[i]));
+                        Assert.assertEquals(tx2.readSimpleField(ids[i], 20, update), i);
+                        if (update) {
+                            Assert.assertEquals(tx2.getSchemaVersion(ids[i]), 2);
+                            Assert.assertEquals(tx2.readCounterField(ids[i], 21, false), 0L);
+                        }
+                    }
+                    Assert.assertEquals(tx2.getAll(10).size(), numObjects);
+                    Assert.assertEquals(tx2.queryIndex(20).asMap().size(), numObjects);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(tx2.queryVersion().asMap().get(2).size(), numObjects);
+        tx2.commit();
+    }
+}
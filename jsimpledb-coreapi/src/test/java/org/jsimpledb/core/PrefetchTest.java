@@ -0,0 +1,184 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.kv.util.PrefixKVTransaction;
+import org.jsimpledb.schema.SchemaModel;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PrefetchTest extends CoreAPITestSupport {
+
+    private static final String SCHEMA1 = ""
+      + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<Schema formatVersion=\"1\">\n"
+      + "  <ObjectType name=\"Foo\" storageId=\"10\">\n"
+      + "    <SimpleField name=\"i\" type=\"int\" storageId=\"20\" indexed=\"true\"/>\n"
+      + "    <ListField name=\"list\" storageId=\"21\">\n"
+      + "        <SimpleField type=\"int\" storageId=\"22\"/>\n"
+      + "    </ListField>\n"
+      + "    <SimpleField name=\"s\" type=\"java.lang.String\" storageId=\"23\"/>\n"
+      + "    <ReferenceField name=\"r\" storageId=\"24\" onDelete=\"UNREFERENCE\"/>\n"
+      + "    <CounterField name=\"c\" storageId=\"25\"/>\n"
+      + "  </ObjectType>\n"
+      + "</Schema>\n";
+
+    private static final String SCHEMA2 = SCHEMA1
+      .replace("<CounterField name=\"c\" storageId=\"25\"/>",
+        "<CounterField name=\"c\" storageId=\"25\"/>\n    <SimpleField name=\"x\" type=\"long\" storageId=\"26\"/>");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPrefetch() throws Exception {
+
+        final SchemaModel schema1 = SchemaModel.fromXML(new ByteArrayInputStream(SCHEMA1.getBytes("UTF-8")));
+        final SchemaModel schema2 = SchemaModel.fromXML(new ByteArrayInputStream(SCHEMA2.getBytes("UTF-8")));
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        // Create objects
+        Transaction tx = db.createTransaction(schema1, 1, true);
+        final ObjId id1 = tx.create(10);
+        tx.writeSimpleField(id1, 20, 123, true);
+        tx.writeSimpleField(id1, 23, "foo", true);
+        tx.writeSimpleField(id1, 24, id1, true);
+        ((List<Integer>)tx.readListField(id1, 21, true)).addAll(Arrays.asList(1, 2, 3));
+        tx.adjustCounterField(id1, 25, 7, true);
+        final ObjId id2 = tx.create(10);
+        tx.commit();
+
+        // Read fields with prefetch enabled; the list field should split the object into two key ranges
+        CountingKVTransaction kvt = new CountingKVTransaction(kvstore.createTransaction());
+        tx = db.createTransaction(kvt, schema1, 1, false);
+        Assert.assertFalse(tx.isPrefetchEnabled(10));
+        tx.setPrefetchEnabled(10, true);
+        Assert.assertTrue(tx.isPrefetchEnabled(10));
+        kvt.reset();
+        Assert.assertEquals(tx.readSimpleField(id1, 23, false), "foo");
+        Assert.assertEquals(kvt.gets, 0);
+        Assert.assertEquals(kvt.ranges, 2);
+        Assert.assertEquals(tx.readSimpleField(id1, 20, false), 123);
+        Assert.assertEquals(tx.readSimpleField(id1, 24, false), id1);
+        Assert.assertEquals(tx.getSchemaVersion(id1), 1);
+        Assert.assertEquals(kvt.gets, 0);
+        Assert.assertEquals(kvt.ranges, 2);
+
+        // Default values
+        Assert.assertEquals(tx.readSimpleField(id2, 20, false), 0);
+        Assert.assertNull(tx.readSimpleField(id2, 23, false));
+        Assert.assertNull(tx.readSimpleField(id2, 24, false));
+        Assert.assertEquals(kvt.gets, 0);
+        Assert.assertEquals(kvt.ranges, 4);
+
+        // Our own changes should be visible
+        tx.writeSimpleField(id1, 23, "bar", false);
+        tx.writeSimpleField(id1, 20, 0, false);
+        tx.writeSimpleField(id2, 24, id1, false);
+        Assert.assertEquals(tx.readSimpleField(id1, 23, false), "bar");
+        Assert.assertEquals(tx.readSimpleField(id1, 20, false), 0);
+        Assert.assertEquals(tx.readSimpleField(id2, 24, false), id1);
+
+        // Deleting an object should clear out its values, including reference fields referring to it
+        Assert.assertTrue(tx.delete(id1));
+        Assert.assertNull(tx.readSimpleField(id2, 24, false));
+        try {
+            tx.readSimpleField(id1, 23, false);
+            assert false;
+        } catch (DeletedObjectException e) {
+            this.log.debug("got expected " + e);
+        }
+        try {
+            tx.readSimpleField(new ObjId(10), 23, false);
+            assert false;
+        } catch (DeletedObjectException e) {
+            this.log.debug("got expected " + e);
+        }
+
+        // Verify changes were really made
+        tx.setPrefetchEnabled(10, false);
+        Assert.assertFalse(tx.isPrefetchEnabled(10));
+        Assert.assertFalse(tx.exists(id1));
+        Assert.assertNull(tx.readSimpleField(id2, 24, false));
+        tx.rollback();
+
+        // Unknown object type
+        tx = db.createTransaction(schema1, 1, false);
+        try {
+            tx.setPrefetchEnabled(99, true);
+            assert false;
+        } catch (UnknownTypeException e) {
+            this.log.debug("got expected " + e);
+        }
+        tx.rollback();
+
+        // Read a schema version 1 object from a schema version 2 transaction, then upgrade it
+        kvt = new CountingKVTransaction(kvstore.createTransaction());
+        tx = db.createTransaction(kvt, schema2, 2, true);
+        tx.setPrefetchEnabled(10, true);
+        Assert.assertEquals(tx.readSimpleField(id1, 23, false), "foo");
+        Assert.assertEquals(tx.getSchemaVersion(id1), 1);
+        Assert.assertEquals(tx.readSimpleField(id1, 20, true), 123);
+        Assert.assertEquals(tx.getSchemaVersion(id1), 2);
+        Assert.assertEquals(tx.readSimpleField(id1, 26, false), 0L);
+        tx.writeSimpleField(id1, 26, 456L, false);
+        Assert.assertEquals(tx.readSimpleField(id1, 26, false), 456L);
+        Assert.assertEquals(tx.readSimpleField(id1, 23, false), "foo");
+        Assert.assertEquals(tx.readCounterField(id1, 25, false), 7L);
+
+        // Snapshot transactions
+        final SnapshotTransaction stx = tx.createSnapshotTransaction();
+        stx.setPrefetchEnabled(10, true);
+        tx.copy(id1, stx, false, false, null, null);
+        Assert.assertEquals(stx.readSimpleField(id1, 26, false), 456L);
+        stx.reset();
+        Assert.assertFalse(stx.exists(id1));
+        try {
+            stx.readSimpleField(id1, 26, false);
+            assert false;
+        } catch (DeletedObjectException e) {
+            this.log.debug("got expected " + e);
+        }
+        tx.commit();
+    }
+
+// CountingKVTransaction
+
+    private static class CountingKVTransaction extends PrefixKVTransaction {
+
+        int gets;
+        int ranges;
+
+        CountingKVTransaction(KVTransaction kvt) {
+            super(kvt, ByteUtil.EMPTY);
+        }
+
+        void reset() {
+            this.gets = 0;
+            this.ranges = 0;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            this.gets++;
+            return super.get(key);
+        }
+
+        @Override
+        public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.ranges++;
+            return super.getRange(minKey, maxKey, reverse);
+        }
+    }
+}
@@ -13,6 +13,9 @@ import java.util.List;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.KeyRanges;
@@ -315,6 +318,144 @@ public class ReferencePathTest extends CoreAPITestSupport {
         tx.commit();
     }
 
+    @Test
+    public void testBatchedReferencePaths() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final String schemaXML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"A\" storageId=\"10\">\n"
+          + "    <ReferenceField name=\"ref\" storageId=\"1\" allowDeleted=\"true\"/>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"B\" storageId=\"11\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"2\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n";
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream(schemaXML.getBytes("UTF-8")));
+
+        // Create enough objects to require multiple batches, some with null references
+        final int count = 2500;
+        final ArrayList<ObjId> as = new ArrayList<>(count);
+        final ArrayList<ObjId> bs = new ArrayList<>(count);
+        Transaction tx = null;
+        for (int i = 0; i < count; i++) {
+            if (i % 250 == 0)
+                tx = db.createTransaction(schema, 1, true);
+            final ObjId a = tx.create(10);
+            final ObjId b = tx.create(11);
+            if (i % 3 != 0) {
+                tx.writeSimpleField(a, 1, b, true);
+                bs.add(b);
+            }
+            as.add(a);
+            if (i % 250 == 249)
+                tx.commit();
+        }
+
+        // Follow references using a fresh transaction, so nothing is cached
+        tx = db.createTransaction(schema, 1, true);
+        checkSet(tx.followReferencePath(as, new int[] { 1 }, null), buildSet(bs.toArray()));
+        checkSet(tx.followReferencePath(as, new int[] { 1 }, null), buildSet(bs.toArray()));
+        tx.commit();
+
+        // Reading a field from a deleted object should fail
+        tx = db.createTransaction(schema, 1, true);
+        final ObjId deleted = as.get(count / 2);
+        Assert.assertTrue(tx.delete(deleted));
+        try {
+            tx.followReferencePath(as, new int[] { 1 }, null);
+            assert false;
+        } catch (DeletedObjectException e) {
+            this.log.debug("got expected " + e);
+        }
+
+        // Reading a field from an object lacking that field should fail
+        try {
+            tx.followReferencePath(bs.subList(0, 5), new int[] { 1 }, null);
+            assert false;
+        } catch (UnknownFieldException e) {
+            this.log.debug("got expected " + e);
+        }
+        tx.rollback();
+    }
+
+    @Test
+    public void testParallelAndStreamingReferencePaths() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final String schemaXML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"A\" storageId=\"10\">\n"
+          + "    <ReferenceField name=\"ref\" storageId=\"1\"/>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"B\" storageId=\"11\">\n"
+          + "    <ReferenceField name=\"ref\" storageId=\"1\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n";
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream(schemaXML.getBytes("UTF-8")));
+
+        // Create objects with random references
+        final int count = 2000;
+        final ArrayList<ObjId> ids = new ArrayList<>(count);
+        Transaction tx = null;
+        for (int i = 0; i < count; i++) {
+            if (i % 250 == 0)
+                tx = db.createTransaction(schema, 1, true);
+            ids.add(tx.create(this.random.nextBoolean() ? 10 : 11));
+            if (i % 250 == 249)
+                tx.commit();
+        }
+        for (int i = 0; i < count; i++) {
+            if (i % 250 == 0)
+                tx = db.createTransaction(schema, 1, true);
+            if (this.random.nextInt(5) != 0)
+                tx.writeSimpleField(ids.get(i), 1, ids.get(this.random.nextInt(count)), false);
+            if (i % 250 == 249)
+                tx.commit();
+        }
+
+        // Compare results from all traversal modes
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final KeyRanges bfilter = new KeyRanges(ObjId.getKeyRange(11));
+            final int[][] paths = new int[][] { { }, { 1 }, { -1 }, { 1, -1 }, { 1, 1, -1, 1 }, { -1, -1, 1 } };
+            for (int[] path : paths) {
+                final KeyRanges[] filters = new KeyRanges[path.length + 1];
+                filters[path.length / 2] = bfilter;
+                for (KeyRanges[] pathFilters : new KeyRanges[][] { null, filters }) {
+                    final List<ObjId> start = ids.subList(0, 1 + this.random.nextInt(count));
+                    tx = db.createTransaction(schema, 1, false);
+                    final TreeSet<ObjId> expected = new TreeSet<>(tx.followReferencePath(start, path, pathFilters));
+                    tx.rollback();
+                    tx = db.createTransaction(schema, 1, false);
+                    tx.setConcurrentReads(true);
+                    tx.setTraversalPool(pool);
+                    Assert.assertSame(tx.getTraversalPool(), pool);
+                    Assert.assertEquals(tx.followReferencePath(start, path, pathFilters), expected);
+                    tx.rollback();
+                    tx = db.createTransaction(schema, 1, false);
+                    Assert.assertEquals(tx.streamReferencePath(start, path, pathFilters)
+                      .collect(Collectors.toCollection(TreeSet::new)), expected);
+                    tx.rollback();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Stream should not compute results that are not needed
+        tx = db.createTransaction(schema, 1, false);
+        final ObjId first = tx.streamReferencePath(ids, new int[] { 1 }, null).findFirst().orElse(null);
+        Assert.assertNotNull(first);
+        tx.rollback();
+    }
+
     private void checkForward(Transaction tx, Set<?> expected, ObjId id1, int... path) {
         this.check(tx, true, new ObjId[] { id1 }, path, expected);
     }
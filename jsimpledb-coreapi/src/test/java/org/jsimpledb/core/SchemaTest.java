@@ -9,10 +9,15 @@ import com.google.common.base.Converter;
 
 import java.io.ByteArrayInputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
 
 import org.jsimpledb.core.type.StringEncodedType;
+import org.jsimpledb.kv.KVTransaction;
 import org.jsimpledb.kv.simple.SimpleKVDatabase;
 import org.jsimpledb.schema.SchemaModel;
+import org.jsimpledb.util.UnsignedIntEncoder;
+import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -113,6 +118,128 @@ public class SchemaTest extends CoreAPITestSupport {
         this.validate(fieldTypeRegistry, false, schema1, schema2, schema3);
     }
 
+    @Test
+    public void testSchemaFingerprint() throws Exception {
+        final SchemaModel schema1 = this.buildFingerprintSchema(false);
+        final SchemaModel schema2 = this.buildFingerprintSchema(true);
+        final byte[] fingerprintKey = Layout.getSchemaFingerprintKey();
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+        db.setNewDatabaseFormatVersion(Layout.FORMAT_VERSION_3);
+
+        // Recording a schema also records its fingerprint
+        db.createTransaction(schema1, 1, true).commit();
+        KVTransaction kvt = kvstore.createTransaction();
+        final byte[] schemaBytes1 = kvt.get(Layout.getSchemaKey(1));
+        Assert.assertEquals(kvt.get(fingerprintKey),
+          Layout.buildSchemaFingerprint(new TreeMap<>(Collections.singletonMap(1, schemaBytes1))));
+
+        // Replace the recorded schema with an incompatible one without updating the fingerprint
+        kvt.put(Layout.getSchemaKey(1), Layout.encodeSchema(schema2, Layout.FORMAT_VERSION_3));
+        kvt.commit();
+
+        // The fingerprint still matches, so the cached schemas are used without reading the recorded schemas
+        db.createTransaction(schema1, 1, false).commit();
+
+        // A new Database has nothing cached, so it must read, and detect, the replaced schema
+        try {
+            new Database(kvstore).createTransaction(schema1, 1, false);
+            assert false : "expected schema mismatch to be detected";
+        } catch (IllegalArgumentException e) {
+            this.log.debug("got expected " + e);
+        }
+
+        // Once the fingerprint no longer matches, the full check is performed
+        kvt = kvstore.createTransaction();
+        kvt.put(fingerprintKey, new byte[] { 0 });
+        kvt.commit();
+        try {
+            db.createTransaction(schema1, 1, false);
+            assert false : "expected schema mismatch to be detected";
+        } catch (IllegalArgumentException e) {
+            this.log.debug("got expected " + e);
+        }
+
+        // Repair, and remove the fingerprint; it is restored by the next transaction that may modify meta-data
+        kvt = kvstore.createTransaction();
+        kvt.put(Layout.getSchemaKey(1), schemaBytes1);
+        kvt.remove(fingerprintKey);
+        kvt.commit();
+
+        // Adding and deleting schema versions keeps the fingerprint up to date
+        final Transaction tx = db.createTransaction(schema2, 2, true);
+        Assert.assertTrue(tx.deleteSchemaVersion(1));
+        tx.commit();
+        kvt = kvstore.createTransaction();
+        Assert.assertNull(kvt.get(Layout.getSchemaKey(1)));
+        Assert.assertEquals(kvt.get(fingerprintKey),
+          Layout.buildSchemaFingerprint(new TreeMap<>(Collections.singletonMap(2, kvt.get(Layout.getSchemaKey(2))))));
+        kvt.rollback();
+        db.createTransaction(schema2, 2, false).commit();
+        new Database(kvstore).createTransaction(schema2, 2, false).commit();
+    }
+
+    @Test
+    public void testDefaultFormatVersion() throws Exception {
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+        Assert.assertEquals(db.getNewDatabaseFormatVersion(), Layout.FORMAT_VERSION_2);
+
+        // New databases don't use the fingerprint format unless asked to, so older versions of JSimpleDB can open them
+        db.createTransaction(this.buildFingerprintSchema(false), 1, true).commit();
+        final KVTransaction kvt = kvstore.createTransaction();
+        Assert.assertEquals(kvt.get(Layout.getFormatVersionKey()), UnsignedIntEncoder.encode(Layout.FORMAT_VERSION_2));
+        Assert.assertNull(kvt.get(Layout.getSchemaFingerprintKey()));
+        kvt.rollback();
+    }
+
+    @Test
+    public void testSchemaFingerprintOlderFormat() throws Exception {
+        final SchemaModel schema1 = this.buildFingerprintSchema(false);
+        final SchemaModel schema2 = this.buildFingerprintSchema(true);
+        final byte[] fingerprintKey = Layout.getSchemaFingerprintKey();
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+
+        // Create a database with format version 2, as an older version of JSimpleDB would
+        KVTransaction kvt = kvstore.createTransaction();
+        kvt.put(Layout.getFormatVersionKey(), UnsignedIntEncoder.encode(Layout.FORMAT_VERSION_2));
+        kvt.put(Layout.getSchemaKey(1), Layout.encodeSchema(schema1, Layout.FORMAT_VERSION_2));
+        kvt.commit();
+
+        // No fingerprint is recorded, even by transactions that may modify meta-data
+        final Database db = new Database(kvstore);
+        db.createTransaction(schema1, 1, true).commit();
+        final Transaction tx = db.createTransaction(schema2, 2, true);
+        Assert.assertTrue(tx.deleteSchemaVersion(1));
+        tx.commit();
+        db.createTransaction(schema1, 1, true).commit();
+        kvt = kvstore.createTransaction();
+        Assert.assertNull(kvt.get(fingerprintKey));
+        Assert.assertEquals(kvt.get(Layout.getFormatVersionKey()), UnsignedIntEncoder.encode(Layout.FORMAT_VERSION_2));
+
+        // An older version of JSimpleDB, which knows nothing about fingerprints, replaces a recorded schema
+        kvt.put(Layout.getSchemaKey(1), Layout.encodeSchema(schema2, Layout.FORMAT_VERSION_2));
+        kvt.commit();
+
+        // The change must be detected even though the schemas are cached
+        try {
+            db.createTransaction(schema1, 1, false);
+            assert false : "expected schema mismatch to be detected";
+        } catch (IllegalArgumentException e) {
+            this.log.debug("got expected " + e);
+        }
+    }
+
+    private SchemaModel buildFingerprintSchema(boolean withBar) throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Schema formatVersion=\"1\">\n"
+          + "<ObjectType name=\"Foo\" storageId=\"10\">\n"
+          + "  <SimpleField name=\"i\" type=\"int\" storageId=\"20\"/>\n"
+          + "</ObjectType>\n"
+          + (withBar ? "<ObjectType name=\"Bar\" storageId=\"30\"/>\n" : "")
+          + "</Schema>\n";
+        return SchemaModel.fromXML(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
     private void validate(FieldTypeRegistry fieldTypeRegistry, boolean expectedValid, SchemaModel... schemas) {
         if (schemas.length == 0) {
             try {
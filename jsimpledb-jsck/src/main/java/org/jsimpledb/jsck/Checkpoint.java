@@ -0,0 +1,82 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.jsck;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+/**
+ * Records which key ranges have been completely checked, so that an interrupted {@link Jsck} inspection can be resumed.
+ *
+ * @see JsckConfig#getCheckpointFile
+ */
+class Checkpoint {
+
+    private final JsckInfo info;
+    private final File file;
+    private final HashSet<String> completed = new HashSet<>();
+
+    /**
+     * Constructor.
+     *
+     * @param info runtime info
+     * @param file checkpoint file, or null to not record progress
+     * @throws IllegalArgumentException if {@code file} exists but cannot be read
+     */
+    Checkpoint(JsckInfo info, File file) {
+        this.info = info;
+        this.file = file;
+        if (this.file == null || !this.file.exists())
+            return;
+        try {
+            for (String line : Files.readAllLines(this.file.toPath(), StandardCharsets.UTF_8)) {
+                if (!(line = line.trim()).isEmpty())
+                    this.completed.add(line);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("can't read checkpoint file `" + this.file + "': " + e.getMessage(), e);
+        }
+        this.info.info("resuming from checkpoint file `" + this.file + "' with "
+          + this.completed.size() + " key range(s) already checked");
+    }
+
+    /**
+     * Determine whether the named key range has already been checked.
+     */
+    public synchronized boolean isCompleted(String name) {
+        return this.completed.contains(name);
+    }
+
+    /**
+     * Record that the named key range has been completely checked.
+     *
+     * <p>
+     * Failure to update the checkpoint file is logged but otherwise ignored.
+     */
+    public synchronized void complete(String name) {
+        if (!this.completed.add(name) || this.file == null)
+            return;
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8)) {
+            writer.write(name + "\n");
+        } catch (IOException e) {
+            this.info.info("warning: can't update checkpoint file `" + this.file + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discard recorded progress after a completed inspection.
+     */
+    public synchronized void finish() {
+        if (this.file != null && this.file.exists() && !this.file.delete())
+            this.info.info("warning: can't delete checkpoint file `" + this.file + "'");
+    }
+}
@@ -9,11 +9,24 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.jsimpledb.core.Database;
 import org.jsimpledb.core.InvalidSchemaException;
@@ -29,6 +42,7 @@ import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
 import org.jsimpledb.util.CloseableIterator;
 import org.jsimpledb.util.ParseContext;
+import org.jsimpledb.util.ThrowableUtil;
 import org.jsimpledb.util.UnsignedIntEncoder;
 
 /**
@@ -56,8 +70,12 @@ public class Jsck {
      * @throws IllegalArgumentException if a {@linkplain JsckConfig#getForceSchemaVersions forced schema version} is invalid
      * @throws IllegalArgumentException if the database's recorded schemas are mutually inconsistent
      *  (requiring forced schema version overrides)
+     * @throws IllegalArgumentException if both {@linkplain JsckConfig#isRepair repair} and a
+     *  {@linkplain JsckConfig#getCheckpointFile checkpoint file} are configured
      */
     public long check(KVStore kv, Consumer<? super Issue> consumer) {
+        Preconditions.checkArgument(!this.config.isRepair() || this.config.getCheckpointFile() == null,
+          "a checkpoint file cannot be used when repairing");
         final JsckInfo info;
         try {
             info = new JsckInfo(this.config, kv, consumer);
@@ -77,21 +95,24 @@ public class Jsck {
         // Get key prefixes
         final byte[] formatVersionKey = Layout.getFormatVersionKey();
         final byte[] schemaKeyPrefix = Layout.getSchemaKeyPrefix();
+        final byte[] schemaFingerprintKey = Layout.getSchemaFingerprintKey();
         final byte[] objectVersionIndexKeyPrefix = Layout.getObjectVersionIndexKeyPrefix();
         final byte[] userMetaDataKeyPrefix = Layout.getUserMetaDataKeyPrefix();
 
         assert schemaKeyPrefix[0] == 0;
+        assert schemaFingerprintKey[0] == 0;
         assert objectVersionIndexKeyPrefix[0] == 0;
         assert userMetaDataKeyPrefix[0] == 0;
 
         assert ByteUtil.compare(schemaKeyPrefix, formatVersionKey) > 0;
-        assert ByteUtil.compare(objectVersionIndexKeyPrefix, schemaKeyPrefix) > 0;
+        assert ByteUtil.compare(schemaFingerprintKey, ByteUtil.getKeyAfterPrefix(schemaKeyPrefix)) >= 0;
+        assert ByteUtil.compare(objectVersionIndexKeyPrefix, schemaFingerprintKey) > 0;
         assert ByteUtil.compare(userMetaDataKeyPrefix, objectVersionIndexKeyPrefix) > 0;
 
         // Check format version
         info.info("checking format version");
         int forceFormatVersion = this.config.getForceFormatVersion();
-        if (forceFormatVersion < 0 || forceFormatVersion > Layout.CURRENT_FORMAT_VERSION)
+        if (forceFormatVersion < 0 || forceFormatVersion > Layout.MAX_FORMAT_VERSION)
             forceFormatVersion = 0;
         final KVStore kv = info.getKVStore();
         byte[] val = kv.get(formatVersionKey);
@@ -115,6 +136,7 @@ public class Jsck {
             switch (info.getFormatVersion()) {
             case Layout.FORMAT_VERSION_1:
             case Layout.FORMAT_VERSION_2:
+            case Layout.FORMAT_VERSION_3:
                 break;
             default:
                 throw new IllegalArgumentException("invalid JSimpleDB signature/format version key value "
@@ -260,9 +282,11 @@ public class Jsck {
         // Build lookup maps
         info.inventoryStorages();
 
-        // Check empty space between schemas and object version index
-        this.checkEmpty(info, new KeyRange(ByteUtil.getKeyAfterPrefix(schemaKeyPrefix), objectVersionIndexKeyPrefix),
-          "key range between recorded schemas and object version index");
+        // Check empty space between schemas and object version index, except for the schema fingerprint
+        this.checkEmpty(info, new KeyRange(ByteUtil.getKeyAfterPrefix(schemaKeyPrefix), schemaFingerprintKey),
+          "key range between recorded schemas and schema fingerprint");
+        this.checkEmpty(info, new KeyRange(ByteUtil.getNextKey(schemaFingerprintKey), objectVersionIndexKeyPrefix),
+          "key range between schema fingerprint and object version index");
 
         // Check empty space between object version index and user meta-data area
         this.checkEmpty(info,
@@ -302,131 +326,17 @@ public class Jsck {
           .distinct()
           .toArray();
 
+        // Load progress from any previous interrupted run
+        final Checkpoint checkpoint = new Checkpoint(info, this.config.getCheckpointFile());
+
         // Check object types
+        final ArrayList<Partition> objectPartitions = new ArrayList<>();
         for (int storageId : objectTypeStorageIds) {
             final String rangeDescription = "the key range of object type storage ID " + storageId;
-            info.info("checking " + rangeDescription);
-            try (final CloseableIterator<KVPair> ci = kv.getRange(this.getKeyRange(storageId))) {
-                for (final PeekingIterator<KVPair> i = Iterators.peekingIterator(ci); i.hasNext(); ) {
-                    final KVPair pair = i.next();
-                    final byte[] idKey = pair.getKey();
-
-                    // The next key should be an object ID
-                    if (idKey.length < ObjId.NUM_BYTES) {
-                        info.handle(new InvalidKey(pair).setDetail("invalid key " + Jsck.ds(idKey) + " in " + rangeDescription
-                          + ": key is truncated (length " + idKey.length + " < " + ObjId.NUM_BYTES + ")"));
-                        continue;
-                    }
-                    final ByteReader idKeyReader = new ByteReader(idKey);
-                    final ObjId id = new ObjId(idKeyReader);                            // this should never throw an exception
-
-                    // Check object meta-data
-                    if (info.isDetailEnabled())
-                        info.detail("checking object meta-data for " + id);
-                    SchemaObjectType objectType = null;
-                    int version = 0;
-                    do {
-
-                        // Check for extra garbage after object ID
-                        if (idKeyReader.remain() > 0) {
-                            String detail = "invalid key " + Jsck.ds(idKey) + " in " + rangeDescription
-                              + ": no such object " + id + " exists";
-                            int fieldStorageId = -1;
-                            try {
-                                fieldStorageId = UnsignedIntEncoder.read(idKeyReader);
-                            } catch (IllegalArgumentException e) {
-                                // ignore
-                            }
-                            if (fieldStorageId > 0 && idKeyReader.remain() == 0)
-                                detail += " (possibly orphaned content for field #" + fieldStorageId + ")";
-                            info.handle(new InvalidKey(pair).setDetail(detail));
-                            break;
-                        }
-
-                        // Read meta-data format version
-                        final ByteReader metaData = new ByteReader(pair.getValue());
-                        try {
-                            final int metaDataVersion = UnsignedIntEncoder.read(metaData);
-                            switch (metaDataVersion) {
-                            case 1:
-                                break;
-                            case 0:
-                                throw new IllegalArgumentException("invalid zero object meta-data format version");
-                            default:
-                                throw new IllegalArgumentException("unknown object meta-data format version " + metaDataVersion);
-                            }
-                        } catch (IllegalArgumentException e) {
-                            info.handle(new InvalidValue(pair).setDetail("invalid meta-data " + Jsck.ds(metaData)
-                              + " for object " + id + ": can't decode object meta-data format version: " + e.getMessage()));
-                            break;
-                        }
-
-                        // Read object schema version
-                        try {
-                            if ((version = UnsignedIntEncoder.read(metaData)) == 0)
-                                throw new IllegalArgumentException("invalid zero version number");
-                        } catch (IllegalArgumentException e) {
-                            info.handle(new InvalidValue(pair).setDetail("invalid meta-data " + Jsck.ds(metaData)
-                              + " for object " + id + ": can't decode object schema version: " + e.getMessage()));
-                            break;
-                        }
-
-                        // Retrieve schema
-                        final SchemaModel schema = info.getSchemas().get(version);
-                        if (schema == null) {
-                            info.handle(new InvalidValue(pair).setDetail("invalid meta-data "
-                              + Jsck.ds(metaData) + " for object " + id + ": invalid schema version " + version
-                              + ": no such schema version exists"));
-                            break;
-                        }
-
-                        // Retrieve schema object type
-                        if ((objectType = schema.getSchemaObjectTypes().get(id.getStorageId())) == null) {
-                            info.handle(new InvalidValue(pair).setDetail("invalid object ID " + id
-                              + " with storage ID " + id.getStorageId() + ": no such object type exists in schema version "
-                              + version));
-                            break;
-                        }
-
-                        // Read delete notified flag - since it should always be zero, we can always fix it
-                        final int mark = metaData.mark();
-                        try {
-                            if (metaData.remain() == 0)
-                                throw new IllegalArgumentException("missing delete notified byte");
-                            final int deleteNotified = metaData.readByte();
-                            if (deleteNotified != 0) {
-                                throw new IllegalArgumentException(String.format(
-                                  "invalid notified byte 0x%02x != 0x00", deleteNotified));
-                            }
-                            if (metaData.remain() > 0)
-                                throw new IllegalArgumentException("meta-data contains extra garbage");
-                        } catch (IllegalArgumentException e) {
-                            final ByteWriter fixup = new ByteWriter(mark + 1);
-                            fixup.write(metaData.getBytes(0, mark));
-                            fixup.writeByte(0);
-                            info.handle(new InvalidValue(pair, fixup.getBytes()).setDetail("invalid meta-data "
-                              + Jsck.ds(metaData) + " for object " + id + ": " + e.getMessage()));
-                        }
-                    } while (false);
-
-                    // If object meta-data was not repairable, discard all other data in object's range
-                    if (objectType == null) {
-                        Jsck.deleteRange(info, idKey, i, "object " + id);
-                        continue;
-                    }
-
-                    // Find corresponding object type storage
-                    final ObjectType objType = (ObjectType)info.getStorages().get(version).get(id.getStorageId());
-                    assert objType != null;
-
-                    // Validate object's fields content
-                    assert version > 0;
-                    if (info.isDetailEnabled())
-                        info.detail("checking object content for " + id);
-                    objType.validateObjectData(info, id, version, i);
-                }
-            }
+            objectPartitions.addAll(this.partition(storageId, "object type", rangeDescription,
+              pairs -> this.checkObjects(info, rangeDescription, pairs)));
         }
+        this.checkPartitions(info, checkpoint, objectPartitions);
 
         // Get all index storage ID's
         final int[] indexStorageIds = info.getStorages().values().stream()
@@ -444,29 +354,14 @@ public class Jsck {
         // are repairing the database, the checking of indexes must come after the checking of objects.
 
         // Check indexes
+        final ArrayList<Partition> indexPartitions = new ArrayList<>();
         for (int storageId : indexStorageIds) {
             final Index index = info.getIndexes().get(storageId);
             final String rangeDescription = "the key range of " + index;
-            info.info("checking " + rangeDescription);
-            try (final CloseableIterator<KVPair> i = kv.getRange(index.getKeyRange())) {
-                while (i.hasNext()) {
-                    final KVPair pair = i.next();
-
-                    // Validate index entry
-                    final ByteReader reader = new ByteReader(pair.getKey());
-                    try {
-                        index.validateIndexEntry(info, reader);
-                    } catch (IllegalArgumentException e) {
-                        info.handle(new InvalidKey(pair).setDetail(index, e.getMessage()));
-                        continue;
-                    }
-
-                    // Validate value, which should be empty
-                    if (pair.getValue().length > 0)
-                        info.handle(new InvalidValue(pair, ByteUtil.EMPTY).setDetail(index, "value should be empty"));
-                }
-            }
+            indexPartitions.addAll(this.partition(storageId, "index", rangeDescription,
+              pairs -> this.checkIndex(info, index, pairs)));
         }
+        this.checkPartitions(info, checkpoint, indexPartitions);
 
         // Check the object version index
         info.info("checking object version index; recorded schema versions are " + info.getSchemas().keySet());
@@ -530,6 +425,304 @@ public class Jsck {
                     info.handle(new InvalidKey("unused schema version", key, null).setDetail("schema version " + version));
             }
         }
+
+        // Check the schema fingerprint against the (possibly repaired) recorded schema versions; only newer formats have one
+        final byte[] fingerprint = kv.get(schemaFingerprintKey);
+        if (info.getFormatVersion() < Layout.FORMAT_VERSION_3) {
+            if (fingerprint != null) {
+                info.handle(new InvalidKey(schemaFingerprintKey, fingerprint)
+                  .setDetail("schema fingerprint is not supported by format version " + info.getFormatVersion()));
+            }
+        } else {
+            info.info("checking schema fingerprint");
+            final TreeMap<Integer, byte[]> bytesMap = new TreeMap<>();
+            try (final CloseableIterator<KVPair> i = kv.getRange(Layout.getSchemaKeyRange())) {
+                while (i.hasNext()) {
+                    final KVPair pair = i.next();
+                    final ByteReader reader = new ByteReader(pair.getKey());
+                    reader.skip(schemaKeyPrefix.length);
+                    try {
+                        bytesMap.put(UnsignedIntEncoder.read(reader), pair.getValue());
+                    } catch (IllegalArgumentException e) {
+                        continue;                                           // invalid schema keys are reported above
+                    }
+                }
+            }
+            final byte[] expected = Layout.buildSchemaFingerprint(bytesMap);
+            if (fingerprint == null) {
+                info.handle(new MissingKey(schemaFingerprintKey, expected)
+                  .setDetail("missing schema fingerprint for recorded schema versions " + bytesMap.keySet()));
+            } else if (!Arrays.equals(fingerprint, expected)) {
+                info.handle(new InvalidValue(schemaFingerprintKey, fingerprint, expected)
+                  .setDetail("schema fingerprint does not match recorded schema versions " + bytesMap.keySet()));
+            }
+        }
+
+        // Done; discard recorded progress
+        checkpoint.finish();
+    }
+
+    // Divide the key range of a storage ID into sub-ranges according to the configured number of range partitions
+    private List<Partition> partition(int storageId, String kind, String rangeDescription, Consumer<Iterator<KVPair>> checker) {
+        final KeyRange range = this.getKeyRange(storageId);
+        final int numPartitions = this.config.getRangePartitions();
+        final ArrayList<Partition> partitions = new ArrayList<>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            final byte[] minKey = i == 0 ? range.getMin() : this.getPartitionKey(range, i * 256 / numPartitions);
+            final byte[] maxKey = i == numPartitions - 1 ?
+              range.getMax() : this.getPartitionKey(range, (i + 1) * 256 / numPartitions);
+            final String name = kind + " " + storageId + " part " + (i + 1) + "/" + numPartitions;
+            final String description = numPartitions == 1 ? rangeDescription :
+              rangeDescription + " (part " + (i + 1) + " of " + numPartitions + ")";
+            partitions.add(new Partition(name, description, new KeyRange(minKey, maxKey), checker));
+        }
+        return partitions;
+    }
+
+    private byte[] getPartitionKey(KeyRange range, int nextByte) {
+        final byte[] prefix = range.getMin();
+        final byte[] key = Arrays.copyOf(prefix, prefix.length + 1);
+        key[prefix.length] = (byte)nextByte;
+        return key;
+    }
+
+    // Check the given partitions, possibly in parallel, skipping any already completed according to the checkpoint
+    private void checkPartitions(JsckInfo info, Checkpoint checkpoint, List<Partition> partitions) {
+
+        // Skip partitions already checked
+        final List<Partition> remaining = partitions.stream()
+          .filter(partition -> !checkpoint.isCompleted(partition.name))
+          .collect(Collectors.toList());
+        if (remaining.size() < partitions.size()) {
+            info.info("skipping " + (partitions.size() - remaining.size())
+              + " key range(s) already checked according to the checkpoint file");
+        }
+        if (remaining.isEmpty())
+            return;
+
+        // Check partitions
+        final long startTime = System.nanoTime();
+        final int parallelism = Math.min(this.config.getParallelism(), remaining.size());
+        if (parallelism == 1) {
+            for (Partition partition : remaining)
+                this.checkPartition(info, checkpoint, partition, null);
+        } else {
+            final AtomicBoolean abort = new AtomicBoolean();
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+                for (Partition partition : remaining)
+                    completionService.submit(() -> this.checkPartition(info, checkpoint, partition, abort), null);
+                for (int count = 0; count < remaining.size(); count++) {
+                    try {
+                        completionService.take().get();
+                    } catch (ExecutionException e) {
+                        final Throwable cause = e.getCause();
+                        ThrowableUtil.prependCurrentStackTrace(cause);
+                        if (cause instanceof RuntimeException)
+                            throw (RuntimeException)cause;
+                        if (cause instanceof Error)
+                            throw (Error)cause;
+                        throw new RuntimeException(cause);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("thread was interrupted while checking key ranges", e);
+                    }
+                }
+            } finally {
+                abort.set(true);
+                executor.shutdown();
+                this.awaitTermination(executor);
+            }
+        }
+
+        // Report throughput
+        final long elapsed = System.nanoTime() - startTime;
+        final long totalPairs = remaining.stream().mapToLong(partition -> partition.numPairs).sum();
+        final long totalBytes = remaining.stream().mapToLong(partition -> partition.numBytes).sum();
+        info.info("checked " + remaining.size() + " key range(s) using " + parallelism + " thread(s): "
+          + Jsck.describeThroughput(totalPairs, totalBytes, elapsed));
+    }
+
+    // Check one partition
+    private void checkPartition(JsckInfo info, Checkpoint checkpoint, Partition partition, AtomicBoolean abort) {
+        info.info("checking " + partition.description);
+        final long startTime = System.nanoTime();
+        try (final CloseableIterator<KVPair> i = info.getKVStore().getRange(partition.range)) {
+            partition.checker.accept(Iterators.transform(i, pair -> {
+                if (abort != null && abort.get())
+                    throw new CancellationException();
+                partition.numPairs++;
+                partition.numBytes += pair.getKey().length + pair.getValue().length;
+                return pair;
+            }));
+        }
+        info.info("checked " + partition.description + ": "
+          + Jsck.describeThroughput(partition.numPairs, partition.numBytes, System.nanoTime() - startTime));
+        checkpoint.complete(partition.name);
+    }
+
+    // Wait for worker threads to notice they've been aborted
+    private void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS))
+                    break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static String describeThroughput(long numPairs, long numBytes, long elapsedNanos) {
+        final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("%d key/value pairs (%d bytes) in %.3f seconds (%.0f pairs/sec, %.0f bytes/sec)",
+          numPairs, numBytes, seconds, numPairs / seconds, numBytes / seconds);
+    }
+
+    // Check the objects in one (sub-)range of an object type
+    private void checkObjects(JsckInfo info, String rangeDescription, Iterator<KVPair> pairs) {
+        for (final PeekingIterator<KVPair> i = Iterators.peekingIterator(pairs); i.hasNext(); ) {
+            final KVPair pair = i.next();
+            final byte[] idKey = pair.getKey();
+
+            // The next key should be an object ID
+            if (idKey.length < ObjId.NUM_BYTES) {
+                info.handle(new InvalidKey(pair).setDetail("invalid key " + Jsck.ds(idKey) + " in " + rangeDescription
+                  + ": key is truncated (length " + idKey.length + " < " + ObjId.NUM_BYTES + ")"));
+                continue;
+            }
+            final ByteReader idKeyReader = new ByteReader(idKey);
+            final ObjId id = new ObjId(idKeyReader);                            // this should never throw an exception
+
+            // Check object meta-data
+            if (info.isDetailEnabled())
+                info.detail("checking object meta-data for " + id);
+            SchemaObjectType objectType = null;
+            int version = 0;
+            do {
+
+                // Check for extra garbage after object ID
+                if (idKeyReader.remain() > 0) {
+                    String detail = "invalid key " + Jsck.ds(idKey) + " in " + rangeDescription
+                      + ": no such object " + id + " exists";
+                    int fieldStorageId = -1;
+                    try {
+                        fieldStorageId = UnsignedIntEncoder.read(idKeyReader);
+                    } catch (IllegalArgumentException e) {
+                        // ignore
+                    }
+                    if (fieldStorageId > 0 && idKeyReader.remain() == 0)
+                        detail += " (possibly orphaned content for field #" + fieldStorageId + ")";
+                    info.handle(new InvalidKey(pair).setDetail(detail));
+                    break;
+                }
+
+                // Read meta-data format version
+                final ByteReader metaData = new ByteReader(pair.getValue());
+                try {
+                    final int metaDataVersion = UnsignedIntEncoder.read(metaData);
+                    switch (metaDataVersion) {
+                    case 1:
+                        break;
+                    case 0:
+                        throw new IllegalArgumentException("invalid zero object meta-data format version");
+                    default:
+                        throw new IllegalArgumentException("unknown object meta-data format version " + metaDataVersion);
+                    }
+                } catch (IllegalArgumentException e) {
+                    info.handle(new InvalidValue(pair).setDetail("invalid meta-data " + Jsck.ds(metaData)
+                      + " for object " + id + ": can't decode object meta-data format version: " + e.getMessage()));
+                    break;
+                }
+
+                // Read object schema version
+                try {
+                    if ((version = UnsignedIntEncoder.read(metaData)) == 0)
+                        throw new IllegalArgumentException("invalid zero version number");
+                } catch (IllegalArgumentException e) {
+                    info.handle(new InvalidValue(pair).setDetail("invalid meta-data " + Jsck.ds(metaData)
+                      + " for object " + id + ": can't decode object schema version: " + e.getMessage()));
+                    break;
+                }
+
+                // Retrieve schema
+                final SchemaModel schema = info.getSchemas().get(version);
+                if (schema == null) {
+                    info.handle(new InvalidValue(pair).setDetail("invalid meta-data "
+                      + Jsck.ds(metaData) + " for object " + id + ": invalid schema version " + version
+                      + ": no such schema version exists"));
+                    break;
+                }
+
+                // Retrieve schema object type
+                if ((objectType = schema.getSchemaObjectTypes().get(id.getStorageId())) == null) {
+                    info.handle(new InvalidValue(pair).setDetail("invalid object ID " + id
+                      + " with storage ID " + id.getStorageId() + ": no such object type exists in schema version "
+                      + version));
+                    break;
+                }
+
+                // Read delete notified flag - since it should always be zero, we can always fix it
+                final int mark = metaData.mark();
+                try {
+                    if (metaData.remain() == 0)
+                        throw new IllegalArgumentException("missing delete notified byte");
+                    final int deleteNotified = metaData.readByte();
+                    if (deleteNotified != 0) {
+                        throw new IllegalArgumentException(String.format(
+                          "invalid notified byte 0x%02x != 0x00", deleteNotified));
+                    }
+                    if (metaData.remain() > 0)
+                        throw new IllegalArgumentException("meta-data contains extra garbage");
+                } catch (IllegalArgumentException e) {
+                    final ByteWriter fixup = new ByteWriter(mark + 1);
+                    fixup.write(metaData.getBytes(0, mark));
+                    fixup.writeByte(0);
+                    info.handle(new InvalidValue(pair, fixup.getBytes()).setDetail("invalid meta-data "
+                      + Jsck.ds(metaData) + " for object " + id + ": " + e.getMessage()));
+                }
+            } while (false);
+
+            // If object meta-data was not repairable, discard all other data in object's range
+            if (objectType == null) {
+                Jsck.deleteRange(info, idKey, i, "object " + id);
+                continue;
+            }
+
+            // Find corresponding object type storage
+            final ObjectType objType = (ObjectType)info.getStorages().get(version).get(id.getStorageId());
+            assert objType != null;
+
+            // Validate object's fields content
+            assert version > 0;
+            if (info.isDetailEnabled())
+                info.detail("checking object content for " + id);
+            objType.validateObjectData(info, id, version, i);
+        }
+    }
+
+    // Check the entries in one (sub-)range of an index
+    private void checkIndex(JsckInfo info, Index index, Iterator<KVPair> i) {
+        while (i.hasNext()) {
+            final KVPair pair = i.next();
+
+            // Validate index entry
+            final ByteReader reader = new ByteReader(pair.getKey());
+            try {
+                index.validateIndexEntry(info, reader);
+            } catch (IllegalArgumentException e) {
+                info.handle(new InvalidKey(pair).setDetail(index, e.getMessage()));
+                continue;
+            }
+
+            // Validate value, which should be empty
+            if (pair.getValue().length > 0)
+                info.handle(new InvalidValue(pair, ByteUtil.EMPTY).setDetail(index, "value should be empty"));
+        }
     }
 
     static void deleteRange(JsckInfo info, byte[] prefix, PeekingIterator<KVPair> i, String description) {
@@ -568,5 +761,26 @@ public class Jsck {
     private KeyRange getKeyRange(int storageId) {
         return KeyRange.forPrefix(UnsignedIntEncoder.encode(storageId));
     }
+
+// Partition
+
+    // A key range, or sub-range, of an object type or index that is checked as a unit
+    private static class Partition {
+
+        final String name;                                      // stable name recorded in the checkpoint file
+        final String description;
+        final KeyRange range;
+        final Consumer<Iterator<KVPair>> checker;
+
+        long numPairs;
+        long numBytes;
+
+        Partition(String name, String description, KeyRange range, Consumer<Iterator<KVPair>> checker) {
+            this.name = name;
+            this.description = description;
+            this.range = range;
+            this.checker = checker;
+        }
+    }
 }
 
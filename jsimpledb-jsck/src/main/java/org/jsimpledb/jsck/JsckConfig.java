@@ -7,6 +7,7 @@ package org.jsimpledb.jsck;
 
 import com.google.common.base.Preconditions;
 
+import java.io.File;
 import java.util.Map;
 
 import org.jsimpledb.core.FieldTypeRegistry;
@@ -28,6 +29,9 @@ public class JsckConfig {
     private int forceFormatVersion;
     private long maxIssues = Long.MAX_VALUE;
     private boolean repair;
+    private int parallelism = 1;
+    private int rangePartitions = 1;
+    private File checkpointFile;
 
     /**
      * Get the restricted ranges of keys that should be inspected, if any.
@@ -180,8 +184,8 @@ public class JsckConfig {
     }
     public void setForceFormatVersion(int forceFormatVersion) {
         Preconditions.checkArgument(forceFormatVersion >= 0, "forceFormatVersion < 0");
-        Preconditions.checkArgument(forceFormatVersion <= Layout.CURRENT_FORMAT_VERSION,
-          "unrecognized forceFormatVersion > " + Layout.CURRENT_FORMAT_VERSION);
+        Preconditions.checkArgument(forceFormatVersion <= Layout.MAX_FORMAT_VERSION,
+          "unrecognized forceFormatVersion > " + Layout.MAX_FORMAT_VERSION);
         this.forceFormatVersion = forceFormatVersion;
     }
 
@@ -200,4 +204,80 @@ public class JsckConfig {
         Preconditions.checkArgument(maxIssues >= 0, "maxIssues < 0");
         this.maxIssues = maxIssues;
     }
+
+    /**
+     * Configure the number of threads used to check object type and index key ranges.
+     *
+     * <p>
+     * When greater than one, the key ranges of distinct storage ID's (and their {@linkplain #getRangePartitions sub-ranges})
+     * are checked concurrently, each using its own key/value store iterator. All object types are checked before any
+     * indexes, so that index checks see the effects of any repairs to objects.
+     *
+     * <p>
+     * The key/value store being checked must support concurrent access when this is greater than one.
+     *
+     * <p>
+     * Default is 1.
+     *
+     * @return number of threads
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+    public void setParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism <= 0");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Configure the number of sub-ranges into which the key range of each object type and index is divided.
+     *
+     * <p>
+     * Sub-ranges are formed by splitting the key range after the storage ID prefix on the following byte, so an object's
+     * key/value pairs are never split across sub-ranges. Each sub-range is checked independently, possibly concurrently
+     * (see {@link #getParallelism}), and is the unit of progress recorded in the {@linkplain #getCheckpointFile checkpoint file}.
+     *
+     * <p>
+     * Default is 1.
+     *
+     * @return number of sub-ranges per storage ID, from 1 to 256
+     */
+    public int getRangePartitions() {
+        return this.rangePartitions;
+    }
+    public void setRangePartitions(int rangePartitions) {
+        Preconditions.checkArgument(rangePartitions > 0, "rangePartitions <= 0");
+        Preconditions.checkArgument(rangePartitions <= 256, "rangePartitions > 256");
+        this.rangePartitions = rangePartitions;
+    }
+
+    /**
+     * Configure a file in which to record progress, so that an interrupted inspection can be resumed.
+     *
+     * <p>
+     * As each object type or index key sub-range is completely checked, it is recorded in this file. If the file already
+     * exists when an inspection starts, the sub-ranges recorded there are skipped. The file is deleted when an inspection
+     * completes normally.
+     *
+     * <p>
+     * The sub-ranges recorded depend on the {@linkplain #getRangePartitions number of sub-ranges per storage ID};
+     * if that number changes, previously recorded progress is ignored. Recorded schemas, empty key ranges, and the
+     * object version index are always checked.
+     *
+     * <p>
+     * A checkpoint file may not be used when {@linkplain #isRepair repairing}: sub-ranges are recorded as they are
+     * checked, i.e., before the transaction containing their repairs is committed, so an interrupted repair would
+     * later be resumed without those repairs ever having been applied.
+     *
+     * <p>
+     * Default is null, i.e., progress is not recorded.
+     *
+     * @return checkpoint file, or null for none
+     */
+    public File getCheckpointFile() {
+        return this.checkpointFile;
+    }
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
 }
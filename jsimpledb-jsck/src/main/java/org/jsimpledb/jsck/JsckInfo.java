@@ -77,14 +77,18 @@ class JsckInfo implements JsckLogger {
         this.formatVersion = formatVersion;
     }
 
-    // Handle an issue
+    // Handle an issue (possibly invoked by multiple threads)
     public void handle(Issue issue) {
-        if (this.config.isRepair())
-            issue.apply(this.kv);
-        if (this.handler != null)
-            this.handler.accept(issue);
-        if (this.counter.incrementAndGet() >= this.config.getMaxIssues())
-            throw new MaxIssuesReachedException();
+        synchronized (this) {
+            if (this.counter.get() >= this.config.getMaxIssues())                 // another thread reached the limit
+                throw new MaxIssuesReachedException();
+            if (this.config.isRepair())
+                issue.apply(this.kv);
+            if (this.handler != null)
+                this.handler.accept(issue);
+            if (this.counter.incrementAndGet() >= this.config.getMaxIssues())
+                throw new MaxIssuesReachedException();
+        }
     }
 
     public long getNumberOfIssuesHandled() {
@@ -5,6 +5,7 @@
 
 package org.jsimpledb.jsck.cmd;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -33,6 +34,9 @@ public class JsckCommand extends AbstractCommand {
          + " -verbose:verbose"
          + " -weak:weak"
          + " -limit:limit:int"
+         + " -threads:threads:int"
+         + " -partitions:partitions:int"
+         + " -checkpoint:checkpoint:word"
          + " -gc:gc"
          + " -kv:kv:expr"
          + " -force-schemas:schema-map:expr"
@@ -52,6 +56,13 @@ public class JsckCommand extends AbstractCommand {
           + "       In addition to detecting issues, attempt to repair them.\n"
           + "   -limit\n"
           + "       Stop after encountering `limit' issues.\n"
+          + "   -threads\n"
+          + "       Check object type and index key ranges using `threads' concurrent threads.\n"
+          + "   -partitions\n"
+          + "       Divide each object type and index key range into `partitions' sub-ranges (1 to 256).\n"
+          + "   -checkpoint\n"
+          + "       Record progress in the specified file, and resume from it if it exists. The file is deleted when done.\n"
+          + "       This flag cannot be used with `-repair'.\n"
           + "   -gc\n"
           + "       Garbage collect unused schema versions at the end of inspection.\n"
           + "   -kv\n"
@@ -94,10 +105,21 @@ public class JsckCommand extends AbstractCommand {
         final Integer limit = (Integer)params.get("limit");
         if (limit != null)
             config.setMaxIssues(limit);
+        final Integer threads = (Integer)params.get("threads");
+        if (threads != null)
+            config.setParallelism(threads);
+        final Integer partitions = (Integer)params.get("partitions");
+        if (partitions != null)
+            config.setRangePartitions(partitions);
+        final String checkpoint = (String)params.get("checkpoint");
+        if (checkpoint != null)
+            config.setCheckpointFile(new File(checkpoint));
 
         // Sanity check
         if (weak && (config.isGarbageCollectSchemas() || config.isRepair()))
             throw new RuntimeException("`-weak' flag requires read-only transaction (incompatible with `-gc' and `-repair')");
+        if (checkpoint != null && config.isRepair())
+            throw new RuntimeException("`-checkpoint' flag is incompatible with `-repair'");
 
         // Done
         return new JsckAction(config,
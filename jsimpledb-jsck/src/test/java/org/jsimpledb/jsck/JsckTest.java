@@ -5,6 +5,9 @@
 
 package org.jsimpledb.jsck;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -87,6 +90,58 @@ public class JsckTest extends KVTestSupport {
         this.mutateAndCompare(this.getConfig(true), true, actual, expected, Collections.emptySet());
     }
 
+    @Test
+    public void testParallelAndResume() throws Exception {
+
+        // Setup db
+        final NavigableMapKVStore actual = this.populate();
+        final NavigableMapKVStore expected = actual.clone();
+
+        // Remove all index information
+        for (int indexStorageId : new int[] { 0x99, 0xaa, 0xbb, 0xcc, 0xdd, 0xee, 0xff, 0xfe, 0xef })
+            actual.removeRange(KeyRange.forPrefix(UnsignedIntEncoder.encode(indexStorageId)));
+        actual.removeRange(KeyRange.forPrefix(Layout.getObjectVersionIndexKeyPrefix()));
+        final NavigableMapKVStore damaged = actual.clone();
+
+        // Record all object type key ranges as already checked
+        final File checkpointFile = File.createTempFile("jsck", ".checkpoint");
+        try {
+            final ArrayList<String> checkpointed = new ArrayList<>();
+            for (int storageId : new int[] { 0x10, 0x20 }) {
+                for (int i = 1; i <= 16; i++)
+                    checkpointed.add("object type " + storageId + " part " + i + "/16");
+            }
+            Files.write(checkpointFile.toPath(), checkpointed, StandardCharsets.UTF_8);
+
+            // A checkpoint can't be used when repairing, because progress is recorded before repairs are committed
+            final JsckConfig config = this.getConfig(true);
+            config.setParallelism(4);
+            config.setRangePartitions(16);
+            config.setCheckpointFile(checkpointFile);
+            try {
+                new Jsck(config).check(actual, null);
+                assert false : "expected IllegalArgumentException";
+            } catch (IllegalArgumentException e) {
+                this.log.info("got expected " + e);
+            }
+            Assert.assertTrue(checkpointFile.exists());
+
+            // Resuming should skip the object types, which is where the missing index entries are detected
+            config.setRepair(false);
+            final long resumedIssues = new Jsck(config).check(actual, null);
+            Assert.assertFalse(checkpointFile.exists());
+            config.setCheckpointFile(null);
+            Assert.assertTrue(resumedIssues < new Jsck(config).check(actual, null));
+            this.mutateAndCompare(config, false, actual, damaged, Collections.emptySet());
+
+            // A full parallel repair should repair everything
+            config.setRepair(true);
+            this.mutateAndCompare(config, true, actual, expected, Collections.emptySet());
+        } finally {
+            checkpointFile.delete();
+        }
+    }
+
     @Test
     public void testDeletedReference() throws Exception {
 
@@ -236,6 +291,8 @@ public class JsckTest extends KVTestSupport {
                     continue;
                 if (Arrays.equals(key, Layout.buildSchemaKey(SNAPSHOT_VERSION)))
                     continue;
+                if (Arrays.equals(key, Layout.getSchemaFingerprintKey()))
+                    continue;
                 if (ByteUtil.isPrefixOf(versionPrefix, key) && key.length == versionPrefix.length + ObjId.NUM_BYTES)
                     continue;
                 final byte[] value = this.randomBytes(0, 20, false);
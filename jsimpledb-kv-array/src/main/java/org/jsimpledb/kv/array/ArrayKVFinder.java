@@ -7,8 +7,6 @@ package org.jsimpledb.kv.array;
 
 import com.google.common.base.Preconditions;
 
-import java.nio.ByteBuffer;
-
 import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.util.ByteUtil;
 
@@ -20,56 +18,124 @@ import org.jsimpledb.util.ByteUtil;
  */
 class ArrayKVFinder {
 
-    // Note: for thread safety, perform only absolute gets
-    private final ByteBuffer indx;
-    private final ByteBuffer keys;
-    private final ByteBuffer vals;
+    private final LargeByteBuffer indx;
+    private final LargeByteBuffer keys;
+    private final LargeByteBuffer vals;
+    private final int formatVersion;
     private final int size;
 
-    ArrayKVFinder(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals) {
-        Preconditions.checkArgument(indx.capacity() % 8 == 0, "index size is not a multiple of 8");
-        this.indx = indx.duplicate();
-        this.keys = keys.duplicate();
-        this.vals = vals.duplicate();
-        this.indx.limit(this.indx.capacity());
-        this.keys.limit(this.keys.capacity());
-        this.vals.limit(this.vals.capacity());
-        this.size = this.indx.capacity() / 8;
+    // In-memory copy of every base key (i.e., every 32nd key), or null if not enabled
+    private final byte[][] baseKeys;
+
+    ArrayKVFinder(LargeByteBuffer indx, LargeByteBuffer keys, LargeByteBuffer vals, boolean cacheBaseKeys) {
+        this.indx = indx;
+        this.keys = keys;
+        this.vals = vals;
+
+        // Determine format version and size
+        final long indxLength = this.indx.capacity();
+        if (indxLength >= ArrayKVWriter.INDX_HEADER_SIZE && this.indx.getInt(0) == ArrayKVWriter.INDX_MAGIC) {
+            this.formatVersion = this.indx.getInt(4);
+            Preconditions.checkArgument(this.formatVersion == ArrayKVWriter.FORMAT_VERSION_2,
+              "unsupported format version " + this.formatVersion);
+            final long dataLength = indxLength - ArrayKVWriter.INDX_HEADER_SIZE;
+            final long blocks = dataLength / ArrayKVWriter.BLOCK_SIZE;
+            final int remainder = (int)(dataLength % ArrayKVWriter.BLOCK_SIZE);
+            long size = blocks * 32;
+            if (remainder > 0) {
+                Preconditions.checkArgument(remainder >= ArrayKVWriter.BASE_ENTRY_SIZE
+                  && (remainder - ArrayKVWriter.BASE_ENTRY_SIZE) % ArrayKVWriter.ENTRY_SIZE == 0, "invalid index size");
+                size += 1 + (remainder - ArrayKVWriter.BASE_ENTRY_SIZE) / ArrayKVWriter.ENTRY_SIZE;
+            }
+            Preconditions.checkArgument(size <= Integer.MAX_VALUE, "invalid index size");
+            this.size = (int)size;
+        } else {
+            Preconditions.checkArgument(indxLength % 8 == 0, "index size is not a multiple of 8");
+            Preconditions.checkArgument(indxLength <= Integer.MAX_VALUE, "invalid index size");
+            this.formatVersion = ArrayKVWriter.FORMAT_VERSION_1;
+            this.size = (int)(indxLength / 8);
+        }
+
+        // Load base keys
+        if (cacheBaseKeys) {
+            final byte[][] array = new byte[(this.size + 0x1f) >>> 5][];
+            for (int i = 0; i < array.length; i++)
+                array[i] = this.readKey(i << 5);
+            this.baseKeys = array;
+        } else
+            this.baseKeys = null;
+    }
+
+    /**
+     * Get the number of key/value pairs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the file format version.
+     */
+    public int getFormatVersion() {
+        return this.formatVersion;
     }
 
     /**
      * Search for the index of the entry with the given key.
      *
+     * <p>
+     * If base keys are cached in memory, they are searched first; this narrows the search down to a single
+     * run of 32 keys without touching the underlying key data. The remaining search compares the search key
+     * directly against the key data in place, without copying any keys. Because all of the keys between
+     * the current search bounds must share at least as long a prefix with the search key as the keys at both bounds do,
+     * each comparison can skip over that many leading bytes.
+     *
      * @return maching index, or ones complement of insertion point if not found
      */
     public int find(byte[] searchKey) {
 
-        // Initialize bounds using cached prefix
+        // Initialize bounds
         int min = 0;
         int max = this.size;
 
-        // Perform binary search for key, starting at the point where we diverged from the previous search key
-        byte[] prevMin = null;
-        byte[] prevMax = null;
+        // Narrow the search using the in-memory base keys, if any
+        if (this.baseKeys != null) {
+            int baseMin = 0;
+            int baseMax = this.baseKeys.length;
+            while (baseMin < baseMax) {
+                final int mid = (baseMin + (baseMax - 1)) >>> 1;
+                final int diff = ByteUtil.compare(searchKey, this.baseKeys[mid]);
+                if (diff == 0)
+                    return mid << 5;
+                if (diff < 0)
+                    baseMax = mid;
+                else
+                    baseMin = mid + 1;
+            }
+            if (baseMin == 0)
+                return ~0;
+            min = ((baseMin - 1) << 5) + 1;
+            max = Math.min(baseMin << 5, this.size);
+        }
+
+        // Perform binary search for key, tracking the length of the prefix shared with the keys at the bounds
+        int minMatch = 0;
+        int maxMatch = 0;
         while (min < max) {
 
             // Calculate the midpoint of the search range
             final int mid = (min + (max - 1)) >>> 1;
 
-            // Get key at midpoint
-            final byte[] midKey = this.readKey(mid);
-            assert prevMin == null || ByteUtil.compare(searchKey, prevMin) > 0;
-            assert prevMax == null || ByteUtil.compare(searchKey, prevMax) < 0;
-
             // Compare search key to the midpoint key
-            final int diff = ByteUtil.compare(searchKey, midKey);
-            if (diff == 0)
+            final int result = this.compareKey(searchKey, mid, Math.min(minMatch, maxMatch));
+            assert Integer.signum(result) == Integer.signum(ByteUtil.compare(searchKey, this.readKey(mid)));
+            if (result == 0)
                 return mid;
-            if (diff < 0) {
-                prevMax = midKey;
+            if (result < 0) {
+                maxMatch = ~result;
                 max = mid;
             } else {
-                prevMin = midKey;
+                minMatch = result - 1;
                 min = mid + 1;
             }
         }
@@ -78,6 +144,56 @@ class ArrayKVFinder {
         return ~min;
     }
 
+    /**
+     * Compare the given search key to the key at the specified index, without copying the latter.
+     *
+     * @param searchKey search key
+     * @param index key index
+     * @param skip length of a prefix that is already known to be shared by both keys
+     * @return zero if the keys are equal; otherwise, the length of the keys' common prefix plus one if {@code searchKey}
+     *  is greater, or the ones complement of that length if {@code searchKey} is less
+     */
+    private int compareKey(byte[] searchKey, int index, int skip) {
+
+        // Locate the key's prefix (which comes from the base key) and suffix
+        final int baseIndex = index & ~0x1f;
+        final long baseKeyOffset = this.readBaseKeyOffset(baseIndex);
+        final int prefixLen;
+        final long suffixOffset;
+        if (index == baseIndex) {
+            prefixLen = 0;
+            suffixOffset = baseKeyOffset;
+        } else {
+            final int encodedValue = this.readKeyWord(index);
+            prefixLen = encodedValue >>> 24;
+            suffixOffset = baseKeyOffset + (encodedValue & 0x00ffffff);
+        }
+        final int keyLen = prefixLen + (int)(this.nextKeyOffset(index, baseKeyOffset) - suffixOffset);
+
+        // Compare bytes in the prefix, then the suffix
+        final int limit = Math.min(searchKey.length, keyLen);
+        final int prefixLimit = Math.min(limit, prefixLen);
+        int pos = skip;
+        while (pos < prefixLimit) {
+            final int diff = (searchKey[pos] & 0xff) - (this.keys.get(baseKeyOffset + pos) & 0xff);
+            if (diff != 0)
+                return diff < 0 ? ~pos : pos + 1;
+            pos++;
+        }
+        final long suffixDelta = suffixOffset - prefixLen;
+        while (pos < limit) {
+            final int diff = (searchKey[pos] & 0xff) - (this.keys.get(suffixDelta + pos) & 0xff);
+            if (diff != 0)
+                return diff < 0 ? ~pos : pos + 1;
+            pos++;
+        }
+
+        // One key is a prefix of the other
+        if (searchKey.length == keyLen)
+            return 0;
+        return searchKey.length < keyLen ? ~pos : pos + 1;
+    }
+
     /**
      * Read the key at the specified index.
      */
@@ -89,35 +205,30 @@ class ArrayKVFinder {
 
         // If this is a base key, read absolute offset and fetch data normally
         final int baseIndex = index & ~0x1f;
-        final int baseKeyOffset = this.indx.getInt(baseIndex * 8);
+        if (index == baseIndex && this.baseKeys != null)
+            return this.baseKeys[index >>> 5].clone();
+        final long baseKeyOffset = this.readBaseKeyOffset(baseIndex);
         if (index == baseIndex) {
-            final int length = (index + 1) < this.size ?
-              this.indx.getInt((index + 1) * 8) & 0x00ffffff : this.keys.capacity() - baseKeyOffset;
-            return this.get(this.keys, baseKeyOffset, new byte[length], 0, length);
+            final int length = (int)(this.nextKeyOffset(index, baseKeyOffset) - baseKeyOffset);
+            return this.keys.get(baseKeyOffset, new byte[length], 0, length);
         }
 
-        // Read the base key absolute offset, then encoded key prefix length and relative suffix offset
-        final int encodedValue = this.indx.getInt(index * 8);
+        // Read the encoded key prefix length and relative suffix offset
+        final int encodedValue = this.readKeyWord(index);
         final int prefixLen = encodedValue >>> 24;
-        final int suffixOffset = baseKeyOffset + (encodedValue & 0x00ffffff);
-
-        // Calculate the start of the following key in order to determine this key's suffix length
-        final int nextIndex = index + 1;
-        int nextOffset;
-        if (nextIndex < this.size) {
-            nextOffset = this.indx.getInt(nextIndex * 8);
-            if ((nextIndex & 0x1f) != 0)
-                nextOffset = baseKeyOffset + (nextOffset & 0x00ffffff);
-        } else
-            nextOffset = this.keys.capacity();
-        final int suffixLen = nextOffset - suffixOffset;
+        final long suffixOffset = baseKeyOffset + (encodedValue & 0x00ffffff);
+        final int suffixLen = (int)(this.nextKeyOffset(index, baseKeyOffset) - suffixOffset);
 
         // Fetch the key in two parts, prefix then suffix
         final byte[] key = new byte[prefixLen + suffixLen];
-        if (prefixLen > 0)
-            this.get(this.keys, baseKeyOffset, key, 0, prefixLen);
+        if (prefixLen > 0) {
+            if (this.baseKeys != null)
+                System.arraycopy(this.baseKeys[index >>> 5], 0, key, 0, prefixLen);
+            else
+                this.keys.get(baseKeyOffset, key, 0, prefixLen);
+        }
         assert suffixLen > 0;
-        return this.get(this.keys, suffixOffset, key, prefixLen, suffixLen);
+        return this.keys.get(suffixOffset, key, prefixLen, suffixLen);
     }
 
     /**
@@ -126,10 +237,10 @@ class ArrayKVFinder {
     public byte[] readValue(int index) {
         Preconditions.checkArgument(index >= 0, "index < 0");
         Preconditions.checkArgument(index < this.size, "index >= size");
-        final int dataOffset = this.indx.getInt(index * 8 + 4);
-        final int nextOffset = (index + 1) < this.size ? this.indx.getInt((index + 1) * 8 + 4) : this.vals.capacity();
-        final int length = nextOffset - dataOffset;
-        return this.get(this.vals, dataOffset, new byte[length], 0, length);
+        final long dataOffset = this.readValueOffset(index);
+        final long nextOffset = (index + 1) < this.size ? this.readValueOffset(index + 1) : this.vals.capacity();
+        final int length = (int)(nextOffset - dataOffset);
+        return this.vals.get(dataOffset, new byte[length], 0, length);
     }
 
     /**
@@ -139,16 +250,51 @@ class ArrayKVFinder {
         return new KVPair(this.readKey(index), this.readValue(index));
     }
 
-    // Perform a bulk get() that doesn't modify the buffer
-    protected byte[] get(ByteBuffer buf, int position, byte[] dest, int off, int len) {
-        if (buf.hasArray())
-            System.arraycopy(buf.array(), buf.arrayOffset() + position, dest, off, len);
-        else if (len < 128) {                               // 128 is a wild guess TODO: determine through performance testing
-            while (len-- > 0)
-                dest[off++] = buf.get(position++);
-        } else
-            ((ByteBuffer)buf.duplicate().position(position)).get(dest, off, len);
-        return dest;
+// Index decoding
+
+    // Get the absolute offset of the start of the key following the key at the specified index, or the end of the key data
+    private long nextKeyOffset(int index, long baseKeyOffset) {
+        final int nextIndex = index + 1;
+        if (nextIndex >= this.size)
+            return this.keys.capacity();
+        if ((nextIndex & 0x1f) == 0)
+            return this.readBaseKeyOffset(nextIndex);
+        return baseKeyOffset + (this.readKeyWord(nextIndex) & 0x00ffffff);
+    }
+
+    // Get the absolute key offset for a base index entry
+    private long readBaseKeyOffset(int baseIndex) {
+        assert (baseIndex & 0x1f) == 0;
+        if (this.formatVersion == ArrayKVWriter.FORMAT_VERSION_1)
+            return this.indx.getInt((long)baseIndex * 8);
+        return this.indx.getLong(this.entryOffset(baseIndex));
+    }
+
+    // Get the encoded { base key prefix length, offset to key suffix } for a non-base index entry
+    private int readKeyWord(int index) {
+        assert (index & 0x1f) != 0;
+        if (this.formatVersion == ArrayKVWriter.FORMAT_VERSION_1)
+            return this.indx.getInt((long)index * 8);
+        return this.indx.getInt(this.entryOffset(index));
+    }
+
+    // Get the absolute value offset for an index entry
+    private long readValueOffset(int index) {
+        if (this.formatVersion == ArrayKVWriter.FORMAT_VERSION_1)
+            return this.indx.getInt((long)index * 8 + 4);
+        final int baseIndex = index & ~0x1f;
+        final long baseValOffset = this.indx.getLong(this.entryOffset(baseIndex) + 8);
+        if (index == baseIndex)
+            return baseValOffset;
+        return baseValOffset + (this.indx.getInt(this.entryOffset(index) + 4) & 0xffffffffL);
     }
-}
 
+    // Get the offset in the index of the specified entry (format version 2 only)
+    private long entryOffset(int index) {
+        final long blockOffset = ArrayKVWriter.INDX_HEADER_SIZE + (long)(index >>> 5) * ArrayKVWriter.BLOCK_SIZE;
+        final int slot = index & 0x1f;
+        if (slot == 0)
+            return blockOffset;
+        return blockOffset + ArrayKVWriter.BASE_ENTRY_SIZE + (long)(slot - 1) * ArrayKVWriter.ENTRY_SIZE;
+    }
+}
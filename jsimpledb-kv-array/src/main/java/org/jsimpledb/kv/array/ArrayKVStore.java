@@ -25,10 +25,18 @@ import org.jsimpledb.util.CloseableIterator;
  *
  * <p>
  * Instances are optimized for minimal memory overhead and queries using keys sharing a prefix with the previously
- * queried key. Key data is prefix-compressed.
+ * queried key. Key data is prefix-compressed. Searches compare keys in place, without copying them out of the buffer.
  *
  * <p>
- * Key and value data must not exceed 2GB (each separately).
+ * Optionally, every 32nd key (these are the keys that are stored without prefix compression) may be copied into
+ * memory when the instance is constructed. Searches then use those in-memory keys to narrow the search down
+ * to 32 entries before accessing the key data buffer at all. This trades a small amount of memory for faster lookups,
+ * particularly when the buffers are memory-mapped files.
+ *
+ * <p>
+ * Data larger than 2GB is supported by {@link LargeByteBuffer}s made up of multiple segments, as long as it
+ * was written using {@linkplain ArrayKVWriter#FORMAT_VERSION_2 format version 2} or later. The format version
+ * is detected automatically.
  */
 public class ArrayKVStore extends AbstractKVStore {
 
@@ -45,12 +53,49 @@ public class ArrayKVStore extends AbstractKVStore {
      * @throws IllegalArgumentException if {@code indx} size is not a correct multiple
      */
     public ArrayKVStore(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals) {
+        this(indx, keys, vals, false);
+    }
+
+    /**
+     * Constructor with optional in-memory base key index.
+     *
+     * @param indx buffer containing index data written by a {@link ArrayKVWriter}
+     * @param keys buffer containing key data written by a {@link ArrayKVWriter}
+     * @param vals buffer containing value data written by a {@link ArrayKVWriter}
+     * @param cacheBaseKeys true to copy every 32nd key into memory to speed up searches
+     * @throws IllegalArgumentException if any parameter is null
+     * @throws IllegalArgumentException if {@code indx} size is not a correct multiple
+     */
+    public ArrayKVStore(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals, boolean cacheBaseKeys) {
+        this(ArrayKVStore.wrap(indx, "indx"), ArrayKVStore.wrap(keys, "keys"), ArrayKVStore.wrap(vals, "vals"), cacheBaseKeys);
+    }
+
+    /**
+     * Constructor taking {@link LargeByteBuffer}s, which may be larger than 2GB.
+     *
+     * @param indx buffer containing index data written by a {@link ArrayKVWriter}
+     * @param keys buffer containing key data written by a {@link ArrayKVWriter}
+     * @param vals buffer containing value data written by a {@link ArrayKVWriter}
+     * @param cacheBaseKeys true to copy every 32nd key into memory to speed up searches
+     * @throws IllegalArgumentException if any buffer parameter is null
+     * @throws IllegalArgumentException if {@code indx} size is not a correct multiple
+     * @throws IllegalArgumentException if {@code indx} has an unsupported format version
+     */
+    public ArrayKVStore(LargeByteBuffer indx, LargeByteBuffer keys, LargeByteBuffer vals, boolean cacheBaseKeys) {
         Preconditions.checkArgument(indx != null, "null indx");
         Preconditions.checkArgument(keys != null, "null keys");
         Preconditions.checkArgument(vals != null, "null vals");
-        Preconditions.checkArgument(indx.capacity() % 8 == 0, "index size is not a multiple of 8");
-        this.size = indx.capacity() / 8;
-        this.finder = new ArrayKVFinder(indx, keys, vals);
+        this.finder = new ArrayKVFinder(indx, keys, vals, cacheBaseKeys);
+        this.size = this.finder.size();
+    }
+
+    /**
+     * Get the file format version of the underlying data.
+     *
+     * @return file format version, e.g., {@link ArrayKVWriter#FORMAT_VERSION_2}
+     */
+    public int getFormatVersion() {
+        return this.finder.getFormatVersion();
     }
 
     @Override
@@ -71,7 +116,7 @@ public class ArrayKVStore extends AbstractKVStore {
         if (index == this.size)
             return null;
         final KVPair pair = this.finder.readKV(index);
-        assert ByteUtil.compare(pair.getKey(), minKey) >= 0;
+        assert minKey == null || ByteUtil.compare(pair.getKey(), minKey) >= 0;
         return maxKey == null || ByteUtil.compare(pair.getKey(), maxKey) < 0 ? pair : null;
     }
 
@@ -85,7 +130,7 @@ public class ArrayKVStore extends AbstractKVStore {
         if (index == 0)
             return null;
         final KVPair pair = this.finder.readKV(index - 1);
-        assert ByteUtil.compare(pair.getKey(), maxKey) < 0;
+        assert maxKey == null || ByteUtil.compare(pair.getKey(), maxKey) < 0;
         return minKey == null || ByteUtil.compare(pair.getKey(), minKey) >= 0 ? pair : null;
     }
 
@@ -126,6 +171,11 @@ public class ArrayKVStore extends AbstractKVStore {
         throw new UnsupportedOperationException();
     }
 
+    private static LargeByteBuffer wrap(ByteBuffer buf, String name) {
+        Preconditions.checkArgument(buf != null, "null " + name);
+        return LargeByteBuffer.wrap(buf);
+    }
+
 // RangeIter
 
     private class RangeIter extends UnmodifiableIterator<KVPair> implements CloseableIterator<KVPair> {
@@ -25,10 +25,33 @@ import org.jsimpledb.util.ByteUtil;
  * Writes {@link ArrayKVStore} index, key, and value data, given a sorted sequence of key/value pairs.
  *
  * <p>
- * Key and value data must not exceed 2GB (each separately).
+ * By default, data is written using {@linkplain #FORMAT_VERSION_2 format version 2}, which supports 64-bit offsets.
+ * For {@linkplain #FORMAT_VERSION_1 format version 1}, key and value data must not exceed 2GB (each separately).
+ * See {@link org.jsimpledb.kv.array} for a description of the formats.
  */
 public class ArrayKVWriter implements Closeable {
 
+    /**
+     * Original file format, using 32-bit offsets.
+     */
+    public static final int FORMAT_VERSION_1 = 1;
+
+    /**
+     * File format using 64-bit offsets.
+     */
+    public static final int FORMAT_VERSION_2 = 2;
+
+    /**
+     * Magic number at the start of the index file in format versions 2 and later.
+     */
+    static final int INDX_MAGIC = 0x41724b76;                                      // "ArKv"
+
+    // Format version 2 index layout
+    static final int INDX_HEADER_SIZE = 8;                                          // magic + format version
+    static final int BASE_ENTRY_SIZE = 16;                                          // absolute key offset + value offset
+    static final int ENTRY_SIZE = 8;                                                // encoded key offset + relative value offset
+    static final int BLOCK_SIZE = BASE_ENTRY_SIZE + 31 * ENTRY_SIZE;                // one base entry plus 31 regular entries
+
     private static final int BUFFER_SIZE = 1024 * 1024;
 
     // Flags used by writeMerged()
@@ -39,57 +62,133 @@ public class ArrayKVWriter implements Closeable {
     private final BufferedOutputStream indxOutput;
     private final BufferedOutputStream keysOutput;
     private final BufferedOutputStream valsOutput;
+    private final int formatVersion;
 
-    private int keysLength;
-    private int valsLength;
+    private long indxLength;
+    private long keysLength;
+    private long valsLength;
 
     private int nextIndex;
     private byte[] prevKey;
     private byte[] baseKey;
-    private int baseKeyOffset;
+    private long baseKeyOffset;
+    private long baseValOffset;
+    private boolean headerWritten;
     private boolean closed;
 
     /**
      * Constructor.
      *
+     * <p>
+     * Equivalent to {@link #ArrayKVWriter(OutputStream, OutputStream, OutputStream, int)
+     *  ArrayKVWriter(indxOutput, keysOutput, valsOutput, FORMAT_VERSION_2)}.
+     *
      * @param indxOutput index file output
      * @param keysOutput key data file output
      * @param valsOutput value data file output
+     * @throws IllegalArgumentException if any parameter is null
      */
     public ArrayKVWriter(OutputStream indxOutput, OutputStream keysOutput, OutputStream valsOutput) {
+        this(indxOutput, keysOutput, valsOutput, FORMAT_VERSION_2);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indxOutput index file output
+     * @param keysOutput key data file output
+     * @param valsOutput value data file output
+     * @param formatVersion file format version, either {@link #FORMAT_VERSION_1} or {@link #FORMAT_VERSION_2}
+     * @throws IllegalArgumentException if any stream parameter is null
+     * @throws IllegalArgumentException if {@code formatVersion} is not supported
+     */
+    public ArrayKVWriter(OutputStream indxOutput, OutputStream keysOutput, OutputStream valsOutput, int formatVersion) {
         Preconditions.checkArgument(indxOutput != null, "null indxOutput");
         Preconditions.checkArgument(keysOutput != null, "null keysOutput");
         Preconditions.checkArgument(valsOutput != null, "null valsOutput");
+        Preconditions.checkArgument(formatVersion == FORMAT_VERSION_1 || formatVersion == FORMAT_VERSION_2,
+          "unsupported format version " + formatVersion);
         this.indxOutput = new BufferedOutputStream(indxOutput, BUFFER_SIZE);
         this.keysOutput = new BufferedOutputStream(keysOutput, BUFFER_SIZE);
         this.valsOutput = new BufferedOutputStream(valsOutput, BUFFER_SIZE);
+        this.formatVersion = formatVersion;
+        if (this.formatVersion >= FORMAT_VERSION_2)
+            this.indxLength = INDX_HEADER_SIZE;
+    }
+
+    /**
+     * Get the file format version being written.
+     *
+     * @return file format version
+     */
+    public int getFormatVersion() {
+        return this.formatVersion;
+    }
+
+    /**
+     * Get the number of bytes written so far to the index file.
+     *
+     * <p>
+     * This includes the index file header, if any, even if it has not actually been written yet.
+     *
+     * @return length of the index file
+     */
+    public long getIndxFileLength() {
+        return this.indxLength;
+    }
+
+    /**
+     * Get the number of bytes written so far to the key data file.
+     *
+     * @return length of the key data file
+     */
+    public long getKeysFileLength() {
+        return this.keysLength;
+    }
+
+    /**
+     * Get the number of bytes written so far to the value data file.
+     *
+     * @return length of the value data file
+     */
+    public long getValsFileLength() {
+        return this.valsLength;
     }
 
     /**
      * Get the number of bytes written so far to the index file.
      *
      * @return length of the index file
+     * @throws ArithmeticException if the length exceeds {@link Integer#MAX_VALUE}
+     * @deprecated Use {@link #getIndxFileLength} instead
      */
+    @Deprecated
     public int getIndxLength() {
-        return this.nextIndex * 8;
+        return Math.toIntExact(this.indxLength);
     }
 
     /**
      * Get the number of bytes written so far to the key data file.
      *
      * @return length of the key data file
+     * @throws ArithmeticException if the length exceeds {@link Integer#MAX_VALUE}
+     * @deprecated Use {@link #getKeysFileLength} instead
      */
+    @Deprecated
     public int getKeysLength() {
-        return this.keysLength;
+        return Math.toIntExact(this.keysLength);
     }
 
     /**
      * Get the number of bytes written so far to the value data file.
      *
      * @return length of the value data file
+     * @throws ArithmeticException if the length exceeds {@link Integer#MAX_VALUE}
+     * @deprecated Use {@link #getValsFileLength} instead
      */
+    @Deprecated
     public int getValsLength() {
-        return this.valsLength;
+        return Math.toIntExact(this.valsLength);
     }
 
     /**
@@ -99,7 +198,9 @@ public class ArrayKVWriter implements Closeable {
      * @param val value
      * @throws IllegalArgumentException if {@code key} is out of order (i.e., not strictly greater then the previous key)
      * @throws IllegalArgumentException if {@code key} or {@code val} is null
-     * @throws IllegalStateException if either the key or data file would grow larger than 2<sup>31</sup>-1 bytes
+     * @throws IllegalStateException if using {@link #FORMAT_VERSION_1} and either the key or data file would grow
+     *  larger than 2<sup>31</sup>-1 bytes
+     * @throws IllegalStateException if the total length of 32 consecutive values would exceed 2<sup>32</sup>-1 bytes
      * @throws IOException if an I/O error occurrs
      */
     public void writeKV(byte[] key, byte[] val) throws IOException {
@@ -108,15 +209,25 @@ public class ArrayKVWriter implements Closeable {
         Preconditions.checkArgument(key != null, "null key");
         Preconditions.checkArgument(val != null, "null value");
         Preconditions.checkArgument(this.prevKey == null || ByteUtil.compare(key, this.prevKey) > 0, "key <= previous key");
-        Preconditions.checkState((this.nextIndex * 8) + 8 > 0, "too much index data");
-        Preconditions.checkState(this.keysLength == 0 || this.keysLength + key.length > 0, "too much key data");
-        Preconditions.checkState(this.valsLength == 0 || this.valsLength + val.length > 0, "too much value data");
+        Preconditions.checkState(this.nextIndex < Integer.MAX_VALUE, "too many key/value pairs");
+        if (this.formatVersion == FORMAT_VERSION_1) {
+            Preconditions.checkState(this.indxLength + 8 <= Integer.MAX_VALUE, "too much index data");
+            Preconditions.checkState(this.keysLength + key.length <= Integer.MAX_VALUE, "too much key data");
+            Preconditions.checkState(this.valsLength + val.length <= Integer.MAX_VALUE, "too much value data");
+        }
+
+        // Write index file header
+        this.writeHeaderIfNecessary();
 
         // Write key index entry and data
-        if ((this.nextIndex & 0x1f) == 0) {
+        final boolean base = (this.nextIndex & 0x1f) == 0;
+        if (base) {
 
             // Write a base key index entry every 32 entries
-            this.writeIndxValue(this.keysLength);
+            if (this.formatVersion == FORMAT_VERSION_1)
+                this.writeIndxValue((int)this.keysLength);
+            else
+                this.writeIndxLongValue(this.keysLength);
             this.baseKeyOffset = this.keysLength;
             this.baseKey = this.cloneOrCopy(this.baseKey, key);
 
@@ -134,17 +245,26 @@ public class ArrayKVWriter implements Closeable {
             assert suffixLength > 0;
 
             // Write encoded { base key prefix length, offset to key suffix }
-            final int suffixRelativeOffset = this.keysLength - this.baseKeyOffset;
-            Preconditions.checkState((suffixRelativeOffset & 0xff000000) == 0, "key(s) too long");
-            this.writeIndxValue(prefixLength << 24 | suffixRelativeOffset);
+            final long suffixRelativeOffset = this.keysLength - this.baseKeyOffset;
+            Preconditions.checkState((suffixRelativeOffset & ~0x00ffffffL) == 0, "key(s) too long");
+            this.writeIndxValue(prefixLength << 24 | (int)suffixRelativeOffset);
 
             // Write key data - suffix only
             this.keysOutput.write(key, prefixLength, suffixLength);
             this.keysLength += suffixLength;
         }
 
-        // Write value index entry
-        this.writeIndxValue(this.valsLength);
+        // Write value index entry; in format version 2, non-base entries are relative to the base entry
+        if (this.formatVersion == FORMAT_VERSION_1)
+            this.writeIndxValue((int)this.valsLength);
+        else if (base) {
+            this.writeIndxLongValue(this.valsLength);
+            this.baseValOffset = this.valsLength;
+        } else {
+            final long valueRelativeOffset = this.valsLength - this.baseValOffset;
+            Preconditions.checkState((valueRelativeOffset & ~0xffffffffL) == 0, "value(s) too long");
+            this.writeIndxValue((int)valueRelativeOffset);
+        }
 
         // Write value data
         this.valsOutput.write(val);
@@ -168,7 +288,7 @@ public class ArrayKVWriter implements Closeable {
      * @param mutations mutations to apply
      * @throws IllegalArgumentException if any parameter is null
      * @throws IllegalArgumentException if {@code kvs} iterates out of order
-     * @throws IllegalStateException if either the key or data file would grow larger than 2<sup>31</sup>-1 bytes
+     * @throws IllegalStateException if {@link #writeKV writeKV()} would throw {@link IllegalStateException}
      * @throws IOException if an I/O error occurrs
      */
     @SuppressWarnings("fallthrough")
@@ -250,6 +370,7 @@ public class ArrayKVWriter implements Closeable {
                 try {
                     counter = kvstore.decodeCounter(encodedCount);
                 } catch (IllegalArgumentException e) {
+                    this.writeKV(key, encodedCount);                    // adjusted a non-counter value; ignore adjustment
                     break;
                 }
                 final byte[] value = kvstore.encodeCounter(counter + adjust.getValue());
@@ -293,11 +414,32 @@ public class ArrayKVWriter implements Closeable {
         }
     }
 
-    private void writeIndxValue(int offset) throws IOException {
-        this.indxOutput.write(offset >> 24);
-        this.indxOutput.write(offset >> 16);
-        this.indxOutput.write(offset >> 8);
-        this.indxOutput.write(offset);
+    private void writeHeaderIfNecessary() throws IOException {
+        if (this.headerWritten)
+            return;
+        if (this.formatVersion >= FORMAT_VERSION_2) {
+            this.writeIndxInt(INDX_MAGIC);
+            this.writeIndxInt(this.formatVersion);
+        }
+        this.headerWritten = true;
+    }
+
+    private void writeIndxValue(int value) throws IOException {
+        this.writeIndxInt(value);
+        this.indxLength += 4;
+    }
+
+    private void writeIndxLongValue(long value) throws IOException {
+        this.writeIndxInt((int)(value >> 32));
+        this.writeIndxInt((int)value);
+        this.indxLength += 8;
+    }
+
+    private void writeIndxInt(int value) throws IOException {
+        this.indxOutput.write(value >> 24);
+        this.indxOutput.write(value >> 16);
+        this.indxOutput.write(value >> 8);
+        this.indxOutput.write(value);
     }
 
     /**
@@ -306,6 +448,7 @@ public class ArrayKVWriter implements Closeable {
      * @throws IOException if an I/O error occurrs
      */
     public void flush() throws IOException {
+        this.writeHeaderIfNecessary();
         this.indxOutput.flush();
         this.keysOutput.flush();
         this.valsOutput.flush();
@@ -321,6 +464,7 @@ public class ArrayKVWriter implements Closeable {
         if (this.closed)
             return;
         this.closed = true;
+        this.writeHeaderIfNecessary();
         this.indxOutput.close();
         this.keysOutput.close();
         this.valsOutput.close();
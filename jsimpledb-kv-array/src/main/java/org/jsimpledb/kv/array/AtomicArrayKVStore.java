@@ -8,6 +8,7 @@ package org.jsimpledb.kv.array;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ForwardingFuture;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
@@ -27,6 +28,8 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -93,6 +96,14 @@ import org.slf4j.LoggerFactory;
  * completes.
  *
  * <p>
+ * To avoid rewriting the entire database on every compaction, compacted data is organized as a two level
+ * log-structured merge tree: a large base array, which is only rewritten occasionally, plus a smaller delta array
+ * that holds the key/value pairs written since the base array was created, along with the key ranges removed from
+ * the base array. An ordinary compaction merges the outstanding changes into the delta array only, leaving the base
+ * array untouched; once the delta array grows beyond the {@linkplain #setCompactDeltaRatio compaction delta ratio}
+ * relative to the base array, the next compaction merges everything into a new base array instead.
+ *
+ * <p>
  * The number of bytes occupied by the in-memory change set and the length of the outstanding mutations log file are
  * related. Therefore, the compaction high-water mark loosely correlates to a maximum amount of memory required
  * by the in-memory change set.
@@ -108,7 +119,10 @@ import org.slf4j.LoggerFactory;
  * The {@linkplain #setDirectory database directory} is a required configuration property.
  *
  * <p>
- * Key and value data must not exceed 2GB (each separately).
+ * New array files are written using {@linkplain ArrayKVWriter#FORMAT_VERSION_2 format version 2}, which supports
+ * key and value data larger than 2GB; large files are memory-mapped in multiple segments. Array files written using
+ * {@linkplain ArrayKVWriter#FORMAT_VERSION_1 format version 1} remain readable; they are rewritten in the new format
+ * by the next compaction that rewrites them.
  *
  * <p>
  * Instances may be stopped and (re)started multiple times.
@@ -131,6 +145,16 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
      */
     public static final int DEFAULT_COMPACTION_HIGH_WATER = 1024 * 1024 * 1024;
 
+    /**
+     * Default compaction delta ratio ({@value #DEFAULT_COMPACTION_DELTA_RATIO}).
+     */
+    public static final float DEFAULT_COMPACTION_DELTA_RATIO = 0.25f;
+
+    /**
+     * Default setting for whether to cache base keys in memory ({@value #DEFAULT_CACHE_BASE_KEYS}).
+     */
+    public static final boolean DEFAULT_CACHE_BASE_KEYS = false;
+
     private static final int MIN_MMAP_LENGTH = 1024 * 1024;
 
     private static final String GENERATION_FILE_NAME = "gen";
@@ -139,6 +163,10 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     private static final String KEYS_FILE_NAME_BASE = "keys.";
     private static final String VALS_FILE_NAME_BASE = "vals.";
     private static final String MODS_FILE_NAME_BASE = "mods.";
+    private static final String DELTA_INDX_FILE_NAME_BASE = "dindx.";
+    private static final String DELTA_KEYS_FILE_NAME_BASE = "dkeys.";
+    private static final String DELTA_VALS_FILE_NAME_BASE = "dvals.";
+    private static final String DELTA_RMVS_FILE_NAME_BASE = "drmvs.";
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -159,11 +187,17 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     private int compactLowWater = DEFAULT_COMPACTION_LOW_WATER;
     @GuardedBy("lock")
     private int compactHighWater = DEFAULT_COMPACTION_HIGH_WATER;
+    @GuardedBy("lock")
+    private float compactDeltaRatio = DEFAULT_COMPACTION_DELTA_RATIO;
+    @GuardedBy("lock")
+    private boolean cacheBaseKeys = DEFAULT_CACHE_BASE_KEYS;
 
     // Runtime state
     @GuardedBy("lock")
     private long generation;
     @GuardedBy("lock")
+    private long baseGeneration;
+    @GuardedBy("lock")
     private boolean createdExecutorService;
     @GuardedBy("lock")
     private File generationFile;
@@ -178,6 +212,14 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     @GuardedBy("lock")
     private File valsFile;
     @GuardedBy("lock")
+    private File deltaIndxFile;                                         // null if no delta array
+    @GuardedBy("lock")
+    private File deltaKeysFile;                                         // null if no delta array
+    @GuardedBy("lock")
+    private File deltaValsFile;                                         // null if no delta array
+    @GuardedBy("lock")
+    private File deltaRmvsFile;                                         // null if no delta array
+    @GuardedBy("lock")
     private File modsFile;
     @GuardedBy("lock")
     private FileOutputStream modsFileOutput;
@@ -188,14 +230,20 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     @GuardedBy("lock")
     private long modsFileSyncPoint;
     @GuardedBy("lock")
-    private ByteBuffer indx;
+    private LargeByteBuffer indx;
     @GuardedBy("lock")
-    private ByteBuffer keys;
+    private LargeByteBuffer keys;
     @GuardedBy("lock")
-    private ByteBuffer vals;
+    private LargeByteBuffer vals;
     @GuardedBy("lock")
     private ArrayKVStore kvstore;
     @GuardedBy("lock")
+    private ArrayKVStore delta;                                         // null if no delta array
+    @GuardedBy("lock")
+    private KeyRanges deltaRemoves;                                     // null if no delta array
+    @GuardedBy("lock")
+    private KVStore compacted;                                          // base array + delta array
+    @GuardedBy("lock")
     private MutableView mods;
     @GuardedBy("lock")
     private Compaction compaction;
@@ -322,6 +370,59 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
     }
 
+    /**
+     * Configure the compaction delta ratio.
+     *
+     * <p>
+     * Normally, compaction merges outstanding modifications into the (relatively small) delta array only, so that
+     * data in the base array that has not been touched is not rewritten. When the size of the delta array plus
+     * the outstanding modifications reaches this fraction of the size of the base array, the next compaction
+     * instead merges everything into a new base array and starts over with an empty delta array.
+     *
+     * <p>
+     * Smaller values mean reads are faster and compactions rewrite the base array more often;
+     * a value of zero disables the delta array, so that every compaction rewrites the base array.
+     *
+     * @param compactDeltaRatio maximum size of the delta array as a fraction of the size of the base array
+     * @throws IllegalArgumentException if {@code compactDeltaRatio} is negative or NaN
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public void setCompactDeltaRatio(float compactDeltaRatio) {
+        Preconditions.checkArgument(compactDeltaRatio >= 0, "invalid value");
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore == null, "already started");
+            this.compactDeltaRatio = compactDeltaRatio;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Configure whether to keep an in-memory copy of every 32nd key in the base and delta arrays.
+     *
+     * <p>
+     * When enabled, lookups binary search the in-memory keys first, so they only access the memory-mapped
+     * array files to examine the final run of 32 keys. This costs roughly 1/32 of the size of the key data in memory,
+     * plus some per-key overhead, and requires reading those keys when the array files are opened.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_CACHE_BASE_KEYS}.
+     *
+     * @param cacheBaseKeys true to cache base keys in memory
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     * @see ArrayKVStore#ArrayKVStore(LargeByteBuffer, LargeByteBuffer, LargeByteBuffer, boolean)
+     */
+    public void setCacheBaseKeys(boolean cacheBaseKeys) {
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore == null, "already started");
+            this.cacheBaseKeys = cacheBaseKeys;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
 // Lifecycle
 
     @Override
@@ -343,12 +444,17 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             assert this.scheduledExecutorService == null;
             assert !this.createdExecutorService;
             assert this.generation == 0;
+            assert this.baseGeneration == 0;
             assert this.generationFile == null;
             assert this.lockFile == null;
             assert this.lockFileChannel == null;
             assert this.indxFile == null;
             assert this.keysFile == null;
             assert this.valsFile == null;
+            assert this.deltaIndxFile == null;
+            assert this.deltaKeysFile == null;
+            assert this.deltaValsFile == null;
+            assert this.deltaRmvsFile == null;
             assert this.modsFile == null;
             assert this.modsFileOutput == null;
             assert this.directoryChannel == null;
@@ -358,6 +464,9 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             assert this.keys == null;
             assert this.vals == null;
             assert this.kvstore == null;
+            assert this.delta == null;
+            assert this.deltaRemoves == null;
+            assert this.compacted == null;
             assert this.mods == null;
             assert this.firstModTimestamp == 0;
 
@@ -420,7 +529,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                         final String name = file.getName();
                         if (name.startsWith(INDX_FILE_NAME_BASE)
                           || name.startsWith(KEYS_FILE_NAME_BASE)
-                          || name.startsWith(VALS_FILE_NAME_BASE)) {
+                          || name.startsWith(VALS_FILE_NAME_BASE)
+                          || name.startsWith(DELTA_INDX_FILE_NAME_BASE)
+                          || name.startsWith(DELTA_KEYS_FILE_NAME_BASE)
+                          || name.startsWith(DELTA_VALS_FILE_NAME_BASE)
+                          || name.startsWith(DELTA_RMVS_FILE_NAME_BASE)) {
                             throw new ArrayKVException("database file inconsistency: found "
                               + name + " but not " + GENERATION_FILE_NAME + " in " + this.directory);
                         }
@@ -451,28 +564,41 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                     this.directoryChannel.force(false);
             }
 
-            // Read current generation number
+            // Read current generation number, followed by base array generation number if there is a delta array
             try (LineNumberReader reader = new LineNumberReader(
               new InputStreamReader(new FileInputStream(this.generationFile), "UTF-8"))) {
                 final String line = reader.readLine();
                 if (line == null)
                     throw new ArrayKVException("generation file " + this.generationFile + " is empty");
-                this.generation = Long.parseLong(line.trim(), 10);
-                if (this.generation < 0)
+                final String[] fields = line.trim().split("\\s+");
+                if (fields.length > 2)
+                    throw new ArrayKVException("invalid content in generation file " + this.generationFile);
+                this.generation = Long.parseLong(fields[0], 10);
+                this.baseGeneration = fields.length > 1 ? Long.parseLong(fields[1], 10) : this.generation;
+                if (this.generation < 0 || this.baseGeneration < 0)
                     throw new ArrayKVException("read negative generation number from " + this.generationFile);
-            } catch (Exception e) {
+                if (this.baseGeneration > this.generation)
+                    throw new ArrayKVException("read invalid base generation number from " + this.generationFile);
+            } catch (IOException | NumberFormatException e) {
                 throw new ArrayKVException("error reading generation file", e);
             }
 
             // Set corresponding filenames
-            this.indxFile = new File(this.directory, INDX_FILE_NAME_BASE + this.generation);
-            this.keysFile = new File(this.directory, KEYS_FILE_NAME_BASE + this.generation);
-            this.valsFile = new File(this.directory, VALS_FILE_NAME_BASE + this.generation);
+            this.indxFile = new File(this.directory, INDX_FILE_NAME_BASE + this.baseGeneration);
+            this.keysFile = new File(this.directory, KEYS_FILE_NAME_BASE + this.baseGeneration);
+            this.valsFile = new File(this.directory, VALS_FILE_NAME_BASE + this.baseGeneration);
+            if (this.baseGeneration < this.generation) {
+                this.deltaIndxFile = new File(this.directory, DELTA_INDX_FILE_NAME_BASE + this.generation);
+                this.deltaKeysFile = new File(this.directory, DELTA_KEYS_FILE_NAME_BASE + this.generation);
+                this.deltaValsFile = new File(this.directory, DELTA_VALS_FILE_NAME_BASE + this.generation);
+                this.deltaRmvsFile = new File(this.directory, DELTA_RMVS_FILE_NAME_BASE + this.generation);
+            }
             this.modsFile = new File(this.directory, MODS_FILE_NAME_BASE + this.generation);
 
             // Scan directory for unexpected files
             final List<File> expectedFiles = Arrays.asList(this.lockFile, this.generationFile,
-              this.indxFile, this.keysFile, this.valsFile, this.modsFile);
+              this.indxFile, this.keysFile, this.valsFile, this.deltaIndxFile, this.deltaKeysFile,
+              this.deltaValsFile, this.deltaRmvsFile, this.modsFile);
             try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory.toPath())) {
                 for (Path path : paths) {
                     final File file = path.toFile();
@@ -492,9 +618,32 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 this.vals = AtomicArrayKVStore.getBuffer(this.valsFile, input.getChannel());
             }
 
-            // Set up underlying k/v store and uncompacted modifications
-            this.kvstore = new ArrayKVStore(this.indx, this.keys, this.vals);
-            this.mods = new MutableView(this.kvstore, null, new Writes());
+            // Set up underlying k/v store
+            this.kvstore = new ArrayKVStore(this.indx, this.keys, this.vals, this.cacheBaseKeys);
+
+            // Set up delta array, if any
+            if (this.deltaIndxFile != null) {
+                final LargeByteBuffer deltaIndx;
+                final LargeByteBuffer deltaKeys;
+                final LargeByteBuffer deltaVals;
+                try (FileInputStream input = new FileInputStream(this.deltaIndxFile)) {
+                    deltaIndx = AtomicArrayKVStore.getBuffer(this.deltaIndxFile, input.getChannel());
+                }
+                try (FileInputStream input = new FileInputStream(this.deltaKeysFile)) {
+                    deltaKeys = AtomicArrayKVStore.getBuffer(this.deltaKeysFile, input.getChannel());
+                }
+                try (FileInputStream input = new FileInputStream(this.deltaValsFile)) {
+                    deltaVals = AtomicArrayKVStore.getBuffer(this.deltaValsFile, input.getChannel());
+                }
+                this.delta = new ArrayKVStore(deltaIndx, deltaKeys, deltaVals, this.cacheBaseKeys);
+                try (FileInputStream input = new FileInputStream(this.deltaRmvsFile)) {
+                    this.deltaRemoves = new KeyRanges(new BufferedInputStream(input), true);
+                }
+            }
+            this.compacted = AtomicArrayKVStore.layer(this.kvstore, this.delta, this.deltaRemoves);
+
+            // Set up uncompacted modifications
+            this.mods = new MutableView(this.compacted, null, new Writes());
 
             // Setup modifications file
             this.modsFileOutput = new FileOutputStream(this.modsFile, true);
@@ -610,12 +759,17 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
 
         // Reset state
         this.generation = 0;
+        this.baseGeneration = 0;
         this.generationFile = null;
         this.lockFile = null;
         this.lockFileChannel = null;
         this.indxFile = null;
         this.keysFile = null;
         this.valsFile = null;
+        this.deltaIndxFile = null;
+        this.deltaKeysFile = null;
+        this.deltaValsFile = null;
+        this.deltaRmvsFile = null;
         this.modsFile = null;
         this.modsFileOutput = null;
         this.directoryChannel = null;
@@ -625,6 +779,9 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         this.keys = null;
         this.vals = null;
         this.kvstore = null;
+        this.delta = null;
+        this.deltaRemoves = null;
+        this.compacted = null;
         this.mods = null;
         this.firstModTimestamp = 0;
     }
@@ -735,10 +892,10 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
 
             // Clone the modifications currrently being compacted, if any
             Writes compactingWrites = null;
-            if (this.mods.getKVStore() instanceof MutableView) {                            // we are compacting
+            if (this.mods.getKVStore() != this.compacted) {                                 // we are compacting
                 assert this.compaction != null;
                 final MutableView compactingMods = (MutableView)this.mods.getKVStore();
-                assert compactingMods.getKVStore() == this.kvstore;
+                assert compactingMods.getKVStore() == this.compacted;
                 synchronized (compactingMods) {
                     if (!compactingMods.getWrites().isEmpty())
                         compactingWrites = compactingMods.getWrites().immutableSnapshot();
@@ -754,7 +911,7 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             }
 
             // Build snapshot by layering uncompacted modifications on top
-            KVStore snapshot = this.kvstore;
+            KVStore snapshot = this.compacted;
             if (compactingWrites != null)
                 snapshot = new MutableView(snapshot, null, compactingWrites);
             if (outstandingWrites != null)
@@ -909,6 +1066,164 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
     }
 
+// Bulk Loading
+
+    /**
+     * Load a sorted stream of key/value pairs into this instance.
+     *
+     * <p>
+     * If this instance is empty, the key/value pairs are written directly into a new base array, bypassing the mutation
+     * log and in-memory change set entirely; other threads' reads and writes block until the load completes.
+     * Otherwise, the key/value pairs are applied via {@link #mutate mutate()} as described in {@link AtomicKVStore#bulkLoad}.
+     *
+     * @param pairs key/value pairs in strictly increasing key order
+     * @return the number of key/value pairs loaded
+     * @throws IllegalArgumentException if {@code pairs} is null
+     * @throws IllegalArgumentException if the keys in {@code pairs} are not strictly increasing
+     * @throws IllegalStateException if this instance is not started
+     * @throws ArrayKVException if an I/O error occurs
+     */
+    @Override
+    public long bulkLoad(Iterator<KVPair> pairs) {
+        Preconditions.checkArgument(pairs != null, "null pairs");
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore != null, "not started");
+            if (this.compaction == null
+              && this.hotCopiesInProgress == 0
+              && this.modsFileLength == 0
+              && this.mods.getWrites().isEmpty()
+              && this.delta == null
+              && this.kvstore.getAtLeast(null, null) == null)
+                return this.bulkLoadEmpty(pairs);
+        } finally {
+            this.writeLock.unlock();
+        }
+        return AtomicKVStore.super.bulkLoad(pairs);
+    }
+
+    private long bulkLoadEmpty(Iterator<KVPair> pairs) {
+
+        // Sanity check
+        assert this.lock.isWriteLockedByCurrentThread();
+        final long startTime = System.nanoTime();
+
+        // Create the next generation
+        final long newGeneration = this.generation + 1;
+        final File newIndxFile = new File(this.directory, INDX_FILE_NAME_BASE + newGeneration);
+        final File newKeysFile = new File(this.directory, KEYS_FILE_NAME_BASE + newGeneration);
+        final File newValsFile = new File(this.directory, VALS_FILE_NAME_BASE + newGeneration);
+        final File newModsFile = new File(this.directory, MODS_FILE_NAME_BASE + newGeneration);
+        if (this.log.isDebugEnabled())
+            this.log.debug("starting bulk load for generation " + this.generation + " -> " + newGeneration);
+        FileOutputStream newModsFileOutput = null;
+        boolean success = false;
+        long count = 0;
+        try {
+
+            // Write key/value pairs directly into new base array files
+            try (
+              final FileOutputStream indxOutput = new FileOutputStream(newIndxFile);
+              final FileOutputStream keysOutput = new FileOutputStream(newKeysFile);
+              final FileOutputStream valsOutput = new FileOutputStream(newValsFile);
+              final ArrayKVWriter arrayWriter = new ArrayKVWriter(indxOutput, keysOutput, valsOutput)) {
+                while (pairs.hasNext()) {
+                    final KVPair pair = pairs.next();
+                    arrayWriter.writeKV(pair.getKey(), pair.getValue());
+                    count++;
+                }
+
+                // Sync file data
+                arrayWriter.flush();
+                valsOutput.getChannel().force(false);
+                keysOutput.getChannel().force(false);
+                indxOutput.getChannel().force(false);
+            }
+
+            // Create byte buffers from new files
+            final LargeByteBuffer newIndx;
+            final LargeByteBuffer newKeys;
+            final LargeByteBuffer newVals;
+            try (FileInputStream input = new FileInputStream(newIndxFile)) {
+                newIndx = AtomicArrayKVStore.getBuffer(newIndxFile, input.getChannel());
+            }
+            try (FileInputStream input = new FileInputStream(newKeysFile)) {
+                newKeys = AtomicArrayKVStore.getBuffer(newKeysFile, input.getChannel());
+            }
+            try (FileInputStream input = new FileInputStream(newValsFile)) {
+                newVals = AtomicArrayKVStore.getBuffer(newValsFile, input.getChannel());
+            }
+            final ArrayKVStore newArray = new ArrayKVStore(newIndx, newKeys, newVals, this.cacheBaseKeys);
+
+            // Create new, empty mods file
+            newModsFileOutput = new FileOutputStream(newModsFile, true);
+
+            // Sync directory
+            if (this.directoryChannel != null)
+                this.directoryChannel.force(false);
+
+            // Update generation file
+            this.writeGenerationFile(newGeneration, newGeneration);
+            success = true;
+
+            // Remember old info so we can clean it up
+            final List<File> oldFiles = Arrays.asList(this.indxFile, this.keysFile, this.valsFile, this.modsFile);
+            final FileOutputStream oldModsFileOutput = this.modsFileOutput;
+
+            // Change to the new generation
+            this.generation = newGeneration;
+            this.baseGeneration = newGeneration;
+            this.indx = newIndx;
+            this.keys = newKeys;
+            this.vals = newVals;
+            this.indxFile = newIndxFile;
+            this.keysFile = newKeysFile;
+            this.valsFile = newValsFile;
+            this.kvstore = newArray;
+            this.compacted = AtomicArrayKVStore.layer(this.kvstore, null, null);
+            this.modsFile = newModsFile;
+            this.modsFileOutput = newModsFileOutput;
+            newModsFileOutput = null;
+            this.modsFileLength = 0;
+            this.modsFileSyncPoint = 0;
+            this.mods = new MutableView(this.compacted, null, new Writes());
+            this.firstModTimestamp = 0;
+
+            // Sync directory prior to deleting files
+            if (this.directoryChannel != null) {
+                try {
+                    this.directoryChannel.force(false);
+                } catch (IOException e) {
+                    this.log.error("error syncing directory " + this.directory + " (ignoring)", e);
+                }
+            }
+
+            // Close old mods file output stream and delete old files
+            this.closeIgnoreException(oldModsFileOutput);
+            for (File oldFile : oldFiles)
+                this.deleteWarnException(oldFile);
+        } catch (IOException e) {
+            throw new ArrayKVException("error writing bulk loaded array files", e);
+        } finally {
+            if (newModsFileOutput != null)
+                this.closeIgnoreException(newModsFileOutput);
+            if (!success) {
+                for (File file : new File[] { newIndxFile, newKeysFile, newValsFile, newModsFile }) {
+                    if (file.exists())
+                        this.deleteWarnException(file);
+                }
+            }
+        }
+
+        // Done
+        if (this.log.isDebugEnabled()) {
+            final float duration = (System.nanoTime() - startTime) / 1000000000f;
+            this.log.debug("bulk load for generation " + newGeneration + " wrote " + count + " key/value pairs in "
+              + String.format("%.4f", duration) + " seconds");
+        }
+        return count;
+    }
+
 // Hot Copy
 
     /**
@@ -971,8 +1286,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             this.log.debug("started hot copy into " + target);
 
             // Copy index, keys, and values files using hard links (if possible) as these files are read-only
-            final ArrayList<File> regularCopyFiles = new ArrayList<>(5);
-            for (File file : new File[] { this.indxFile, this.keysFile, this.valsFile }) {
+            final ArrayList<File> regularCopyFiles = new ArrayList<>(9);
+            for (File file : new File[] { this.indxFile, this.keysFile, this.valsFile,
+              this.deltaIndxFile, this.deltaKeysFile, this.deltaValsFile, this.deltaRmvsFile }) {
+                if (file == null)
+                    continue;
                 try {
                     Files.createLink(dir.resolve(file.getName()), file.toPath());
                 } catch (IOException | UnsupportedOperationException e) {
@@ -1145,6 +1463,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             final Writes writesToCompact;
             final long previousModsFileLength;
             final long previousModsFileSyncPoint;
+            final KVStore oldCompacted;
+            final ArrayKVStore oldDelta;
+            final KeyRanges oldDeltaRemoves;
+            final boolean major;
+            final boolean cacheBaseKeys;
             this.writeLock.lock();
             try {
 
@@ -1186,23 +1509,43 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 this.mods = new MutableView(this.mods, null, new Writes());
                 previousModsFileLength = this.modsFileLength;
                 previousModsFileSyncPoint = this.modsFileSyncPoint;
+                oldCompacted = this.compacted;
+                oldDelta = this.delta;
+                oldDeltaRemoves = this.deltaRemoves;
+
+                // Decide whether to merge into the delta array, or rewrite the base array
+                long deltaLength = previousModsFileLength;
+                if (oldDelta != null) {
+                    deltaLength += this.deltaIndxFile.length() + this.deltaKeysFile.length()
+                      + this.deltaValsFile.length() + this.deltaRmvsFile.length();
+                }
+                final long baseLength = this.indx.capacity() + this.keys.capacity() + this.vals.capacity();
+                major = deltaLength >= this.compactDeltaRatio * baseLength;
+                cacheBaseKeys = this.cacheBaseKeys;
             } finally {
                 this.writeLock.unlock();
             }
             if (this.log.isDebugEnabled()) {
                 this.log.debug("starting compaction for generation " + this.generation + " -> " + (this.generation + 1)
-                  + " with mods file length " + previousModsFileLength);
+                  + " with mods file length " + previousModsFileLength + " into " + (major ? "base" : "delta") + " array");
             }
 
             // Create the next generation
             final long newGeneration = this.generation + 1;
-            final File newIndxFile = new File(this.directory, INDX_FILE_NAME_BASE + newGeneration);
-            final File newKeysFile = new File(this.directory, KEYS_FILE_NAME_BASE + newGeneration);
-            final File newValsFile = new File(this.directory, VALS_FILE_NAME_BASE + newGeneration);
+            final long newBaseGeneration = major ? newGeneration : this.baseGeneration;
+            final File newIndxFile = new File(this.directory,
+              (major ? INDX_FILE_NAME_BASE : DELTA_INDX_FILE_NAME_BASE) + newGeneration);
+            final File newKeysFile = new File(this.directory,
+              (major ? KEYS_FILE_NAME_BASE : DELTA_KEYS_FILE_NAME_BASE) + newGeneration);
+            final File newValsFile = new File(this.directory,
+              (major ? VALS_FILE_NAME_BASE : DELTA_VALS_FILE_NAME_BASE) + newGeneration);
+            final File newRmvsFile = !major ? new File(this.directory, DELTA_RMVS_FILE_NAME_BASE + newGeneration) : null;
             final File newModsFile = new File(this.directory, MODS_FILE_NAME_BASE + newGeneration);
-            ByteBuffer newIndx = null;
-            ByteBuffer newKeys = null;
-            ByteBuffer newVals = null;
+            LargeByteBuffer newIndx = null;
+            LargeByteBuffer newKeys = null;
+            LargeByteBuffer newVals = null;
+            ArrayKVStore newArray = null;
+            KeyRanges newDeltaRemoves = null;
             FileOutputStream newModsFileOutput = null;
             boolean success = false;
             try {
@@ -1214,9 +1557,19 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                   final FileOutputStream valsOutput = new FileOutputStream(newValsFile);
                   final ArrayKVWriter arrayWriter = new ArrayKVWriter(indxOutput, keysOutput, valsOutput)) {
 
-                    // Write out merged key/value pairs
-                    try (CloseableIterator<KVPair> i = this.kvstore.getRange(null, null)) {
-                        arrayWriter.writeMerged(this.kvstore, i, writesToCompact);
+                    // Write out merged key/value pairs; when writing a delta array, the base array is not read at all
+                    if (major) {
+                        try (CloseableIterator<KVPair> i = oldCompacted.getRange(null, null)) {
+                            arrayWriter.writeMerged(oldCompacted, i, writesToCompact);
+                        }
+                    } else {
+                        final Writes deltaWrites = this.resolveCounterAdjustments(oldCompacted, writesToCompact);
+                        if (oldDelta != null) {
+                            try (CloseableIterator<KVPair> i = oldDelta.getRange(null, null)) {
+                                arrayWriter.writeMerged(oldCompacted, i, deltaWrites);
+                            }
+                        } else
+                            arrayWriter.writeMerged(oldCompacted, Collections.<KVPair>emptyIterator(), deltaWrites);
                     }
 
                     // Sync file data
@@ -1229,6 +1582,20 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 assert newKeysFile.exists();
                 assert newValsFile.exists();
 
+                // Write out the key ranges removed from the base array
+                if (!major) {
+                    newDeltaRemoves = oldDeltaRemoves != null ? oldDeltaRemoves.clone() : new KeyRanges();
+                    newDeltaRemoves.add(writesToCompact.getRemoves());
+                    newDeltaRemoves = newDeltaRemoves.immutableSnapshot();
+                    try (FileOutputStream rmvsOutput = new FileOutputStream(newRmvsFile)) {
+                        final BufferedOutputStream buf = new BufferedOutputStream(rmvsOutput);
+                        newDeltaRemoves.serialize(buf);
+                        buf.flush();
+                        rmvsOutput.getChannel().force(false);
+                    }
+                    assert newRmvsFile.exists();
+                }
+
                 // Create byte buffers from new files
                 try (FileInputStream input = new FileInputStream(newIndxFile)) {
                     newIndx = AtomicArrayKVStore.getBuffer(newIndxFile, input.getChannel());
@@ -1239,6 +1606,7 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 try (FileInputStream input = new FileInputStream(newValsFile)) {
                     newVals = AtomicArrayKVStore.getBuffer(newValsFile, input.getChannel());
                 }
+                newArray = new ArrayKVStore(newIndx, newKeys, newVals, cacheBaseKeys);
 
                 // Create new, empty mods file
                 newModsFileOutput = new FileOutputStream(newModsFile, true);
@@ -1310,47 +1678,60 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                             }
                         }
 
-                        // Atomically update new generation file contents, except on Windows where that's impossible
-                        final FileOutputStream genOutput = !this.suckyOS ?
-                          new AtomicUpdateFileOutputStream(this.generationFile) : new FileOutputStream(this.generationFile);
-                        boolean genSuccess = false;
-                        try {
-                            genOutput.write((newGeneration + "\n").getBytes(StandardCharsets.UTF_8));
-                            genOutput.flush();
-                            genOutput.getChannel().force(false);
-                            genSuccess = true;
-                        } finally {
-                            if (genSuccess)
-                                genOutput.close();
-                            else if (genOutput instanceof AtomicUpdateFileOutputStream)
-                                ((AtomicUpdateFileOutputStream)genOutput).cancel();
-                        }
+                        // Update generation file
+                        this.writeGenerationFile(newGeneration, newBaseGeneration);
 
                         // Declare success
                         success = true;
 
                         // Remember old info so we can clean it up
-                        final File oldIndxFile = this.indxFile;
-                        final File oldKeysFile = this.keysFile;
-                        final File oldValsFile = this.valsFile;
-                        final File oldModsFile = this.modsFile;
+                        final ArrayList<File> oldFiles = new ArrayList<>(8);
+                        if (major) {
+                            oldFiles.add(this.indxFile);
+                            oldFiles.add(this.keysFile);
+                            oldFiles.add(this.valsFile);
+                        }
+                        if (oldDelta != null) {
+                            oldFiles.add(this.deltaIndxFile);
+                            oldFiles.add(this.deltaKeysFile);
+                            oldFiles.add(this.deltaValsFile);
+                            oldFiles.add(this.deltaRmvsFile);
+                        }
+                        oldFiles.add(this.modsFile);
                         final FileOutputStream oldModsFileOutput = this.modsFileOutput;
 
                         // Change to the new generation
                         this.generation = newGeneration;
-                        this.indx = newIndx;
-                        this.keys = newKeys;
-                        this.vals = newVals;
-                        this.indxFile = newIndxFile;
-                        this.keysFile = newKeysFile;
-                        this.valsFile = newValsFile;
+                        this.baseGeneration = newBaseGeneration;
+                        if (major) {
+                            this.indx = newIndx;
+                            this.keys = newKeys;
+                            this.vals = newVals;
+                            this.indxFile = newIndxFile;
+                            this.keysFile = newKeysFile;
+                            this.valsFile = newValsFile;
+                            this.kvstore = newArray;
+                            this.deltaIndxFile = null;
+                            this.deltaKeysFile = null;
+                            this.deltaValsFile = null;
+                            this.deltaRmvsFile = null;
+                            this.delta = null;
+                            this.deltaRemoves = null;
+                        } else {
+                            this.deltaIndxFile = newIndxFile;
+                            this.deltaKeysFile = newKeysFile;
+                            this.deltaValsFile = newValsFile;
+                            this.deltaRmvsFile = newRmvsFile;
+                            this.delta = newArray;
+                            this.deltaRemoves = newDeltaRemoves;
+                        }
+                        this.compacted = AtomicArrayKVStore.layer(this.kvstore, this.delta, this.deltaRemoves);
                         this.modsFile = newModsFile;
                         this.modsFileOutput = newModsFileOutput;
                         newModsFileOutput = null;
                         this.modsFileLength = newModsFileLength;
                         this.modsFileSyncPoint = newModsFileSyncPoint;
-                        this.kvstore = new ArrayKVStore(this.indx, this.keys, this.vals);
-                        this.mods = new MutableView(this.kvstore, null, this.mods.getWrites());
+                        this.mods = new MutableView(this.compacted, null, this.mods.getWrites());
                         if (additionalModsLength == 0)
                             this.firstModTimestamp = 0;
                         else {
@@ -1371,10 +1752,8 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                         this.closeIgnoreException(oldModsFileOutput);
 
                         // Delete old files
-                        this.deleteWarnException(oldIndxFile);
-                        this.deleteWarnException(oldKeysFile);
-                        this.deleteWarnException(oldValsFile);
-                        this.deleteWarnException(oldModsFile);
+                        for (File oldFile : oldFiles)
+                            this.deleteWarnException(oldFile);
                     }
                 } finally {
                     try {
@@ -1396,13 +1775,15 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
 
                             // Put back the old uncompacted modifications, and merge any new mods into them
                             final Writes writesDuringCompaction = this.mods.getWrites();
-                            this.mods = new MutableView(this.kvstore, null, writesToCompact);
+                            this.mods = new MutableView(this.compacted, null, writesToCompact);
                             writesDuringCompaction.applyTo(this.mods);
 
                             // Delete the files we were creating
                             this.deleteWarnException(newIndxFile);
                             this.deleteWarnException(newKeysFile);
                             this.deleteWarnException(newValsFile);
+                            if (newRmvsFile != null)
+                                this.deleteWarnException(newRmvsFile);
                         }
                     } finally {
                         this.writeLock.unlock();
@@ -1424,6 +1805,57 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
     }
 
+    // Atomically update generation file contents, except on Windows where that's impossible
+    private void writeGenerationFile(long newGeneration, long newBaseGeneration) throws IOException {
+        final FileOutputStream genOutput = !this.suckyOS ?
+          new AtomicUpdateFileOutputStream(this.generationFile) : new FileOutputStream(this.generationFile);
+        boolean genSuccess = false;
+        try {
+            final String genLine = newGeneration + (newBaseGeneration != newGeneration ? " " + newBaseGeneration : "") + "\n";
+            genOutput.write(genLine.getBytes(StandardCharsets.UTF_8));
+            genOutput.flush();
+            genOutput.getChannel().force(false);
+            genSuccess = true;
+        } finally {
+            if (genSuccess)
+                genOutput.close();
+            else if (genOutput instanceof AtomicUpdateFileOutputStream)
+                ((AtomicUpdateFileOutputStream)genOutput).cancel();
+        }
+    }
+
+    /**
+     * Convert counter adjustments into puts by applying them to the current compacted data, because
+     * the delta array has no way to represent adjustments to values that live in the base array.
+     */
+    private Writes resolveCounterAdjustments(KVStore kv, Writes writes) {
+        if (writes.getAdjusts().isEmpty())
+            return writes;
+        final Writes resolved = writes.clone();
+        resolved.getAdjusts().clear();
+        for (Map.Entry<byte[], Long> entry : writes.getAdjusts().entrySet()) {
+            final byte[] key = entry.getKey();
+            final byte[] value = kv.get(key);
+            if (value == null)                                          // adjusted a non-existent value; ignore
+                continue;
+            final long counter;
+            try {
+                counter = kv.decodeCounter(value);
+            } catch (IllegalArgumentException e) {                      // adjusted a non-counter value; ignore
+                continue;
+            }
+            resolved.getPuts().put(key, kv.encodeCounter(counter + entry.getValue()));
+        }
+        return resolved;
+    }
+
+    /**
+     * Build a view of the compacted data, which consists of the base array with the delta array (if any) layered on top.
+     */
+    private static KVStore layer(ArrayKVStore base, ArrayKVStore delta, KeyRanges deltaRemoves) {
+        return delta != null ? new LayeredKVStore(base, delta, deltaRemoves) : base;
+    }
+
     private boolean isWindows() {
         return System.getProperty("os.name", "generic").toLowerCase(Locale.ENGLISH).contains("win");
     }
@@ -1595,11 +2027,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         return this.getClass().getSimpleName() + "[" + this.directory + "]";
     }
 
-    private static ByteBuffer getBuffer(File file, FileChannel fileChannel) throws IOException {
+    private static LargeByteBuffer getBuffer(File file, FileChannel fileChannel) throws IOException {
         final long length = fileChannel.size();
         return length >= MIN_MMAP_LENGTH ?
-          fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length) :
-          ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asReadOnlyBuffer();
+          LargeByteBuffer.map(fileChannel, length) :
+          LargeByteBuffer.wrap(ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asReadOnlyBuffer());
     }
 }
 
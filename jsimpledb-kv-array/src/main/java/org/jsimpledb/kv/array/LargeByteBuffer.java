@@ -0,0 +1,210 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.array;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, 64-bit addressable sequence of bytes made up of one or more {@link ByteBuffer} segments.
+ *
+ * <p>
+ * This class exists because a single {@link ByteBuffer} (in particular, a single {@link java.nio.MappedByteBuffer})
+ * is limited to 2<sup>31</sup>-1 bytes. All segments except the last must have the same power-of-two capacity;
+ * the last segment may be smaller. Reads that straddle a segment boundary are handled transparently.
+ *
+ * <p>
+ * Instances only perform absolute reads and are therefore thread safe.
+ */
+public final class LargeByteBuffer {
+
+    /**
+     * Segment size used by {@link #map map()} ({@value #MAP_SEGMENT_SIZE} bytes).
+     */
+    public static final int MAP_SEGMENT_SIZE = 1 << 30;
+
+    private final ByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long capacity;
+
+    // Direct access to the data when there is a single heap buffer segment; otherwise null
+    private final byte[] array;
+    private final int arrayOffset;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The buffers' positions and limits are ignored; each segment consists of the entire capacity of the corresponding buffer.
+     *
+     * @param segments buffer segments
+     * @throws IllegalArgumentException if {@code segments} is null, empty, or contains a null element
+     * @throws IllegalArgumentException if any segment other than the last does not have the same power-of-two capacity
+     * @throws IllegalArgumentException if the last segment is larger than the other segments
+     */
+    public LargeByteBuffer(ByteBuffer... segments) {
+        Preconditions.checkArgument(segments != null, "null segments");
+        Preconditions.checkArgument(segments.length > 0, "empty segments");
+        this.segments = new ByteBuffer[segments.length];
+        long total = 0;
+        for (int i = 0; i < segments.length; i++) {
+            Preconditions.checkArgument(segments[i] != null, "null segment");
+            this.segments[i] = segments[i].duplicate();
+            this.segments[i].limit(this.segments[i].capacity());
+            total += this.segments[i].capacity();
+        }
+        this.capacity = total;
+        if (segments.length == 1)
+            this.segmentShift = 31;
+        else {
+            final int segmentSize = this.segments[0].capacity();
+            Preconditions.checkArgument(segmentSize > 0 && Integer.bitCount(segmentSize) == 1,
+              "segment size is not a power of two");
+            for (int i = 1; i < segments.length - 1; i++)
+                Preconditions.checkArgument(this.segments[i].capacity() == segmentSize, "inconsistent segment sizes");
+            Preconditions.checkArgument(this.segments[segments.length - 1].capacity() <= segmentSize, "last segment is too large");
+            this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        }
+        this.segmentMask = (1L << this.segmentShift) - 1;
+        if (segments.length == 1 && this.segments[0].hasArray()) {
+            this.array = this.segments[0].array();
+            this.arrayOffset = this.segments[0].arrayOffset();
+        } else {
+            this.array = null;
+            this.arrayOffset = 0;
+        }
+    }
+
+    /**
+     * Create an instance wrapping a single {@link ByteBuffer}.
+     *
+     * @param buf buffer
+     * @return large buffer containing the entire capacity of {@code buf}
+     * @throws IllegalArgumentException if {@code buf} is null
+     */
+    public static LargeByteBuffer wrap(ByteBuffer buf) {
+        Preconditions.checkArgument(buf != null, "null buf");
+        return new LargeByteBuffer(buf);
+    }
+
+    /**
+     * Create an instance by memory-mapping the first {@code length} bytes of the given file into one or more
+     * read-only segments of {@value #MAP_SEGMENT_SIZE} bytes.
+     *
+     * @param fileChannel file to map
+     * @param length number of bytes to map
+     * @return large buffer containing the mapped file
+     * @throws IllegalArgumentException if {@code fileChannel} is null
+     * @throws IllegalArgumentException if {@code length} is negative
+     * @throws IOException if an I/O error occurs
+     */
+    public static LargeByteBuffer map(FileChannel fileChannel, long length) throws IOException {
+        Preconditions.checkArgument(fileChannel != null, "null fileChannel");
+        Preconditions.checkArgument(length >= 0, "negative length");
+        final int numSegments = Math.max(1, (int)((length + MAP_SEGMENT_SIZE - 1) / MAP_SEGMENT_SIZE));
+        final ByteBuffer[] segments = new ByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            final long offset = (long)i * MAP_SEGMENT_SIZE;
+            segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_SEGMENT_SIZE, length - offset));
+        }
+        return new LargeByteBuffer(segments);
+    }
+
+    /**
+     * Get the total number of bytes in this instance.
+     *
+     * @return capacity in bytes
+     */
+    public long capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Read the byte at the specified position.
+     *
+     * @param position byte offset
+     * @return byte at {@code position}
+     * @throws IndexOutOfBoundsException if {@code position} is out of range
+     */
+    public byte get(long position) {
+        if (this.array != null) {
+            if (position < 0 || position >= this.capacity)
+                throw new IndexOutOfBoundsException("position " + position + " is out of range");
+            return this.array[this.arrayOffset + (int)position];
+        }
+        return this.segments[(int)(position >>> this.segmentShift)].get((int)(position & this.segmentMask));
+    }
+
+    /**
+     * Read the big endian 32-bit value at the specified position.
+     *
+     * @param position byte offset
+     * @return value at {@code position}
+     * @throws IndexOutOfBoundsException if {@code position} is out of range
+     */
+    public int getInt(long position) {
+        final int segmentOffset = (int)(position & this.segmentMask);
+        final ByteBuffer segment = this.segments[(int)(position >>> this.segmentShift)];
+        if (segmentOffset + 4 <= segment.capacity())
+            return segment.getInt(segmentOffset);
+        return (this.get(position) & 0xff) << 24
+          | (this.get(position + 1) & 0xff) << 16
+          | (this.get(position + 2) & 0xff) << 8
+          | (this.get(position + 3) & 0xff);
+    }
+
+    /**
+     * Read the big endian 64-bit value at the specified position.
+     *
+     * @param position byte offset
+     * @return value at {@code position}
+     * @throws IndexOutOfBoundsException if {@code position} is out of range
+     */
+    public long getLong(long position) {
+        final int segmentOffset = (int)(position & this.segmentMask);
+        final ByteBuffer segment = this.segments[(int)(position >>> this.segmentShift)];
+        if (segmentOffset + 8 <= segment.capacity())
+            return segment.getLong(segmentOffset);
+        return (long)this.getInt(position) << 32 | (this.getInt(position + 4) & 0xffffffffL);
+    }
+
+    /**
+     * Perform a bulk read.
+     *
+     * @param position starting byte offset
+     * @param dest destination array
+     * @param off offset into {@code dest}
+     * @param len number of bytes to read
+     * @return {@code dest}
+     * @throws IndexOutOfBoundsException if any bytes are out of range
+     */
+    public byte[] get(long position, byte[] dest, int off, int len) {
+        if (position < 0 || len < 0 || position > this.capacity - len)
+            throw new IndexOutOfBoundsException("range " + position + "+" + len + " is out of bounds");
+        if (this.array != null) {
+            System.arraycopy(this.array, this.arrayOffset + (int)position, dest, off, len);
+            return dest;
+        }
+        while (len > 0) {
+            final ByteBuffer segment = this.segments[(int)(position >>> this.segmentShift)];
+            final int segmentOffset = (int)(position & this.segmentMask);
+            final int chunk = Math.min(len, segment.capacity() - segmentOffset);
+            if (chunk < 128) {                          // 128 is a wild guess TODO: determine through performance testing
+                for (int i = 0; i < chunk; i++)
+                    dest[off + i] = segment.get(segmentOffset + i);
+            } else
+                ((ByteBuffer)segment.duplicate().position(segmentOffset)).get(dest, off, chunk);
+            position += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+        return dest;
+    }
+}
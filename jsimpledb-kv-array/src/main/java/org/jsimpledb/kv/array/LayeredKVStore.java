@@ -0,0 +1,159 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.array;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.UnmodifiableIterator;
+
+import java.util.NoSuchElementException;
+
+import org.jsimpledb.kv.AbstractKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVPairIterator;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.CloseableIterator;
+
+/**
+ * Read-only view of the compacted data in an {@link AtomicArrayKVStore}, consisting of a base {@link ArrayKVStore}
+ * with a delta {@link ArrayKVStore} and a set of removed key ranges layered on top.
+ *
+ * <p>
+ * Key/value pairs in the delta array take precedence over those in the base array; key/value pairs in the base array
+ * that fall within one of the removed key ranges are not visible.
+ *
+ * <p>
+ * Instances are immutable and thread safe; no locking is required.
+ */
+class LayeredKVStore extends AbstractKVStore {
+
+    private final ArrayKVStore base;
+    private final ArrayKVStore delta;
+    private final KeyRanges visible;                    // the keys in base that are not removed
+
+    /**
+     * Constructor.
+     *
+     * @param base base key/value pairs
+     * @param delta delta key/value pairs, which override {@code base}
+     * @param deltaRemoves key ranges removed from {@code base}
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    LayeredKVStore(ArrayKVStore base, ArrayKVStore delta, KeyRanges deltaRemoves) {
+        Preconditions.checkArgument(base != null, "null base");
+        Preconditions.checkArgument(delta != null, "null delta");
+        Preconditions.checkArgument(deltaRemoves != null, "null deltaRemoves");
+        this.base = base;
+        this.delta = delta;
+        this.visible = deltaRemoves.inverse().immutableSnapshot();
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        final byte[] value = this.delta.get(key);
+        if (value != null)
+            return value;
+        return this.visible.contains(key) ? this.base.get(key) : null;
+    }
+
+    @Override
+    public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        if (maxKey != null && ByteUtil.compare(minKey, maxKey) > 0)
+            maxKey = minKey;
+        final KVPairIterator baseIterator = new KVPairIterator(this.base, new KeyRange(minKey, maxKey), this.visible, reverse);
+        return new MergeIterator(baseIterator, this.delta.getRange(minKey, maxKey, reverse), reverse);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        throw new UnsupportedOperationException();
+    }
+
+// MergeIterator
+
+    private static class MergeIterator extends UnmodifiableIterator<KVPair> implements CloseableIterator<KVPair> {
+
+        private final CloseableIterator<KVPair> baseIterator;
+        private final CloseableIterator<KVPair> deltaIterator;
+        private final boolean reverse;
+
+        private KVPair nextBase;
+        private KVPair nextDelta;
+
+        MergeIterator(CloseableIterator<KVPair> baseIterator, CloseableIterator<KVPair> deltaIterator, boolean reverse) {
+            this.baseIterator = baseIterator;
+            this.deltaIterator = deltaIterator;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.nextBase == null && this.baseIterator.hasNext())
+                this.nextBase = this.baseIterator.next();
+            if (this.nextDelta == null && this.deltaIterator.hasNext())
+                this.nextDelta = this.deltaIterator.next();
+            return this.nextBase != null || this.nextDelta != null;
+        }
+
+        @Override
+        public KVPair next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+
+            // Only one iterator remaining?
+            if (this.nextDelta == null)
+                return this.takeBase();
+            if (this.nextBase == null)
+                return this.takeDelta();
+
+            // Return whichever is next; on equal keys, delta wins
+            final int diff = ByteUtil.compare(this.nextBase.getKey(), this.nextDelta.getKey());
+            if (diff == 0) {
+                this.nextBase = null;
+                return this.takeDelta();
+            }
+            return (diff < 0) != this.reverse ? this.takeBase() : this.takeDelta();
+        }
+
+        @Override
+        public void close() {
+            this.baseIterator.close();
+            this.deltaIterator.close();
+        }
+
+        private KVPair takeBase() {
+            final KVPair pair = this.nextBase;
+            this.nextBase = null;
+            return pair;
+        }
+
+        private KVPair takeDelta() {
+            final KVPair pair = this.nextDelta;
+            this.nextDelta = null;
+            return pair;
+        }
+    }
+}
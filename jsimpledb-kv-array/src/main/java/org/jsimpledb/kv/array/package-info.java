@@ -10,26 +10,52 @@
  * Instances are optimized for relatively few writes and have minimal memory overhead.
  *
  * <p>
- * Key and value data must not exceed 2GB (each separately).
+ * Key and value data may exceed 2GB when using format version 2 (see below).
  *
  * <b>File Format</b>
  *
  * <p>
- * There are three files: index, keys, and values.
+ * There are three files: index, keys, and values. All multi-byte values are big endian.
  *
  * <p>
- * The index file contains zero or more index entries, which are pairs of big endian 32-bit values where the first value
+ * In all format versions, every 32nd index entry (i.e., every entry in a slot equal to zero mod 32) corresponds to
+ * a "base key", whose complete bytes are stored in the keys file. The bytes of every other key are stored as a suffix
+ * that follows its prefix matching the previous base key. The end of each key is the starting offset of the next key
+ * (or end of file), and similarly for values.
+ *
+ * <p><i>Format Version 1</i></p>
+ *
+ * <p>
+ * The index file contains zero or more index entries, which are pairs of 32-bit values where the first value
  * in a pair describes the offset of the corresponding key in the keys file, while the second describes the offset of the
  * corresponding value in the values file. Index entries are sorted by key.
  *
  * <p>
- * For index entries in a slot equal to zero mod 32, the 32-bit value is the absolute offset of the key, and this is called
- * a "base key"; otherwise, the first 8 bits are the length of the key's prefix matching the previous base key (from zero to 255),
- * while the remaining 24 bits are the offset from the beginning of the previous base key to the start of the suffix. In both
- * cases, the end of the key is the starting offset of the next key (or end of file).
+ * For base key index entries, the first 32-bit value is the absolute offset of the key; otherwise, the first 8 bits are
+ * the length of the key's prefix matching the previous base key (from zero to 255), while the remaining 24 bits are the
+ * offset from the beginning of the previous base key to the start of the suffix.
  *
  * <p>
  * For all index entries, the second 32-bit value is the absolute offset of the value in the values file.
- * The end of the value is the starting offset of the next value (or end of file).
+ *
+ * <p>
+ * Because offsets are 32-bit signed values, key and value data must not exceed 2GB (each separately).
+ *
+ * <p><i>Format Version 2</i></p>
+ *
+ * <p>
+ * The index file starts with an eight byte header consisting of the 32-bit magic number {@code 0x41724b76} followed by
+ * the 32-bit format version number (2). Format version 1 index files never start with this header, because they are either
+ * empty or start with eight zero bytes.
+ *
+ * <p>
+ * The header is followed by a sequence of blocks, each containing up to 32 index entries. The first entry in each
+ * block is the base key entry, which consists of the 64-bit absolute offset of the key followed by the 64-bit absolute
+ * offset of the value. Each remaining entry consists of a 32-bit encoded key offset, exactly as in format version 1,
+ * followed by the unsigned 32-bit offset of the value relative to the value of the block's base key entry. So each full block
+ * occupies 16 + 31 * 8 = 264 bytes, and index entries may still be located without any searching.
+ *
+ * <p>
+ * Files larger than 2GB are accessed as multiple memory-mapped segments via {@link org.jsimpledb.kv.array.LargeByteBuffer}.
  */
 package org.jsimpledb.kv.array;
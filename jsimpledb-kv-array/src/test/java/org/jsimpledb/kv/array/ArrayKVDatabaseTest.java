@@ -9,10 +9,15 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.jsimpledb.kv.KVDatabase;
 import org.jsimpledb.kv.RetryTransactionException;
 import org.jsimpledb.kv.test.KVDatabaseTest;
+import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.ByteWriter;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Optional;
@@ -22,7 +27,9 @@ import org.testng.annotations.Test;
 public class ArrayKVDatabaseTest extends KVDatabaseTest {
 
     private static final int NUM_BIGWRITER_THREADS = 7;
+    private static final int NUM_INCREMENTER_THREADS = 11;
 
+    private String arrayDirPrefix;
     private ArrayKVDatabase arrayKV;
 
     @BeforeClass(groups = "configure")
@@ -36,6 +43,7 @@ public class ArrayKVDatabaseTest extends KVDatabaseTest {
       @Optional("90") int compactMaxDelay,
       @Optional("65536") int compactLowWater,
       @Optional("1073741824") int compactHighWater) throws IOException {
+        this.arrayDirPrefix = arrayDirPrefix;
         if (arrayDirPrefix != null) {
             final File dir = File.createTempFile(arrayDirPrefix, null);
             Assert.assertTrue(dir.delete());
@@ -67,6 +75,87 @@ public class ArrayKVDatabaseTest extends KVDatabaseTest {
             thread.join();
     }
 
+    @Test
+    private void testGroupCommit() throws Exception {
+        if (this.arrayDirPrefix == null)
+            return;
+
+        // Setup database with group commit and parallel conflict checks
+        final File dir = File.createTempFile(this.arrayDirPrefix, null);
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+        kvstore.setDirectory(dir);
+        final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+        kvdb.setKVStore(kvstore);
+        kvdb.setGroupCommit(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        kvdb.setConflictCheckExecutor(executor);
+        kvdb.setParallelConflictCheckThreshold(2);
+        kvdb.start();
+        try {
+
+            // Increment a shared counter concurrently
+            final Incrementer[] threads = new Incrementer[NUM_INCREMENTER_THREADS];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Incrementer(kvdb);
+                threads[i].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            // Verify no increments were lost
+            final ArrayKVTransaction tx = kvdb.createTransaction();
+            try {
+                final byte[] value = tx.get(Incrementer.KEY);
+                Assert.assertNotNull(value);
+                Assert.assertEquals(ByteUtil.readLong(new ByteReader(value)),
+                  (long)NUM_INCREMENTER_THREADS * Incrementer.NUM_INCREMENTS_PER_THREAD);
+            } finally {
+                tx.rollback();
+            }
+        } finally {
+            kvdb.stop();
+            executor.shutdown();
+        }
+    }
+
+    private static class Incrementer extends Thread {
+
+        static final int NUM_INCREMENTS_PER_THREAD = 50;
+        static final byte[] KEY = new byte[] { (byte)0x42 };
+
+        private final ArrayKVDatabase kvdb;
+
+        Incrementer(ArrayKVDatabase kvdb) {
+            this.kvdb = kvdb;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < NUM_INCREMENTS_PER_THREAD; ) {
+                final ArrayKVTransaction tx = this.kvdb.createTransaction();
+                boolean success = false;
+                try {
+                    final byte[] prevValue = tx.get(KEY);
+                    final long count = prevValue != null ? ByteUtil.readLong(new ByteReader(prevValue)) : 0;
+                    final ByteWriter writer = new ByteWriter(8);
+                    ByteUtil.writeLong(writer, count + 1);
+                    tx.put(KEY, writer.getBytes());
+                    tx.commit();
+                    success = true;
+                    i++;
+                } catch (RetryTransactionException e) {
+                    // try again
+                } finally {
+                    if (!success)
+                        tx.rollback();
+                }
+            }
+        }
+    }
+
     private static class BigWriter extends Thread {
 
         private static final int MAX_VALUE_LENGTH = 1024 * 1024;
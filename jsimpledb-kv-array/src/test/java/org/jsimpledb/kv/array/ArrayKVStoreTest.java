@@ -38,7 +38,8 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
             int keylen = 0;
             byte[] key;
             final NavigableMapKVStore reference = new NavigableMapKVStore();
-            final ArrayKVWriter writer = new ArrayKVWriter(indxOutput, keysOutput, valsOutput);
+            final int formatVersion = this.random.nextBoolean() ? ArrayKVWriter.FORMAT_VERSION_1 : ArrayKVWriter.FORMAT_VERSION_2;
+            final ArrayKVWriter writer = new ArrayKVWriter(indxOutput, keysOutput, valsOutput, formatVersion);
             while (true) {
 
                 // Create key
@@ -73,10 +74,14 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
                 }
             }
             writer.close();
+            final boolean direct = this.random.nextBoolean();
+            final int segmentSize = this.random.nextBoolean() ? 1 << (4 + this.random.nextInt(8)) : 0;
             final ArrayKVStore kvstore = new ArrayKVStore(
-              ByteBuffer.wrap(indxOutput.toByteArray()),
-              ByteBuffer.wrap(keysOutput.toByteArray()),
-              ByteBuffer.wrap(valsOutput.toByteArray()));
+              this.toBuffer(indxOutput.toByteArray(), direct, segmentSize),
+              this.toBuffer(keysOutput.toByteArray(), direct, segmentSize),
+              this.toBuffer(valsOutput.toByteArray(), direct, segmentSize),
+              this.random.nextBoolean());
+            Assert.assertEquals(kvstore.getFormatVersion(), formatVersion);
 
             // Debug
             //this.log.info("INDX:" + this.format(indxOutput.toByteArray()));
@@ -120,6 +125,7 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
     protected AtomicArrayKVStore createAtomicKVStore(File dir) throws Exception {
         final AtomicArrayKVStore kv = new AtomicArrayKVStore();
         kv.setDirectory(dir);
+        kv.setCacheBaseKeys(this.random.nextBoolean());
         return kv;
     }
 
@@ -141,6 +147,27 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
         return key;
     }
 
+    // Split data into segments of the given size, or a single segment if segmentSize is zero
+    private LargeByteBuffer toBuffer(byte[] data, boolean direct, int segmentSize) {
+        if (segmentSize == 0)
+            return LargeByteBuffer.wrap(this.toBuffer(data, 0, data.length, direct));
+        final ByteBuffer[] segments = new ByteBuffer[Math.max(1, (data.length + segmentSize - 1) / segmentSize)];
+        for (int i = 0; i < segments.length; i++) {
+            final int offset = i * segmentSize;
+            segments[i] = this.toBuffer(data, offset, Math.min(segmentSize, data.length - offset), direct);
+        }
+        return new LargeByteBuffer(segments);
+    }
+
+    private ByteBuffer toBuffer(byte[] data, int off, int len, boolean direct) {
+        if (!direct)
+            return ByteBuffer.wrap(data, off, len).slice();
+        final ByteBuffer buf = ByteBuffer.allocateDirect(len);
+        buf.put(data, off, len);
+        buf.flip();
+        return buf;
+    }
+
     private String format(byte[] data) {
         final StringBuilder buf = new StringBuilder();
         for (int i = 0; i < data.length; i++) {
@@ -0,0 +1,218 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.array;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.test.TestSupport;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class CompactionTest extends TestSupport {
+
+    @Test(dataProvider = "deltaRatios")
+    private void testCompaction(float deltaRatio) throws Exception {
+
+        // Create persistent k/v store
+        final File dir = this.createTempDirectory();
+        AtomicArrayKVStore kv = this.createKVStore(dir, deltaRatio);
+        kv.start();
+
+        // Perform random mutations interspersed with compactions and restarts, comparing against expected content
+        final TreeMap<byte[], byte[]> expected = new TreeMap<>(ByteUtil.COMPARATOR);
+        boolean sawDelta = false;
+        for (int cycle = 0; cycle < 50; cycle++) {
+            for (int i = 0; i < 50; i++) {
+                final byte[] key = this.randomKey();
+                final int op = this.random.nextInt(10);
+                if (op < 6) {
+                    final byte[] value = this.randomBytes(0, 20, false);
+                    kv.put(key, value);
+                    expected.put(key, value);
+                } else if (op < 7) {
+                    kv.remove(key);
+                    expected.remove(key);
+                } else if (op < 8) {
+                    byte[] maxKey = this.randomKey();
+                    if (ByteUtil.compare(maxKey, key) < 0)
+                        maxKey = key;
+                    kv.removeRange(key, maxKey);
+                    expected.subMap(key, maxKey).clear();
+                } else {
+                    final byte[] existing = expected.get(key);
+                    if (existing == null || op == 8) {
+                        final byte[] encoded = kv.encodeCounter(this.random.nextInt(1000));
+                        kv.put(key, encoded);
+                        expected.put(key, encoded);
+                    } else {
+                        kv.adjustCounter(key, 7);
+                        try {
+                            expected.put(key, kv.encodeCounter(kv.decodeCounter(existing) + 7));
+                        } catch (IllegalArgumentException e) {
+                            // not a counter value, so adjustment is ignored
+                        }
+                    }
+                }
+            }
+            this.check(kv, expected);
+            switch (this.random.nextInt(3)) {
+            case 0:
+                this.compact(kv);
+                this.check(kv, expected);
+                break;
+            case 1:
+                this.compact(kv);
+                kv.stop();
+                kv = this.createKVStore(dir, deltaRatio);
+                kv.start();
+                this.check(kv, expected);
+                break;
+            default:
+                break;
+            }
+            sawDelta |= this.hasDeltaFiles(dir);
+        }
+
+        // A zero ratio should always rewrite the base array; otherwise we should have seen a delta array at some point
+        Assert.assertEquals(sawDelta, deltaRatio > 0);
+
+        // Restart and check again
+        kv.stop();
+        kv = this.createKVStore(dir, deltaRatio);
+        kv.start();
+        this.check(kv, expected);
+        kv.stop();
+
+        // Delete directory
+        this.deleteDirectoryHierarchy(dir);
+    }
+
+    @Test
+    private void testFormatVersion1() throws Exception {
+
+        // Create a database directory containing format version 1 array files
+        final File dir = this.createTempDirectory();
+        final TreeMap<byte[], byte[]> expected = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 200; i++)
+            expected.put(this.randomKey(), this.randomBytes(0, 20, false));
+        try (
+          final FileOutputStream indxOutput = new FileOutputStream(new File(dir, "indx.0"));
+          final FileOutputStream keysOutput = new FileOutputStream(new File(dir, "keys.0"));
+          final FileOutputStream valsOutput = new FileOutputStream(new File(dir, "vals.0"));
+          final ArrayKVWriter writer = new ArrayKVWriter(indxOutput, keysOutput, valsOutput, ArrayKVWriter.FORMAT_VERSION_1)) {
+            for (Map.Entry<byte[], byte[]> entry : expected.entrySet())
+                writer.writeKV(entry.getKey(), entry.getValue());
+        }
+        try (FileOutputStream genOutput = new FileOutputStream(new File(dir, "gen"))) {
+            genOutput.write("0\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Verify the old files are readable
+        AtomicArrayKVStore kv = this.createKVStore(dir, 0.0f);
+        kv.start();
+        this.check(kv, expected);
+
+        // Modify and compact, which rewrites the base array using the current format
+        final byte[] key = this.randomKey();
+        final byte[] value = this.randomBytes(0, 20, false);
+        kv.put(key, value);
+        expected.put(key, value);
+        this.compact(kv);
+        this.check(kv, expected);
+        kv.stop();
+        try (DataInputStream input = new DataInputStream(new FileInputStream(new File(dir, "indx.1")))) {
+            Assert.assertEquals(input.readInt(), ArrayKVWriter.INDX_MAGIC);
+            Assert.assertEquals(input.readInt(), ArrayKVWriter.FORMAT_VERSION_2);
+        }
+
+        // Restart and check again
+        kv = this.createKVStore(dir, 0.0f);
+        kv.start();
+        this.check(kv, expected);
+        kv.stop();
+
+        // Delete directory
+        this.deleteDirectoryHierarchy(dir);
+    }
+
+    @DataProvider(name = "deltaRatios")
+    public Object[][] genDeltaRatios() {
+        return new Object[][] {
+            { 0.0f },
+            { 0.5f },
+            { 100.0f },
+        };
+    }
+
+    private AtomicArrayKVStore createKVStore(File dir, float deltaRatio) {
+        final AtomicArrayKVStore kv = new AtomicArrayKVStore();
+        kv.setDirectory(dir);
+        kv.setCompactDeltaRatio(deltaRatio);
+        return kv;
+    }
+
+    private void compact(AtomicArrayKVStore kv) throws Exception {
+        final Future<?> future = kv.scheduleCompaction();
+        if (future != null)
+            future.get();
+    }
+
+    private byte[] randomKey() {
+        return new byte[] { (byte)this.random.nextInt(64), (byte)this.random.nextInt(8) };
+    }
+
+    private boolean hasDeltaFiles(File dir) {
+        for (String name : dir.list()) {
+            if (name.startsWith("dindx."))
+                return true;
+        }
+        return false;
+    }
+
+    private void check(KVStore kv, TreeMap<byte[], byte[]> expected) {
+
+        // Check forward and reverse iteration
+        for (boolean reverse : new boolean[] { false, true }) {
+            final ArrayList<String> actualList = new ArrayList<>();
+            try (CloseableIterator<KVPair> i = kv.getRange(null, null, reverse)) {
+                while (i.hasNext()) {
+                    final KVPair pair = i.next();
+                    actualList.add(ByteUtil.toString(pair.getKey()) + "=" + ByteUtil.toString(pair.getValue()));
+                }
+            }
+            final ArrayList<String> expectedList = new ArrayList<>();
+            for (Map.Entry<byte[], byte[]> entry : (reverse ? expected.descendingMap() : expected).entrySet())
+                expectedList.add(ByteUtil.toString(entry.getKey()) + "=" + ByteUtil.toString(entry.getValue()));
+            Assert.assertEquals(actualList, expectedList, "reverse=" + reverse);
+        }
+
+        // Check point lookups
+        for (int i = 0; i < 100; i++) {
+            final byte[] key = this.randomKey();
+            final byte[] value = kv.get(key);
+            final byte[] expectedValue = expected.get(key);
+            Assert.assertTrue(Arrays.equals(value, expectedValue), "wrong value for " + ByteUtil.toString(key));
+            final KVPair pair = kv.getAtLeast(key, null);
+            final Map.Entry<byte[], byte[]> entry = expected.ceilingEntry(key);
+            Assert.assertEquals(pair != null ? ByteUtil.toString(pair.getKey()) : null,
+              entry != null ? ByteUtil.toString(entry.getKey()) : null);
+        }
+    }
+}
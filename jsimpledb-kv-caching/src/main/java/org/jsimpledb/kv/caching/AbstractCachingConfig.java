@@ -30,7 +30,7 @@ public abstract class AbstractCachingConfig implements CachingConfig {
 
     @Override
     public synchronized void setMaxRangeBytes(long maxRangeBytes) {
-        Preconditions.checkArgument(maxRanges > 0, "maxRangeBytes <= 0");
+        Preconditions.checkArgument(maxRangeBytes > 0, "maxRangeBytes <= 0");
         this.maxRangeBytes = maxRangeBytes;
     }
 
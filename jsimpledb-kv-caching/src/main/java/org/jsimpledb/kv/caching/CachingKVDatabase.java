@@ -66,6 +66,9 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
     private boolean started;
     private boolean privateExecutor;
     private MovingAverage rtt;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
 
     /**
      * Default constructor.
@@ -277,4 +280,51 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
     synchronized void updateRttEstimate(double rtt) {
         this.rtt.add(rtt);
     }
+
+// Statistics
+
+    /**
+     * Get the total number of cache hits in all completed transactions.
+     *
+     * @return number of queries answered entirely from cached data
+     * @see CachingKVStore#getCacheHits
+     */
+    public synchronized long getCacheHits() {
+        return this.cacheHits;
+    }
+
+    /**
+     * Get the total number of cache misses in all completed transactions.
+     *
+     * @return number of queries that had to wait for data from the underlying database
+     * @see CachingKVStore#getCacheMisses
+     */
+    public synchronized long getCacheMisses() {
+        return this.cacheMisses;
+    }
+
+    /**
+     * Get the total number of cached ranges evicted in all completed transactions.
+     *
+     * @return number of cached ranges discarded to stay within the configured limits
+     * @see CachingKVStore#getCacheEvictions
+     */
+    public synchronized long getCacheEvictions() {
+        return this.cacheEvictions;
+    }
+
+    /**
+     * Reset the cache hit, miss, and eviction counters to zero.
+     */
+    public synchronized void resetCacheStatistics() {
+        this.cacheHits = 0;
+        this.cacheMisses = 0;
+        this.cacheEvictions = 0;
+    }
+
+    synchronized void updateCacheStatistics(CachingKVStore kvstore) {
+        this.cacheHits += kvstore.getCacheHits();
+        this.cacheMisses += kvstore.getCacheMisses();
+        this.cacheEvictions += kvstore.getCacheEvictions();
+    }
 }
@@ -13,6 +13,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -57,6 +58,12 @@ import org.slf4j.LoggerFactory;
  * key space.
  *
  * <p>
+ * Read-ahead is adaptive: each underlying range query initially fetches only a small window of data, and each time
+ * a query continues from the edge of a range whose previous query has already completed (as happens with sequential
+ * iteration), the window is doubled, up to the {@linkplain #setMaxRangeBytes maximum range size}. Isolated point reads
+ * therefore fetch little excess data, while long scans quickly ramp up to large, efficient batches.
+ *
+ * <p>
  * These underlying queries are performed asynchronously in background tasks, and multiple background range queries
  * may be running at the same time. To avoid creating redundant background queries, when handling a query for a
  * key/value pair that may possibly be answered by an existing but uncompleted background range query (depending on
@@ -71,6 +78,17 @@ import org.slf4j.LoggerFactory;
  * and {@linkplain #setMaxTotalBytes the maximum total amount of data to cache}. Once these limits are exceeded,
  * stored ranges are discarded on a least-recently-used basis.
  *
+ * <p>
+ * To prevent a single large scan from flushing out frequently used data, eviction is scan-resistant: the cache is
+ * split into a probationary segment and a protected segment, each ordered by recency. Newly loaded ranges start out
+ * probationary, and are promoted to protected only when they are re-referenced by a non-sequential read.
+ * Probationary ranges are always discarded first, and the protected segment is limited to a fixed fraction of
+ * the total, with overflow demoted back to the probationary segment.
+ *
+ * <p>
+ * Instances keep counts of {@linkplain #getCacheHits cache hits}, {@linkplain #getCacheMisses cache misses},
+ * and {@linkplain #getCacheEvictions evictions}.
+ *
  * <p><b>Consistency Assumptions</b></p>
  *
  * <p>
@@ -168,6 +186,30 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
     Otherwise, the Loader replaces its Future<?> with a new one.
 
+    Read-Ahead Logic
+    ----------------
+
+    Each Loader has a "window", which is the number of bytes it will load before stopping on its own. Each KVRange
+    remembers the window used by its most recent Loader. A new KVRange's first Loader gets a small initial window.
+    When a query arrives exactly at the edge of a KVRange that has no Loader in that direction, this indicates
+    sequential access that has caught up with the previous Loader, so the new Loader's window is doubled (up to
+    maxRangeBytes). Merged KVRanges inherit the larger of the two windows.
+
+    Eviction Logic
+    --------------
+
+    This is a segmented LRU. KVRanges live on one of two LRU rings: "probationary" or "protected". New KVRanges
+    start out probationary. When a query is answered from a KVRange, if that query is a "re-reference", the KVRange
+    is promoted to protected. A query is not a re-reference if it's the first query answered by the KVRange, or if it
+    continues in the same direction strictly beyond the previous query answered by the KVRange; this means sequential
+    iteration, no matter how long, never promotes. Merged KVRanges are protected if either original was protected.
+
+    When the protected segment exceeds PROTECTED_FRACTION of maxTotalBytes, its least recently used KVRanges are
+    demoted to the front of the probationary ring. When maxTotalBytes or maxRanges is exceeded, the least recently
+    used probationary KVRanges are discarded first, then the least recently used protected KVRanges. The (non-empty)
+    KVRange currently being queried is also eligible, which is how a scan larger than the cache gets discarded
+    instead of the protected ranges; this costs the scan one extra round trip, but no progress is lost.
+
 */
 
     /**
@@ -195,6 +237,9 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
     private static final int INITIAL_ARRAY_CAPACITY = 32;
     private static final float ARRAY_GROWTH_FACTOR = 1.5f;
 
+    private static final int INITIAL_READ_AHEAD_BYTES = 16 * 1024;
+    private static final double PROTECTED_FRACTION = 0.80;
+
     private static final Comparator<KVRange> SORT_BY_MIN = Comparator.comparing(KVRange::getMin, ByteUtil.COMPARATOR);
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
@@ -202,7 +247,8 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
     private final MovingAverage rtt;                                            // estimation of time to load first key in range
     private final ExecutorService executor;                                     // executor for async loading tasks
     private final TreeSet<KVRange> ranges = new TreeSet<>(SORT_BY_MIN);         // ranges ordered by key range minimum
-    private final RingEntry<KVRange> lru = new RingEntry<>(null);               // ranges ordered by recency (MRU first, LRU last)
+    private final RingEntry<KVRange> probationLru = new RingEntry<>(null);      // probationary ranges (MRU first, LRU last)
+    private final RingEntry<KVRange> protectedLru = new RingEntry<>(null);      // protected ranges (MRU first, LRU last)
 
     // CachingConfig
     private int maxRanges = DEFAULT_MAX_RANGES;
@@ -211,6 +257,10 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
     private boolean readAhead = DEFAULT_READ_AHEAD;
 
     private long totalBytes;
+    private long protectedBytes;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
     private KVException error;
 
 // Constructors
@@ -258,7 +308,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
     @Override
     public synchronized void setMaxRangeBytes(long maxRangeBytes) {
-        Preconditions.checkArgument(maxRanges > 0, "maxRangeBytes <= 0");
+        Preconditions.checkArgument(maxRangeBytes > 0, "maxRangeBytes <= 0");
         this.maxRangeBytes = maxRangeBytes;
     }
 
@@ -302,6 +352,52 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         return pair != null ? pair.getValue() : null;
     }
 
+    /**
+     * Get the values associated with multiple keys.
+     *
+     * <p>
+     * Keys that are already cached are answered from the cache. All other keys are retrieved from the underlying
+     * {@link KVStore} in a single {@link KVStore#getMulti getMulti()} operation; because such point reads
+     * establish no key range, their results are not added to the cache.
+     */
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+
+        // Answer what we can from the cache, gathering the remaining keys
+        final ArrayList<byte[]> values = new ArrayList<>();
+        final ArrayList<byte[]> missKeys = new ArrayList<>();
+        final ArrayList<Integer> missIndexes = new ArrayList<>();
+        synchronized (this) {
+            if (this.error != null)
+                this.error.rethrow();
+            for (byte[] key : keys) {
+                Preconditions.checkArgument(key != null, "null key");
+                final KVRange range = this.last(this.ranges.headSet(this.key(key), true));
+                if (range != null && KeyRange.compare(key, range.getMax()) < 0) {
+                    final KVPair pair = range.getAtLeast(key);
+                    values.add(pair != null && Arrays.equals(pair.getKey(), key) ? pair.getValue() : null);
+                    this.access(range, key, false);
+                    this.cacheHits++;
+                } else {
+                    missKeys.add(key);
+                    missIndexes.add(values.size());
+                    values.add(null);
+                }
+            }
+            if (missKeys.isEmpty())
+                return values;
+            this.cacheMisses += missKeys.size();
+        }
+
+        // Read the remaining keys from the underlying k/v store
+        final List<byte[]> missValues = super.getMulti(missKeys);
+        assert missValues.size() == missKeys.size();
+        for (int i = 0; i < missKeys.size(); i++)
+            values.set(missIndexes.get(i), missValues.get(i));
+        return values;
+    }
+
     @Override
     public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
         if (minKey == null)
@@ -376,6 +472,33 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         return this.rtt.get();
     }
 
+    /**
+     * Get the number of queries that were answered entirely from cached data.
+     *
+     * @return number of cache hits
+     */
+    public synchronized long getCacheHits() {
+        return this.cacheHits;
+    }
+
+    /**
+     * Get the number of queries that had to wait for data from the underlying {@link KVStore}.
+     *
+     * @return number of cache misses
+     */
+    public synchronized long getCacheMisses() {
+        return this.cacheMisses;
+    }
+
+    /**
+     * Get the number of cached ranges that have been discarded to stay within the configured limits.
+     *
+     * @return number of evicted ranges
+     */
+    public synchronized long getCacheEvictions() {
+        return this.cacheEvictions;
+    }
+
 // Internal methods
 
     private KVPair find(byte[] start, final byte[] limit, final boolean reverse) {
@@ -395,6 +518,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         // Loop until we have an answer
         long lastLoopTime = System.nanoTime();
         boolean interrupted = false;
+        boolean waited = false;
         while (true) {
             Future<?> future;
             synchronized (this) {
@@ -430,6 +554,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
                 // If we found one, investigate to determine what to do
                 Loader loader = null;
+                boolean sequential = false;
                 if (range != null) {
 
                     // We have a candidate range
@@ -473,8 +598,12 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                 }
                             }
 
-                            // Keep range fresh
-                            this.touch(range);
+                            // Keep range fresh, and update statistics
+                            this.access(range, start, reverse);
+                            if (waited)
+                                this.cacheMisses++;
+                            else
+                                this.cacheHits++;
                             return pair;
                         }
 
@@ -504,6 +633,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                 this.trace("find: start={} limit={} range={} adjacent but no loader => create new loader",
                                   ByteUtil.toString(start), ByteUtil.toString(limit), range);
                             }
+                            sequential = true;                                              // grow read-ahead window
                         }
                     } else if (!startOnEdge) {
 
@@ -544,8 +674,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 // Create a new range if necessary
                 if (range == null) {
                     range = new KVRange(start);
-                    this.ranges.add(range);
-                    range.getLruEntry().attachAfter(this.lru);
+                    this.attach(range);
                     if (this.log.isTraceEnabled()) {
                         this.trace("find: start={} limit={} created new {}",
                           ByteUtil.toString(start), ByteUtil.toString(limit), range);
@@ -573,8 +702,8 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                             actualLimit = null;
                     }
 
-                    // Create new loader
-                    loader = new Loader(range, reverse, actualLimit);
+                    // Create new loader, growing the read-ahead window if access is sequential
+                    loader = new Loader(range, reverse, actualLimit, sequential ? range.growReadAhead() : range.getReadAhead());
                     if (this.log.isTraceEnabled()) {
                         this.trace("find: start={} limit={} created new {}",
                           ByteUtil.toString(start), ByteUtil.toString(limit), loader);
@@ -586,12 +715,13 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 assert future != null;
 
                 // Scrub
-                this.scrub();
+                this.scrub(range);
 
                 // Sanity check
                 assert this.sanityCheck();
                 if (this.log.isTraceEnabled())
                     this.trace("going to sleep, ranges={}", this.ranges);
+                waited = true;
             }
 
             // Wait for loader to report progress, then try again
@@ -626,29 +756,79 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         }
     }
 
-    // Move range back to the front of the LRU list
+    // Add range to our ranges and to the front of its LRU list
+    private void attach(KVRange range) {
+        assert Thread.holdsLock(this);
+        this.ranges.add(range);
+        range.getLruEntry().attachAfter(range.isProtected() ? this.protectedLru : this.probationLru);
+        this.totalBytes += range.getTotalBytes();
+        if (range.isProtected())
+            this.protectedBytes += range.getTotalBytes();
+    }
+
+    // Record a query answered by range; a re-reference promotes the range to the protected segment
+    private void access(KVRange range, byte[] start, boolean reverse) {
+        assert Thread.holdsLock(this);
+        final boolean reReference = range.recordAccess(start, reverse);
+        if (reReference && !range.isProtected()) {
+            if (this.log.isTraceEnabled())
+                this.trace("access: promote range={}", range);
+            range.setProtected(true);
+            this.protectedBytes += range.getTotalBytes();
+        }
+        this.touch(range);
+    }
+
+    // Move range back to the front of its LRU list
     private void touch(KVRange range) {
         assert Thread.holdsLock(this);
         assert range.getLruEntry().isAttached();
         assert this.ranges.contains(range) : "range " + range + " not found in " + this.ranges;
         if (this.log.isTraceEnabled())
             this.trace("touch: renew range={}", range);
-        range.getLruEntry().attachAfter(this.lru);
+        range.getLruEntry().attachAfter(range.isProtected() ? this.protectedLru : this.probationLru);
     }
 
-    // Remove old ranges until we are underneath our total byte limit
-    private void scrub() {
+    // Demote protected ranges until the protected segment is within its share, then remove old ranges
+    // until we are underneath our limits. Don't bother discarding the given range if it's empty.
+    private void scrub(KVRange current) {
         assert Thread.holdsLock(this);
-        while (this.totalBytes > this.maxTotalBytes) {
+        final long maxProtectedBytes = (long)(this.maxTotalBytes * PROTECTED_FRACTION);
+        while (this.protectedBytes > maxProtectedBytes) {
 
-            // Get the least recently used range
-            final KVRange range = this.lru.prev().getOwner();
-            if (range == null)                                          // LRU ring is empty
+            // Get the least recently used protected range
+            final KVRange range = this.protectedLru.prev().getOwner();
+            if (range == null)                                          // protected LRU ring is empty
+                break;
+
+            // Demote it to the front of the probationary ring
+            if (this.log.isTraceEnabled())
+                this.trace("scrub: demote range={}", range);
+            range.setProtected(false);
+            this.protectedBytes -= range.getTotalBytes();
+            range.getLruEntry().attachAfter(this.probationLru);
+        }
+        while (this.totalBytes > this.maxTotalBytes || this.ranges.size() > this.maxRanges) {
+
+            // Get the least recently used probationary range, or else the least recently used protected range
+            KVRange range = this.findVictim(this.probationLru, current);
+            if (range == null && (range = this.findVictim(this.protectedLru, current)) == null)
                 break;
 
             // Discard it
             this.discard(range, true);
+            this.cacheEvictions++;
+        }
+    }
+
+    private KVRange findVictim(RingEntry<KVRange> ring, KVRange current) {
+        assert Thread.holdsLock(this);
+        for (RingEntry<KVRange> entry = ring.prev(); entry != ring; entry = entry.prev()) {
+            final KVRange range = entry.getOwner();
+            if (range != current || !range.isEmpty())
+                return range;
         }
+        return null;
     }
 
     private void discard(KVRange range, boolean removeFromRanges) {
@@ -659,6 +839,8 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         range.stopLoader(true);
         range.getLruEntry().detach();
         this.totalBytes -= range.getTotalBytes();
+        if (range.isProtected())
+            this.protectedBytes -= range.getTotalBytes();
         if (removeFromRanges) {
             final boolean removed = this.ranges.remove(range);
             assert removed;
@@ -670,18 +852,32 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         for (KVRange range : this.ranges)
             assert range.sanityCheck();
         KVRange prev = null;
+        long rangesTotalBytes = 0;
+        long rangesProtectedBytes = 0;
         for (KVRange next : this.ranges) {
             assert KeyRange.compare(next.getMin(), next.getMax()) <= 0;
             assert KeyRange.compare(next.getMin(), next.getMax()) != 0
               || next.getLoader(false) != null
               || next.getLoader(true) != null;
             assert prev == null || KeyRange.compare(prev.max, next.min) < 0 : "range overlap : " + this.ranges;
+            rangesTotalBytes += next.getTotalBytes();
+            if (next.isProtected())
+                rangesProtectedBytes += next.getTotalBytes();
             prev = next;
         }
+        assert rangesTotalBytes == this.totalBytes : "totalBytes=" + this.totalBytes + " but ranges have " + rangesTotalBytes;
+        assert rangesProtectedBytes == this.protectedBytes :
+          "protectedBytes=" + this.protectedBytes + " but ranges have " + rangesProtectedBytes;
         final ArrayList<KVRange> rangesList = new ArrayList<>(this.ranges);
         final ArrayList<KVRange> lruList = new ArrayList<>(this.ranges.size());
-        for (RingEntry<KVRange> entry = this.lru.next(); entry.getOwner() != null; entry = entry.next())
+        for (RingEntry<KVRange> entry = this.probationLru.next(); entry.getOwner() != null; entry = entry.next()) {
+            assert !entry.getOwner().isProtected();
             lruList.add(entry.getOwner());
+        }
+        for (RingEntry<KVRange> entry = this.protectedLru.next(); entry.getOwner() != null; entry = entry.next()) {
+            assert entry.getOwner().isProtected();
+            lruList.add(entry.getOwner());
+        }
         Collections.sort(lruList, SORT_BY_MIN);
         assert lruList.equals(rangesList) : "lru=" + lruList + ", ranges=" + rangesList;
         return true;
@@ -735,6 +931,8 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         private final boolean reverse;                  // the direction in which the range is being extended
         private final byte[] start;                     // the start of our range query
         private final byte[] limit;                     // the end of our range query
+        private final long window;                      // the number of bytes to load before stopping (read-ahead window)
+        private long bytesLoaded;                       // the number of bytes loaded so far
         private Future<?> taskFuture;                   // the future associated with the executor task
         private CompletableFuture<?> future;            // the future indicating that we have extended the range by a new extent
 
@@ -742,19 +940,21 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         // This is measured in key-space-units/nanosecond, where "key-space-units" are what is returned by ByteUtil.toDouble().
         private MovingAverage arrivalRate = new MovingAverage(RATE_DECAY_FACTOR);
 
-        Loader(KVRange range, boolean reverse, byte[] limit) {
+        Loader(KVRange range, boolean reverse, byte[] limit, long window) {
             assert Thread.holdsLock(CachingKVStore.this);
             assert range != null;
+            assert window > 0;
             this.range = range;
             this.reverse = reverse;
+            this.window = window;
             this.start = this.getBase();
             assert reverse ?
               KeyRange.compare(limit, this.start) < 0 :
               KeyRange.compare(limit, this.start) > 0;
+            this.limit = limit;
             this.future = new CompletableFuture<>();
             this.taskFuture = CachingKVStore.this.executor.submit(this);
             this.range.setLoader(this.reverse, this);
-            this.limit = limit;
         }
 
         /**
@@ -977,6 +1177,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                         if (this.log.isTraceEnabled())
                             this.trace("adding key {} to {}", ByteUtil.toString(key), this.range);
                         this.range.add(key, val);
+                        this.bytesLoaded += key.length + val.length;
                     }
                     if (reverse) {
                         if (this.log.isTraceEnabled())
@@ -1028,8 +1229,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                     this.trace("result of merge: {}", mergedRange);
                                 CachingKVStore.this.discard(neighbor, true);
                                 CachingKVStore.this.discard(this.range, true);
-                                CachingKVStore.this.ranges.add(mergedRange);
-                                mergedRange.getLruEntry().attachAfter(CachingKVStore.this.lru);
+                                CachingKVStore.this.attach(mergedRange);
                                 assert mergedRange.sanityCheck();
                             }
                             assert CachingKVStore.this.sanityCheck();
@@ -1051,16 +1251,17 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                     this.trace("result of merge: {}", mergedRange);
                                 CachingKVStore.this.discard(this.range, true);
                                 CachingKVStore.this.discard(neighbor, true);
-                                CachingKVStore.this.ranges.add(mergedRange);
-                                mergedRange.getLruEntry().attachAfter(CachingKVStore.this.lru);
+                                CachingKVStore.this.attach(mergedRange);
                                 assert mergedRange.sanityCheck();
                             }
                             assert CachingKVStore.this.sanityCheck();
                         }
                     }
 
-                    // Stop if we merged into another range, or if our range has gotten too big
-                    stopLoading |= mergedRange != null || this.range.getTotalBytes() > CachingKVStore.this.maxRangeBytes;
+                    // Stop if we merged into another range, if our range has gotten too big, or if our window is full
+                    stopLoading |= mergedRange != null
+                      || this.range.getTotalBytes() > CachingKVStore.this.maxRangeBytes
+                      || this.bytesLoaded >= this.window;
 
                     // Stop if done
                     if (stopLoading) {
@@ -1110,6 +1311,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                   + "[" + (this.reverse ? "reverse" : "forward")
                   + ",base=" + ByteUtil.toString(this.getBase())
                   + ",limit=" + ByteUtil.toString(this.limit)
+                  + ",window=" + this.window
                   + "]";
             }
         }
@@ -1133,6 +1335,13 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         private long totalBytes;
         private int lastKnownRangesIndex;
 
+        private boolean isProtected;                                    // in protected vs. probationary segment
+        private long readAhead = INITIAL_READ_AHEAD_BYTES;              // most recent loader window
+        private boolean accessed;                                       // any queries answered yet?
+        private byte[] lastAccessKey;                                   // starting point of most recent query answered
+        private boolean lastAccessReverse;                              // direction of most recent query answered
+        private long lastAccessTime;                                    // time of most recent query answered
+
         KVRange(byte[] start) {
             this(start, start, new byte[INITIAL_ARRAY_CAPACITY][], new byte[INITIAL_ARRAY_CAPACITY][], 0, 0, 0);
         }
@@ -1291,6 +1500,52 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             return CachingKVStore.this;
         }
 
+        /**
+         * Determine whether this range is in the protected segment (versus the probationary segment).
+         */
+        public boolean isProtected() {
+            assert Thread.holdsLock(CachingKVStore.this);
+            return this.isProtected;
+        }
+
+        public void setProtected(boolean isProtected) {
+            assert Thread.holdsLock(CachingKVStore.this);
+            this.isProtected = isProtected;
+        }
+
+        /**
+         * Get the read-ahead window used by the most recent loader.
+         */
+        public long getReadAhead() {
+            assert Thread.holdsLock(CachingKVStore.this);
+            return this.readAhead;
+        }
+
+        /**
+         * Double the read-ahead window, up to the maximum range size, and return the new value.
+         */
+        public long growReadAhead() {
+            assert Thread.holdsLock(CachingKVStore.this);
+            this.readAhead = Math.min(this.readAhead * 2, CachingKVStore.this.getMaxRangeBytes());
+            return this.readAhead;
+        }
+
+        /**
+         * Record a query answered by this range.
+         *
+         * @return true if the query was a re-reference, false if it was the first query or a sequential continuation
+         */
+        public boolean recordAccess(byte[] start, boolean reverse) {
+            assert Thread.holdsLock(CachingKVStore.this);
+            final boolean sequential = !this.accessed || (reverse == this.lastAccessReverse
+              && (reverse ? KeyRange.compare(start, this.lastAccessKey) < 0 : KeyRange.compare(start, this.lastAccessKey) > 0));
+            this.accessed = true;
+            this.lastAccessKey = start;
+            this.lastAccessReverse = reverse;
+            this.lastAccessTime = System.nanoTime();
+            return !sequential;
+        }
+
         /**
          * Add the given key/value pair to this range.
          */
@@ -1318,7 +1573,11 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 this.vals[this.maxIndex] = val;
                 this.maxIndex++;
             }
-            this.totalBytes += key.length + val.length;
+            final int bytes = key.length + val.length;
+            this.totalBytes += bytes;
+            CachingKVStore.this.totalBytes += bytes;
+            if (this.isProtected)
+                CachingKVStore.this.protectedBytes += bytes;
         }
 
         /**
@@ -1388,6 +1647,14 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             // Create merged range
             final KVRange range = this.getKVStore().new KVRange(this.min, next.max,
               newKeys, newVals, newMinIndex, newMinIndex + newSize, newTotalBytes);
+            range.isProtected = this.isProtected || next.isProtected;
+            range.readAhead = Math.max(this.readAhead, next.readAhead);
+            final KVRange recent = !next.accessed || (this.accessed && this.lastAccessTime - next.lastAccessTime >= 0) ?
+              this : next;
+            range.accessed = recent.accessed;
+            range.lastAccessKey = recent.lastAccessKey;
+            range.lastAccessReverse = recent.lastAccessReverse;
+            range.lastAccessTime = recent.lastAccessTime;
 
             // Invalidate original ranges
             assert this.invalidate();
@@ -1440,14 +1707,13 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             return true;
         }
 
-        // Invalidate this range so sanityCheck() will fail
+        // Invalidate this range so sanityCheck() will fail (but keep totalBytes, which is needed when the range is discarded)
         private boolean invalidate() {
             assert Thread.holdsLock(CachingKVStore.this);
             this.keys = null;
             this.vals = null;
             this.minIndex = -1;
             this.maxIndex = -1;
-            this.totalBytes = -1;
             this.lastKnownRangesIndex = -1;
             return true;
         }
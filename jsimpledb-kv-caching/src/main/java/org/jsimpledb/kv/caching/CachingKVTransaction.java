@@ -5,6 +5,7 @@
 
 package org.jsimpledb.kv.caching;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -48,6 +49,8 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
      */
     protected final KVTransaction inner;
 
+    private boolean closed;
+
     CachingKVTransaction(CachingKVDatabase kvdb, KVTransaction inner, ExecutorService executor, long rttEstimate) {
         this.kvdb = kvdb;
         this.inner = inner;
@@ -79,7 +82,13 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
 
     @Override
     public void close() {
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+        }
         this.kvdb.updateRttEstimate(this.cachingKV.getRttEstimate());
+        this.kvdb.updateCacheStatistics(this.cachingKV);
         this.cachingKV.close();
         this.inner.rollback();
     }
@@ -91,6 +100,11 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
         return this.view.get(key);
     }
 
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        return this.view.getMulti(keys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         return this.view.getAtLeast(minKey, maxKey);
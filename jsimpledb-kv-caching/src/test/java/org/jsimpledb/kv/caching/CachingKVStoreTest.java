@@ -0,0 +1,150 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.caching;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.test.TestSupport;
+import org.jsimpledb.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CachingKVStoreTest extends TestSupport {
+
+    private static final int NUM_HOT_KEYS = 32;
+    private static final int NUM_SCAN_KEYS = 4096;
+
+    @Test
+    public void testScanResistance() throws Exception {
+        final CountingKVStore kvstore = this.populate();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (final CachingKVStore cache = new CachingKVStore(kvstore, executor, TimeUnit.MILLISECONDS.toNanos(1))) {
+            cache.setMaxTotalBytes(64 * 1024);
+
+            // Read the hot keys twice, which should promote their range to the protected segment
+            this.readHotKeys(cache);
+            this.readHotKeys(cache);
+
+            // Scan through much more data than the cache can hold
+            this.scan(cache);
+            Assert.assertTrue(cache.getCacheEvictions() > 0, "no evictions");
+
+            // The hot keys should still be cached
+            final long misses = cache.getCacheMisses();
+            final long hits = cache.getCacheHits();
+            this.readHotKeys(cache);
+            Assert.assertEquals(cache.getCacheMisses(), misses, "hot keys were evicted");
+            Assert.assertEquals(cache.getCacheHits(), hits + NUM_HOT_KEYS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdaptiveReadAhead() throws Exception {
+        final CountingKVStore kvstore = this.populate();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (final CachingKVStore cache = new CachingKVStore(kvstore, executor, TimeUnit.MILLISECONDS.toNanos(1))) {
+
+            // A single point read should not read ahead very far
+            Assert.assertNotNull(cache.get(this.scanKey(NUM_SCAN_KEYS / 2)));
+            Assert.assertEquals(kvstore.getRangeCount(), 1);
+            Assert.assertTrue(kvstore.getPairCount() < NUM_SCAN_KEYS / 8, "read too far ahead: " + kvstore.getPairCount());
+
+            // A sequential scan should ramp up quickly
+            this.scan(cache);
+            Assert.assertTrue(kvstore.getRangeCount() <= 10, "too many range queries: " + kvstore.getRangeCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CountingKVStore populate() {
+        final CountingKVStore kvstore = new CountingKVStore();
+        for (int i = 0; i < NUM_SCAN_KEYS * 2; i++)                     // the second half is read-ahead filler
+            kvstore.put(this.scanKey(i), this.value(i));
+        for (int i = 0; i < NUM_HOT_KEYS; i++)
+            kvstore.put(this.hotKey(i), this.value(i));
+        return kvstore;
+    }
+
+    private void readHotKeys(CachingKVStore cache) {
+        for (int i = 0; i < NUM_HOT_KEYS; i++)
+            Assert.assertTrue(Arrays.equals(cache.get(this.hotKey(i)), this.value(i)), "wrong value for hot key #" + i);
+    }
+
+    private void scan(CachingKVStore cache) {
+        int count = 0;
+        try (CloseableIterator<KVPair> i = cache.getRange(this.scanKey(0), this.scanKey(NUM_SCAN_KEYS), false)) {
+            while (i.hasNext()) {
+                final KVPair pair = i.next();
+                Assert.assertEquals(pair.getKey(), this.scanKey(count));
+                Assert.assertEquals(pair.getValue(), this.value(count));
+                count++;
+            }
+        }
+        Assert.assertEquals(count, NUM_SCAN_KEYS);
+    }
+
+    private byte[] hotKey(int i) {
+        return new byte[] { (byte)0x02, (byte)i };
+    }
+
+    private byte[] scanKey(int i) {
+        return new byte[] { (byte)0x01, (byte)(i >> 8), (byte)i };
+    }
+
+    private byte[] value(int i) {
+        final byte[] value = new byte[100];
+        Arrays.fill(value, (byte)i);
+        return value;
+    }
+
+// CountingKVStore
+
+    private static class CountingKVStore extends NavigableMapKVStore {
+
+        private static final long serialVersionUID = -3385211063398442277L;
+
+        private final AtomicInteger rangeCount = new AtomicInteger();
+        private final AtomicInteger pairCount = new AtomicInteger();
+
+        public int getRangeCount() {
+            return this.rangeCount.get();
+        }
+
+        public int getPairCount() {
+            return this.pairCount.get();
+        }
+
+        @Override
+        public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.rangeCount.incrementAndGet();
+            final CloseableIterator<KVPair> i = super.getRange(minKey, maxKey, reverse);
+            return new CloseableIterator<KVPair>() {
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+                @Override
+                public KVPair next() {
+                    CountingKVStore.this.pairCount.incrementAndGet();
+                    return i.next();
+                }
+                @Override
+                public void close() {
+                    i.close();
+                }
+            };
+        }
+    }
+}
@@ -18,6 +18,8 @@ import com.google.common.collect.Iterators;
 import com.google.common.primitives.Bytes;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.jsimpledb.kv.CloseableKVStore;
@@ -103,6 +105,32 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
+    /**
+     * Get the values associated with multiple keys.
+     *
+     * <p>
+     * This method issues all of the reads before waiting for any of them, so the keys are fetched in parallel.
+     */
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        try {
+            final ArrayList<com.foundationdb.async.Future<byte[]>> futures = new ArrayList<>();
+            for (byte[] key : keys) {
+                Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
+                futures.add(this.tx.get(this.addPrefix(key)));
+            }
+            final ArrayList<byte[]> values = new ArrayList<>(futures.size());
+            for (com.foundationdb.async.Future<byte[]> future : futures)
+                values.add(future.get());
+            return values;
+        } catch (FDBException e) {
+            throw this.wrapException(e);
+        }
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         if (this.stale)
@@ -34,7 +34,7 @@ class MSSQLKVTransaction extends SQLKVTransaction {
 
     // See SQLKVDatabase.createPutStatement()
     @Override
-    protected void update(StmtType stmtType, byte[]... params) {
+    protected byte[][] getUpdateParameters(StmtType stmtType, byte[]... params) {
         if (StmtType.PUT.equals(stmtType)) {
             final byte[][] swizzledParams = new byte[4][];
             swizzledParams[0] = params[1];
@@ -43,7 +43,7 @@ class MSSQLKVTransaction extends SQLKVTransaction {
             swizzledParams[3] = params[1];
             params = swizzledParams;
         }
-        super.update(stmtType, params);
+        return super.getUpdateParameters(stmtType, params);
     }
 
     @Override
@@ -0,0 +1,148 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.mssql;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.jsimpledb.test.TestSupport;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Verifies the parameters {@link MSSQLKVTransaction} binds to its put statement, with and without batched writes,
+ * using a stub JDBC connection that records what is executed.
+ */
+public class MSSQLKVTransactionTest extends TestSupport {
+
+    @Test(dataProvider = "batchWrites")
+    public void testPutParameters(boolean batchWrites) throws Exception {
+        final MSSQLKVDatabase kvdb = new MSSQLKVDatabase();
+        kvdb.setBatchWrites(batchWrites);
+        kvdb.setCacheStatements(batchWrites);
+        final String putSQL = kvdb.createPutStatement();
+
+        // Do some puts, including keys that need escaping
+        final RecordingConnection recorder = new RecordingConnection();
+        final MSSQLKVTransaction tx = new MSSQLKVTransaction(kvdb, recorder.getConnection());
+        tx.put(b("1234"), b("aa"));
+        tx.put(b("00ff01"), b("bb"));
+        tx.put(b("56"), b(""));
+        tx.commit();
+
+        // Verify merge statement parameters are (value, key, key, value) with escaped keys
+        final List<List<byte[]>> updates = recorder.getUpdates(putSQL);
+        Assert.assertEquals(updates.size(), 3);
+        final TreeMap<String, List<String>> actual = new TreeMap<>();
+        for (List<byte[]> params : updates) {
+            final List<String> hexParams = new ArrayList<>(params.size());
+            for (byte[] param : params)
+                hexParams.add(s(param));
+            actual.put(hexParams.get(1), hexParams);
+        }
+        final TreeMap<String, List<String>> expected = new TreeMap<>();
+        expected.put("1234", Arrays.asList("aa", "1234", "1234", "aa"));
+        expected.put("0101ff0102", Arrays.asList("bb", "0101ff0102", "0101ff0102", "bb"));
+        expected.put("56", Arrays.asList("", "56", "56", ""));
+        Assert.assertEquals(actual, expected);
+
+        // Verify batching
+        Assert.assertEquals(recorder.getNumBatches(putSQL), batchWrites ? 1 : 0);
+        Assert.assertTrue(recorder.isCommitted());
+    }
+
+    @DataProvider(name = "batchWrites")
+    public Object[][] genBatchWrites() {
+        return new Object[][] {
+            { false },
+            { true },
+        };
+    }
+
+// RecordingConnection
+
+    private static class RecordingConnection {
+
+        private final TreeMap<String, List<List<byte[]>>> updates = new TreeMap<>();
+        private final TreeMap<String, Integer> batches = new TreeMap<>();
+        private boolean committed;
+
+        Connection getConnection() {
+            return (Connection)Proxy.newProxyInstance(this.getClass().getClassLoader(),
+              new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "prepareStatement":
+                    return this.createPreparedStatement((String)args[0]);
+                case "commit":
+                    this.committed = true;
+                    return null;
+                default:
+                    return RecordingConnection.defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        List<List<byte[]>> getUpdates(String sql) {
+            return this.updates.getOrDefault(sql, new ArrayList<>());
+        }
+
+        int getNumBatches(String sql) {
+            return this.batches.getOrDefault(sql, 0);
+        }
+
+        boolean isCommitted() {
+            return this.committed;
+        }
+
+        private PreparedStatement createPreparedStatement(String sql) {
+            final int numParams = sql.replaceAll("[^?]", "").length();
+            final ParameterMetaData metaData = (ParameterMetaData)Proxy.newProxyInstance(this.getClass().getClassLoader(),
+              new Class<?>[] { ParameterMetaData.class }, (proxy, method, args) ->
+                "getParameterCount".equals(method.getName()) ?
+                  numParams : RecordingConnection.defaultValue(method.getReturnType()));
+            final byte[][] params = new byte[numParams][];
+            return (PreparedStatement)Proxy.newProxyInstance(this.getClass().getClassLoader(),
+              new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "getParameterMetaData":
+                    return metaData;
+                case "setBytes":
+                    params[(Integer)args[0] - 1] = (byte[])args[1];
+                    return null;
+                case "clearParameters":
+                    Arrays.fill(params, null);
+                    return null;
+                case "addBatch":
+                case "executeUpdate":
+                    this.updates.computeIfAbsent(sql, s -> new ArrayList<>()).add(new ArrayList<>(Arrays.asList(params)));
+                    return 1;
+                case "executeBatch":
+                    this.batches.merge(sql, 1, Integer::sum);
+                    return new int[0];
+                default:
+                    return RecordingConnection.defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class)
+                return false;
+            if (type == int.class)
+                return 0;
+            if (type == long.class)
+                return 0L;
+            return null;
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class CandidateRole extends NonLeaderRole {
      */
     public int getVotesRequired() {
         synchronized (this.raft) {
-            return this.raft.currentConfig.size() / 2 + 1;
+            return this.raft.getNumVoters() / 2 + 1;
         }
     }
 
@@ -71,7 +71,7 @@ public class CandidateRole extends NonLeaderRole {
             return;
 
         // Request votes from other peers
-        final HashSet<String> voters = new HashSet<>(this.raft.currentConfig.keySet());
+        final HashSet<String> voters = new HashSet<>(this.raft.getCurrentConfig().keySet());
         voters.remove(this.raft.identity);
         if (this.log.isDebugEnabled())
             this.debug("entering candidate role in term " + this.raft.currentTerm + "; requesting votes from " + voters);
@@ -102,7 +102,7 @@ public class CandidateRole extends NonLeaderRole {
         assert Thread.holdsLock(this.raft);
 
         // Tally votes
-        final int allVotes = this.raft.currentConfig.size();
+        final int allVotes = this.raft.getNumVoters();
         final int numVotes = this.getVotesReceived();
         final int votesRequired = this.getVotesRequired();
         if (this.log.isDebugEnabled())
@@ -79,6 +79,34 @@ public enum Consistency {
      */
     EVENTUAL_COMMITTED(true, false, false, true),
 
+    /**
+     * Bounded-staleness committed consistency.
+     *
+     * <p>
+     * This level is only for read-only transactions; read-write transactions are always {@link #LINEARIZABLE}.
+     *
+     * <p>
+     * This is the same as {@link #EVENTUAL_COMMITTED}, except that the committed view the transaction sees is
+     * guaranteed to have been up-to-date no more than {@linkplain RaftKVDatabase#setMaxReadStaleness a configured
+     * amount of time} before the transaction was created. This node decides locally: a leader uses its own lease,
+     * and a follower uses the most recent leader message that was sent under an active leader lease and that did
+     * not carry a commit index beyond its own. If this node cannot establish that bound, the transaction fails
+     * immediately with a {@link org.jsimpledb.kv.RetryTransactionException}.
+     *
+     * <p>
+     * Like {@link #EVENTUAL_COMMITTED}, transactions at this level require no network communication and commit
+     * immediately. This level is useful for follower reads that can tolerate a little staleness but should not
+     * silently read arbitrarily old data, e.g., when the local node is stuck in a minority partition.
+     *
+     * <p>
+     * The bound relies on the same clock drift assumptions as the leader lease.
+     *
+     * <p>
+     * In Raft terms, transactions are based on the latest committed log entry, which is known to have been
+     * the leader's commit index within the staleness bound; up-to-date reads are not guaranteed.
+     */
+    BOUNDED_STALENESS(true, false, false, true),
+
     /**
      * Eventual consistency.
      *
@@ -159,7 +187,8 @@ public enum Consistency {
      * the log entry on which they are based is committed.
      *
      * <p>
-     * This setting has no effect if {@link #isBasedOnCommittedLogEntry} returns true (i.e., {@link #EVENTUAL_COMMITTED}),
+     * This setting has no effect if {@link #isBasedOnCommittedLogEntry} returns true (i.e., {@link #EVENTUAL_COMMITTED}
+     * or {@link #BOUNDED_STALENESS}),
      * because in that case the log entry on which the transaction is based is already committed when transaction starts.
      *
      * @return true if transactions at this level wait for their base log entry to be committed
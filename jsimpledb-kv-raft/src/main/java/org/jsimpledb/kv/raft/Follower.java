@@ -39,6 +39,11 @@ public class Follower {
     @GuardedBy("raft")
     private final TreeSet<Timestamp> commitLeaseTimeouts = new TreeSet<>();
 
+    // Used to limit the number of unacknowledged AppendRequests containing log entries that may be in flight at any time.
+    // Each element is the index of the last log entry contained in a request we have sent but not seen acknowledged.
+    @GuardedBy("raft")
+    private final TreeSet<Long> appendsInFlight = new TreeSet<>();
+
     @GuardedBy("raft")
     private long nextIndex;                             // index of the next log entry to send to peer
     @GuardedBy("raft")
@@ -185,6 +190,18 @@ public class Follower {
         this.synced = synced;
     }
 
+    /**
+     * Get the number of {@link org.jsimpledb.kv.raft.msg.AppendRequest}s containing log entries that have been sent
+     * to this follower but not yet acknowledged.
+     *
+     * @return number of unacknowledged requests
+     */
+    public int getNumAppendsInFlight() {
+        synchronized (this.raft) {
+            return this.appendsInFlight.size();
+        }
+    }
+
     /**
      * Determine whether this follower is currently being sent a whole database snapshot download.
      *
@@ -196,6 +213,42 @@ public class Follower {
         }
     }
 
+    /**
+     * Get the number of key/value pairs sent so far in the in-progress snapshot install, if any.
+     *
+     * @return number of key/value pairs sent, or -1 if no snapshot install is in progress
+     */
+    public long getSnapshotPairsSent() {
+        synchronized (this.raft) {
+            return this.snapshotTransmit != null ? this.snapshotTransmit.getPairIndex() : -1;
+        }
+    }
+
+    /**
+     * Get the number of bytes sent so far in the in-progress snapshot install, if any.
+     *
+     * <p>
+     * If compression is being used, this is the compressed size.
+     *
+     * @return number of bytes sent, or -1 if no snapshot install is in progress
+     */
+    public long getSnapshotBytesSent() {
+        synchronized (this.raft) {
+            return this.snapshotTransmit != null ? this.snapshotTransmit.getSendLength() : -1;
+        }
+    }
+
+    /**
+     * Get the elapsed time of the in-progress snapshot install, if any.
+     *
+     * @return snapshot install duration in milliseconds, or -1 if no snapshot install is in progress
+     */
+    public int getSnapshotDuration() {
+        synchronized (this.raft) {
+            return this.snapshotTransmit != null ? this.snapshotTransmit.getAge() : -1;
+        }
+    }
+
 // Package-access methods
 
     boolean hasLogEntry(long index) {
@@ -222,6 +275,11 @@ public class Follower {
         return this.commitLeaseTimeouts;
     }
 
+    NavigableSet<Long> getAppendsInFlight() {
+        assert Thread.holdsLock(this.raft);
+        return this.appendsInFlight;
+    }
+
     Timer getUpdateTimer() {
         assert Thread.holdsLock(this.raft);
         return this.updateTimer;
@@ -243,6 +301,7 @@ public class Follower {
             this.snapshotTransmit.close();
             this.snapshotTransmit = null;
             this.synced = false;
+            this.appendsInFlight.clear();
         }
     }
 
@@ -267,6 +326,7 @@ public class Follower {
               + (this.leaderTimestamp != null ?
                 ",leaderTimestamp=" + String.format("%+dms", this.leaderTimestamp.offsetFromNow()) : "")
               + ",synced=" + this.synced
+              + (!this.appendsInFlight.isEmpty() ? ",appendsInFlight=" + this.appendsInFlight.size() : "")
               + (!this.skipDataLogEntries.isEmpty() ? ",skipDataLogEntries=" + this.skipDataLogEntries : "")
               + (this.snapshotTransmit != null ? ",snapshotTransmit=" + this.snapshotTransmit : "")
               + "]";
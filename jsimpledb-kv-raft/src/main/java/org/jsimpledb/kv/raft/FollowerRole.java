@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -57,8 +58,20 @@ public class FollowerRole extends NonLeaderRole {
     @GuardedBy("raft")
     private Timestamp leaderLeaseTimeout;                                           // latest rec'd leader lease timeout
     @GuardedBy("raft")
+    private Integer leaderClockOffset;                                              // min receipt time - leader timestamp
+    @GuardedBy("raft")
+    private Timestamp upToDateTime;                                                 // when commitIndex last matched leader's
+    @GuardedBy("raft")
     private HashMap<String, Timestamp> probeTimestamps;                             // used only when probing majority
 
+    // Read-only transactions waiting for the next batched CommitRequest (only used when follower read batching is enabled)
+    @GuardedBy("raft")
+    private final LinkedHashSet<RaftKVTransaction> readIndexQueue = new LinkedHashSet<>();
+
+    // Outstanding batched CommitRequest for read-only transactions, if any
+    @GuardedBy("raft")
+    private ReadIndexRequest readIndexRequest;
+
 // Constructors
 
     FollowerRole(RaftKVDatabase raft) {
@@ -123,6 +136,39 @@ public class FollowerRole extends NonLeaderRole {
         }
     }
 
+    /**
+     * Get the number of key/value pairs received so far in the in-progress snapshot install, if any.
+     *
+     * @return number of key/value pairs received, or -1 if no snapshot install is in progress
+     */
+    public long getSnapshotPairsReceived() {
+        synchronized (this.raft) {
+            return this.snapshotReceive != null ? this.snapshotReceive.getPairIndex() : -1;
+        }
+    }
+
+    /**
+     * Get the number of (uncompressed) bytes of key/value data received so far in the in-progress snapshot install, if any.
+     *
+     * @return number of bytes received, or -1 if no snapshot install is in progress
+     */
+    public long getSnapshotBytesReceived() {
+        synchronized (this.raft) {
+            return this.snapshotReceive != null ? this.snapshotReceive.getDataLength() : -1;
+        }
+    }
+
+    /**
+     * Get the elapsed time of the in-progress snapshot install, if any.
+     *
+     * @return snapshot install duration in milliseconds, or -1 if no snapshot install is in progress
+     */
+    public int getSnapshotDuration() {
+        synchronized (this.raft) {
+            return this.snapshotReceive != null ? this.snapshotReceive.getAge() : -1;
+        }
+    }
+
     /**
      * Determine the number of nodes (including this node) that this node has successfully probed when probing
      * for a majority of nodes with {@link PingRequest}s prior to reverting to a candidate.
@@ -190,6 +236,8 @@ public class FollowerRole extends NonLeaderRole {
 
         // Cleanup pending requests and commit writes
         this.commitRequests.clear();
+        this.readIndexQueue.clear();
+        this.readIndexRequest = null;
         this.pendingWrites.values().forEach(PendingWrite::cleanup);
         this.pendingWrites.clear();
 
@@ -226,13 +274,13 @@ public class FollowerRole extends NonLeaderRole {
         if (this.probeTimestamps == null) {
             if (this.log.isDebugEnabled())
                 this.debug("follower election timeout: attempting to probe a majority before becoming candidate");
-            this.probeTimestamps = new HashMap<>(this.raft.currentConfig.size() - 1);
+            this.probeTimestamps = new HashMap<>(this.raft.getNumVoters());
         }
 
         // Send out a(nother) round of probes to all other nodes
         final Timestamp now = new Timestamp();
         for (String peer : this.raft.currentConfig.keySet()) {
-            if (peer.equals(this.raft.identity))
+            if (peer.equals(this.raft.identity) || !this.raft.isClusterMember(peer))
                 continue;
             this.raft.sendMessage(new PingRequest(this.raft.clusterId, this.raft.identity, peer, this.raft.currentTerm, now));
         }
@@ -327,9 +375,10 @@ public class FollowerRole extends NonLeaderRole {
             }
 
             // Otherwise, we can only handle an initial config change that is adding the local node
-            if (configChange == null || !configChange[0].equals(this.raft.identity) || configChange[1] == null) {
+            if (configChange == null || !configChange[0].equals(this.raft.identity)
+              || configChange[1] == null || RaftKVDatabase.isLearnerAddress(configChange[1])) {
                 throw new RetryTransactionException(tx, "unconfigured system: an initial configuration change adding"
-                  + " the local node (\"" + this.raft.identity + "\") as the first member of a new cluster is required");
+                  + " the local node (\"" + this.raft.identity + "\") as the first voting member of a new cluster is required");
             }
 
             // Create a new cluster if needed
@@ -397,6 +446,15 @@ public class FollowerRole extends NonLeaderRole {
             return;
         }
 
+        // For read-only transactions, batch with other read-only transactions if so configured
+        if (!addsLogEntry && this.raft.followerReadBatching) {
+            this.commitRequests.add(tx);
+            this.readIndexQueue.add(tx);
+            if (this.readIndexRequest == null)
+                this.sendReadIndexRequest();
+            return;
+        }
+
         // For read-write transactions, send the reads & writes to the leader so leader can check for conflicts
         ByteBuffer readsData = null;
         ByteBuffer mutationData = null;
@@ -423,7 +481,7 @@ public class FollowerRole extends NonLeaderRole {
               String.format("%s%019d%s", RaftKVDatabase.TX_FILE_PREFIX, tx.txId, RaftKVDatabase.TEMP_FILE_SUFFIX));
             final FileWriter fileWriter;
             try {
-                fileWriter = new FileWriter(file, this.raft.disableSync);
+                fileWriter = new FileWriter(file, !this.raft.isTempFileSyncRequired());
             } catch (IOException e) {
                 throw new KVTransactionException(tx, "error saving transaction mutations to temporary file", e);
             }
@@ -468,10 +526,81 @@ public class FollowerRole extends NonLeaderRole {
             tx.setNoLongerRebasable();
     }
 
+    /**
+     * Send a single {@link CommitRequest} on behalf of all of the read-only transactions waiting in {@link #readIndexQueue}.
+     *
+     * <p>
+     * The leader's response to a read-only {@link CommitRequest} is a log index that is up-to-date as of the time
+     * the request was received, so it applies equally to every transaction that was waiting when it was sent.
+     */
+    private void sendReadIndexRequest() {
+
+        // Sanity check
+        assert Thread.holdsLock(this.raft);
+        assert this.readIndexRequest == null;
+        assert !this.readIndexQueue.isEmpty();
+
+        // Grab the waiting transactions
+        final ArrayList<RaftKVTransaction> txs = new ArrayList<>(this.readIndexQueue);
+        this.readIndexQueue.clear();
+
+        // If leader is not known or not writable, un-mark the transactions so they will get retried via the normal route
+        if (this.leader == null || this.raft.isTransmitting(this.leaderAddress)) {
+            if (this.log.isTraceEnabled())
+                this.trace("deferring batched CommitRequest for " + txs.size() + " read-only transaction(s)");
+            this.commitRequests.removeAll(txs);
+            return;
+        }
+
+        // Send one request on behalf of all the transactions, using the first transaction's ID to match up the response
+        final RaftKVTransaction first = txs.get(0);
+        final CommitRequest msg = new CommitRequest(this.raft.clusterId, this.raft.identity, this.leader,
+          this.raft.currentTerm, first.txId, first.getBaseTerm(), first.getBaseIndex(), null, null);
+        if (this.log.isTraceEnabled())
+            this.trace("sending " + msg + " to \"" + this.leader + "\" for " + txs.size() + " read-only transaction(s)");
+        if (!this.raft.sendMessage(msg)) {
+            this.commitRequests.removeAll(txs);
+            for (RaftKVTransaction tx : txs)
+                this.raft.fail(tx, new RetryTransactionException(tx, "error sending commit request to leader"));
+            return;
+        }
+
+        // Record pending request
+        this.readIndexRequest = new ReadIndexRequest(first.txId, txs);
+    }
+
+    /**
+     * Give up on an outstanding batched {@link CommitRequest} that has gone unanswered for too long, and resend.
+     *
+     * <p>
+     * Newly queued transactions are put first in the new batch, so that a late response to the old request (which could
+     * only match if it was sent for the same first transaction) never gets applied to a transaction that it does not cover.
+     */
+    private void checkReadIndexRequestTimeout() {
+
+        // Sanity check
+        assert Thread.holdsLock(this.raft);
+
+        // Has the outstanding request timed out?
+        if (this.readIndexRequest == null || this.readIndexRequest.getTimestamp().offsetFromNow() > -this.raft.minElectionTimeout)
+            return;
+        if (this.log.isDebugEnabled())
+            this.debug("no response to batched CommitRequest for tx#" + this.readIndexRequest.getTxId() + "; resending");
+
+        // Requeue the unanswered transactions after any newly queued ones
+        final ArrayList<RaftKVTransaction> unanswered = new ArrayList<>(this.readIndexRequest.getTxs());
+        unanswered.retainAll(this.commitRequests);
+        this.readIndexRequest = null;
+        this.readIndexQueue.addAll(unanswered);
+        if (!this.readIndexQueue.isEmpty())
+            this.sendReadIndexRequest();
+    }
+
     @Override
     void cleanupForTransaction(RaftKVTransaction tx) {
         assert Thread.holdsLock(this.raft);
         this.commitRequests.remove(tx);
+        this.readIndexQueue.remove(tx);
         final PendingWrite pendingWrite = this.pendingWrites.remove(tx.txId);
         if (pendingWrite != null)
             pendingWrite.cleanup();
@@ -519,6 +648,7 @@ public class FollowerRole extends NonLeaderRole {
             this.leader = msg.getSenderId();
             this.leaderAddress = this.raft.returnAddress;
             this.leaderLeaseTimeout = null;
+            this.leaderClockOffset = null;
             if (this.log.isDebugEnabled())
                 this.debug("updated leader to \"" + this.leader + "\" at " + this.leaderAddress);
             this.raft.requestService(this.checkReadyTransactionsService);     // allows COMMIT_READY transactions to be sent
@@ -534,6 +664,11 @@ public class FollowerRole extends NonLeaderRole {
         // Update timestamp last heard from leader
         this.lastLeaderMessageTime = new Timestamp();
 
+        // Track the smallest offset between our receipt time and the leader's send time; this maps leader timestamps onto our clock
+        final int messageOffset = this.lastLeaderMessageTime.offsetFrom(msg.getLeaderTimestamp());
+        if (this.leaderClockOffset == null || messageOffset - this.leaderClockOffset < 0)
+            this.leaderClockOffset = messageOffset;
+
         // Update leader's lease timeout
         if (msg.getLeaderLeaseTimeout() != null
           && (this.leaderLeaseTimeout == null || msg.getLeaderLeaseTimeout().compareTo(this.leaderLeaseTimeout) > 0)) {
@@ -556,6 +691,9 @@ public class FollowerRole extends NonLeaderRole {
         if (this.electionTimer.isRunning())
             this.restartElectionTimer();
 
+        // Resend any batched read-only CommitRequest that appears to have been lost
+        this.checkReadIndexRequestTimeout();
+
         // Get my last log entry's index
         long lastLogIndex = this.raft.getLastLogIndex();
 
@@ -583,7 +721,7 @@ public class FollowerRole extends NonLeaderRole {
                 for (LogEntry logEntry : conflictList) {
                     if (this.log.isDebugEnabled())
                         this.debug("deleting log entry " + logEntry + " overrwritten by " + msg);
-                    this.raft.deleteFile(logEntry.getFile(), "overwritten log file");
+                    this.raft.discardLogEntry(logEntry, "overwritten log file");
                 }
                 try {
                     this.raft.logDirChannel.force(true);
@@ -698,6 +836,23 @@ public class FollowerRole extends NonLeaderRole {
             this.raft.requestService(this.applyCommittedLogEntriesService);
         }
 
+        // If the leader held an active lease when it sent this message, and had already committed a log entry in its own
+        // term, then its commit index was authoritative at that time; if ours has caught up to it, we were up-to-date.
+        if (msg.getLeaderLeaseTimeout() != null
+          && msg.getLeaderLeaseTimeout().compareTo(msg.getLeaderTimestamp()) > 0
+          && this.raft.commitIndex >= leaderCommitIndex
+          && this.raft.getLogTermAtIndexIfKnown(leaderCommitIndex) == msg.getTerm()) {
+
+            // That time is the leader's send time, not our receipt time. Map it onto our clock using the fastest delivery seen
+            // from this leader, which subtracts any extra transit delay of this message, then allow for clock drift the same
+            // way the leader does when calculating its lease timeout.
+            final int transitDelay = messageOffset - this.leaderClockOffset;
+            final int driftMargin = (int)(this.raft.minElectionTimeout * RaftKVDatabase.MAX_CLOCK_DRIFT) + 1;
+            final Timestamp leaderSendTime = this.lastLeaderMessageTime.offset(-transitDelay - driftMargin);
+            if (this.upToDateTime == null || leaderSendTime.compareTo(this.upToDateTime) > 0)
+                this.upToDateTime = leaderSendTime;
+        }
+
         // Debug
         if (this.log.isTraceEnabled()) {
             this.trace("my updated follower state: "
@@ -723,6 +878,21 @@ public class FollowerRole extends NonLeaderRole {
     void caseCommitResponse(CommitResponse msg) {
         assert Thread.holdsLock(this.raft);
 
+        // Is this the response to a batched read-only request? If so, apply it to all transactions in the batch
+        if (this.readIndexRequest != null && msg.getTxId() == this.readIndexRequest.getTxId()) {
+            final List<RaftKVTransaction> txs = this.readIndexRequest.getTxs();
+            this.readIndexRequest = null;
+            if (this.log.isTraceEnabled())
+                this.trace("rec'd " + msg + " for " + txs.size() + " batched read-only transaction(s)");
+            for (RaftKVTransaction tx : txs) {
+                if (this.commitRequests.remove(tx))                                     // else completed or rolled back locally
+                    this.applyCommitResponse(tx, msg);
+            }
+            if (!this.readIndexQueue.isEmpty())
+                this.sendReadIndexRequest();
+            return;
+        }
+
         // Find transaction
         final RaftKVTransaction tx = this.raft.openTransactions.get(msg.getTxId());
         if (tx == null)                                                                 // must have been rolled back locally
@@ -740,6 +910,15 @@ public class FollowerRole extends NonLeaderRole {
         // Check result
         if (this.log.isTraceEnabled())
             this.trace("rec'd " + msg + " for " + tx);
+        this.applyCommitResponse(tx, msg);
+    }
+
+    private void applyCommitResponse(RaftKVTransaction tx, CommitResponse msg) {
+
+        // Sanity check
+        assert Thread.holdsLock(this.raft);
+        assert tx.getConsistency().equals(Consistency.LINEARIZABLE);
+        assert !this.commitRequests.contains(tx);
 
         // Do we already have a commit index & term? This would be unusual and can only happen with some leader change
         if (tx.hasCommitInfo()) {
@@ -858,7 +1037,7 @@ public class FollowerRole extends NonLeaderRole {
         if (this.log.isDebugEnabled())
             this.debug("applying " + msg + " to " + this.snapshotReceive);
         try {
-            this.snapshotReceive.applyNextChunk(msg.getData());
+            this.snapshotReceive.applyNextChunk(msg.getData(), msg.isCompressed());
         } catch (Exception e) {
             this.error("error applying snapshot to key/value store; aborting snapshot install", e);
             this.snapshotReceive = null;
@@ -975,7 +1154,7 @@ public class FollowerRole extends NonLeaderRole {
 
         // Get the number of nodes successfully probed so far (including ourselves), and the minimum number required (a majority)
         final int numProbed = this.calculateProbedNodes();
-        final int numRequired = this.raft.currentConfig.size() / 2 + 1;
+        final int numRequired = this.raft.getNumVoters() / 2 + 1;
         if (this.log.isTraceEnabled())
             this.trace("now we have probed " + numProbed + "/" + numRequired + " required nodes");
 
@@ -1020,6 +1199,11 @@ public class FollowerRole extends NonLeaderRole {
         return this.leaderLeaseTimeout;
     }
 
+    @Override
+    Timestamp getUpToDateTime() {
+        return this.upToDateTime;
+    }
+
 // Object
 
     @Override
@@ -1032,6 +1216,7 @@ public class FollowerRole extends NonLeaderRole {
               + (this.leader != null ? ",leader=\"" + this.leader + "\"" : "")
               + (this.votedFor != null ? ",votedFor=\"" + this.votedFor + "\"" : "")
               + (!pendingRequestIds.isEmpty() ? ",commitRequests=" + pendingRequestIds : "")
+              + (this.readIndexRequest != null ? ",readIndexRequest=" + this.readIndexRequest.getTxId() : "")
               + (!this.pendingWrites.isEmpty() ? ",pendingWrites=" + this.pendingWrites.keySet() : "")
               + "]";
         }
@@ -1057,6 +1242,10 @@ public class FollowerRole extends NonLeaderRole {
             }
             assert !tx.hasCommitInfo();
         }
+        assert this.commitRequests.containsAll(this.readIndexQueue);
+        assert this.readIndexRequest != null || this.readIndexQueue.isEmpty();
+        for (RaftKVTransaction tx : this.readIndexQueue)
+            assert !tx.addsLogEntry();
         for (Map.Entry<Long, PendingWrite> entry : this.pendingWrites.entrySet()) {
             final long txId = entry.getKey();
             final PendingWrite pendingWrite = entry.getValue();
@@ -1115,5 +1304,33 @@ public class FollowerRole extends NonLeaderRole {
             this.tx.raft.deleteFile(this.fileWriter.getFile(), "pending write temp file");
         }
     }
+
+// ReadIndexRequest
+
+    // Represents an outstanding CommitRequest sent on behalf of a batch of read-only transactions. The request
+    // carries the transaction ID of the first transaction in the batch, which is how we match up the response.
+    private static class ReadIndexRequest {
+
+        private final long txId;
+        private final List<RaftKVTransaction> txs;
+        private final Timestamp timestamp = new Timestamp();
+
+        ReadIndexRequest(long txId, List<RaftKVTransaction> txs) {
+            this.txId = txId;
+            this.txs = txs;
+        }
+
+        public long getTxId() {
+            return this.txId;
+        }
+
+        public List<RaftKVTransaction> getTxs() {
+            return this.txs;
+        }
+
+        public Timestamp getTimestamp() {
+            return this.timestamp;
+        }
+    }
 }
 
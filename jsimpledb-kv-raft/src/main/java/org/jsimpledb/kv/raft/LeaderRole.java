@@ -24,6 +24,7 @@ import javax.annotation.concurrent.GuardedBy;
 import org.dellroad.stuff.io.ByteBufferInputStream;
 import org.jsimpledb.kv.KVTransactionException;
 import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.mvcc.MutableView;
 import org.jsimpledb.kv.mvcc.Reads;
 import org.jsimpledb.kv.mvcc.Writes;
 import org.jsimpledb.kv.raft.msg.AppendRequest;
@@ -51,6 +52,10 @@ public class LeaderRole extends Role {
     @GuardedBy("raft")
     private Timestamp leaseTimeout;
 
+    // Read-write commits waiting to be merged into the next log entry (only used when commit batching is enabled)
+    @GuardedBy("raft")
+    private final ArrayList<PendingCommit> pendingCommits = new ArrayList<>();
+
     // Service tasks
     private final Service updateLeaderCommitIndexService = new Service(this, "update leader commitIndex") {
         @Override
@@ -82,6 +87,12 @@ public class LeaderRole extends Role {
             LeaderRole.this.scrubTimestamps();
         }
     });
+    private final Timer commitBatchTimer = new Timer(this.raft, "commit batch", new Service(this, "commit batch") {
+        @Override
+        public void run() {
+            LeaderRole.this.flushPendingCommits();
+        }
+    });
 
 // Constructors
 
@@ -192,7 +203,11 @@ public class LeaderRole extends Role {
           .forEach(Follower::cleanup);
         this.checkApplyTimer.cancel();
         this.timestampScrubTimer.cancel();
+        this.commitBatchTimer.cancel();
         super.shutdown();
+
+        // Discard batched commits; local transactions will be handled by the next role, and remote ones by their followers
+        this.pendingCommits.clear();
     }
 
 // Service
@@ -207,6 +222,8 @@ public class LeaderRole extends Role {
           .forEach(follower -> {
             if (this.log.isTraceEnabled())
                 this.trace("updating peer \"" + follower.getIdentity() + "\" after queue empty notification");
+            if (follower.getSnapshotTransmit() != null)
+                follower.getSnapshotTransmit().queueEmpty();
             this.raft.requestService(new UpdateFollowerService(follower));
         });
     }
@@ -297,7 +314,7 @@ public class LeaderRole extends Role {
         assert Thread.holdsLock(this.raft);
 
         // Find highest index for which a majority of cluster members have ack'd the corresponding log entry from my term
-        final int totalCount = this.raft.currentConfig.size();                          // total possible nodes
+        final int totalCount = this.raft.getNumVoters();                                // total possible voting nodes
         final int requiredCount = totalCount / 2 + 1;                                   // require a majority
         final int startingCount = this.raft.isClusterMember() ? 1 : 0;                  // count myself, if member
         long maxCommitIndex = this.raft.commitIndex;
@@ -388,7 +405,7 @@ public class LeaderRole extends Role {
             return;
 
         // Get all cluster member leader timestamps, sorted in increasing order
-        final Timestamp[] leaderTimestamps = new Timestamp[this.raft.currentConfig.size()];
+        final Timestamp[] leaderTimestamps = new Timestamp[this.raft.getNumVoters()];
         int index = 0;
         if (this.raft.isClusterMember())
             leaderTimestamps[index++] = new Timestamp();                        // this represents my own vote
@@ -409,7 +426,12 @@ public class LeaderRole extends Role {
         // The minimum leaderTimeout shared by a majority of nodes is at index (leaderTimestamps.length - 1) / 2.
         // We then add the minimum election timeout, then subtract a little for clock drift.
         //
-        final Timestamp newLeaseTimeout = leaderTimestamps[(leaderTimestamps.length + 1) / 2]
+        // If a majority has not responded yet (e.g., we have only heard from learners), there's no lease timeout yet.
+        //
+        final Timestamp majorityTimestamp = leaderTimestamps[(leaderTimestamps.length - 1) / 2];
+        if (majorityTimestamp == null)
+            return;
+        final Timestamp newLeaseTimeout = majorityTimestamp
           .offset((int)(this.raft.minElectionTimeout * (1.0f - RaftKVDatabase.MAX_CLOCK_DRIFT) - 1));
         if (Timestamp.NULL_FIRST_SORT.compare(newLeaseTimeout, this.leaseTimeout) > 0) {
             assert newLeaseTimeout != null;
@@ -509,7 +531,7 @@ public class LeaderRole extends Role {
 
         // Add new followers
         for (String peer : adds) {
-            final String address = this.raft.currentConfig.get(peer);
+            final String address = RaftKVDatabase.getPeerAddress(this.raft.currentConfig.get(peer));
             final Follower follower = new Follower(this.raft, peer, address, this.raft.getLastLogIndex());
             if (this.log.isDebugEnabled())
                 this.debug("adding new follower \"" + peer + "\" at " + address);
@@ -539,6 +561,8 @@ public class LeaderRole extends Role {
      *  <li>After a new log entry has been added to the log (all followers)</li>
      *  <li>After receiving an {@link AppendResponse} that caused the follower's
      *      {@linkplain Follower#getNextIndex next index} to change</li>
+     *  <li>After receiving an {@link AppendResponse} that frees up room in the follower's append window</li>
+     *  <li>After sending log entries to a follower, if more remain and there's still room in its append window</li>
      *  <li>After receiving the first positive {@link AppendResponse} to a probe</li>
      *  <li>After our {@code commitIndex} has advanced (all followers)</li>
      *  <li>After our {@code leaseTimeout} has advanced past one or more of a follower's
@@ -563,15 +587,23 @@ public class LeaderRole extends Role {
             follower.updateNow();
         }
 
-        // Is follower's queue empty? If not, hold off until then
-        if (this.raft.isTransmitting(follower.getAddress())) {
+        // Do we have new log entries for a synchronized follower, and room for them in its append window?
+        final boolean sendLogEntries = follower.isSynced()
+          && follower.getNextIndex() <= this.raft.getLastLogIndex()
+          && follower.getAppendsInFlight().size() < this.raft.appendWindowSize;
+
+        // Is follower's queue empty? If not, hold off until then (unless there's room for another snapshot chunk,
+        // or we can pipeline more log entries behind the ones already queued)
+        snapshotTransmit = follower.getSnapshotTransmit();
+        if (this.raft.isTransmitting(follower.getAddress())
+          && (snapshotTransmit != null ? snapshotTransmit.getChunksQueued() >= this.raft.snapshotWindowSize : !sendLogEntries)) {
             if (this.log.isTraceEnabled())
                 this.trace("no update for \"" + peer + "\": output queue still not empty");
             return;
         }
 
         // Handle any in-progress snapshot install
-        if ((snapshotTransmit = follower.getSnapshotTransmit()) != null) {
+        if (snapshotTransmit != null) {
 
             // Send the next chunk in transmission, if any
             final long pairIndex = snapshotTransmit.getPairIndex();
@@ -582,9 +614,15 @@ public class LeaderRole extends Role {
                 // Send next chunk
                 final InstallSnapshot msg = new InstallSnapshot(this.raft.clusterId, this.raft.identity, peer,
                   this.raft.currentTerm, snapshotTransmit.getSnapshotTerm(), snapshotTransmit.getSnapshotIndex(), pairIndex,
-                  pairIndex == 0 ? snapshotTransmit.getSnapshotConfig() : null, !snapshotTransmit.hasMoreChunks(), chunk);
+                  pairIndex == 0 ? snapshotTransmit.getSnapshotConfig() : null, !snapshotTransmit.hasMoreChunks(),
+                  snapshotTransmit.isCompressed(), chunk);
                 if (this.raft.sendMessage(msg)) {
                     follower.setSnapshotTimestamp(new Timestamp());
+
+                    // Send another chunk right away if there's room in the window
+                    snapshotTransmit.chunkQueued();
+                    if (snapshotTransmit.getChunksQueued() < this.raft.snapshotWindowSize)
+                        this.raft.requestService(new UpdateFollowerService(follower));
                     return;
                 }
                 if (this.log.isDebugEnabled())
@@ -615,12 +653,10 @@ public class LeaderRole extends Role {
 
             // Don't wait for the update timer to expire if:
             //  (a) The follower is sync'd; AND
-            //      (y) We have a new log entry that the follower doesn't have; OR
+            //      (y) We have a new log entry that the follower doesn't have, and room in its append window; OR
             //      (y) We have a new leaderCommit that the follower doesn't have
             // The effect is that we will pipeline updates to synchronized followers.
-            if (follower.isSynced()
-              && (follower.getLeaderCommit() != this.raft.commitIndex
-               || follower.getNextIndex() <= this.raft.getLastLogIndex()))
+            if (sendLogEntries || (follower.isSynced() && follower.getLeaderCommit() != this.raft.commitIndex))
                 waitForTimerToExpire = false;
 
             // Wait for timer to expire
@@ -639,8 +675,11 @@ public class LeaderRole extends Role {
         // If follower is too far behind, we must do a snapshot install
         if (nextIndex <= this.raft.lastAppliedIndex) {
             final MostRecentView view = new MostRecentView(this.raft, this.raft.commitIndex);
-            follower.setSnapshotTransmit(new SnapshotTransmit(view.getTerm(),
-              view.getIndex(), view.getConfig(), view.getSnapshot(), view.getView()));
+            final boolean compress = this.raft.snapshotCompression
+              && InstallSnapshot.isCompressionSupported(this.raft.getProtocolVersion(peer));
+            follower.setSnapshotTransmit(new SnapshotTransmit(view.getTerm(), view.getIndex(), view.getConfig(),
+              view.getSnapshot(), view.getView(), this.raft.maxSnapshotChunkSize, compress));
+            follower.getAppendsInFlight().clear();
             if (this.log.isDebugEnabled())
                 this.debug("started snapshot install for out-of-date " + follower);
             this.raft.requestService(new UpdateFollowerService(follower));
@@ -650,43 +689,58 @@ public class LeaderRole extends Role {
         // Restart update timer here (to avoid looping if an error occurs below)
         follower.getUpdateTimer().timeoutAfter(this.raft.heartbeatTimeout);
 
-        // Send actual data if follower is synced and there is a log entry to send; otherwise, just send a probe
+        // Send actual data if follower is synced and there are log entries to send; otherwise, just send a probe
         final AppendRequest msg;
-        if (!follower.isSynced() || nextIndex > this.raft.getLastLogIndex()) {
+        if (!sendLogEntries) {
 
             // Create probe-only message
             msg = new AppendRequest(this.raft.clusterId, this.raft.identity, peer, this.raft.currentTerm, new Timestamp(),
               this.leaseTimeout, this.raft.commitIndex, this.raft.getLogTermAtIndex(nextIndex - 1), nextIndex - 1);
         } else {
 
-            // Get log entry to send
-            final LogEntry logEntry = this.raft.getLogEntryAtIndex(nextIndex);
-
-            // If the log entry correspond's to follower's transaction, don't send the data because follower already has it.
-            // But only do this optimization the first time, in case something goes wrong on the follower's end.
-            ByteBuffer mutationData = null;
-            if (!follower.getSkipDataLogEntries().remove(logEntry)) {
-                try {
-                    mutationData = logEntry.getContent();
-                } catch (IOException e) {
-                    this.error("error reading log file " + logEntry.getFile(), e);
-                    return;
+            // Determine how many log entries to send; we can only send more than one if the follower understands batches
+            final int maxBatchSize = AppendRequest.isBatchingSupported(this.raft.getProtocolVersion(peer)) ?
+              this.raft.maxAppendBatchSize : 1;
+            final int numLogEntries = (int)Math.min(this.raft.getLastLogIndex() - nextIndex + 1, maxBatchSize);
+
+            // Get log entries to send
+            final long[] logEntryTerms = new long[numLogEntries];
+            final ByteBuffer[] mutationData = new ByteBuffer[numLogEntries];
+            for (int i = 0; i < numLogEntries; i++) {
+                final LogEntry logEntry = this.raft.getLogEntryAtIndex(nextIndex + i);
+                logEntryTerms[i] = logEntry.getTerm();
+
+                // If the log entry correspond's to follower's transaction, don't send the data because follower already has it.
+                // But only do this optimization the first time, in case something goes wrong on the follower's end.
+                if (!follower.getSkipDataLogEntries().remove(logEntry)) {
+                    try {
+                        mutationData[i] = logEntry.getContent();
+                    } catch (IOException e) {
+                        this.error("error reading log file " + logEntry.getFile(), e);
+                        return;
+                    }
                 }
             }
 
             // Create message
             msg = new AppendRequest(this.raft.clusterId, this.raft.identity, peer, this.raft.currentTerm, new Timestamp(),
               this.leaseTimeout, this.raft.commitIndex, this.raft.getLogTermAtIndex(nextIndex - 1), nextIndex - 1,
-              logEntry.getTerm(), mutationData);
+              logEntryTerms, mutationData);
         }
 
         // Send update
         final boolean sent = this.raft.sendMessage(msg);
 
-        // Advance next index if a log entry was sent; we allow pipelining log entries when synchronized
+        // Advance next index if log entries were sent; we allow pipelining log entries when synchronized
         if (sent && !msg.isProbe()) {
             assert follower.isSynced();
-            follower.setNextIndex(Math.min(follower.getNextIndex(), this.raft.getLastLogIndex()) + 1);
+            final long lastSentIndex = nextIndex + msg.getNumLogEntries() - 1;
+            follower.setNextIndex(lastSentIndex + 1);
+            follower.getAppendsInFlight().add(lastSentIndex);
+
+            // Keep going if there are more log entries to send and there's still room in the window
+            if (lastSentIndex < this.raft.getLastLogIndex() && follower.getAppendsInFlight().size() < this.raft.appendWindowSize)
+                this.raft.requestService(new UpdateFollowerService(follower));
         }
 
         // Update the leaderCommit we sent to the follower
@@ -774,6 +828,22 @@ public class LeaderRole extends Role {
         assert !tx.hasCommitInfo();
         assert this.checkRebasableAndCommittableUpToDate(tx);
 
+        // Add transaction to the current commit batch, if batching
+        if (this.raft.commitBatchDelay > 0 && tx.getConfigChange() == null) {
+            if (this.pendingCommits.stream().noneMatch(pendingCommit -> pendingCommit.tx == tx)) {
+                this.addPendingCommit(new PendingCommit(tx,
+                  tx.view.getWrites(), tx.view.getReads(), tx.getBaseTerm(), tx.getBaseIndex()));
+            }
+            return;
+        }
+
+        // Any batched commits must be ordered before this one; flushing them may cause this transaction to fail
+        if (!this.pendingCommits.isEmpty()) {
+            this.flushPendingCommits();
+            if (!tx.getState().equals(TxState.COMMIT_READY))
+                return;
+        }
+
         // If a config change is involved, check whether we can safely apply it
         if (tx.getConfigChange() != null && !this.mayApplyNewConfigChange())
             return;
@@ -797,6 +867,120 @@ public class LeaderRole extends Role {
         this.rebaseTransactions();
     }
 
+    @Override
+    void cleanupForTransaction(RaftKVTransaction tx) {
+        assert Thread.holdsLock(this.raft);
+        this.pendingCommits.removeIf(pendingCommit -> pendingCommit.tx == tx);
+        super.cleanupForTransaction(tx);
+    }
+
+    /**
+     * Add a read-write commit to the current commit batch, and write the batch if it's full.
+     */
+    private void addPendingCommit(PendingCommit pendingCommit) {
+        assert Thread.holdsLock(this.raft);
+        assert this.raft.commitBatchDelay > 0;
+        this.pendingCommits.add(pendingCommit);
+        if (this.log.isTraceEnabled())
+            this.trace("added " + pendingCommit + " to commit batch (" + this.pendingCommits.size() + " pending)");
+        if (this.pendingCommits.size() >= this.raft.maxCommitBatchSize)
+            this.flushPendingCommits();
+        else if (!this.commitBatchTimer.isRunning())
+            this.commitBatchTimer.timeoutAfter(this.raft.commitBatchDelay);
+    }
+
+    /**
+     * Merge all batched commits that don't conflict with each other (or with any log entries added since they
+     * were last checked) into a single new log entry, and notify the corresponding transactions.
+     *
+     * <p>
+     * Batch members are ordered by arrival; a member whose reads conflict with the writes of some earlier
+     * member of the same batch is failed, exactly as if the earlier member had been committed by itself first.
+     */
+    private void flushPendingCommits() {
+        assert Thread.holdsLock(this.raft);
+
+        // Anything to do?
+        this.commitBatchTimer.cancel();
+        if (this.pendingCommits.isEmpty())
+            return;
+        final ArrayList<PendingCommit> batch = new ArrayList<>(this.pendingCommits);
+        this.pendingCommits.clear();
+
+        // Merge the writes of all non-conflicting commits, in order
+        final long lastIndex = this.raft.getLastLogIndex();
+        final Writes writes = new Writes();
+        final MutableView merger = new MutableView(this.raft.kv, null, writes);
+        final ArrayList<PendingCommit> accepted = new ArrayList<>(batch.size());
+        for (PendingCommit pendingCommit : batch) {
+
+            // Check for conflicts with any log entries added since the commit was last checked
+            String conflictMsg = null;
+            if (pendingCommit.reads != null) {
+                if (pendingCommit.baseIndex != lastIndex) {
+                    conflictMsg = this.checkConflicts(pendingCommit.baseTerm, pendingCommit.baseIndex,
+                      pendingCommit.reads, this.raft.dumpConflicts ? pendingCommit.toString() : null);
+                }
+                if (conflictMsg == null && !accepted.isEmpty() && pendingCommit.reads.isConflict(writes))
+                    conflictMsg = "writes of an earlier transaction in the same commit batch conflict with transaction reads";
+            }
+
+            // Fail on conflict, otherwise merge in writes
+            if (conflictMsg != null) {
+                if (this.log.isDebugEnabled())
+                    this.debug(pendingCommit + " failed due to conflict: " + conflictMsg);
+                pendingCommit.fail(this, conflictMsg);
+                continue;
+            }
+            Writes.apply(pendingCommit.writes, merger);
+            accepted.add(pendingCommit);
+        }
+        if (accepted.isEmpty())
+            return;
+
+        // Commit mutations as a new log entry
+        NewLogEntry newLogEntry = null;
+        final LogEntry logEntry;
+        try {
+            newLogEntry = new NewLogEntry(this.raft, new LogEntry.Data(writes, null));
+            logEntry = this.applyNewLogEntry(newLogEntry);
+        } catch (Exception e) {
+            this.error("error appending new log entry for commit batch " + accepted, e);
+            for (PendingCommit pendingCommit : accepted)
+                pendingCommit.fail(this, e.getMessage() != null ? e.getMessage() : "" + e);
+            return;
+        } finally {
+            if (newLogEntry != null)
+                newLogEntry.cleanup(this.raft);
+        }
+        if (this.log.isDebugEnabled())
+            this.debug("added log entry " + logEntry + " for commit batch " + accepted);
+
+        // Notify transactions
+        for (PendingCommit pendingCommit : accepted) {
+            if (pendingCommit.tx != null) {
+                try {
+                    this.advanceReadyTransactionWithCommitInfo(pendingCommit.tx, logEntry.getTerm(), logEntry.getIndex(), null);
+                } catch (KVTransactionException e) {
+                    this.raft.fail(pendingCommit.tx, e);
+                }
+                continue;
+            }
+
+            // Follower transaction data optimization (only possible if the log entry contains exactly the follower's writes)
+            if (accepted.size() == 1)
+                pendingCommit.follower.getSkipDataLogEntries().add(logEntry);
+
+            // Send response
+            this.raft.sendMessage(new CommitResponse(this.raft.clusterId, this.raft.identity,
+              pendingCommit.follower.getIdentity(), this.raft.currentTerm, pendingCommit.txId,
+              logEntry.getTerm(), logEntry.getIndex()));
+        }
+
+        // Rebase transactions
+        this.rebaseTransactions();
+    }
+
     // Determine whether it's safe to append a log entry with a configuration change
     private boolean mayApplyNewConfigChange() {
         assert Thread.holdsLock(this.raft);
@@ -821,6 +1005,19 @@ public class LeaderRole extends Role {
         return this.leaseTimeout;
     }
 
+    @Override
+    Timestamp getUpToDateTime() {
+        assert Thread.holdsLock(this.raft);
+
+        // Until we commit a log entry from our own term, our commit index may trail what a previous leader committed
+        if (this.leaseTimeout == null || this.raft.getLogTermAtIndex(this.raft.commitIndex) != this.raft.currentTerm)
+            return null;
+
+        // Our commit index is authoritative for as long as our lease lasts
+        final Timestamp now = new Timestamp();
+        return this.leaseTimeout.compareTo(now) > 0 ? now : this.leaseTimeout;
+    }
+
     /**
      * Get the minimum future leader timestamp required before we will know that our last log entry is up-to-date as of now.
      * If we already know that it's up-to-date as of now (because our lease currently extends into the future), return null.
@@ -873,10 +1070,19 @@ public class LeaderRole extends Role {
         if (msg.getMatchIndex() > follower.getMatchIndex()) {
             follower.setMatchIndex(msg.getMatchIndex());
             this.raft.requestService(this.updateLeaderCommitIndexService);
-            if (!this.raft.isClusterMember(follower.getIdentity()))
+            if (!this.raft.currentConfig.containsKey(follower.getIdentity()))
                 this.raft.requestService(this.updateKnownFollowersService);
         }
 
+        // Release acknowledged requests from follower's append window; after a failure, anything in flight is moot
+        final NavigableSet<Long> appendsInFlight = follower.getAppendsInFlight();
+        final int previousAppendsInFlight = appendsInFlight.size();
+        if (msg.isSuccess())
+            appendsInFlight.headSet(msg.getMatchIndex(), true).clear();
+        else
+            appendsInFlight.clear();
+        updateFollowerAgain |= appendsInFlight.size() < previousAppendsInFlight;
+
         // Check result and update follower's next index
         final boolean wasSynced = follower.isSynced();
         final long previousNextIndex = follower.getNextIndex();
@@ -918,14 +1124,20 @@ public class LeaderRole extends Role {
         if (follower == null)
             return;
 
+        // Will this commit be batched? If not, any batched commits must be ordered before it (and conflict checked against)
+        final boolean batch = newLogEntry != null
+          && this.raft.commitBatchDelay > 0 && newLogEntry.getData().getConfigChange() == null;
+        if (newLogEntry != null && !batch)
+            this.flushPendingCommits();
+
         // Decode reads, if any, and check for conflicts
         final ByteBuffer readsData = msg.getReadsData();
+        Reads reads = null;
         if (readsData != null) {
 
             // Decode reads
-            final Reads reads;
             try {
-                reads = new Reads(new ByteBufferInputStream(msg.getReadsData()));
+                reads = new Reads(new ByteBufferInputStream(msg.getReadsData()), true);
             } catch (Exception e) {
                 this.error("error decoding reads data in " + msg, e);
                 this.raft.sendMessage(new CommitResponse(this.raft.clusterId, this.raft.identity, msg.getSenderId(),
@@ -966,6 +1178,11 @@ public class LeaderRole extends Role {
             this.raft.sendMessage(new CommitResponse(this.raft.clusterId, this.raft.identity, msg.getSenderId(),
               this.raft.currentTerm, msg.getTxId(), this.raft.getLastLogTerm(), this.raft.getLastLogIndex(),
               minimumLeaseTimeout));
+        } else if (batch) {
+
+            // Add commit to the current batch; we will respond when the batch is written
+            this.addPendingCommit(new PendingCommit(follower, msg.getTxId(), newLogEntry.getData().getWrites(),
+              reads, this.raft.getLastLogTerm(), this.raft.getLastLogIndex()));
         } else {
             assert newLogEntry != null;
 
@@ -1099,11 +1316,15 @@ public class LeaderRole extends Role {
     /**
      * Apply a new log entry to the Raft log; if operation fails, {@link NewLogEntry#cancel cancel()} {@code newLogEntry}.
      *
+     * <p>
+     * Any batched commits must be flushed before invoking this method, so that they are ordered first.
+     *
      * @throws IllegalStateException if a config change would not be safe at the current time
-     * @throws IllegalArgumentException if the config change attempts to remove the last node
+     * @throws IllegalArgumentException if the config change attempts to remove the last voting node
      */
     private LogEntry applyNewLogEntry(NewLogEntry newLogEntry) throws Exception {
         assert Thread.holdsLock(this.raft);
+        assert this.pendingCommits.isEmpty();
 
         // Do a couple of extra checks if a config change is included
         final String[] configChange = newLogEntry.getData().getConfigChange();
@@ -1113,11 +1334,11 @@ public class LeaderRole extends Role {
             if (!this.mayApplyNewConfigChange())
                 throw new IllegalStateException("config change cannot be safely applied at this time");
 
-            // Disallow a configuration change that removes the last node in a cluster
-            if (this.raft.currentConfig.size() == 1 && configChange[1] == null) {
-                final String lastNode = this.raft.currentConfig.keySet().iterator().next();
-                if (configChange[0].equals(lastNode))
-                    throw new IllegalArgumentException("can't remove the last node in a cluster (\"" + lastNode + "\")");
+            // Disallow a configuration change that removes (or demotes to learner) the last voting node in a cluster
+            if (this.raft.getNumVoters() == 1 && this.raft.isClusterMember(configChange[0])
+              && (configChange[1] == null || RaftKVDatabase.isLearnerAddress(configChange[1]))) {
+                throw new IllegalArgumentException("can't remove the last voting node in a cluster (\""
+                  + configChange[0] + "\")");
             }
         }
 
@@ -1169,7 +1390,9 @@ public class LeaderRole extends Role {
               + baseIndex + " and term " + baseTerm + " != " + actualBaseTerm;
         }
 
-        // Check for conflicts from intervening commits
+        // Check for conflicts from intervening commits; the index lets us avoid scanning them when there are none
+        if (!this.raft.logWritesIndex.hasConflict(this.raft, reads, baseIndex))
+            return null;
         for (long index = baseIndex + 1; index <= maxIndex; index++) {
             final LogEntry logEntry = this.raft.getLogEntryAtIndex(index);
             if (reads.isConflict(logEntry.getWrites())) {
@@ -1191,5 +1414,53 @@ public class LeaderRole extends Role {
             this.warn("rec'd " + msg + " from unknown follower \"" + msg.getSenderId() + "\", ignoring");
         return follower;
     }
-}
 
+// PendingCommit
+
+    /**
+     * A read-write commit, from either a local transaction or a follower, waiting to be merged into a commit batch.
+     */
+    private static final class PendingCommit {
+
+        final RaftKVTransaction tx;                     // local transaction, or null
+        final Follower follower;                        // follower that sent the CommitRequest, or null
+        final long txId;                                // transaction ID
+        final Writes writes;
+        final Reads reads;                              // null if no conflicts are possible
+        final long baseTerm;                            // term of log entry through which reads have been conflict checked
+        final long baseIndex;                           // index of log entry through which reads have been conflict checked
+
+        PendingCommit(RaftKVTransaction tx, Writes writes, Reads reads, long baseTerm, long baseIndex) {
+            this(tx, null, tx.txId, writes, reads, baseTerm, baseIndex);
+        }
+
+        PendingCommit(Follower follower, long txId, Writes writes, Reads reads, long baseTerm, long baseIndex) {
+            this(null, follower, txId, writes, reads, baseTerm, baseIndex);
+        }
+
+        private PendingCommit(RaftKVTransaction tx, Follower follower, long txId,
+          Writes writes, Reads reads, long baseTerm, long baseIndex) {
+            this.tx = tx;
+            this.follower = follower;
+            this.txId = txId;
+            this.writes = writes;
+            this.reads = reads;
+            this.baseTerm = baseTerm;
+            this.baseIndex = baseIndex;
+        }
+
+        void fail(LeaderRole leader, String errorMessage) {
+            if (this.tx != null) {
+                leader.raft.fail(this.tx, new RetryTransactionException(this.tx, errorMessage));
+                return;
+            }
+            leader.raft.sendMessage(new CommitResponse(leader.raft.clusterId, leader.raft.identity,
+              this.follower.getIdentity(), leader.raft.currentTerm, this.txId, errorMessage));
+        }
+
+        @Override
+        public String toString() {
+            return this.tx != null ? "local " + this.tx : "\"" + this.follower.getIdentity() + "\" txId=" + this.txId;
+        }
+    }
+}
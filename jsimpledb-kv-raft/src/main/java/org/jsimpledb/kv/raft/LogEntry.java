@@ -45,6 +45,8 @@ public class LogEntry {
     private final String[] configChange;
     private final long fileSize;
     private final File file;
+    private final SegmentedLog.Segment segment;
+    private final long offset;
 
     private ByteBuffer content;
 
@@ -72,6 +74,35 @@ public class LogEntry {
         this.fileSize = fileSize;
         this.file = new File(logDir,
           String.format("%s%019d-%019d%s", LOG_FILE_PREFIX, this.getIndex(), this.getTerm(), LOG_FILE_SUFFIX));
+        this.segment = null;
+        this.offset = -1;
+    }
+
+    /**
+     * Constructor for a log entry stored in a log segment.
+     *
+     * @param term log entry term
+     * @param index log entry index
+     * @param segment segment containing the log entry
+     * @param offset offset of the log entry's record in {@code segment}
+     * @param data log entry data
+     * @param size the size of the serialized log entry data
+     */
+    LogEntry(long term, long index, SegmentedLog.Segment segment, long offset, Data data, long size) {
+        Preconditions.checkArgument(term > 0, "bogus term");
+        Preconditions.checkArgument(index > 0, "bogus index");
+        Preconditions.checkArgument(segment != null, "null segment");
+        Preconditions.checkArgument(offset >= 0, "invalid offset");
+        Preconditions.checkArgument(data != null, "null data");
+        Preconditions.checkArgument(size > 0, "invalid size");
+        this.term = term;
+        this.index = index;
+        this.writes = data.getWrites();
+        this.configChange = data.getConfigChange();
+        this.fileSize = size;
+        this.file = segment.getFile();
+        this.segment = segment;
+        this.offset = offset;
     }
 
 // Properties
@@ -142,6 +173,9 @@ public class LogEntry {
     /**
      * Get the size of the on-disk file for this log entry.
      *
+     * <p>
+     * If this log entry is stored in a log segment, this returns the size of its serialized data within the segment.
+     *
      * @return log entry file size
      */
     public long getFileSize() {
@@ -151,20 +185,43 @@ public class LogEntry {
     /**
      * Get the on-disk file for this log entry.
      *
+     * <p>
+     * If this log entry is stored in a log segment, this returns the segment file, which may contain other log entries.
+     *
      * @return log entry file
      */
     public File getFile() {
         return this.file;
     }
 
+    /**
+     * Get the log segment containing this log entry, if any.
+     *
+     * @return log segment, or null if this log entry is stored in its own file
+     */
+    SegmentedLog.Segment getSegment() {
+        return this.segment;
+    }
+
+    /**
+     * Get the offset of this log entry's record within its log segment.
+     *
+     * @return segment offset, or -1 if this log entry is stored in its own file
+     */
+    long getOffset() {
+        return this.offset;
+    }
+
 // File I/O
 
     /**
-     * Get the serialized contents of this log entry by reading the file.
+     * Get the serialized contents of this log entry by reading the file or log segment.
      */
     ByteBuffer getContent() throws IOException {
-        if (this.content == null)
-            this.content = Util.readFile(this.getFile(), this.fileSize);
+        if (this.content == null) {
+            this.content = this.segment != null ?
+              this.segment.read(this.offset, this.fileSize) : Util.readFile(this.getFile(), this.fileSize);
+        }
         return this.content.asReadOnlyBuffer();
     }
 
@@ -0,0 +1,194 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.raft;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.mvcc.Mutations;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * Index of the keys written by recent log entries, used to check transaction reads for conflicts
+ * without having to scan the writes of every intervening log entry.
+ *
+ * <p>
+ * The index maps every key to the index of the most recent log entry that wrote (i.e., put, removed,
+ * or adjusted) that key, or zero if none. This mapping is piecewise constant, so it is stored as a sorted
+ * map from the first key of each piece to that piece's log index. A transaction based on log index {@code baseIndex}
+ * conflicts with some later log entry if and only if some key it read maps to an index greater than {@code baseIndex}.
+ *
+ * <p>
+ * When used with a {@link RaftKVDatabase}, the index is brought up to date with the unapplied log lazily, prior to
+ * each query. Entries for log entries that have since been applied are harmless (transactions are never based on
+ * a log index prior to the last applied index) but are periodically discarded by rebuilding the index.
+ */
+class LogWritesIndex {
+
+    // Rebuild the index when it contains more than this many stale (applied) log entries, plus the number of unapplied entries
+    private static final int MIN_STALE_LOG_ENTRIES = 16;
+
+    private final TreeMap<byte[], Long> map = new TreeMap<>(ByteUtil.COMPARATOR);
+
+    private LogEntry lastLogEntry;                  // the most recent log entry added from the Raft log, or null if none
+    private long firstIndex;                        // index of the first log entry added since the last clear()
+    private long lastIndex;                         // index of the most recent log entry added since the last clear()
+
+// Raft log
+
+    /**
+     * Determine whether the given reads conflict with the writes of any unapplied log entry after the given base index.
+     *
+     * @param raft database
+     * @param reads transaction reads
+     * @param baseIndex transaction base log index
+     * @return true if there is a conflict
+     */
+    boolean hasConflict(RaftKVDatabase raft, KeyRanges reads, long baseIndex) {
+        assert Thread.holdsLock(raft);
+        assert baseIndex >= raft.lastAppliedIndex;
+        this.update(raft);
+        return this.hasConflict(reads, baseIndex);
+    }
+
+    /**
+     * Synchronize this index with the unapplied log entries of the given database.
+     */
+    private void update(RaftKVDatabase raft) {
+
+        // If any log entry we've indexed has since been overwritten, start over
+        final long lastLogIndex = raft.getLastLogIndex();
+        if (this.lastLogEntry != null
+          && (this.lastIndex > lastLogIndex
+           || (this.lastIndex > raft.lastAppliedIndex && raft.getLogEntryAtIndex(this.lastIndex) != this.lastLogEntry)))
+            this.clear();
+
+        // If the index has accumulated too many applied log entries, start over
+        if (this.lastLogEntry != null && raft.lastAppliedIndex - this.firstIndex + 1 > raft.raftLog.size() + MIN_STALE_LOG_ENTRIES)
+            this.clear();
+
+        // Add any new log entries
+        for (long index = Math.max(this.lastIndex, raft.lastAppliedIndex) + 1; index <= lastLogIndex; index++) {
+            final LogEntry logEntry = raft.getLogEntryAtIndex(index);
+            this.add(index, logEntry.getWrites());
+            this.lastLogEntry = logEntry;
+        }
+    }
+
+// Index
+
+    /**
+     * Add the writes of the log entry with the given index.
+     *
+     * <p>
+     * Log entries must be added in increasing order by index.
+     *
+     * @param index log entry index
+     * @param writes log entry writes
+     * @throws IllegalArgumentException if {@code index} is not greater than the previously added index
+     */
+    void add(long index, Mutations writes) {
+        if (index <= this.lastIndex)
+            throw new IllegalArgumentException("index " + index + " <= previous index " + this.lastIndex);
+        for (KeyRange range : writes.getRemoveRanges())
+            this.set(range.getMin(), range.getMax(), index);
+        for (Map.Entry<byte[], byte[]> entry : writes.getPutPairs())
+            this.set(entry.getKey(), ByteUtil.getNextKey(entry.getKey()), index);
+        for (Map.Entry<byte[], Long> entry : writes.getAdjustPairs())
+            this.set(entry.getKey(), ByteUtil.getNextKey(entry.getKey()), index);
+        if (this.firstIndex == 0)
+            this.firstIndex = index;
+        this.lastIndex = index;
+    }
+
+    /**
+     * Determine whether any key in the given ranges was written by a log entry added with index greater than {@code baseIndex}.
+     *
+     * @param reads key ranges read
+     * @param baseIndex base log index
+     * @return true if there is a conflict
+     */
+    boolean hasConflict(KeyRanges reads, long baseIndex) {
+        if (baseIndex >= this.lastIndex)
+            return false;
+
+        // Look up each read range in the index, or look up each index piece in the reads, whichever is smaller
+        if (reads.size() <= this.map.size()) {
+            for (KeyRange range : reads) {
+                if (this.hasConflict(range.getMin(), range.getMax(), baseIndex))
+                    return true;
+            }
+            return false;
+        }
+        for (Map.Entry<byte[], Long> entry : this.map.entrySet()) {
+            if (entry.getValue() <= baseIndex)
+                continue;
+            final byte[] max = this.map.higherKey(entry.getKey());
+            if (reads.intersects(new KeyRange(entry.getKey(), max)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Discard all entries.
+     */
+    void clear() {
+        this.map.clear();
+        this.lastLogEntry = null;
+        this.firstIndex = 0;
+        this.lastIndex = 0;
+    }
+
+    /**
+     * Get the number of pieces in this index.
+     *
+     * @return number of pieces
+     */
+    int size() {
+        return this.map.size();
+    }
+
+// Internal methods
+
+    private boolean hasConflict(byte[] min, byte[] max, long baseIndex) {
+        final Map.Entry<byte[], Long> floor = this.map.floorEntry(min);
+        if (floor != null && floor.getValue() > baseIndex)
+            return true;
+        for (long index : this.interior(min, max).values()) {
+            if (index > baseIndex)
+                return true;
+        }
+        return false;
+    }
+
+    private void set(byte[] min, byte[] max, long index) {
+        if (max != null) {
+            final Map.Entry<byte[], Long> floor = this.map.floorEntry(max);
+            this.map.put(max, floor != null ? floor.getValue() : 0L);
+        }
+        this.interior(min, max).clear();
+        this.map.put(min, index);
+    }
+
+    private NavigableMap<byte[], Long> interior(byte[] min, byte[] max) {
+        return max != null ? this.map.subMap(min, false, max, false) : this.map.tailMap(min, false);
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[firstIndex=" + this.firstIndex
+          + ",lastIndex=" + this.lastIndex
+          + ",size=" + this.map.size()
+          + "]";
+    }
+}
@@ -50,7 +50,7 @@ class NewLogEntry {
      * @throws IOException if an I/O error occurs
      */
     NewLogEntry(RaftKVDatabase raft, LogEntry.Data data) throws IOException {
-        this(data, NewLogEntry.writeDataToFile(data, raft, raft.disableSync));
+        this(data, NewLogEntry.writeDataToFile(data, raft, !raft.isTempFileSyncRequired()));
     }
 
     /**
@@ -81,8 +81,10 @@ class NewLogEntry {
     }
 
     public void cleanup(RaftKVDatabase raft) {
-        if (!this.tempFileReset)
+        if (!this.tempFileReset) {
             raft.deleteFile(this.tempFile, "new log entry temp file");
+            this.tempFileReset = true;
+        }
     }
 
     private static File writeDataToFile(LogEntry.Data data, RaftKVDatabase raft, boolean disableSync) throws IOException {
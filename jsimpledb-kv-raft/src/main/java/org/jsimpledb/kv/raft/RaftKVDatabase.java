@@ -240,10 +240,26 @@ import org.slf4j.LoggerFactory;
  *      until the follower acknowledges receipt of the log entry containing the configuration change.</li>
  *  <li>Leaders defer configuration changes until they have committed at least one log entry in the current term
  *      (see <a href="https://groups.google.com/d/msg/raft-dev/t4xj6dJTP6E/d2D9LrWRza8J">this discussion</a>).</li>
- *  <li>Configuration changes that remove the last node in a cluster are disallowed.</li>
+ *  <li>Configuration changes that remove (or demote to learner) the last voting node in a cluster are disallowed.</li>
  *  <li>Only one configuration change may take place at a time.</li>
  * </ul>
  *
+ * <p><b>Learners</b></p>
+ *
+ * <p>
+ * A node may also be added to the cluster as a non-voting <i>learner</i> using
+ * {@link RaftKVTransaction#configChange(String, String, boolean) RaftKVTransaction.configChange()}. Leaders replicate
+ * log entries and snapshots to learners just like any other follower, but learners do not count toward commit quorums or
+ * election majorities, and they never start elections. Learners are therefore useful for scaling out
+ * {@link Consistency#EVENTUAL} and {@link Consistency#EVENTUAL_COMMITTED} reads without slowing down writes.
+ * A learner is promoted to a voting member by an ordinary configuration change that adds it again as a voting member,
+ * and a voting member is demoted to a learner in the same way.
+ *
+ * <p>
+ * Learners are recorded in the cluster configuration like any other node, but with their network address prefixed by
+ * {@link #LEARNER_ADDRESS_PREFIX}. {@link #getCurrentConfig} returns only the voting members of the cluster;
+ * use {@link #getCurrentLearners} to get the learners.
+ *
  * <p><b>Follower Probes</b></p>
  *
  * <p>
@@ -370,11 +386,74 @@ public class RaftKVDatabase implements KVDatabase {
      */
     public static final int DEFAULT_COMMIT_TIMEOUT = 5000;                              // 5 seconds
 
+    /**
+     * Default leader commit batching delay ({@value #DEFAULT_COMMIT_BATCH_DELAY}ms, i.e., disabled).
+     *
+     * @see #setCommitBatchDelay
+     */
+    public static final int DEFAULT_COMMIT_BATCH_DELAY = 0;
+
+    /**
+     * Default maximum number of transactions a leader will merge into a single log entry
+     * ({@value #DEFAULT_MAX_COMMIT_BATCH_SIZE}).
+     *
+     * @see #setMaxCommitBatchSize
+     */
+    public static final int DEFAULT_MAX_COMMIT_BATCH_SIZE = 64;
+
+    /**
+     * Default Raft log segment size ({@value #DEFAULT_LOG_SEGMENT_SIZE}, i.e., one file per log entry).
+     *
+     * @see #setLogSegmentSize
+     */
+    public static final long DEFAULT_LOG_SEGMENT_SIZE = 0;
+
+    /**
+     * Default maximum size of a snapshot install chunk ({@value #DEFAULT_MAX_SNAPSHOT_CHUNK_SIZE} bytes).
+     *
+     * @see #setMaxSnapshotChunkSize
+     */
+    public static final int DEFAULT_MAX_SNAPSHOT_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Default maximum number of snapshot install chunks queued for a follower ({@value #DEFAULT_SNAPSHOT_WINDOW_SIZE}).
+     *
+     * @see #setSnapshotWindowSize
+     */
+    public static final int DEFAULT_SNAPSHOT_WINDOW_SIZE = 4;
+
+    /**
+     * Default maximum number of log entries sent to a follower in a single message ({@value #DEFAULT_MAX_APPEND_BATCH_SIZE}).
+     *
+     * @see #setMaxAppendBatchSize
+     */
+    public static final int DEFAULT_MAX_APPEND_BATCH_SIZE = 16;
+
+    /**
+     * Default maximum number of unacknowledged log entry messages in flight to a follower ({@value #DEFAULT_APPEND_WINDOW_SIZE}).
+     *
+     * @see #setAppendWindowSize
+     */
+    public static final int DEFAULT_APPEND_WINDOW_SIZE = 4;
+
+    /**
+     * Default maximum staleness for {@link Consistency#BOUNDED_STALENESS} transactions ({@value #DEFAULT_MAX_READ_STALENESS}ms).
+     *
+     * @see #setMaxReadStaleness
+     */
+    public static final int DEFAULT_MAX_READ_STALENESS = 1000;
+
     /**
      * Default TCP port ({@value #DEFAULT_TCP_PORT}) used to communicate with peers.
      */
     public static final int DEFAULT_TCP_PORT = 9660;
 
+    /**
+     * Prefix ({@value #LEARNER_ADDRESS_PREFIX}) for network addresses of non-voting learner nodes
+     * in the cluster configuration recorded in the Raft log.
+     */
+    public static final String LEARNER_ADDRESS_PREFIX = "learner@";
+
     /**
      * Option key for {@link #createTransaction(Map)}. Value should be a {@link Consistency} instance,
      * or the {@link Consistency#name name()} thereof.
@@ -419,7 +498,17 @@ public class RaftKVDatabase implements KVDatabase {
     long maxUnappliedLogMemory = DEFAULT_MAX_UNAPPLIED_LOG_MEMORY;
     int maxUnappliedLogEntries = DEFAULT_MAX_UNAPPLIED_LOG_ENTRIES;
     int maxFollowerAckHeartbeats = DEFAULT_MAX_FOLLOWER_ACK_HEARTBEATS;
+    int commitBatchDelay = DEFAULT_COMMIT_BATCH_DELAY;
+    int maxCommitBatchSize = DEFAULT_MAX_COMMIT_BATCH_SIZE;
+    long logSegmentSize = DEFAULT_LOG_SEGMENT_SIZE;
+    int maxSnapshotChunkSize = DEFAULT_MAX_SNAPSHOT_CHUNK_SIZE;
+    int snapshotWindowSize = DEFAULT_SNAPSHOT_WINDOW_SIZE;
+    int maxAppendBatchSize = DEFAULT_MAX_APPEND_BATCH_SIZE;
+    int appendWindowSize = DEFAULT_APPEND_WINDOW_SIZE;
+    int maxReadStaleness = DEFAULT_MAX_READ_STALENESS;
+    boolean snapshotCompression;
     boolean followerProbingEnabled;
+    boolean followerReadBatching;
     boolean disableSync;
     boolean dumpConflicts;
     File logDir;
@@ -437,6 +526,7 @@ public class RaftKVDatabase implements KVDatabase {
     long lastAppliedIndex;                                              // key/value store last applied index (zero if unconfigured)
     final long[] appliedTerms = new long[MAX_APPLIED_TERMS];            // terms of log entries already applied to state machine
     final ArrayList<LogEntry> raftLog = new ArrayList<>();              // unapplied log entries (empty if unconfigured)
+    final LogWritesIndex logWritesIndex = new LogWritesIndex();         // index of keys written by unapplied log entries
     Map<String, String> lastAppliedConfig;                              // key/value store last applied config (empty if none)
     Map<String, String> currentConfig;                                  // most recent cluster config (empty if unconfigured)
     Map<String, Integer> protocolVersionMap = new HashMap<>();          // peer message encoding protocol versions
@@ -444,6 +534,7 @@ public class RaftKVDatabase implements KVDatabase {
     // Non-Raft runtime state
     AtomicKVStore kv;
     FileChannel logDirChannel;                                          // null on Windows - no support for sync'ing directories
+    SegmentedLog segmentedLog;                                          // log entries stored in log segment files
     String returnAddress;                                               // return address for message currently being processed
     IOThread ioThread;                                                  // performs background I/O tasks
     ScheduledExecutorService serviceExecutor;                           // does stuff for us asynchronously
@@ -769,6 +860,262 @@ public class RaftKVDatabase implements KVDatabase {
         return this.commitTimeout;
     }
 
+    /**
+     * Configure the leader commit batching delay.
+     *
+     * <p>
+     * When non-zero, a leader does not append a new log entry for each read-write transaction as soon as it is
+     * ready to commit. Instead, it waits up to this long for more transactions to arrive, and then merges all
+     * non-conflicting transactions received during that window into a single log entry. This means one log file
+     * write, one {@code fsync()}, and one round of {@link AppendRequest}s for the whole batch instead of
+     * one for each transaction, in exchange for a small amount of added commit latency.
+     *
+     * <p>
+     * Transactions that contain a configuration change are never batched.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_COMMIT_BATCH_DELAY}, which disables batching.
+     *
+     * @param delay commit batching delay in milliseconds, or zero to disable
+     * @throws IllegalStateException if this instance is already started
+     * @throws IllegalArgumentException if {@code delay} is negative
+     * @see #setMaxCommitBatchSize
+     */
+    public synchronized void setCommitBatchDelay(int delay) {
+        Preconditions.checkArgument(delay >= 0, "delay < 0");
+        Preconditions.checkState(this.role == null, "already started");
+        this.commitBatchDelay = delay;
+    }
+
+    /**
+     * Get the configured leader commit batching delay.
+     *
+     * @return commit batching delay in milliseconds, or zero if batching is disabled
+     */
+    public synchronized int getCommitBatchDelay() {
+        return this.commitBatchDelay;
+    }
+
+    /**
+     * Configure the maximum number of transactions a leader will merge into a single log entry.
+     *
+     * <p>
+     * When this many transactions are waiting, the batch is written immediately without waiting for the
+     * {@linkplain #setCommitBatchDelay commit batching delay} to expire.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_MAX_COMMIT_BATCH_SIZE}.
+     *
+     * @param maxCommitBatchSize maximum number of transactions per batch
+     * @throws IllegalStateException if this instance is already started
+     * @throws IllegalArgumentException if {@code maxCommitBatchSize <= 0}
+     * @see #setCommitBatchDelay
+     */
+    public synchronized void setMaxCommitBatchSize(int maxCommitBatchSize) {
+        Preconditions.checkArgument(maxCommitBatchSize > 0, "maxCommitBatchSize <= 0");
+        Preconditions.checkState(this.role == null, "already started");
+        this.maxCommitBatchSize = maxCommitBatchSize;
+    }
+
+    /**
+     * Get the configured maximum number of transactions a leader will merge into a single log entry.
+     *
+     * @return maximum number of transactions per batch
+     */
+    public synchronized int getMaxCommitBatchSize() {
+        return this.maxCommitBatchSize;
+    }
+
+    /**
+     * Configure the size of Raft log segment files.
+     *
+     * <p>
+     * By default, each Raft log entry is stored in its own file. Appending a log entry then requires creating,
+     * writing, and {@code fsync()}'ing a new file, renaming it, and {@code fsync()}'ing the log directory; once applied,
+     * the file is deleted. When this property is non-zero, new log entries are instead appended to preallocated segment
+     * files of this size, so each append requires only a single write and {@code fsync()} of an existing file.
+     * Segments whose log entries have all been applied are recycled rather than deleted.
+     *
+     * <p>
+     * Log entries already stored in individual files are always recovered on startup, whatever this setting,
+     * so this property may be changed across restarts.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_LOG_SEGMENT_SIZE}, which stores each log entry in its own file.
+     *
+     * @param logSegmentSize log segment file size in bytes, or zero to store each log entry in its own file
+     * @throws IllegalStateException if this instance is already started
+     * @throws IllegalArgumentException if {@code logSegmentSize} is negative or greater than {@link Integer#MAX_VALUE}
+     */
+    public synchronized void setLogSegmentSize(long logSegmentSize) {
+        Preconditions.checkArgument(logSegmentSize >= 0, "logSegmentSize < 0");
+        Preconditions.checkArgument(logSegmentSize <= Integer.MAX_VALUE, "logSegmentSize > Integer.MAX_VALUE");
+        Preconditions.checkState(this.role == null, "already started");
+        this.logSegmentSize = logSegmentSize;
+    }
+
+    /**
+     * Get the configured size of Raft log segment files.
+     *
+     * @return log segment file size in bytes, or zero if each log entry is stored in its own file
+     */
+    public synchronized long getLogSegmentSize() {
+        return this.logSegmentSize;
+    }
+
+    /**
+     * Configure the maximum size of the chunks of key/value data sent to a follower during a snapshot install.
+     *
+     * <p>
+     * Snapshot installs start with small chunks; each chunk is twice as large as the previous one, up to this limit.
+     * Larger chunks mean fewer messages and fewer (larger) key/value store updates on the follower, at the cost of
+     * the leader holding its lock longer while each chunk is encoded.
+     *
+     * <p>
+     * This value may be changed at any time; changes take effect for the next snapshot install.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_MAX_SNAPSHOT_CHUNK_SIZE}.
+     *
+     * @param maxSnapshotChunkSize maximum chunk size in bytes
+     * @throws IllegalArgumentException if {@code maxSnapshotChunkSize} is less than about 10K
+     */
+    public synchronized void setMaxSnapshotChunkSize(int maxSnapshotChunkSize) {
+        Preconditions.checkArgument(maxSnapshotChunkSize >= SnapshotTransmit.MIN_CHUNK_SIZE, "maxSnapshotChunkSize too small");
+        this.maxSnapshotChunkSize = maxSnapshotChunkSize;
+    }
+
+    /**
+     * Get the configured maximum size of snapshot install chunks.
+     *
+     * @return maximum chunk size in bytes
+     */
+    public synchronized int getMaxSnapshotChunkSize() {
+        return this.maxSnapshotChunkSize;
+    }
+
+    /**
+     * Configure the maximum number of snapshot install chunks that may be queued for transmission to a follower.
+     *
+     * <p>
+     * Without a window, the next chunk is not generated until the previous chunk has been fully written to the network,
+     * which leaves the connection idle while each chunk is encoded. Allowing several chunks to be queued keeps the
+     * connection busy.
+     *
+     * <p>
+     * This value may be changed at any time.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_SNAPSHOT_WINDOW_SIZE}.
+     *
+     * @param snapshotWindowSize maximum number of queued chunks
+     * @throws IllegalArgumentException if {@code snapshotWindowSize <= 0}
+     */
+    public synchronized void setSnapshotWindowSize(int snapshotWindowSize) {
+        Preconditions.checkArgument(snapshotWindowSize > 0, "snapshotWindowSize <= 0");
+        this.snapshotWindowSize = snapshotWindowSize;
+    }
+
+    /**
+     * Get the configured maximum number of snapshot install chunks that may be queued for transmission to a follower.
+     *
+     * @return maximum number of queued chunks
+     */
+    public synchronized int getSnapshotWindowSize() {
+        return this.snapshotWindowSize;
+    }
+
+    /**
+     * Configure the maximum number of consecutive log entries that a leader may send to a follower in a single message.
+     *
+     * <p>
+     * When a follower is behind by more than one log entry, e.g., because commits are arriving faster than one per
+     * round trip, batching lets the follower catch up with fewer messages. Batching is only used for followers that
+     * support it, i.e., that are running a version of this class that understands batched messages.
+     *
+     * <p>
+     * This value may be changed at any time.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_MAX_APPEND_BATCH_SIZE}.
+     *
+     * @param maxAppendBatchSize maximum number of log entries per message, or 1 to disable batching
+     * @throws IllegalArgumentException if {@code maxAppendBatchSize <= 0}
+     */
+    public synchronized void setMaxAppendBatchSize(int maxAppendBatchSize) {
+        Preconditions.checkArgument(maxAppendBatchSize > 0, "maxAppendBatchSize <= 0");
+        this.maxAppendBatchSize = maxAppendBatchSize;
+    }
+
+    /**
+     * Get the configured maximum number of log entries that a leader may send to a follower in a single message.
+     *
+     * @return maximum number of log entries per message
+     */
+    public synchronized int getMaxAppendBatchSize() {
+        return this.maxAppendBatchSize;
+    }
+
+    /**
+     * Configure the maximum number of messages containing log entries that a leader may have in flight to a
+     * follower, i.e., sent but not yet acknowledged.
+     *
+     * <p>
+     * While there is room in the window, new log entries are sent to an up-to-date follower immediately, even if
+     * earlier messages are still queued for transmission, so that commit latency under sustained load approaches
+     * one round trip. Once the window is full, no more log entries are sent until an acknowledgement arrives.
+     *
+     * <p>
+     * This value may be changed at any time.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_APPEND_WINDOW_SIZE}.
+     *
+     * @param appendWindowSize maximum number of unacknowledged messages
+     * @throws IllegalArgumentException if {@code appendWindowSize <= 0}
+     */
+    public synchronized void setAppendWindowSize(int appendWindowSize) {
+        Preconditions.checkArgument(appendWindowSize > 0, "appendWindowSize <= 0");
+        this.appendWindowSize = appendWindowSize;
+    }
+
+    /**
+     * Get the configured maximum number of unacknowledged messages containing log entries in flight to a follower.
+     *
+     * @return maximum number of unacknowledged messages
+     */
+    public synchronized int getAppendWindowSize() {
+        return this.appendWindowSize;
+    }
+
+    /**
+     * Configure whether to compress key/value data sent to followers during snapshot installs.
+     *
+     * <p>
+     * Compression uses the deflate algorithm at its fastest setting. It is only used for followers that support
+     * it, i.e., that are running a version of this class that understands compressed snapshot data.
+     *
+     * <p>
+     * This value may be changed at any time; changes take effect for the next snapshot install.
+     *
+     * <p>
+     * Default is false.
+     *
+     * @param snapshotCompression true to compress snapshot data
+     */
+    public synchronized void setSnapshotCompression(boolean snapshotCompression) {
+        this.snapshotCompression = snapshotCompression;
+    }
+
+    /**
+     * Determine whether snapshot install data is compressed.
+     *
+     * @return true if snapshot data is compressed
+     */
+    public synchronized boolean isSnapshotCompression() {
+        return this.snapshotCompression;
+    }
+
     /**
      * Configure whether followers should be required to probe for network connectivity with a majority of the
      * cluster after an election timeout prior to becoming a candidate.
@@ -794,6 +1141,73 @@ public class RaftKVDatabase implements KVDatabase {
         return this.followerProbingEnabled;
     }
 
+    /**
+     * Configure whether followers batch the leader confirmations required by {@link Consistency#LINEARIZABLE}
+     * read-only transactions.
+     *
+     * <p>
+     * A linearizable read-only transaction on a follower must ask the leader for the log index it may safely read at.
+     * Normally a separate {@link CommitRequest} is sent for each such transaction. When batching is enabled, a follower
+     * keeps at most one such request outstanding at a time; read-only transactions that become ready while it is
+     * outstanding wait and then share the next request, so each round trip to the leader confirms a whole batch.
+     *
+     * <p>
+     * This value may be changed at any time.
+     *
+     * <p>
+     * The default is disabled.
+     *
+     * @param followerReadBatching true to enable, false to disable
+     */
+    public synchronized void setFollowerReadBatching(boolean followerReadBatching) {
+        this.followerReadBatching = followerReadBatching;
+    }
+
+    /**
+     * Determine whether followers batch linearizable read-only commit requests.
+     *
+     * @return true if follower read batching is enabled, otherwise false
+     */
+    public synchronized boolean isFollowerReadBatching() {
+        return this.followerReadBatching;
+    }
+
+    /**
+     * Configure the maximum staleness allowed for {@link Consistency#BOUNDED_STALENESS} transactions.
+     *
+     * <p>
+     * A {@link Consistency#BOUNDED_STALENESS} transaction is only created if this node's commit index is known
+     * to have been up-to-date within this many milliseconds; otherwise the transaction fails immediately with
+     * a {@link RetryTransactionException}.
+     *
+     * <p>
+     * On a follower, staleness is measured from when the leader sent the message that brought this node up-to-date.
+     * Because nodes do not share a clock, that send time is estimated from the fastest delivery seen from the leader,
+     * so the actual staleness can exceed this bound by up to the minimum one-way network delay from the leader.
+     *
+     * <p>
+     * This value may be changed at any time.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_MAX_READ_STALENESS}.
+     *
+     * @param maxReadStaleness maximum staleness in milliseconds
+     * @throws IllegalArgumentException if {@code maxReadStaleness} is negative
+     */
+    public synchronized void setMaxReadStaleness(int maxReadStaleness) {
+        Preconditions.checkArgument(maxReadStaleness >= 0, "maxReadStaleness < 0");
+        this.maxReadStaleness = maxReadStaleness;
+    }
+
+    /**
+     * Get the configured maximum staleness for {@link Consistency#BOUNDED_STALENESS} transactions.
+     *
+     * @return maximum staleness in milliseconds
+     */
+    public synchronized int getMaxReadStaleness() {
+        return this.maxReadStaleness;
+    }
+
     /**
      * Disable filesystem data sync.
      *
@@ -862,6 +1276,9 @@ public class RaftKVDatabase implements KVDatabase {
      * Retrieve the current cluster configuration as understood by this node.
      *
      * <p>
+     * The returned map includes only the voting members of the cluster; see also {@link #getCurrentLearners}.
+     *
+     * <p>
      * Configuration changes are performed and committed in the context of a normal transaction; see
      * {@link RaftKVTransaction#configChange RaftKVTransaction.configChange()}.
      *
@@ -875,7 +1292,37 @@ public class RaftKVDatabase implements KVDatabase {
      *  or empty if this node is not started or unconfigured
      */
     public synchronized Map<String, String> getCurrentConfig() {
-        return this.currentConfig != null ? new TreeMap<>(this.currentConfig) : new TreeMap<>();
+        return this.getCurrentConfig(false);
+    }
+
+    /**
+     * Retrieve the current non-voting learner nodes as understood by this node.
+     *
+     * <p>
+     * Learners receive log entries from the leader but do not participate in elections or commit quorums.
+     *
+     * <p>
+     * The returned map is a copy; changes have no effect on this instance.
+     *
+     * @return current learners mapping from node identity to network address,
+     *  or empty if this node is not started or unconfigured or there are no learners
+     * @see RaftKVTransaction#configChange(String, String, boolean)
+     */
+    public synchronized Map<String, String> getCurrentLearners() {
+        return this.getCurrentConfig(true);
+    }
+
+    private Map<String, String> getCurrentConfig(boolean learners) {
+        assert Thread.holdsLock(this);
+        final TreeMap<String, String> config = new TreeMap<>();
+        if (this.currentConfig != null) {
+            for (Map.Entry<String, String> entry : this.currentConfig.entrySet()) {
+                final String address = entry.getValue();
+                if (RaftKVDatabase.isLearnerAddress(address) == learners)
+                    config.put(entry.getKey(), RaftKVDatabase.getPeerAddress(address));
+            }
+        }
+        return config;
     }
 
     /**
@@ -892,7 +1339,7 @@ public class RaftKVDatabase implements KVDatabase {
     }
 
     /**
-     * Determine whether this node thinks that it is part of its cluster, as determined by its
+     * Determine whether this node thinks that it is a voting member of its cluster, as determined by its
      * {@linkplain #getCurrentConfig current configuration}.
      *
      * @return true if this instance is started and part of the cluster, otherwise false
@@ -902,14 +1349,65 @@ public class RaftKVDatabase implements KVDatabase {
     }
 
     /**
-     * Determine whether this node thinks that the specified node is part of the cluster, as determined by its
+     * Determine whether this node thinks that the specified node is a voting member of the cluster, as determined by its
      * {@linkplain #getCurrentConfig current configuration}.
      *
      * @param node node identity
      * @return true if this instance is started and the specified node is part of the cluster, otherwise false
      */
     public synchronized boolean isClusterMember(String node) {
-        return this.currentConfig != null ? this.currentConfig.containsKey(node) : false;
+        if (this.currentConfig == null)
+            return false;
+        final String address = this.currentConfig.get(node);
+        return address != null && !RaftKVDatabase.isLearnerAddress(address);
+    }
+
+    /**
+     * Determine whether this node thinks that it is a non-voting learner in its cluster, as determined by its
+     * {@linkplain #getCurrentLearners current configuration}.
+     *
+     * @return true if this instance is started and a learner in the cluster, otherwise false
+     */
+    public synchronized boolean isLearner() {
+        return this.isLearner(this.identity);
+    }
+
+    /**
+     * Determine whether this node thinks that the specified node is a non-voting learner in the cluster, as determined by its
+     * {@linkplain #getCurrentLearners current configuration}.
+     *
+     * @param node node identity
+     * @return true if this instance is started and the specified node is a learner in the cluster, otherwise false
+     */
+    public synchronized boolean isLearner(String node) {
+        return this.currentConfig != null && RaftKVDatabase.isLearnerAddress(this.currentConfig.get(node));
+    }
+
+    /**
+     * Count the number of voting members in the current config.
+     */
+    int getNumVoters() {
+        assert Thread.holdsLock(this);
+        int count = 0;
+        for (String address : this.currentConfig.values()) {
+            if (!RaftKVDatabase.isLearnerAddress(address))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Determine whether the given cluster config address denotes a learner.
+     */
+    static boolean isLearnerAddress(String address) {
+        return address != null && address.startsWith(LEARNER_ADDRESS_PREFIX);
+    }
+
+    /**
+     * Get the actual network address from the given cluster config address.
+     */
+    static String getPeerAddress(String address) {
+        return RaftKVDatabase.isLearnerAddress(address) ? address.substring(LEARNER_ADDRESS_PREFIX.length()) : address;
     }
 
     /**
@@ -1107,6 +1605,8 @@ public class RaftKVDatabase implements KVDatabase {
             this.keyWatchIndex = this.commitIndex;
 
             // Reload outstanding log entries from disk
+            assert this.segmentedLog == null;
+            this.segmentedLog = new SegmentedLog(this.logDir, this.logDirChannel, this.logSegmentSize);
             this.loadLog();
 
             // Show recovered state
@@ -1260,7 +1760,12 @@ public class RaftKVDatabase implements KVDatabase {
         this.kv.stop();
         Util.closeIfPossible(this.logDirChannel);
         this.logDirChannel = null;
+        if (this.segmentedLog != null) {
+            this.segmentedLog.close();
+            this.segmentedLog = null;
+        }
         this.raftLog.clear();
+        this.logWritesIndex.clear();
         this.random = null;
         this.network.stop();
         this.currentTerm = 0;
@@ -1312,6 +1817,10 @@ public class RaftKVDatabase implements KVDatabase {
                     continue;
                 }
 
+                // Is this a log segment file? These are handled below
+                if (SegmentedLog.isSegmentFile(file.getName()))
+                    continue;
+
                 // Is this a leftover temporary file?
                 if (TEMP_FILE_PATTERN.matcher(file.getName()).matches()) {
                     if (this.log.isDebugEnabled())
@@ -1325,22 +1834,29 @@ public class RaftKVDatabase implements KVDatabase {
             }
         }
 
+        // Add log entries stored in log segments
+        this.raftLog.addAll(this.segmentedLog.load(this.lastAppliedIndex));
+
         // Verify we have a contiguous range of log entries starting from the snapshot index; discard bogus log files
         Collections.sort(this.raftLog, LogEntry.SORT_BY_INDEX);
         long lastTermSeen = this.lastAppliedTerm;
         long expectedIndex = this.lastAppliedIndex + 1;
+        boolean segmentTruncated = false;
         for (Iterator<LogEntry> i = this.raftLog.iterator(); i.hasNext(); ) {
             final LogEntry logEntry = i.next();
             String error = null;
-            if (logEntry.getTerm() < lastTermSeen)
+            if (segmentTruncated && logEntry.getSegment() != null)
+                error = "log segment was truncated at a previous log entry";
+            else if (logEntry.getTerm() < lastTermSeen)
                 error = "term " + logEntry.getTerm() + " < last applied term " + lastTermSeen;
             else if (logEntry.getIndex() < this.lastAppliedIndex)
                 error = "index " + logEntry.getIndex() + " < last applied index " + this.lastAppliedIndex;
             else if (logEntry.getIndex() != expectedIndex)
                 error = "index " + logEntry.getIndex() + " != expected index " + expectedIndex;
             if (error != null) {
-                this.warn("deleting bogus log file " + logEntry.getFile().getName() + ": " + error);
-                this.deleteFile(logEntry.getFile(), "bogus log file");
+                this.warn("deleting bogus log entry " + logEntry + " in " + logEntry.getFile().getName() + ": " + error);
+                this.discardLogEntry(logEntry, "bogus log file");
+                segmentTruncated |= logEntry.getSegment() != null;
                 i.remove();
             } else {
                 expectedIndex++;
@@ -1448,8 +1964,8 @@ public class RaftKVDatabase implements KVDatabase {
      * Create a new transaction with the specified consistency.
      *
      * <p>
-     * Transactions that wish to use {@link Consistency#EVENTUAL_COMMITTED} must be created using this method,
-     * because the log entry on which the transaction is based is determined at creation time.
+     * Transactions that wish to use {@link Consistency#EVENTUAL_COMMITTED} or {@link Consistency#BOUNDED_STALENESS}
+     * must be created using this method, because the log entry on which the transaction is based is determined at creation time.
      *
      * @param consistency consistency level
      * @return newly created transaction
@@ -1486,6 +2002,15 @@ public class RaftKVDatabase implements KVDatabase {
             tx.setCommitInfo(baseTerm, baseIndex, null);
             tx.setCommittable();
             break;
+        case BOUNDED_STALENESS:
+            tx.setCommitInfo(baseTerm, baseIndex, null);
+            tx.setCommittable();
+            final Timestamp upToDateTime = this.role.getUpToDateTime();
+            if (upToDateTime == null || -upToDateTime.offsetFromNow() > this.maxReadStaleness) {
+                this.fail(tx, new RetryTransactionException(tx, "commit index " + baseIndex + " is not known to be up-to-date"
+                  + " within the maximum read staleness of " + this.maxReadStaleness + "ms"));
+            }
+            break;
         case EVENTUAL:
             tx.setCommitInfo(baseTerm, baseIndex, null);
             this.role.checkCommittable(tx);
@@ -1794,6 +2319,7 @@ public class RaftKVDatabase implements KVDatabase {
 
         // Delete all unapplied log files (no longer applicable)
         this.raftLog.clear();
+        this.segmentedLog.reset();
         try (DirectoryStream<Path> files = Files.newDirectoryStream(this.logDir.toPath())) {
             for (Path path : files) {
                 final File file = path.toFile();
@@ -1956,17 +2482,29 @@ public class RaftKVDatabase implements KVDatabase {
         final long fileLength = Util.getLength(tempFile);
 
         // Create new log entry
-        final LogEntry logEntry = new LogEntry(term, this.getLastLogIndex() + 1, this.logDir, data, fileLength);
-        if (this.log.isDebugEnabled())
-            this.debug("adding new log entry " + logEntry + " using " + tempFile.getName());
+        final LogEntry logEntry;
+        if (this.logSegmentSize > 0) {
 
-        // Atomically rename file and fsync() directory to durably persist
-        Files.move(tempFile.toPath(), logEntry.getFile().toPath(), StandardCopyOption.ATOMIC_MOVE);
-        if (this.logDirChannel != null && !this.disableSync)
-            this.logDirChannel.force(true);
+            // Append file contents to the current log segment
+            logEntry = this.segmentedLog.append(term, this.getLastLogIndex() + 1, data, tempFile, fileLength, this.disableSync);
+            if (this.log.isDebugEnabled())
+                this.debug("adding new log entry " + logEntry + " to " + logEntry.getFile().getName());
 
-        // Temp file no longer exists, so don't try to delete it later
-        newLogEntry.resetTempFile();
+            // Temp file is no longer needed
+            newLogEntry.cleanup(this);
+        } else {
+            logEntry = new LogEntry(term, this.getLastLogIndex() + 1, this.logDir, data, fileLength);
+            if (this.log.isDebugEnabled())
+                this.debug("adding new log entry " + logEntry + " using " + tempFile.getName());
+
+            // Atomically rename file and fsync() directory to durably persist
+            Files.move(tempFile.toPath(), logEntry.getFile().toPath(), StandardCopyOption.ATOMIC_MOVE);
+            if (this.logDirChannel != null && !this.disableSync)
+                this.logDirChannel.force(true);
+
+            // Temp file no longer exists, so don't try to delete it later
+            newLogEntry.resetTempFile();
+        }
 
         // Add new log entry to in-memory log
         this.raftLog.add(logEntry);
@@ -1979,6 +2517,49 @@ public class RaftKVDatabase implements KVDatabase {
         return logEntry;
     }
 
+    /**
+     * Discard an applied log entry.
+     *
+     * @param logEntry the log entry that was just applied
+     */
+    void discardAppliedLogEntry(LogEntry logEntry) {
+        assert Thread.holdsLock(this);
+        if (logEntry.getSegment() != null)
+            this.segmentedLog.applied(logEntry.getIndex());
+        else
+            this.deleteFile(logEntry.getFile(), "applied log file");
+    }
+
+    /**
+     * Discard an unapplied log entry.
+     *
+     * <p>
+     * If the log entry is stored in a log segment, all subsequent log entries stored in log segments are discarded as well.
+     *
+     * @param logEntry the log entry to discard
+     * @param description short description of why
+     */
+    void discardLogEntry(LogEntry logEntry, String description) {
+        assert Thread.holdsLock(this);
+        if (logEntry.getSegment() == null) {
+            this.deleteFile(logEntry.getFile(), description);
+            return;
+        }
+        try {
+            this.segmentedLog.truncate(logEntry, this.disableSync);
+        } catch (IOException e) {
+            this.error("error truncating log segment " + logEntry.getFile().getName() + " at " + logEntry + " (ignoring)", e);
+        }
+    }
+
+    /**
+     * Determine whether temporary files containing new log entry data need to be durably persisted.
+     * They do not if sync is disabled, or if log entries are copied into log segments (which are sync'd instead).
+     */
+    boolean isTempFileSyncRequired() {
+        return !this.disableSync && this.logSegmentSize == 0;
+    }
+
     long getLastLogIndex() {
         assert Thread.holdsLock(this);
         return this.lastAppliedIndex + this.raftLog.size();
@@ -2057,6 +2638,17 @@ public class RaftKVDatabase implements KVDatabase {
             return;
         }
 
+        // If message is a batch of log entries, handle each log entry as if it were a separate message
+        if (msg instanceof AppendRequest && ((AppendRequest)msg).getNumLogEntries() > 1) {
+            for (AppendRequest part : ((AppendRequest)msg).split())
+                this.handle(sender, part, protocolVersion);
+            return;
+        }
+        this.handle(sender, msg, protocolVersion);
+    }
+
+    private void handle(String sender, Message msg, int protocolVersion) {
+
         // If message contains serialized mutation data, at some point we are going to need to write that data to a log entry file.
         // Instead of doing that (slow) operation while holding the lock, do it now, before we acquire the lock.
         ByteBuffer mutationData =
@@ -2067,18 +2659,25 @@ public class RaftKVDatabase implements KVDatabase {
             File tempFile = null;
             try {
 
+                // Deserialize mutation data
+                final LogEntry.Data data;
+                try (ByteBufferInputStream input = new ByteBufferInputStream(mutationData.asReadOnlyBuffer())) {
+                    data = LogEntry.readData(input);
+                }
+
+                // If a leader is going to merge this commit into a batch, this file will never become a log entry, so skip fsync()
+                final boolean batched = msg instanceof CommitRequest && this.commitBatchDelay > 0 && data.getConfigChange() == null;
+
                 // Write serialized mutation data into temporary file
                 tempFile = this.getTempFile();
-                try (FileWriter output = new FileWriter(tempFile, this.disableSync)) {
+                try (FileWriter output = new FileWriter(tempFile, !this.isTempFileSyncRequired() || batched)) {
                     final FileChannel channel = output.getFileOutputStream().getChannel();
                     for (ByteBuffer writeBuf = mutationData.asReadOnlyBuffer(); writeBuf.hasRemaining(); )
                         channel.write(writeBuf);
                 }
 
-                // Deserialize mutation data and create new log entry instance
-                try (ByteBufferInputStream input = new ByteBufferInputStream(mutationData)) {
-                    newLogEntry = new NewLogEntry(LogEntry.readData(input), tempFile);
-                }
+                // Create new log entry instance
+                newLogEntry = new NewLogEntry(data, tempFile);
 
                 // Indicate success
                 tempFile = null;
@@ -2124,6 +2723,17 @@ public class RaftKVDatabase implements KVDatabase {
 
 // Messages
 
+    /**
+     * Get the message protocol version to use when sending messages to the specified peer.
+     *
+     * @param peer peer identity
+     * @return message protocol version
+     */
+    int getProtocolVersion(String peer) {
+        assert Thread.holdsLock(this);
+        return this.protocolVersionMap.getOrDefault(peer, Message.getCurrentProtocolVersion());
+    }
+
     synchronized boolean sendMessage(Message msg) {
 
         // Sanity check
@@ -2131,7 +2741,7 @@ public class RaftKVDatabase implements KVDatabase {
 
         // Get peer's address; if unknown, use the return address of the message being processed (if any)
         final String peer = msg.getRecipientId();
-        String address = this.currentConfig.get(peer);
+        String address = RaftKVDatabase.getPeerAddress(this.currentConfig.get(peer));
         if (address == null)
             address = this.returnAddress;
         if (address == null) {
@@ -2140,7 +2750,7 @@ public class RaftKVDatabase implements KVDatabase {
         }
 
         // Determine protocol version to use
-        final int protocolVersion = this.protocolVersionMap.getOrDefault(peer, Message.getCurrentProtocolVersion());
+        final int protocolVersion = this.getProtocolVersion(peer);
 
         // Encode messagse
         if (this.log.isTraceEnabled())
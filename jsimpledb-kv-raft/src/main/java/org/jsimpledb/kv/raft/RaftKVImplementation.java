@@ -34,6 +34,15 @@ public class RaftKVImplementation extends KVImplementation {
               "Specify Raft maximum election timeout in ms (default " + RaftKVDatabase.DEFAULT_MAX_ELECTION_TIMEOUT + ")" },
             { "--raft-heartbeat-timeout",
               "Specify Raft leader heartbeat timeout in ms (default " + RaftKVDatabase.DEFAULT_HEARTBEAT_TIMEOUT + ")" },
+            { "--raft-commit-batch-delay",
+              "Specify Raft leader commit batching delay in ms (default " + RaftKVDatabase.DEFAULT_COMMIT_BATCH_DELAY + ")" },
+            { "--raft-follower-read-batching",
+              "Batch Raft follower linearizable read-only commit requests" },
+            { "--raft-max-read-staleness",
+              "Specify Raft bounded-staleness read limit in ms (default " + RaftKVDatabase.DEFAULT_MAX_READ_STALENESS + ")" },
+            { "--raft-log-segment-size",
+              "Specify Raft log segment file size in bytes, or zero for one file per entry (default "
+                + RaftKVDatabase.DEFAULT_LOG_SEGMENT_SIZE + ")" },
             { "--raft-identity",
               "Specify Raft identity" },
             { "--raft-address address",
@@ -95,6 +104,12 @@ public class RaftKVImplementation extends KVImplementation {
             config.getRaft().setMaxElectionTimeout(value);
         if ((value = this.parseMillisecondsOption(options, "heartbeat-timeout")) != -1)
             config.getRaft().setHeartbeatTimeout(value);
+        if ((value = this.parseMillisecondsOption(options, "commit-batch-delay")) != -1)
+            config.getRaft().setCommitBatchDelay(value);
+        if ((value = this.parseMillisecondsOption(options, "max-read-staleness")) != -1)
+            config.getRaft().setMaxReadStaleness(value);
+        if (this.parseCommandLineFlag(options, "--raft-follower-read-batching"))
+            config.getRaft().setFollowerReadBatching(true);
         if ((value = this.parseMillisecondsOption(options, "fallback-check-interval")) != -1)
             config.getFallbackTarget().setCheckInterval(value);
         if ((value = this.parseMillisecondsOption(options, "fallback-check-timeout")) != -1)
@@ -104,6 +119,15 @@ public class RaftKVImplementation extends KVImplementation {
         if ((value = this.parseMillisecondsOption(options, "fallback-min-unavailable")) != -1)
             config.getFallbackTarget().setMinUnavailableTime(value);
 
+        if ((arg = this.parseCommandLineOption(options, "--raft-log-segment-size")) != null) {
+            try {
+                config.getRaft().setLogSegmentSize(Long.parseLong(arg, 10));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid value `" + arg + "' for `--raft-log-segment-size': "
+                  + e.getMessage(), e);
+            }
+        }
+
         // Raft fallback options
         if ((arg = this.parseCommandLineOption(options, "--raft-fallback")) != null) {
             final File stateFile = new File(arg);
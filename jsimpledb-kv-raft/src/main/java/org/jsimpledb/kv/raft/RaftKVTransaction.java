@@ -10,6 +10,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -191,6 +192,7 @@ public class RaftKVTransaction implements KVTransaction {
         this.baseIndex = baseIndex;
         this.snapshotRefs = new SnapshotRefs(snapshot);
         this.view = view;
+        this.readOnly = consistency.isReadOnly();
         this.rebasable = consistency.isGuaranteesUpToDateReads();                   // i.e., LINEARIZABLE
         if (!this.rebasable)
             this.view.disableReadTracking();
@@ -387,9 +389,39 @@ public class RaftKVTransaction implements KVTransaction {
      * @throws IllegalStateException if this method has been invoked previously on this instance
      * @throws IllegalStateException if this transaction is read-only
      * @throws IllegalArgumentException if {@code identity} is null
+     * @see #configChange(String, String, boolean)
      */
     public void configChange(String identity, String address) {
+        this.configChange(identity, address, false);
+    }
+
+    /**
+     * Include a cluster configuration change when this transaction is committed, optionally adding the node
+     * as a non-voting <i>learner</i>.
+     *
+     * <p>
+     * Learners receive log entries and snapshots from the leader, but do not count toward commit quorums or elections.
+     * A learner is promoted to a voting member by adding it again with {@code learner} false; likewise, a voting member
+     * is demoted to a learner by adding it again with {@code learner} true. An initial configuration change that creates
+     * a new cluster must add a voting member.
+     *
+     * <p>
+     * In all other respects this method behaves like {@link #configChange(String, String)}.
+     *
+     * @param identity the identity of the node to add or remove
+     * @param address the network address of the node if adding, or null if removing
+     * @param learner true to add the node as a non-voting learner, false to add it as a voting member;
+     *  ignored if {@code address} is null
+     * @throws IllegalStateException if this method has been invoked previously on this instance
+     * @throws IllegalStateException if this transaction is read-only
+     * @throws IllegalArgumentException if {@code identity} is null
+     * @throws IllegalArgumentException if {@code address} starts with {@link RaftKVDatabase#LEARNER_ADDRESS_PREFIX}
+     */
+    public void configChange(String identity, String address, boolean learner) {
         Preconditions.checkArgument(identity != null, "null identity");
+        Preconditions.checkArgument(!RaftKVDatabase.isLearnerAddress(address), "invalid address");
+        if (address != null && learner)
+            address = RaftKVDatabase.LEARNER_ADDRESS_PREFIX + address;
         synchronized (this.raft) {
             Preconditions.checkState(this.configChange == null, "duplicate config change; only one is supported per transaction");
             Preconditions.checkState(!this.readOnly, "transaction is read-only");
@@ -403,7 +435,8 @@ public class RaftKVTransaction implements KVTransaction {
      *
      * <p>
      * The returned array has length two and contains the {@code identity} and {@code address}
-     * parameters passed to {@link #configChange configChange()}.
+     * parameters passed to {@link #configChange configChange()}. If the node is being added as a learner,
+     * the address is prefixed with {@link RaftKVDatabase#LEARNER_ADDRESS_PREFIX}.
      *
      * <p>
      * The returned array is a copy; changes have no effect on this instance.
@@ -424,6 +457,12 @@ public class RaftKVTransaction implements KVTransaction {
         return this.view.get(key);
     }
 
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        this.fastVerifyExecuting();
+        return this.view.getMulti(keys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         this.fastVerifyExecuting();
@@ -774,6 +813,7 @@ public class RaftKVTransaction implements KVTransaction {
             assert this.commitIndex == this.baseIndex;
             break;
         case EVENTUAL_COMMITTED:
+        case BOUNDED_STALENESS:
             assert this.readOnly;
             assert !this.rebasable;
             assert this.configChange == null;
@@ -222,7 +222,7 @@ public abstract class Role {
 
             // Delete the log entry
             this.raft.raftLog.remove(0);
-            this.raft.deleteFile(logEntry.getFile(), "applied log file");
+            this.raft.discardAppliedLogEntry(logEntry);
         }
     }
 
@@ -432,7 +432,8 @@ public abstract class Role {
         if (this.log.isTraceEnabled())
             this.trace("advancing " + tx + " to " + TxState.COMMIT_WAITING);
         tx.setState(TxState.COMMIT_WAITING);
-        tx.setNoLongerRebasable();
+        if (tx.addsLogEntry())                          // else keep rebasing up through the commit index to check reads
+            tx.setNoLongerRebasable();
         this.checkCommittable(tx);
 
         // Check this transaction to see if it can be committed
@@ -459,7 +460,6 @@ public abstract class Role {
 
         // Sanity check
         assert Thread.holdsLock(this.raft);
-        assert tx.getConsistency().isGuaranteesUpToDateReads();
 
         // Is transaction committable?
         if (!this.checkCommittable(tx))
@@ -643,12 +643,15 @@ public abstract class Role {
         // Lock the mutable view so the rebase appears to happen instantaneously to any threads viewing the transaction
         synchronized (tx.view) {
 
+            // Determine whether any newly committed log entry conflicts; if not, we can skip checking each one individually
+            final boolean anyConflict = this.raft.logWritesIndex.hasConflict(this.raft, tx.view.getReads(), baseIndex);
+
             // Check for conflicts between transaction reads and newly committed log entries
             while (baseIndex < lastIndex) {
 
                 // Check for conflicts
                 final LogEntry logEntry = this.raft.getLogEntryAtIndex(++baseIndex);
-                if (tx.view.getReads().isConflict(logEntry.getWrites())) {
+                if (anyConflict && tx.view.getReads().isConflict(logEntry.getWrites())) {
                     if (this.log.isDebugEnabled())
                         this.debug("cannot rebase " + tx + " past " + logEntry + " due to conflicts, failing");
                     if (this.raft.dumpConflicts)
@@ -712,6 +715,18 @@ public abstract class Role {
         return null;
     }
 
+    /**
+     * Get the most recent time at which this node's commit index is known to have been equal to the leader's commit index.
+     *
+     * <p>
+     * This is used to enforce the staleness bound of {@link Consistency#BOUNDED_STALENESS} transactions.
+     *
+     * @return time this node's commit index was last known to be up-to-date, or null if unknown
+     */
+    Timestamp getUpToDateTime() {
+        return null;
+    }
+
     /**
      * Determine whether the leader's lease timeout extends past the current time, that is, it is known that if
      * the current leader is deposed by a new leader, then that deposition must occur after now.
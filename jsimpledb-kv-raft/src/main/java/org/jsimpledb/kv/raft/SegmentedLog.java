@@ -0,0 +1,463 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.raft;
+
+import com.google.common.base.Preconditions;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.dellroad.stuff.io.ByteBufferInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores Raft log entries in preallocated, append-only segment files.
+ *
+ * <p>
+ * The original layout stores each log entry in its own file. Appending an entry therefore costs a file create,
+ * an {@code fsync()} of the file, a rename, and an {@code fsync()} of the log directory, followed later by an unlink.
+ * With this class, entries are appended to a preallocated segment file instead. An append is a few
+ * positional writes followed by one {@code fsync()} of a file that already exists.
+ *
+ * <p>
+ * Each record in a segment has a header containing its length, a CRC-32 checksum, and the entry's term and index.
+ * The header is followed by the serialized {@link LogEntry.Data}, and then by a zero terminator. On recovery, records
+ * are read until a terminator, a bad checksum, or an unexpected index is found.
+ * Anything after that point is garbage left over from a torn write or from a previous use of the segment file.
+ *
+ * <p>
+ * Segment file names have the form {@code seg-INDEX.bin}, where {@code INDEX} is the index of the first log entry
+ * in the segment. A segment is recycled once every entry in it has been applied to the state machine. It is renamed
+ * to a spare file and later reused as a new segment, so it does not have to be deleted and preallocated again.
+ *
+ * <p>
+ * Instances are not thread safe; all access must be synchronized on the associated {@link RaftKVDatabase}.
+ */
+class SegmentedLog {
+
+    static final String SEGMENT_FILE_PREFIX = "seg-";
+    static final String SEGMENT_FILE_SUFFIX = ".bin";
+    static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile(
+      Pattern.quote(SEGMENT_FILE_PREFIX) + "([0-9]{19})" + Pattern.quote(SEGMENT_FILE_SUFFIX));
+    static final Pattern SPARE_FILE_PATTERN = Pattern.compile(
+      Pattern.quote(SEGMENT_FILE_PREFIX) + "spare-([0-9]+)" + Pattern.quote(SEGMENT_FILE_SUFFIX));
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;                           // length, checksum, term, index
+    private static final int TERMINATOR_SIZE = 4;
+    private static final int MAX_SPARE_SEGMENTS = 2;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final File logDir;
+    private final FileChannel logDirChannel;
+    private final ArrayList<Segment> segments = new ArrayList<>();                  // sorted by first index
+    private final ArrayDeque<File> spares = new ArrayDeque<>();
+
+    private final long segmentSize;
+    private int nextSpareId;
+
+    /**
+     * Constructor.
+     *
+     * @param logDir log directory
+     * @param logDirChannel open channel for {@code logDir} used to {@code fsync()} it, or null if not supported
+     * @param segmentSize size of new segment files, or zero if new log entries are not being stored in segments
+     */
+    SegmentedLog(File logDir, FileChannel logDirChannel, long segmentSize) {
+        Preconditions.checkArgument(logDir != null, "null logDir");
+        Preconditions.checkArgument(segmentSize >= 0 && segmentSize <= Integer.MAX_VALUE, "invalid segmentSize");
+        this.logDir = logDir;
+        this.logDirChannel = logDirChannel;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Determine whether the given file name belongs to a segment or spare segment file.
+     *
+     * @param name file name
+     * @return true if {@code name} is a segment file name
+     */
+    static boolean isSegmentFile(String name) {
+        return SEGMENT_FILE_PATTERN.matcher(name).matches() || SPARE_FILE_PATTERN.matcher(name).matches();
+    }
+
+// Recovery
+
+    /**
+     * Scan the log directory for segment files and recover any log entries following {@code lastAppliedIndex}.
+     *
+     * <p>
+     * Segments containing only already-applied entries are recycled, and segments that do not follow on
+     * contiguously from the previous segment (which indicates a crash during truncation) are discarded.
+     *
+     * @param lastAppliedIndex index of the last log entry applied to the state machine
+     * @return recovered log entries, sorted by index
+     * @throws IOException if an I/O error occurs
+     */
+    List<LogEntry> load(long lastAppliedIndex) throws IOException {
+        assert this.segments.isEmpty();
+
+        // Find segment files
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.logDir.toPath())) {
+            for (Path path : files) {
+                final File file = path.toFile();
+                final String name = file.getName();
+                Matcher matcher;
+                if ((matcher = SEGMENT_FILE_PATTERN.matcher(name)).matches())
+                    this.segments.add(new Segment(file, Long.parseLong(matcher.group(1), 10)));
+                else if ((matcher = SPARE_FILE_PATTERN.matcher(name)).matches()) {
+                    this.nextSpareId = Math.max(this.nextSpareId, Integer.parseInt(matcher.group(1), 10) + 1);
+                    if (this.segmentSize > 0 && this.spares.size() < MAX_SPARE_SEGMENTS)
+                        this.spares.add(file);
+                    else
+                        Util.delete(file, "spare log segment");
+                }
+            }
+        }
+        this.segments.sort(Comparator.comparingLong(segment -> segment.firstIndex));
+
+        // Read log entries from each segment
+        final ArrayList<LogEntry> logEntries = new ArrayList<>();
+        long expectedIndex = -1;
+        for (Iterator<Segment> i = this.segments.iterator(); i.hasNext(); ) {
+            final Segment segment = i.next();
+
+            // Verify segments are contiguous
+            if (expectedIndex != -1 && segment.firstIndex != expectedIndex) {
+                this.log.warn("discarding log segment " + segment.file.getName()
+                  + " which does not follow previous segment ending at index " + (expectedIndex - 1));
+                i.remove();
+                segment.close();
+                this.recycle(segment.file);
+                continue;
+            }
+
+            // Recover entries
+            if (this.log.isDebugEnabled())
+                this.log.debug("recovering log segment " + segment.file.getName());
+            segment.open();
+            for (LogEntry logEntry : segment.recover()) {
+                if (logEntry.getIndex() > lastAppliedIndex)
+                    logEntries.add(logEntry);
+            }
+            expectedIndex = segment.lastIndex + 1;
+        }
+
+        // Recycle segments that are completely applied
+        this.applied(lastAppliedIndex);
+
+        // Done
+        return logEntries;
+    }
+
+// Log Operations
+
+    /**
+     * Append a new log entry whose serialized content is in the given temporary file.
+     *
+     * <p>
+     * A new segment is started if {@code index} does not immediately follow the last log entry, or if there is
+     * not enough room left in the current segment.
+     *
+     * @param term log entry term
+     * @param index log entry index
+     * @param data log entry data
+     * @param tempFile file containing serialized {@code data}
+     * @param length length of {@code tempFile}
+     * @param disableSync true to skip {@code fsync()}
+     * @return new log entry
+     * @throws IOException if an I/O error occurs
+     */
+    LogEntry append(long term, long index, LogEntry.Data data, File tempFile, long length, boolean disableSync)
+      throws IOException {
+        Preconditions.checkState(this.segmentSize > 0, "segments are disabled");
+        Preconditions.checkArgument(length > 0 && length <= Integer.MAX_VALUE - HEADER_SIZE - TERMINATOR_SIZE, "bad length");
+
+        // Start a new segment if necessary
+        final long recordSize = HEADER_SIZE + length + TERMINATOR_SIZE;
+        Segment segment = !this.segments.isEmpty() ? this.segments.get(this.segments.size() - 1) : null;
+        if (segment == null || index != segment.lastIndex + 1 || segment.writeOffset + recordSize > segment.size)
+            segment = this.newSegment(index, recordSize, disableSync);
+
+        // Copy content from the temporary file in chunks, calculating the checksum as we go, then write the terminator
+        final long offset = segment.writeOffset;
+        final CRC32 crc = SegmentedLog.newChecksum(term, index);
+        try (FileChannel input = new FileInputStream(tempFile).getChannel()) {
+            final ByteBuffer buf = ByteBuffer.allocate((int)Math.min(COPY_BUFFER_SIZE, length));
+            long position = 0;
+            while (position < length) {
+                buf.clear().limit((int)Math.min(buf.capacity(), length - position));
+                SegmentedLog.readFully(input, buf, position);
+                buf.flip();
+                crc.update(buf.array(), 0, buf.limit());
+                SegmentedLog.writeFully(segment.channel, buf, offset + HEADER_SIZE + position);
+                position += buf.limit();
+            }
+        }
+        SegmentedLog.writeFully(segment.channel, ByteBuffer.allocate(TERMINATOR_SIZE), offset + HEADER_SIZE + length);
+
+        // Write the header last; until it is written, the previous terminator still marks the end of the segment
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt((int)length);
+        header.putInt((int)crc.getValue());
+        header.putLong(term);
+        header.putLong(index);
+        header.flip();
+        SegmentedLog.writeFully(segment.channel, header, offset);
+        if (!disableSync)
+            segment.channel.force(false);
+
+        // Update segment
+        segment.writeOffset = offset + HEADER_SIZE + length;
+        segment.lastIndex = index;
+        return new LogEntry(term, index, segment, offset, data, length);
+    }
+
+    /**
+     * Discard the log entry at {@code logEntry} and all log entries that follow it.
+     *
+     * @param logEntry first log entry to discard
+     * @param disableSync true to skip {@code fsync()}
+     * @throws IOException if an I/O error occurs
+     */
+    void truncate(LogEntry logEntry, boolean disableSync) throws IOException {
+        final Segment segment = logEntry.getSegment();
+        Preconditions.checkArgument(segment != null, "log entry is not stored in a segment");
+
+        // Already discarded?
+        final int position = this.segments.indexOf(segment);
+        if (position == -1 || logEntry.getIndex() > segment.lastIndex)
+            return;
+
+        // Discard all subsequent segments
+        while (this.segments.size() > position + 1) {
+            final Segment next = this.segments.remove(this.segments.size() - 1);
+            next.close();
+            this.recycle(next.file);
+        }
+
+        // Overwrite the log entry's record with a terminator
+        SegmentedLog.writeFully(segment.channel, ByteBuffer.allocate(TERMINATOR_SIZE), logEntry.getOffset());
+        if (!disableSync)
+            segment.channel.force(false);
+        segment.writeOffset = logEntry.getOffset();
+        segment.lastIndex = logEntry.getIndex() - 1;
+    }
+
+    /**
+     * Recycle all segments, other than the last one, that contain no log entries after {@code lastAppliedIndex}.
+     *
+     * @param lastAppliedIndex index of the last log entry applied to the state machine
+     */
+    void applied(long lastAppliedIndex) {
+        while (this.segments.size() > 1 && this.segments.get(0).lastIndex <= lastAppliedIndex) {
+            final Segment segment = this.segments.remove(0);
+            segment.close();
+            this.recycle(segment.file);
+        }
+    }
+
+    /**
+     * Discard all log entries in all segments.
+     */
+    void reset() {
+        for (Segment segment : this.segments) {
+            segment.close();
+            this.recycle(segment.file);
+        }
+        this.segments.clear();
+    }
+
+    /**
+     * Close all open segment files.
+     */
+    void close() {
+        for (Segment segment : this.segments)
+            segment.close();
+        this.segments.clear();
+        this.spares.clear();
+    }
+
+// Internal methods
+
+    private Segment newSegment(long firstIndex, long minSize, boolean disableSync) throws IOException {
+
+        // Get a spare file, if any, otherwise create a new one
+        final File file = new File(this.logDir,
+          String.format("%s%019d%s", SEGMENT_FILE_PREFIX, firstIndex, SEGMENT_FILE_SUFFIX));
+        final File spare = this.spares.poll();
+        if (spare != null)
+            Files.move(spare.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        // Open and preallocate segment; any leftover data from a previous use is ignored on recovery due to index mismatch
+        final Segment segment = new Segment(file, firstIndex);
+        segment.open();
+        final long size = Math.max(this.segmentSize, minSize);
+        if (segment.size < size)
+            segment.preallocate(size);
+
+        // Durably persist the new (or renamed) directory entry before any entry in the segment is acknowledged
+        if (this.logDirChannel != null && !disableSync)
+            this.logDirChannel.force(true);
+        this.segments.add(segment);
+        if (this.log.isDebugEnabled())
+            this.log.debug("started new log segment " + file.getName() + (spare != null ? " (recycled)" : ""));
+        return segment;
+    }
+
+    private void recycle(File file) {
+        if (this.segmentSize == 0 || this.spares.size() >= MAX_SPARE_SEGMENTS) {
+            Util.delete(file, "log segment");
+            return;
+        }
+        final File spare = new File(this.logDir,
+          String.format("%sspare-%d%s", SEGMENT_FILE_PREFIX, this.nextSpareId++, SEGMENT_FILE_SUFFIX));
+        try {
+            Files.move(file.toPath(), spare.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.log.warn("error recycling log segment " + file + " (deleting instead): " + e);
+            Util.delete(file, "log segment");
+            return;
+        }
+        this.spares.add(spare);
+    }
+
+    private static CRC32 newChecksum(long term, long index) {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.putLong(term);
+        buf.putLong(index);
+        crc.update(buf.array());
+        return crc;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining())
+            channel.write(buf, offset + buf.position());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) == -1)
+                throw new EOFException();
+        }
+    }
+
+// Segment
+
+    /**
+     * A single log segment file.
+     */
+    static final class Segment {
+
+        final File file;
+        final long firstIndex;
+
+        FileChannel channel;
+        long size;                              // allocated size
+        long writeOffset;                       // offset of the terminator following the last record
+        long lastIndex;                         // index of last log entry, or firstIndex - 1 if empty
+
+        Segment(File file, long firstIndex) {
+            this.file = file;
+            this.firstIndex = firstIndex;
+            this.lastIndex = firstIndex - 1;
+        }
+
+        File getFile() {
+            return this.file;
+        }
+
+        void open() throws IOException {
+            assert this.channel == null;
+            this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+            this.size = this.channel.size();
+        }
+
+        void preallocate(long newSize) throws IOException {
+
+            // Write zeroes (rather than creating a sparse file) so that appends don't need to allocate blocks
+            final ByteBuffer zeroes = ByteBuffer.allocate(64 * 1024);
+            for (long offset = this.size; offset < newSize; offset += zeroes.capacity()) {
+                zeroes.clear().limit((int)Math.min(zeroes.capacity(), newSize - offset));
+                while (zeroes.hasRemaining())
+                    this.channel.write(zeroes, offset + zeroes.position());
+            }
+            this.channel.force(true);
+            this.size = newSize;
+        }
+
+        /**
+         * Read the content of the record at the given offset.
+         */
+        ByteBuffer read(long offset, long length) throws IOException {
+            if (this.channel == null)
+                throw new IOException("log segment " + this.file.getName() + " is closed");
+            final ByteBuffer buf = Util.allocateByteBuffer((int)length);
+            SegmentedLog.readFully(this.channel, buf, offset + HEADER_SIZE);
+            return (ByteBuffer)buf.flip();
+        }
+
+        List<LogEntry> recover() throws IOException {
+            final ArrayList<LogEntry> logEntries = new ArrayList<>();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long offset = 0;
+            while (offset + HEADER_SIZE <= this.size) {
+                header.clear();
+                SegmentedLog.readFully(this.channel, header, offset);
+                header.flip();
+                final int length = header.getInt();
+                final int checksum = header.getInt();
+                final long term = header.getLong();
+                final long index = header.getLong();
+                if (length <= 0 || offset + HEADER_SIZE + length > this.size || index != this.lastIndex + 1)
+                    break;
+                final ByteBuffer content = this.read(offset, length);
+                final CRC32 crc = SegmentedLog.newChecksum(term, index);
+                crc.update(content.duplicate());
+                if ((int)crc.getValue() != checksum)
+                    break;
+                final LogEntry.Data data;
+                try (ByteBufferInputStream input = new ByteBufferInputStream(content)) {
+                    data = LogEntry.readData(input);
+                }
+                logEntries.add(new LogEntry(term, index, this, offset, data, length));
+                this.lastIndex = index;
+                offset += HEADER_SIZE + length;
+            }
+            this.writeOffset = offset;
+            return logEntries;
+        }
+
+        void close() {
+            Util.closeIfPossible(this.channel);
+            this.channel = null;
+        }
+
+        @Override
+        public String toString() {
+            return this.file.getName();
+        }
+    }
+}
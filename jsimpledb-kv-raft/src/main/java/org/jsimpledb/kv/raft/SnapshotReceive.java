@@ -14,6 +14,8 @@ import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.dellroad.stuff.io.ByteBufferInputStream;
 import org.jsimpledb.kv.KeyRange;
@@ -21,6 +23,7 @@ import org.jsimpledb.kv.mvcc.AtomicKVStore;
 import org.jsimpledb.kv.mvcc.Mutations;
 import org.jsimpledb.kv.raft.msg.InstallSnapshot;
 import org.jsimpledb.kv.util.KeyListEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
 
 /**
  * Represents and in-progress snapshot installation from the follower's point of view.
@@ -30,6 +33,7 @@ import org.jsimpledb.kv.util.KeyListEncoder;
  */
 class SnapshotReceive {
 
+    private final Timestamp createTime = new Timestamp();
     private final AtomicKVStore kv;
     private final byte[] prefix;
     private final long snapshotTerm;
@@ -38,6 +42,7 @@ class SnapshotReceive {
 
     private long pairIndex;
     private byte[] previousKey;
+    private long dataLength;
 
 // Constructors
 
@@ -68,6 +73,33 @@ class SnapshotReceive {
         return this.snapshotConfig;
     }
 
+    /**
+     * Get the age of this instance since instantiation.
+     *
+     * @return age in milliseconds
+     */
+    public int getAge() {
+        return -this.createTime.offsetFromNow();
+    }
+
+    /**
+     * Get the number of key/value pairs applied so far.
+     *
+     * @return number of pairs applied
+     */
+    public long getPairIndex() {
+        return this.pairIndex;
+    }
+
+    /**
+     * Get the total number of bytes of (uncompressed) key/value data applied so far.
+     *
+     * @return uncompressed data length
+     */
+    public long getDataLength() {
+        return this.dataLength;
+    }
+
     /**
      * Apply the next chunk of key/value pairs.
      *
@@ -76,10 +108,27 @@ class SnapshotReceive {
      * @throws IllegalArgumentException if {@code buf} is null
      */
     public void applyNextChunk(ByteBuffer buf) {
+        this.applyNextChunk(buf, false);
+    }
+
+    /**
+     * Apply the next chunk of key/value pairs, which may be compressed.
+     *
+     * @param buf encoded key/value pairs
+     * @param compressed true if {@code buf} is compressed
+     * @throws IllegalArgumentException if {@code buf} contains invalid data
+     * @throws IllegalArgumentException if {@code buf} is null
+     */
+    public void applyNextChunk(ByteBuffer buf, boolean compressed) {
 
         // Sanity check
         Preconditions.checkArgument(buf != null, "null buf");
 
+        // Decompress
+        if (compressed)
+            buf = SnapshotReceive.decompress(buf);
+        this.dataLength += buf.remaining();
+
         // Read and apply key/value pairs in a single operation
         final PutMutations mutations = new PutMutations(buf, this.prefix, this.previousKey);
         this.kv.mutate(mutations, false);
@@ -96,6 +145,27 @@ class SnapshotReceive {
           && this.pairIndex == msg.getPairIndex();
     }
 
+// Internal methods
+
+    private static ByteBuffer decompress(ByteBuffer buf) {
+        buf = buf.duplicate();
+        final int length = UnsignedIntEncoder.read(buf);
+        final byte[] input = new byte[buf.remaining()];
+        buf.get(input);
+        final byte[] output = new byte[length];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            if (inflater.inflate(output) != length || !inflater.finished())
+                throw new IllegalArgumentException("compressed key/value data has the wrong length");
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("invalid compressed key/value data", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
 // Object
 
     @Override
@@ -105,6 +175,7 @@ class SnapshotReceive {
           + ",snapshotIndex=" + this.snapshotIndex
           + ",snapshotConfig=" + this.snapshotConfig
           + ",pairIndex=" + this.pairIndex
+          + ",dataLength=" + this.dataLength
           + "]";
     }
 
@@ -11,6 +11,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import org.dellroad.stuff.io.ByteBufferOutputStream;
 import org.jsimpledb.kv.CloseableKVStore;
@@ -18,21 +19,28 @@ import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.util.KeyListEncoder;
 import org.jsimpledb.util.CloseableIterator;
+import org.jsimpledb.util.UnsignedIntEncoder;
 
 /**
  * Represents an in-progress snapshot installation from the leader's point of view.
  *
  * <p>
+ * The first chunk is small; each subsequent chunk doubles in size, up to the configured maximum. If compression is enabled,
+ * each chunk is deflated and prefixed with its uncompressed length.
+ *
+ * <p>
  * Instances are not thread safe.
  */
 class SnapshotTransmit implements Closeable {
 
-    private static final int MAX_CHUNK_SIZE = 10250;                // about 7 TCP packets
+    static final int MIN_CHUNK_SIZE = 10250;                        // about 7 TCP packets
 
     private final Timestamp createTime = new Timestamp();
     private final long snapshotTerm;
     private final long snapshotIndex;
     private final Map<String, String> snapshotConfig;
+    private final int maxChunkSize;
+    private final Deflater deflater;                                // null if not compressing
 
     private CloseableKVStore snapshot;                              // snapshot view of key/value store
     private CloseableIterator<KVPair> iterator;
@@ -41,18 +49,31 @@ class SnapshotTransmit implements Closeable {
     private KVPair nextPair;
     private byte[] previousKey;
     private boolean anyChunksSent;
+    private int chunkSize = MIN_CHUNK_SIZE;                         // size of the next chunk
+    private long chunkCount;                                        // number of chunks generated
+    private long dataLength;                                        // total length of all chunks before compression
+    private long sendLength;                                        // total length of all chunks after compression
+    private int chunksQueued;                                       // chunks sent since the output queue was last empty
 
 // Constructors
 
     SnapshotTransmit(long snapshotTerm, long snapshotIndex, Map<String, String> snapshotConfig,
       CloseableKVStore snapshot, KVStore view) {
+        this(snapshotTerm, snapshotIndex, snapshotConfig, snapshot, view, MIN_CHUNK_SIZE, false);
+    }
+
+    SnapshotTransmit(long snapshotTerm, long snapshotIndex, Map<String, String> snapshotConfig,
+      CloseableKVStore snapshot, KVStore view, int maxChunkSize, boolean compress) {
         Preconditions.checkArgument(snapshot != null);
         Preconditions.checkArgument(snapshotTerm > 0);
         Preconditions.checkArgument(snapshotIndex > 0);
         Preconditions.checkArgument(snapshotConfig != null);
+        Preconditions.checkArgument(maxChunkSize >= MIN_CHUNK_SIZE);
         this.snapshotTerm = snapshotTerm;
         this.snapshotIndex = snapshotIndex;
         this.snapshotConfig = snapshotConfig;
+        this.maxChunkSize = maxChunkSize;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
         this.snapshot = snapshot;
         this.iterator = view.getRange(null, null);
         this.advance();
@@ -89,6 +110,56 @@ class SnapshotTransmit implements Closeable {
         return this.nextPair != null;
     }
 
+    /**
+     * Determine whether chunks returned by {@link #getNextChunk} are compressed.
+     *
+     * @return true if compressing
+     */
+    public boolean isCompressed() {
+        return this.deflater != null;
+    }
+
+    /**
+     * Get the total number of bytes of key/value data encoded so far, before compression.
+     *
+     * @return uncompressed data length
+     */
+    public long getDataLength() {
+        return this.dataLength;
+    }
+
+    /**
+     * Get the total number of bytes of key/value data encoded so far, after compression (if any).
+     *
+     * @return transmitted data length
+     */
+    public long getSendLength() {
+        return this.sendLength;
+    }
+
+    /**
+     * Get the number of chunks sent since the follower's output queue was last empty.
+     *
+     * @return number of queued chunks
+     */
+    public int getChunksQueued() {
+        return this.chunksQueued;
+    }
+
+    /**
+     * Record that a chunk was sent.
+     */
+    public void chunkQueued() {
+        this.chunksQueued++;
+    }
+
+    /**
+     * Record that the follower's output queue is empty.
+     */
+    public void queueEmpty() {
+        this.chunksQueued = 0;
+    }
+
     public ByteBuffer getNextChunk() {
 
         // Any more key/value pairs?
@@ -97,7 +168,7 @@ class SnapshotTransmit implements Closeable {
             // In the case of a completely empty snapshot, ensure we send at least one (empty) chunk
             if (!this.anyChunksSent) {
                 this.anyChunksSent = true;
-                return ByteBuffer.allocate(0);
+                return this.deflater != null ? this.compress(ByteBuffer.allocate(0)) : ByteBuffer.allocate(0);
             }
 
             // Done
@@ -105,7 +176,7 @@ class SnapshotTransmit implements Closeable {
         }
 
         // Allocate buffer
-        final ByteBuffer buf = Util.allocateByteBuffer(Math.max(this.nextPairLength(), MAX_CHUNK_SIZE));
+        final ByteBuffer buf = Util.allocateByteBuffer(Math.max(this.nextPairLength(), this.chunkSize));
 
         // Fill buffer with the next chunk of key/value pairs
         final ByteBufferOutputStream output = new ByteBufferOutputStream(buf);
@@ -122,13 +193,47 @@ class SnapshotTransmit implements Closeable {
             this.pairIndex++;
         } while (this.advance() && buf.remaining() >= this.nextPairLength());
 
-        // Done
+        // Grow the next chunk
+        this.chunkSize = (int)Math.min((long)this.chunkSize * 2, this.maxChunkSize);
+
+        // Compress chunk if needed
+        buf.flip();
+        final ByteBuffer chunk = this.deflater != null ? this.compress(buf) : buf;
+
+        // Update stats
         this.anyChunksSent = true;
-        return (ByteBuffer)buf.flip();
+        this.chunkCount++;
+        this.dataLength += buf.limit();
+        this.sendLength += chunk.remaining();
+
+        // Done
+        return chunk;
     }
 
 // Private methods
 
+    private ByteBuffer compress(ByteBuffer buf) {
+        final byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get(data);
+        this.deflater.reset();
+        this.deflater.setInput(data);
+        this.deflater.finish();
+        final int prefixLength = UnsignedIntEncoder.encodeLength(data.length);
+        byte[] output = new byte[prefixLength + data.length + (data.length >> 6) + 64];
+        int length = prefixLength;
+        while (true) {
+            length += this.deflater.deflate(output, length, output.length - length);
+            if (this.deflater.finished())
+                break;
+            final byte[] newOutput = new byte[output.length * 2];
+            System.arraycopy(output, 0, newOutput, 0, length);
+            output = newOutput;
+        }
+        final ByteBuffer chunk = ByteBuffer.wrap(output, 0, length);
+        UnsignedIntEncoder.write(chunk.duplicate(), data.length);
+        return chunk;
+    }
+
     private boolean advance() {
         if (!this.iterator.hasNext()) {
             this.nextPair = null;
@@ -149,6 +254,8 @@ class SnapshotTransmit implements Closeable {
     public void close() {
         this.snapshot.close();
         this.iterator.close();
+        if (this.deflater != null)
+            this.deflater.end();
         this.snapshot = null;
         this.iterator = null;
         this.nextPair = null;
@@ -163,6 +270,9 @@ class SnapshotTransmit implements Closeable {
           + ",snapshotIndex=" + this.snapshotIndex
           + ",snapshotConfig=" + this.snapshotConfig
           + ",pairIndex=" + this.pairIndex
+          + ",chunks=" + this.chunkCount
+          + ",dataLength=" + this.dataLength
+          + (this.deflater != null ? ",sendLength=" + this.sendLength : "")
           + (this.snapshot == null ? ",closed" : "")
           + "]";
     }
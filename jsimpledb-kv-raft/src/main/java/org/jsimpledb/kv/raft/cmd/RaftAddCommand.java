@@ -14,7 +14,7 @@ import org.jsimpledb.util.ParseContext;
 public class RaftAddCommand extends AbstractTransactionRaftCommand {
 
     public RaftAddCommand() {
-        super("raft-add identity address");
+        super("raft-add -learner:learner identity address");
     }
 
     @Override
@@ -30,18 +30,22 @@ public class RaftAddCommand extends AbstractTransactionRaftCommand {
           + " new address if its address actually needs to change). This command may be run from any cluster node."
           + "\n\nThis command is also used to initialize an unconfigured node. This creates a new cluster with the"
           + " local node as the first and only member. In this usage, the local node's identity and address must be given;"
-          + " for unconfigured nodes, this is the only allowed usage of this command.";
+          + " for unconfigured nodes, this is the only allowed usage of this command."
+          + "\n\nIf the \"-learner\" flag is given, the node is added as a non-voting learner: it receives all log entries"
+          + " but does not participate in elections or commit quorums. A learner may later be promoted to a voting member"
+          + " by re-adding it without the \"-learner\" flag; likewise, re-adding a voting member with the flag demotes it.";
     }
 
     @Override
     public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
         final String identity = (String)params.get("identity");
         final String address = (String)params.get("address");
+        final boolean learner = params.containsKey("learner");
         return new RaftTransactionAction() {
 
             @Override
             protected void run(CliSession session, RaftKVTransaction tx) throws Exception {
-                tx.configChange(identity, address);
+                tx.configChange(identity, address, learner);
             }
         };
     }
@@ -75,6 +75,11 @@ public class RaftStatusCommand extends AbstractRaftCommand {
         writer.println(String.format("%-24s: %s", "Max transaction duration",
           RaftStatusCommand.describeMillis(db.getMaxTransactionDuration())));
         writer.println(String.format("%-24s: %s", "Follower probing enabled", db.isFollowerProbingEnabled()));
+        writer.println(String.format("%-24s: %d bytes", "Max snapshot chunk size", db.getMaxSnapshotChunkSize()));
+        writer.println(String.format("%-24s: %d chunks", "Snapshot window size", db.getSnapshotWindowSize()));
+        writer.println(String.format("%-24s: %s", "Snapshot compression", db.isSnapshotCompression()));
+        writer.println(String.format("%-24s: %d entries", "Max append batch size", db.getMaxAppendBatchSize()));
+        writer.println(String.format("%-24s: %d requests", "Append window size", db.getAppendWindowSize()));
 
         // Cluster info
         writer.println();
@@ -84,8 +89,10 @@ public class RaftStatusCommand extends AbstractRaftCommand {
         writer.println(String.format("%-24s: \"%s\"", "Cluster identity", db.getIdentity()));
         writer.println(String.format("%-24s: %s", "Cluster ID",
           db.getClusterId() != 0 ? String.format("0x%08x", db.getClusterId()) : "Unconfigured"));
-        writer.println(String.format("%-24s: %s", "Node is cluster member", db.isClusterMember() ? "Yes" : "No"));
+        writer.println(String.format("%-24s: %s", "Node is cluster member",
+          db.isClusterMember() ? "Yes" : db.isLearner() ? "Learner" : "No"));
         final Map<String, String> config = db.getCurrentConfig();
+        final Map<String, String> learners = db.getCurrentLearners();
         if (config.isEmpty())
             writer.println(String.format("%-24s: %s", "Cluster configuration", "Unconfigured"));
         else {
@@ -94,7 +101,20 @@ public class RaftStatusCommand extends AbstractRaftCommand {
             writer.println();
             writer.println(String.format("%1s %-16s %s", "", "Identity", "Address"));
             writer.println(String.format("%1s %-16s %s", "", "--------", "-------"));
-            for (Map.Entry<String, String> entry : db.getCurrentConfig().entrySet()) {
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                final String identity = entry.getKey();
+                final String address = entry.getValue();
+                writer.println(String.format("%1s %-16s %s",
+                  identity.equals(db.getIdentity()) ? "*" : "", "\"" + identity + "\"", address));
+            }
+        }
+        if (!learners.isEmpty()) {
+            writer.println();
+            writer.println(String.format("Cluster learners:"));
+            writer.println();
+            writer.println(String.format("%1s %-16s %s", "", "Identity", "Address"));
+            writer.println(String.format("%1s %-16s %s", "", "--------", "-------"));
+            for (Map.Entry<String, String> entry : learners.entrySet()) {
                 final String identity = entry.getKey();
                 final String address = entry.getValue();
                 writer.println(String.format("%1s %-16s %s",
@@ -148,17 +168,29 @@ public class RaftStatusCommand extends AbstractRaftCommand {
             writer.println(String.format("%-24s: %d", "Followers", followers.size()));
             if (!followers.isEmpty()) {
                 writer.println();
-                writer.println(String.format("  %-16s %-8s %-6s %-6s %-6s %s",
-                  "Identity", "Status", "Match", "Next", "Commit", "Timestamp"));
-                writer.println(String.format("  %-16s %-8s %-6s %-6s %-6s %s",
-                  "--------", "------", "-----", "----", "------", "---------"));
+                writer.println(String.format("  %-16s %-7s %-8s %-6s %-6s %-6s %-6s %s",
+                  "Identity", "Type", "Status", "Match", "Next", "Commit", "InFlt", "Timestamp"));
+                writer.println(String.format("  %-16s %-7s %-8s %-6s %-6s %-6s %-6s %s",
+                  "--------", "----", "------", "-----", "----", "------", "-----", "---------"));
                 for (Follower follower : leader.getFollowers()) {
-                    writer.println(String.format("  %-16s %-8s %-6s %-6s %-6s %s", follower.getIdentity(),
+                    writer.println(String.format("  %-16s %-7s %-8s %-6s %-6s %-6s %-6s %s", follower.getIdentity(),
+                      db.isClusterMember(follower.getIdentity()) ? "Voter" :
+                       db.isLearner(follower.getIdentity()) ? "Learner" : "Removed",
                       follower.isReceivingSnapshot() ? "Snapshot" : follower.isSynced() ? "Synced" : "No Sync",
                       follower.getMatchIndex(), follower.getNextIndex(), follower.getLeaderCommit(),
+                      follower.getNumAppendsInFlight(),
                       follower.getLeaderTimestamp() != null ?
                        String.format("%+dms", follower.getLeaderTimestamp().offsetFromNow()) : "None"));
                 }
+                for (Follower follower : leader.getFollowers()) {
+                    final int duration = follower.getSnapshotDuration();
+                    if (duration == -1)
+                        continue;
+                    writer.println();
+                    writer.println(String.format("  Snapshot install to \"%s\": %s", follower.getIdentity(),
+                      RaftStatusCommand.describeSnapshot(follower.getSnapshotPairsSent(),
+                        follower.getSnapshotBytesSent(), duration)));
+                }
             }
         } else if (role instanceof FollowerRole) {
             final FollowerRole follower = (FollowerRole)role;
@@ -173,7 +205,10 @@ public class RaftStatusCommand extends AbstractRaftCommand {
               follower.getLeaderAddress() != null ? follower.getLeaderAddress() : "Unknown"));
             writer.println(String.format("%-24s: %s", "Voted For",
               follower.getVotedFor() != null ? "\"" + follower.getVotedFor() + "\"" : "Nobody"));
-            writer.println(String.format("%-24s: %s", "Installing snapshot", follower.isInstallingSnapshot() ? "Yes" : "No"));
+            final int snapshotDuration = follower.getSnapshotDuration();
+            writer.println(String.format("%-24s: %s", "Installing snapshot", snapshotDuration != -1 ?
+              "Yes; " + RaftStatusCommand.describeSnapshot(follower.getSnapshotPairsReceived(),
+                follower.getSnapshotBytesReceived(), snapshotDuration) : "No"));
             final Timestamp electionTimeout = follower.getElectionTimeout();
             writer.println(String.format("%-24s: %s", "Election timer running",
               electionTimeout != null ? "Yes; expires in " + electionTimeout.offsetFromNow() + "ms" : "No"));
@@ -216,6 +251,12 @@ public class RaftStatusCommand extends AbstractRaftCommand {
           (change[1] != null ? String.format("+\"%s\"@%s", change[0], change[1]) : "-\"" + change[0] + "\"") : "";
     }
 
+    // Describe snapshot install progress
+    private static String describeSnapshot(long pairs, long bytes, int duration) {
+        return String.format("%d pairs, %d bytes in %s (%.1f KB/s)", pairs, bytes,
+          RaftStatusCommand.describeMillis(duration), duration > 0 ? (bytes / 1024.0) / (duration / 1000.0) : 0.0);
+    }
+
     private static String describeMillis(long value) {
         StringBuilder b = new StringBuilder(32);
         if (value < 0) {
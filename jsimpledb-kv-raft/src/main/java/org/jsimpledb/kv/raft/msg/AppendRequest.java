@@ -8,9 +8,14 @@ package org.jsimpledb.kv.raft.msg;
 import com.google.common.base.Preconditions;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jsimpledb.kv.raft.Timestamp;
 import org.jsimpledb.util.LongEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
 
 /**
  * Sent from leaders to followers to probe the follower's log state and/or append an entry to their log.
@@ -19,6 +24,10 @@ import org.jsimpledb.util.LongEncoder;
  * Instances also provide the {@linkplain #getLeaderLeaseTimeout leader's lease timeout} value (if any),
  * which is used to commit read-only transactions, as well as a {@linkplain #getLeaderTimestamp leader timestamp}
  * which should be reflected back in the corresponding {@link AppendResponse}.
+ *
+ * <p>
+ * Starting with protocol version 5, a single instance may carry a batch of consecutive log entries; see
+ * {@link #getNumLogEntries} and {@link #split}.
  */
 public class AppendRequest extends Message {
 
@@ -28,9 +37,11 @@ public class AppendRequest extends Message {
     private final long prevLogTerm;                 // term of previous log entry
     private final long prevLogIndex;                // index of previous log entry
     private final long logEntryTerm;                // term corresponding to log entry, or zero if this is a "probe"
+    private final long[] moreLogEntryTerms;         // terms of additional log entries in this batch, if any
 
     private ByteBuffer mutationData;                // serialized mutations, if not a probe and not from follower transaction
     private boolean mutationDataInvalid;            // mutationData has already been grabbed
+    private final ByteBuffer[] moreMutationData;    // serialized mutations of additional log entries (elements may be null)
 
 // Constructors
 
@@ -75,6 +86,43 @@ public class AppendRequest extends Message {
     public AppendRequest(int clusterId, String senderId, String recipientId, long term, Timestamp leaderTimestamp,
       Timestamp leaderLeaseTimeout, long leaderCommit, long prevLogTerm, long prevLogIndex, long logEntryTerm,
       ByteBuffer mutationData) {
+        this(clusterId, senderId, recipientId, term, leaderTimestamp, leaderLeaseTimeout, leaderCommit,
+          prevLogTerm, prevLogIndex, logEntryTerm, mutationData, new long[0], new ByteBuffer[0]);
+    }
+
+    /**
+     * Constructor for a request that contains a batch of one or more consecutive log entries.
+     *
+     * <p>
+     * Instances containing more than one log entry may only be encoded using protocol version 5 or later.
+     *
+     * @param clusterId cluster ID
+     * @param senderId identity of sender
+     * @param recipientId identity of recipient
+     * @param term sender's current term
+     * @param leaderTimestamp leader's timestamp for this request
+     * @param leaderLeaseTimeout earliest leader timestamp at which leader could be deposed (or null)
+     * @param leaderCommit current commit index for sender
+     * @param prevLogTerm term of the log entry just prior to the first one
+     * @param prevLogIndex index of the log entry just prior to the first one
+     * @param logEntryTerms terms of the log entries
+     * @param mutationData serialized mutations of the log entries; elements may be null if the follower
+     *  should have the data already
+     * @throws IllegalArgumentException if {@code logEntryTerms} is empty
+     * @throws IllegalArgumentException if {@code logEntryTerms} and {@code mutationData} have different lengths
+     */
+    public AppendRequest(int clusterId, String senderId, String recipientId, long term, Timestamp leaderTimestamp,
+      Timestamp leaderLeaseTimeout, long leaderCommit, long prevLogTerm, long prevLogIndex, long[] logEntryTerms,
+      ByteBuffer[] mutationData) {
+        this(clusterId, senderId, recipientId, term, leaderTimestamp, leaderLeaseTimeout, leaderCommit,
+          prevLogTerm, prevLogIndex, AppendRequest.first(logEntryTerms, mutationData), mutationData[0],
+          Arrays.copyOfRange(logEntryTerms, 1, logEntryTerms.length),
+          Arrays.copyOfRange(mutationData, 1, mutationData.length));
+    }
+
+    private AppendRequest(int clusterId, String senderId, String recipientId, long term, Timestamp leaderTimestamp,
+      Timestamp leaderLeaseTimeout, long leaderCommit, long prevLogTerm, long prevLogIndex, long logEntryTerm,
+      ByteBuffer mutationData, long[] moreLogEntryTerms, ByteBuffer[] moreMutationData) {
         super(Message.APPEND_REQUEST_TYPE, clusterId, senderId, recipientId, term);
         this.leaderTimestamp = leaderTimestamp;
         this.leaderLeaseTimeout = leaderLeaseTimeout;
@@ -83,6 +131,8 @@ public class AppendRequest extends Message {
         this.prevLogIndex = prevLogIndex;
         this.logEntryTerm = logEntryTerm;
         this.mutationData = mutationData;
+        this.moreLogEntryTerms = moreLogEntryTerms;
+        this.moreMutationData = moreMutationData;
         this.checkArguments();
     }
 
@@ -95,9 +145,23 @@ public class AppendRequest extends Message {
         this.prevLogIndex = LongEncoder.read(buf);
         this.logEntryTerm = LongEncoder.read(buf);
         this.mutationData = this.logEntryTerm != 0 && Message.getBoolean(buf) ? Message.getByteBuffer(buf) : null;
+        final int numMore = this.logEntryTerm != 0 && AppendRequest.isBatchingSupported(version) ?
+          UnsignedIntEncoder.read(buf) : 0;
+        this.moreLogEntryTerms = new long[numMore];
+        this.moreMutationData = new ByteBuffer[numMore];
+        for (int i = 0; i < numMore; i++) {
+            this.moreLogEntryTerms[i] = LongEncoder.read(buf);
+            this.moreMutationData[i] = Message.getBoolean(buf) ? Message.getByteBuffer(buf) : null;
+        }
         this.checkArguments();
     }
 
+    private static long first(long[] logEntryTerms, ByteBuffer[] mutationData) {
+        Preconditions.checkArgument(logEntryTerms != null && logEntryTerms.length > 0, "no log entries");
+        Preconditions.checkArgument(mutationData != null && mutationData.length == logEntryTerms.length, "length mismatch");
+        return logEntryTerms[0];
+    }
+
     @Override
     void checkArguments() {
         super.checkArguments();
@@ -107,6 +171,23 @@ public class AppendRequest extends Message {
         Preconditions.checkArgument(this.prevLogIndex >= 0);
         Preconditions.checkArgument(this.logEntryTerm >= 0);
         Preconditions.checkArgument(this.mutationData == null || this.logEntryTerm > 0);
+        Preconditions.checkArgument(this.moreLogEntryTerms.length == this.moreMutationData.length);
+        Preconditions.checkArgument(this.moreLogEntryTerms.length == 0 || this.logEntryTerm > 0);
+        long previousTerm = this.logEntryTerm;
+        for (long moreLogEntryTerm : this.moreLogEntryTerms) {
+            Preconditions.checkArgument(moreLogEntryTerm >= previousTerm);
+            previousTerm = moreLogEntryTerm;
+        }
+    }
+
+    /**
+     * Determine whether the given protocol version supports instances containing more than one log entry.
+     *
+     * @param version message protocol version
+     * @return true if batching is supported
+     */
+    public static boolean isBatchingSupported(int version) {
+        return version > Message.VERSION_4;
     }
 
 // Properties
@@ -143,10 +224,62 @@ public class AppendRequest extends Message {
         return this.logEntryTerm == 0;
     }
 
+    /**
+     * Get the term of the (first) log entry in this request.
+     *
+     * @return first log entry term, or zero if this is a probe
+     */
     public long getLogEntryTerm() {
         return this.logEntryTerm;
     }
 
+    /**
+     * Get the number of log entries contained in this request.
+     *
+     * @return number of log entries, zero if this is a probe
+     */
+    public int getNumLogEntries() {
+        return this.logEntryTerm != 0 ? 1 + this.moreLogEntryTerms.length : 0;
+    }
+
+    /**
+     * Split this request into a list of equivalent requests each containing at most one log entry.
+     *
+     * <p>
+     * The {@linkplain #getLeaderCommit leader commit index} of each request except the last is limited to the index
+     * of that request's own log entry, because the follower has not yet seen the log entries that follow it.
+     *
+     * <p>
+     * If this request contains at most one log entry, a list containing only this instance is returned.
+     * Otherwise, this instance's mutation data is transferred to the returned requests, and this method
+     * and {@link #getMutationData} may not be invoked again.
+     *
+     * @return list of requests, in log order
+     * @throws IllegalStateException if {@link #getMutationData} or this method has already been invoked
+     */
+    public List<AppendRequest> split() {
+        Preconditions.checkState(!this.mutationDataInvalid);
+        if (this.moreLogEntryTerms.length == 0)
+            return Collections.singletonList(this);
+        final ArrayList<AppendRequest> list = new ArrayList<>(1 + this.moreLogEntryTerms.length);
+        long prevTerm = this.prevLogTerm;
+        long prevIndex = this.prevLogIndex;
+        for (int i = 0; i <= this.moreLogEntryTerms.length; i++) {
+            final long entryTerm = i == 0 ? this.logEntryTerm : this.moreLogEntryTerms[i - 1];
+            final ByteBuffer entryData = i == 0 ? this.mutationData : this.moreMutationData[i - 1];
+            final long entryCommit = i < this.moreLogEntryTerms.length ?
+              Math.min(this.leaderCommit, prevIndex + 1) : this.leaderCommit;
+            list.add(new AppendRequest(this.getClusterId(), this.getSenderId(), this.getRecipientId(), this.getTerm(),
+              this.leaderTimestamp, this.leaderLeaseTimeout, entryCommit, prevTerm, prevIndex, entryTerm, entryData));
+            prevTerm = entryTerm;
+            prevIndex++;
+        }
+        this.mutationData = null;
+        Arrays.fill(this.moreMutationData, null);
+        this.mutationDataInvalid = true;
+        return list;
+    }
+
     /**
      * Get the serialized data for the log entry, if any.
      * Returns null if this is a probe or follower is expected to already have the data from a transaction.
@@ -180,6 +313,8 @@ public class AppendRequest extends Message {
     @Override
     public void writeTo(ByteBuffer dest, int version) {
         Preconditions.checkState(!this.mutationDataInvalid);
+        Preconditions.checkArgument(this.moreLogEntryTerms.length == 0 || AppendRequest.isBatchingSupported(version),
+          "multiple log entries requires protocol version " + Message.VERSION_5);
         super.writeTo(dest, version);
         Message.putTimestamp(dest, this.leaderTimestamp, version);
         Message.putBoolean(dest, this.leaderLeaseTimeout != null);
@@ -193,6 +328,15 @@ public class AppendRequest extends Message {
             Message.putBoolean(dest, this.mutationData != null);
             if (this.mutationData != null)
                 Message.putByteBuffer(dest, this.mutationData);
+            if (AppendRequest.isBatchingSupported(version)) {
+                UnsignedIntEncoder.write(dest, this.moreLogEntryTerms.length);
+                for (int i = 0; i < this.moreLogEntryTerms.length; i++) {
+                    LongEncoder.write(dest, this.moreLogEntryTerms[i]);
+                    Message.putBoolean(dest, this.moreMutationData[i] != null);
+                    if (this.moreMutationData[i] != null)
+                        Message.putByteBuffer(dest, this.moreMutationData[i]);
+                }
+            }
         }
     }
 
@@ -208,7 +352,18 @@ public class AppendRequest extends Message {
           + LongEncoder.encodeLength(this.prevLogTerm)
           + LongEncoder.encodeLength(this.prevLogIndex)
           + LongEncoder.encodeLength(this.logEntryTerm)
-          + (this.logEntryTerm != 0 ? 1 + (this.mutationData != null ? Message.calculateSize(this.mutationData) : 0) : 0);
+          + (this.logEntryTerm != 0 ? 1 + (this.mutationData != null ? Message.calculateSize(this.mutationData) : 0) : 0)
+          + (this.logEntryTerm != 0 && AppendRequest.isBatchingSupported(version) ? this.calculateMoreSize() : 0);
+    }
+
+    private int calculateMoreSize() {
+        int size = UnsignedIntEncoder.encodeLength(this.moreLogEntryTerms.length);
+        for (int i = 0; i < this.moreLogEntryTerms.length; i++) {
+            size += LongEncoder.encodeLength(this.moreLogEntryTerms[i]) + 1;
+            if (this.moreMutationData[i] != null)
+                size += Message.calculateSize(this.moreMutationData[i]);
+        }
+        return size;
     }
 
 // Object
@@ -225,6 +380,7 @@ public class AppendRequest extends Message {
           + ",leaderCommit=" + this.leaderCommit
           + ",prevLog=" + this.prevLogIndex + "t" + this.prevLogTerm
           + (this.logEntryTerm != 0 ? ",logEntryTerm=" + this.logEntryTerm : "")
+          + (this.moreLogEntryTerms.length > 0 ? ",moreLogEntryTerms=" + Arrays.toString(this.moreLogEntryTerms) : "")
           + (this.mutationData != null ?
             ",mutationData=" + this.describe(this.mutationData) : this.mutationDataInvalid ? ",mutationData=invalid" : "")
           + "]";
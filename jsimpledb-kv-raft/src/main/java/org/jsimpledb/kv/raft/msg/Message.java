@@ -36,6 +36,8 @@ public abstract class Message {
     static final int VERSION_1 = 1;
     static final int VERSION_2 = 2;
     static final int VERSION_3 = 3;
+    static final int VERSION_4 = 4;
+    static final int VERSION_5 = 5;
 
     // Minimum buffer size to use a direct buffer
     private static final int MIN_DIRECT_BUFFER_SIZE = 128;
@@ -134,6 +136,8 @@ public abstract class Message {
         case Message.VERSION_1:
         case Message.VERSION_2:
         case Message.VERSION_3:
+        case Message.VERSION_4:
+        case Message.VERSION_5:
             break;
         default:
             throw new IllegalArgumentException("unrecognized message format version " + version);
@@ -146,7 +150,7 @@ public abstract class Message {
      * @return latest message protocol version
      */
     public static int getCurrentProtocolVersion() {
-        return Message.VERSION_3;
+        return Message.VERSION_5;
     }
 
     /**
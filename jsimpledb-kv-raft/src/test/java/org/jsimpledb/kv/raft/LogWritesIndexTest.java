@@ -0,0 +1,84 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.raft;
+
+import java.util.ArrayList;
+
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.mvcc.Reads;
+import org.jsimpledb.kv.mvcc.Writes;
+import org.jsimpledb.test.TestSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LogWritesIndexTest extends TestSupport {
+
+    @Test
+    public void testLogWritesIndex() throws Exception {
+        for (int repeat = 0; repeat < 50; repeat++) {
+
+            // Build random log entry writes
+            final LogWritesIndex index = new LogWritesIndex();
+            final ArrayList<Writes> log = new ArrayList<>();
+            final int numEntries = this.random.nextInt(20);
+            for (int i = 0; i < numEntries; i++) {
+                final Writes writes = new Writes();
+                final int numWrites = this.random.nextInt(4);
+                for (int j = 0; j < numWrites; j++) {
+                    switch (this.random.nextInt(3)) {
+                    case 0:
+                        writes.getPuts().put(this.randomKey(), new byte[0]);
+                        break;
+                    case 1:
+                        writes.getAdjusts().put(this.randomKey(), 1L);
+                        break;
+                    default:
+                        writes.getRemoves().add(this.randomRange());
+                        break;
+                    }
+                }
+                log.add(writes);
+                index.add(i + 1, writes);
+            }
+
+            // Compare index against brute force for random reads and base indexes
+            for (int i = 0; i < 50; i++) {
+                final Reads reads = new Reads();
+                final int numRanges = this.random.nextInt(6);
+                for (int j = 0; j < numRanges; j++)
+                    reads.add(this.randomRange());
+                final int baseIndex = this.random.nextInt(numEntries + 1);
+                boolean expected = false;
+                for (int logIndex = baseIndex + 1; logIndex <= numEntries && !expected; logIndex++)
+                    expected = reads.isConflict(log.get(logIndex - 1));
+                Assert.assertEquals(index.hasConflict(reads, baseIndex), expected,
+                  "wrong result for reads " + reads + " base index " + baseIndex + " with log " + log);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrder() throws Exception {
+        final LogWritesIndex index = new LogWritesIndex();
+        index.add(5, new Writes());
+        index.add(5, new Writes());
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(3)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)(this.random.nextInt(4) * 0x40);
+        return key;
+    }
+
+    private KeyRange randomRange() {
+        final byte[] min = this.randomKey();
+        if (this.random.nextInt(8) == 0)
+            return new KeyRange(min, null);
+        final byte[] max = this.randomKey();
+        return KeyRange.compare(min, max) <= 0 ? new KeyRange(min, max) : new KeyRange(max, min);
+    }
+}
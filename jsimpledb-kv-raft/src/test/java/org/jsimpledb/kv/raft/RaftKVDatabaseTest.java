@@ -13,11 +13,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.jsimpledb.kv.KVDatabase;
 import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
 import org.jsimpledb.kv.array.AtomicArrayKVStore;
 import org.jsimpledb.kv.leveldb.LevelDBAtomicKVStore;
 import org.jsimpledb.kv.mvcc.AtomicKVDatabase;
@@ -29,12 +36,14 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
 
 public class RaftKVDatabaseTest extends KVDatabaseTest {
 
     private RaftKVDatabase[] rafts;
     private TestNetwork[] raftNetworks;
     private File topRaftDir;
+    private int networkDelayMillis;
 
     @BeforeClass(groups = "configure")
     @Parameters({
@@ -47,6 +56,9 @@ public class RaftKVDatabaseTest extends KVDatabaseTest {
       "raftHeartbeatTimeout",
       "raftMaxTransactionDuration",
       "raftFollowerProbingEnabled",
+      "raftCommitBatchDelay",
+      "raftFollowerReadBatching",
+      "raftLogSegmentSize",
       "raftNetworkDelayMillis",
       "raftNetworkDropRatio",
       "arrayCompactMaxDelay",
@@ -56,7 +68,9 @@ public class RaftKVDatabaseTest extends KVDatabaseTest {
     public void setTestRaftDirPrefix(@Optional String raftDirPrefix, @Optional("5") int numNodes, @Optional final String kvstoreType,
       @Optional("2500") int commitTimeout, @Optional("300") int minElectionTimeout, @Optional("350") int maxElectionTimeout,
       @Optional("150") int heartbeatTimeout, @Optional("5000") int maxTransactionDuration,
-      @Optional("true") boolean followerProbingEnabled,
+      @Optional("true") boolean followerProbingEnabled, @Optional("0") int commitBatchDelay,
+      @Optional("false") boolean followerReadBatching,
+      @Optional("0") long logSegmentSize,
       @Optional("25") int networkDelayMillis, @Optional("0.075") float networkDropRatio,
       @Optional("90") int arrayCompactMaxDelay,
       @Optional("65536") int arrayCompactLowWater,
@@ -64,6 +78,7 @@ public class RaftKVDatabaseTest extends KVDatabaseTest {
       throws Exception {
         if (raftDirPrefix == null)
             return;
+        this.networkDelayMillis = networkDelayMillis;
         this.raftNetworks = new TestNetwork[numNodes];
         this.rafts = new RaftKVDatabase[numNodes];
         this.topRaftDir = File.createTempFile(raftDirPrefix, null);
@@ -132,6 +147,9 @@ public class RaftKVDatabaseTest extends KVDatabaseTest {
             this.rafts[i].setHeartbeatTimeout(heartbeatTimeout);
             this.rafts[i].setMaxTransactionDuration(maxTransactionDuration);
             this.rafts[i].setFollowerProbingEnabled(followerProbingEnabled);
+            this.rafts[i].setCommitBatchDelay(commitBatchDelay);
+            this.rafts[i].setFollowerReadBatching(followerReadBatching);
+            this.rafts[i].setLogSegmentSize(logSegmentSize);
             this.rafts[i].setDumpConflicts(true);
         }
         for (int i = 0; i < numNodes; i++)
@@ -226,6 +244,365 @@ public class RaftKVDatabaseTest extends KVDatabaseTest {
         });
     }
 
+    @Test(dataProvider = "kvdbs")
+    public void testBoundedStaleness(KVDatabase store) throws Exception {
+
+        // Commit a value
+        this.tryNtimes(store, tx -> tx.put(b("30"), b("31")));
+        final Timestamp commitTime = new Timestamp();
+
+        // A zero staleness bound can only be met by a leader holding an active lease, which must see the committed value
+        boolean succeeded = false;
+        for (int i = 0; i < 100 && !succeeded; i++) {
+            for (RaftKVDatabase raft : this.rafts) {
+                if (!(raft.getCurrentRole() instanceof LeaderRole))
+                    continue;
+                raft.setMaxReadStaleness(0);
+                final RaftKVTransaction tx = raft.createTransaction(Consistency.BOUNDED_STALENESS);
+                raft.setMaxReadStaleness(RaftKVDatabase.DEFAULT_MAX_READ_STALENESS);
+                try {
+                    Assert.assertTrue(tx.isReadOnly());
+                    Assert.assertEquals(tx.get(b("30")), b("31"));
+                    tx.commit();
+                    succeeded = true;
+                } catch (RetryTransactionException e) {
+                    this.log.debug("retrying after " + e);
+                    tx.rollback();
+                }
+            }
+            if (!succeeded)
+                Thread.sleep(50);
+        }
+        Assert.assertTrue(succeeded, "no bounded-staleness read succeeded");
+
+        // A follower read whose staleness bound does not reach back before the commit must also see the committed value;
+        // a follower can only estimate the leader's send time to within the minimum network delay, so allow for that
+        succeeded = this.rafts.length < 2;
+        for (int i = 0; i < 100 && !succeeded; i++) {
+            for (RaftKVDatabase raft : this.rafts) {
+                if (!(raft.getCurrentRole() instanceof FollowerRole))
+                    continue;
+                raft.setMaxReadStaleness(Math.max(0, -commitTime.offsetFromNow() - this.networkDelayMillis));
+                final RaftKVTransaction tx = raft.createTransaction(Consistency.BOUNDED_STALENESS);
+                raft.setMaxReadStaleness(RaftKVDatabase.DEFAULT_MAX_READ_STALENESS);
+                try {
+                    Assert.assertTrue(tx.isReadOnly());
+                    Assert.assertEquals(tx.get(b("30")), b("31"));
+                    tx.commit();
+                    succeeded = true;
+                } catch (RetryTransactionException e) {
+                    this.log.debug("retrying after " + e);
+                    tx.rollback();
+                }
+            }
+            if (!succeeded)
+                Thread.sleep(50);
+        }
+        Assert.assertTrue(succeeded, "no follower bounded-staleness read succeeded");
+    }
+
+    @Test(dataProvider = "kvdbs")
+    public void testLearner(KVDatabase store) throws Exception {
+        if (this.rafts.length < 2)
+            return;
+        final RaftKVDatabase learner = this.rafts[this.rafts.length - 1];
+        final String node = learner.getIdentity();
+
+        // Demote the node to a learner
+        this.tryNtimes(store, tx -> ((RaftKVTransaction)tx).configChange(node, node, true));
+        this.waitFor(learner::isLearner, "node did not become a learner");
+        Assert.assertFalse(learner.isClusterMember());
+        Assert.assertFalse(learner.getCurrentConfig().containsKey(node));
+        Assert.assertEquals(learner.getCurrentLearners().get(node), node);
+
+        // Commits still succeed, and are replicated to the learner
+        this.tryNtimes(store, tx -> tx.put(b("40"), b("41")));
+        this.waitFor(() -> {
+            final RaftKVTransaction tx = learner.createTransaction(Consistency.EVENTUAL_COMMITTED);
+            try {
+                return Arrays.equals(tx.get(b("40")), b("41"));
+            } finally {
+                tx.rollback();
+            }
+        }, "learner did not receive committed value");
+
+        // Promote the node back to a voting member
+        this.tryNtimes(store, tx -> ((RaftKVTransaction)tx).configChange(node, node));
+        this.waitFor(learner::isClusterMember, "node was not promoted to a voting member");
+        Assert.assertFalse(learner.isLearner());
+    }
+
+    @Test
+    public void testLeaseWithOneVoterAndLearner() throws Exception {
+        if (this.topRaftDir == null)
+            return;
+        final RaftKVDatabase[] cluster = this.startCluster("lease1-", 1, 1, raft -> { });
+        try {
+            final RaftKVDatabase leader = cluster[0];
+
+            // Commits succeed, and the sole voter establishes a lease from its own timestamp
+            this.tryNtimes(leader, tx -> tx.put(b("50"), b("51")));
+            this.waitFor(() -> {
+                final Timestamp leaseTimeout = this.getLeaseTimeout(leader);
+                return leaseTimeout != null && !leaseTimeout.hasOccurred();
+            }, "single voter did not establish a lease");
+        } finally {
+            this.stopCluster(cluster);
+        }
+    }
+
+    @Test
+    public void testLeaseWithOnlyLearnerAcks() throws Exception {
+        if (this.topRaftDir == null)
+            return;
+        final RaftKVDatabase[] cluster = this.startCluster("lease2-", 2, 1, raft -> { });
+        try {
+            final RaftKVDatabase leader = cluster[0];
+            this.tryNtimes(leader, tx -> tx.put(b("60"), b("61")));
+
+            // Stop the other voter; from now on only the learner acks the leader's heartbeats
+            cluster[1].stop();
+
+            // The lease must run out, and must not be extended by learner acks
+            this.waitFor(() -> {
+                final Timestamp leaseTimeout = this.getLeaseTimeout(leader);
+                return leaseTimeout == null || leaseTimeout.hasOccurred();
+            }, "learner acks extended the leader's lease");
+            Thread.sleep(leader.getMaxElectionTimeout());
+            final Timestamp leaseTimeout = this.getLeaseTimeout(leader);
+            Assert.assertTrue(leaseTimeout == null || leaseTimeout.hasOccurred(), "learner acks extended the leader's lease");
+        } finally {
+            this.stopCluster(cluster);
+        }
+    }
+
+    @Test
+    public void testCommitBatching() throws Exception {
+        if (this.topRaftDir == null)
+            return;
+        final RaftKVDatabase[] cluster = this.startCluster("batch-", 3, 0, raft -> raft.setCommitBatchDelay(100));
+        try {
+            final RaftKVDatabase leader = cluster[0];
+            final long initialCommitIndex = leader.getCommitIndex();
+
+            // Commit transactions concurrently from all nodes; half of them conflict on a shared counter
+            final int numTransactions = 16;
+            final byte[] counterKey = b("70");
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final ExecutorService executor = Executors.newFixedThreadPool(numTransactions);
+            try {
+                final ArrayList<Future<?>> futures = new ArrayList<>(numTransactions);
+                for (int i = 0; i < numTransactions; i++) {
+                    final RaftKVDatabase raft = cluster[i % cluster.length];
+                    final byte[] key = b(String.format("71%02x", i));
+                    final boolean increment = i % 2 == 0;
+                    futures.add(executor.submit(() -> {
+                        startLatch.await();
+                        this.tryNtimes(raft, tx -> {
+                            if (increment) {
+                                final byte[] counter = tx.get(counterKey);
+                                tx.put(counterKey, new byte[] { (byte)(counter != null ? counter[0] + 1 : 1) });
+                            }
+                            tx.put(key, key);
+                        });
+                        return null;
+                    }));
+                }
+                startLatch.countDown();
+                for (Future<?> future : futures)
+                    future.get();
+            } finally {
+                executor.shutdown();
+            }
+
+            // Every transaction was committed exactly once, and conflicting transactions were not merged
+            this.tryNtimes(leader, tx -> {
+                for (int i = 0; i < numTransactions; i++) {
+                    final byte[] key = b(String.format("71%02x", i));
+                    Assert.assertEquals(tx.get(key), key);
+                }
+                Assert.assertEquals(tx.get(counterKey), new byte[] { (byte)(numTransactions / 2) });
+            });
+
+            // Some transactions shared a log entry
+            final long numLogEntries = leader.getCommitIndex() - initialCommitIndex;
+            this.log.info("committed " + numTransactions + " transactions in " + numLogEntries + " log entries");
+            Assert.assertTrue(numLogEntries < numTransactions, "no transactions were batched");
+        } finally {
+            this.stopCluster(cluster);
+        }
+    }
+
+    @Test
+    public void testLogSegments() throws Exception {
+        if (this.topRaftDir == null)
+            return;
+        final long segmentSize = 4096;
+        final Consumer<RaftKVDatabase> configurer = raft -> raft.setLogSegmentSize(segmentSize);
+        RaftKVDatabase[] cluster = this.startCluster("segment-", 2, 0, configurer);
+        final int numTransactions = 100;
+        try {
+
+            // Commit enough data to fill several log segments
+            this.commitSegmentData(cluster, 0, numTransactions / 2);
+
+            // Log entries are stored in segment files rather than one file per entry
+            for (RaftKVDatabase raft : cluster) {
+                final File dir = raft.getLogDirectory();
+                Assert.assertEquals(dir.list((d, name) -> LogEntry.LOG_FILE_PATTERN.matcher(name).matches()).length, 0,
+                  "found individual log entry files in " + dir);
+                Assert.assertTrue(dir.list((d, name) -> SegmentedLog.SEGMENT_FILE_PATTERN.matcher(name).matches()).length > 0,
+                  "no log segment files found in " + dir);
+            }
+        } finally {
+            this.stopCluster(cluster);
+        }
+
+        // Restart the cluster; committed data survives, and logging resumes in new or recycled segments
+        cluster = new RaftKVDatabase[cluster.length];
+        try {
+            for (int i = 0; i < cluster.length; i++)
+                cluster[i] = this.startNode("segment-" + i, configurer);
+            this.commitSegmentData(cluster, numTransactions / 2, numTransactions);
+            for (RaftKVDatabase raft : cluster) {
+                this.tryNtimes(raft, tx -> {
+                    for (int i = 0; i < numTransactions; i++) {
+                        final byte[] value = tx.get(b(String.format("72%04x", i)));
+                        Assert.assertNotNull(value, "missing key #" + i);
+                        Assert.assertEquals(value[0], (byte)i);
+                    }
+                });
+            }
+        } finally {
+            this.stopCluster(cluster);
+        }
+    }
+
+    private void commitSegmentData(RaftKVDatabase[] cluster, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final byte[] key = b(String.format("72%04x", i));
+            final byte[] value = new byte[100 + this.random.nextInt(200)];
+            this.random.nextBytes(value);
+            value[0] = (byte)i;
+            this.tryNtimes(cluster[i % cluster.length], tx -> tx.put(key, value));
+        }
+    }
+
+    @Test
+    public void testFollowerReadBatching() throws Exception {
+        if (this.topRaftDir == null)
+            return;
+        final RaftKVDatabase[] cluster = this.startCluster("readbatch-", 3, 0, raft -> raft.setFollowerReadBatching(true));
+        final ExecutorService executor = Executors.newFixedThreadPool(12);
+        try {
+            for (int round = 1; round <= 5; round++) {
+
+                // Commit a new value
+                final byte[] value = new byte[] { (byte)round };
+                this.tryNtimes(cluster[0], tx -> tx.put(b("73"), value));
+
+                // Concurrent linearizable reads on the followers must all see it, even when they share a leader round trip
+                final CountDownLatch startLatch = new CountDownLatch(1);
+                final ArrayList<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 12; i++) {
+                    final RaftKVDatabase raft = cluster[1 + i % 2];
+                    futures.add(executor.submit(() -> {
+                        startLatch.await();
+                        this.readLinearizable(raft, b("73"), value);
+                        return null;
+                    }));
+                }
+                startLatch.countDown();
+                for (Future<?> future : futures)
+                    future.get();
+            }
+        } finally {
+            executor.shutdown();
+            this.stopCluster(cluster);
+        }
+    }
+
+    private void readLinearizable(RaftKVDatabase raft, byte[] key, byte[] expected) throws InterruptedException {
+        for (int count = 0; true; count++) {
+            final RaftKVTransaction tx = raft.createTransaction(Consistency.LINEARIZABLE);
+            tx.setReadOnly(true);
+            try {
+                final byte[] actual = tx.get(key);
+                tx.commit();                                    // a stale read is only detected at commit time
+                Assert.assertEquals(actual, expected);
+                return;
+            } catch (RetryTransactionException e) {
+                tx.rollback();
+                if (count + 1 >= this.getNumTries())
+                    throw e;
+                this.log.debug("retrying after " + e);
+                Thread.sleep(100 + count * 200);
+            }
+        }
+    }
+
+    private Timestamp getLeaseTimeout(RaftKVDatabase raft) {
+        final Role role = raft.getCurrentRole();
+        return role instanceof LeaderRole ? ((LeaderRole)role).getLeaseTimeout() : null;
+    }
+
+    private RaftKVDatabase[] startCluster(String prefix, int numVoters, int numLearners,
+      Consumer<RaftKVDatabase> configurer) throws Exception {
+        final RaftKVDatabase[] cluster = new RaftKVDatabase[numVoters + numLearners];
+        for (int i = 0; i < cluster.length; i++)
+            cluster[i] = this.startNode(prefix + i, configurer);
+
+        // The first node configures itself as a single node cluster and becomes leader; it then adds the others
+        for (int i = 0; i < cluster.length; i++) {
+            final String node = cluster[i].getIdentity();
+            final boolean learner = i >= numVoters;
+            this.tryNtimes(cluster[0], tx -> ((RaftKVTransaction)tx).configChange(node, node, learner));
+        }
+        return cluster;
+    }
+
+    private RaftKVDatabase startNode(String name, Consumer<RaftKVDatabase> configurer) throws Exception {
+        final File dir = new File(this.topRaftDir, name);
+        final File kvdir = new File(dir, "kvstore");
+        kvdir.mkdirs();
+        final AtomicArrayKVStore arraykv = new AtomicArrayKVStore();
+        arraykv.setDirectory(kvdir);
+        final RaftKVDatabase raft = new RaftKVDatabase();
+        raft.setKVStore(arraykv);
+        raft.setLogDirectory(dir);
+        raft.setNetwork(new TestNetwork(name, 5, 0.0f));
+        raft.setIdentity(name);
+        raft.setMinElectionTimeout(300);
+        raft.setMaxElectionTimeout(350);
+        raft.setHeartbeatTimeout(100);
+        configurer.accept(raft);
+        raft.start();
+        return raft;
+    }
+
+    private void stopCluster(RaftKVDatabase[] cluster) throws Exception {
+        for (RaftKVDatabase raft : cluster) {
+            if (raft != null)
+                raft.stop();
+        }
+        for (RaftKVDatabase raft : cluster) {
+            if (raft == null)
+                continue;
+            final Throwable t = raft.getLastInternalError();
+            if (t != null)
+                throw new Exception("internal error in " + raft, t);
+        }
+    }
+
+    private void waitFor(Callable<Boolean> condition, String message) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (condition.call())
+                return;
+            Thread.sleep(50);
+        }
+        Assert.fail(message);
+    }
+
     private <T> T disruptCluster(Callable<T> test) throws Exception {
         // TODO: randomly add/remove nodes
         return test.call();
@@ -0,0 +1,244 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.raft;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsimpledb.kv.mvcc.Writes;
+import org.jsimpledb.test.TestSupport;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SegmentedLogTest extends TestSupport {
+
+    private static final int HEADER_SIZE = 24;
+    private static final long SEGMENT_SIZE = 1024;
+
+    private File logDir;
+    private File tempDir;
+    private int tempFileCount;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.logDir = this.createTempDirectory();
+        this.tempDir = this.createTempDirectory();
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        this.deleteDirectoryHierarchy(this.logDir);
+        this.deleteDirectoryHierarchy(this.tempDir);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+
+        // Append enough entries to span several segments
+        SegmentedLog log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        Assert.assertTrue(log.load(0).isEmpty());
+        final List<byte[]> contents = new ArrayList<>();
+        for (int index = 1; index <= 40; index++)
+            contents.add(this.content(this.append(log, 1 + index / 10, index)));
+        Assert.assertTrue(this.countSegments() > 1);
+        log.close();
+
+        // Everything is recovered
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        this.verify(log.load(0), 1, contents);
+        log.close();
+
+        // Only unapplied entries are recovered, and fully applied segments are recycled
+        final int numSegments = this.countSegments();
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        this.verify(log.load(25), 26, contents.subList(25, contents.size()));
+        Assert.assertTrue(this.countSegments() < numSegments);
+        Assert.assertTrue(this.countSpares() > 0);
+        log.close();
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        SegmentedLog log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        log.load(0);
+        final List<LogEntry> logEntries = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+        for (int index = 1; index <= 5; index++) {
+            final LogEntry logEntry = this.append(log, 1, index);
+            logEntries.add(logEntry);
+            contents.add(this.content(logEntry));
+        }
+        log.close();
+
+        // Flip a bit in the content of the third entry; recovery stops just before it
+        final LogEntry corrupt = logEntries.get(2);
+        final long position = corrupt.getOffset() + HEADER_SIZE + this.random.nextInt((int)corrupt.getFileSize());
+        try (RandomAccessFile file = new RandomAccessFile(corrupt.getFile(), "rw")) {
+            file.seek(position);
+            final int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x10);
+        }
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        this.verify(log.load(0), 1, contents.subList(0, 2));
+        log.close();
+    }
+
+    @Test
+    public void testTornLastRecord() throws Exception {
+        SegmentedLog log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        log.load(0);
+        final List<byte[]> contents = new ArrayList<>();
+        LogEntry last = null;
+        for (int index = 1; index <= 4; index++) {
+            last = this.append(log, 1, index);
+            contents.add(this.content(last));
+        }
+        log.close();
+
+        // Simulate a torn write by zeroing the tail of the last record
+        final long length = last.getFileSize();
+        final long tornLength = 1 + this.random.nextInt((int)length);
+        try (RandomAccessFile file = new RandomAccessFile(last.getFile(), "rw")) {
+            file.seek(last.getOffset() + HEADER_SIZE + length - tornLength);
+            file.write(new byte[(int)tornLength]);
+        }
+
+        // The torn record is discarded, and appending resumes in its place
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        this.verify(log.load(0), 1, contents.subList(0, 3));
+        contents.set(3, this.content(this.append(log, 2, 4)));
+        contents.add(this.content(this.append(log, 2, 5)));
+        log.close();
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        this.verify(log.load(0), 1, contents);
+        log.close();
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        SegmentedLog log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        log.load(0);
+        final List<LogEntry> logEntries = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+        for (int index = 1; index <= 30; index++) {
+            final LogEntry logEntry = this.append(log, 1, index);
+            logEntries.add(logEntry);
+            contents.add(this.content(logEntry));
+        }
+        final int numSegments = this.countSegments();
+        Assert.assertTrue(numSegments > 2);
+
+        // Truncate from an entry in the first segment; later segments are recycled
+        final long firstSegmentEntries = logEntries.stream()
+          .filter(logEntry -> logEntry.getFile().equals(logEntries.get(0).getFile()))
+          .count();
+        final int truncateIndex = 1 + this.random.nextInt((int)firstSegmentEntries);
+        final LogEntry truncateEntry = logEntries.get(truncateIndex - 1);
+        log.truncate(truncateEntry, false);
+        Assert.assertEquals(this.countSegments(), 1);
+
+        // Truncating again is a no-op
+        log.truncate(logEntries.get(logEntries.size() - 1), false);
+
+        // New entries replace the truncated ones
+        final List<byte[]> expected = new ArrayList<>(contents.subList(0, truncateIndex - 1));
+        for (int index = truncateIndex; index < truncateIndex + 5; index++)
+            expected.add(this.content(this.append(log, 2, index)));
+        log.close();
+        log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        final List<LogEntry> recovered = log.load(0);
+        this.verify(recovered, 1, expected);
+        for (LogEntry logEntry : recovered)
+            Assert.assertEquals(logEntry.getTerm(), logEntry.getIndex() < truncateIndex ? 1 : 2);
+        log.close();
+    }
+
+    @Test
+    public void testSpareRecycling() throws Exception {
+        final SegmentedLog log = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        log.load(0);
+
+        // Append entries and apply them as we go; the number of segment files stays bounded
+        final List<byte[]> contents = new ArrayList<>();
+        int maxFiles = 0;
+        int maxSpares = 0;
+        for (int index = 1; index <= 200; index++) {
+            contents.add(this.content(this.append(log, 1, index)));
+            if (index > 5)
+                log.applied(index - 5);
+            maxSpares = Math.max(maxSpares, this.countSpares());
+            maxFiles = Math.max(maxFiles, this.countSegments() + this.countSpares());
+        }
+        Assert.assertTrue(maxSpares > 0 && maxSpares <= 2, "wrong number of spare segments: " + maxSpares);
+        Assert.assertTrue(maxFiles < 10, "too many segment files: " + maxFiles);
+        log.close();
+
+        // Recycled segments contain stale data from previous use, which must not be recovered
+        final SegmentedLog log2 = new SegmentedLog(this.logDir, null, SEGMENT_SIZE);
+        final List<LogEntry> recovered = log2.load(195);
+        this.verify(recovered, 196, contents.subList(195, contents.size()));
+        log2.close();
+    }
+
+    private LogEntry append(SegmentedLog log, long term, long index) throws IOException {
+        final Writes writes = new Writes();
+        final int numPuts = 1 + this.random.nextInt(10);
+        for (int i = 0; i < numPuts; i++) {
+            final byte[] key = new byte[1 + this.random.nextInt(8)];
+            final byte[] value = new byte[this.random.nextInt(20)];
+            this.random.nextBytes(key);
+            this.random.nextBytes(value);
+            writes.getPuts().put(key, value);
+        }
+        final LogEntry.Data data = new LogEntry.Data(writes, null);
+        final File tempFile = new File(this.tempDir, "entry-" + this.tempFileCount++);
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            LogEntry.writeData(output, data);
+        }
+        final LogEntry logEntry = log.append(term, index, data, tempFile, tempFile.length(), true);
+        Assert.assertEquals(this.toArray(logEntry.getContent()), Files.readAllBytes(tempFile.toPath()));
+        Files.delete(tempFile.toPath());
+        return logEntry;
+    }
+
+    private void verify(List<LogEntry> logEntries, long firstIndex, List<byte[]> contents) throws IOException {
+        Assert.assertEquals(logEntries.size(), contents.size());
+        for (int i = 0; i < logEntries.size(); i++) {
+            final LogEntry logEntry = logEntries.get(i);
+            Assert.assertEquals(logEntry.getIndex(), firstIndex + i);
+            Assert.assertTrue(Arrays.equals(this.toArray(logEntry.getContent()), contents.get(i)),
+              "wrong content for log entry " + logEntry);
+        }
+    }
+
+    private byte[] content(LogEntry logEntry) throws IOException {
+        return this.toArray(logEntry.getContent());
+    }
+
+    private byte[] toArray(ByteBuffer buf) {
+        final byte[] array = new byte[buf.remaining()];
+        buf.duplicate().get(array);
+        return array;
+    }
+
+    private int countSegments() {
+        return this.logDir.list((dir, name) -> SegmentedLog.SEGMENT_FILE_PATTERN.matcher(name).matches()).length;
+    }
+
+    private int countSpares() {
+        return this.logDir.list((dir, name) -> SegmentedLog.SPARE_FILE_PATTERN.matcher(name).matches()).length;
+    }
+}
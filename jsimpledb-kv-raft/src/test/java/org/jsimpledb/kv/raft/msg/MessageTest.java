@@ -9,6 +9,7 @@ import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.kv.mvcc.Reads;
@@ -38,6 +39,72 @@ public class MessageTest extends TestSupport {
         }
     }
 
+    @Test
+    public void testCompressedInstallSnapshot() {
+        final InstallSnapshot msg1 = new InstallSnapshot(123, "adlasdf", "\u1234haha", 234453, 234234, 34545, 787,
+          null, true, true, ByteBuffer.wrap(b("0102030405")));
+        for (int version = 1; version <= Message.getCurrentProtocolVersion(); version++) {
+            if (!InstallSnapshot.isCompressionSupported(version)) {
+                try {
+                    msg1.encode(version);
+                    assert false : "encoded compressed message using version " + version;
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                continue;
+            }
+            final ByteBuffer buf = msg1.encode(version);
+            final InstallSnapshot msg2 = (InstallSnapshot)Message.decode(buf, Message.decodeProtocolVersion(buf));
+            Assert.assertTrue(msg2.isCompressed());
+            Assert.assertTrue(msg2.isLastChunk());
+            Assert.assertEquals(msg2.getData(), msg1.getData());
+        }
+    }
+
+    @Test
+    public void testBatchedAppendRequest() {
+        final Timestamp timestamp = new Timestamp();
+        final AppendRequest msg1 = new AppendRequest(123, "foobar", "Dest", 7, timestamp, null, 102, 5, 100,
+          new long[] { 6, 6, 7 }, new ByteBuffer[] { ByteBuffer.wrap(b("0102")), null, ByteBuffer.wrap(b("0304")) });
+        Assert.assertEquals(msg1.getNumLogEntries(), 3);
+        for (int version = 1; version <= Message.getCurrentProtocolVersion(); version++) {
+            if (!AppendRequest.isBatchingSupported(version)) {
+                try {
+                    msg1.encode(version);
+                    assert false : "encoded batched message using version " + version;
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                continue;
+            }
+            final ByteBuffer buf = msg1.encode(version);
+            final AppendRequest msg2 = (AppendRequest)Message.decode(buf, Message.decodeProtocolVersion(buf));
+            Assert.assertEquals(msg2.getNumLogEntries(), 3);
+            Assert.assertEquals(msg2.encode(version), msg1.encode(version));
+
+            // Verify split
+            final List<AppendRequest> parts = msg2.split();
+            Assert.assertEquals(parts.size(), 3);
+            Assert.assertEquals(parts.get(0).getPrevLogIndex(), 100);
+            Assert.assertEquals(parts.get(0).getPrevLogTerm(), 5);
+            Assert.assertEquals(parts.get(0).getLogEntryTerm(), 6);
+            Assert.assertEquals(parts.get(0).getLeaderCommit(), 101);
+            Assert.assertEquals(parts.get(0).getMutationData(), ByteBuffer.wrap(b("0102")));
+            Assert.assertEquals(parts.get(1).getPrevLogIndex(), 101);
+            Assert.assertEquals(parts.get(1).getPrevLogTerm(), 6);
+            Assert.assertEquals(parts.get(1).getLogEntryTerm(), 6);
+            Assert.assertEquals(parts.get(1).getLeaderCommit(), 102);
+            Assert.assertNull(parts.get(1).getMutationData());
+            Assert.assertEquals(parts.get(2).getPrevLogIndex(), 102);
+            Assert.assertEquals(parts.get(2).getPrevLogTerm(), 6);
+            Assert.assertEquals(parts.get(2).getLogEntryTerm(), 7);
+            Assert.assertEquals(parts.get(2).getLeaderCommit(), 102);
+            Assert.assertEquals(parts.get(2).getMutationData(), ByteBuffer.wrap(b("0304")));
+            for (AppendRequest part : parts)
+                Assert.assertEquals(part.getLeaderTimestamp(), timestamp);
+        }
+    }
+
     @DataProvider(name = "msgs")
     private Object[][] messages() throws Exception {
 
@@ -8,22 +8,33 @@ package org.jsimpledb.kv.rocksdb;
 import com.google.common.base.Preconditions;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.mvcc.AtomicKVStore;
 import org.jsimpledb.kv.mvcc.Mutations;
 import org.jsimpledb.kv.util.ForwardingKVStore;
 import org.jsimpledb.util.ByteUtil;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.EnvOptions;
 import org.rocksdb.InfoLogLevel;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+import org.rocksdb.Statistics;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
@@ -35,19 +46,40 @@ import org.slf4j.LoggerFactory;
  * <p>
  * A {@linkplain #setDirectory database directory} is the only required configuration property.
  * Instances may be stopped and (re)started multiple times.
+ *
+ * <p>
+ * Optionally, a {@linkplain #setPrefixBloomLength prefix bloom filter} may be configured, and RocksDB
+ * {@linkplain #setStatisticsEnabled statistics} may be collected and retrieved via {@link #getStatistics}.
  */
 public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVStore {
 
+    /**
+     * Default number of bloom filter bits per key when a {@linkplain #setPrefixBloomLength prefix bloom filter} is configured.
+     */
+    public static final int DEFAULT_BLOOM_BITS_PER_KEY = 10;
+
+    /**
+     * Approximate number of key and value bytes per SST file written by {@link #bulkLoad bulkLoad()}
+     * ({@value #BULK_LOAD_FILE_SIZE}).
+     */
+    public static final long BULK_LOAD_FILE_SIZE = 256L * 1024 * 1024;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final AtomicBoolean shutdownHookRegistered = new AtomicBoolean();
 
     // Configuration
     private Options options;
     private File directory;
+    private int prefixBloomLength;
+    private int bloomBitsPerKey = DEFAULT_BLOOM_BITS_PER_KEY;
+    private boolean statisticsEnabled;
 
     // "Runtime" state
     private RocksDBKVStore kv;
     private RocksDB db;
+    private Options dbOptions;                                  // copy of this.options with runtime settings applied
+    private BloomFilter bloomFilter;
+    private Statistics statistics;
 
 // Constructors
 
@@ -91,6 +123,124 @@ public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVS
         return this.db;
     }
 
+    /**
+     * Get the key prefix length used for prefix bloom filters.
+     *
+     * @return prefix length, or zero if prefix bloom filters are disabled
+     */
+    public synchronized int getPrefixBloomLength() {
+        return this.prefixBloomLength;
+    }
+
+    /**
+     * Configure a capped prefix extractor and bloom filter so that point lookups for absent keys
+     * can usually be answered without reading any data blocks.
+     *
+     * <p>
+     * JSimpleDB object keys consist of the object's eight byte object ID followed by field-specific suffixes,
+     * so a prefix length of eight groups all of an object's keys under a single prefix. Iterators always use
+     * total order seeks, so range queries spanning multiple prefixes remain correct.
+     *
+     * <p>
+     * When enabled, this replaces any table format configuration in the {@linkplain #setOptions configured options};
+     * this is done on a private copy, so the configured {@link Options} object itself is not modified.
+     * Changing this setting on an existing database only affects newly written table files.
+     *
+     * <p>
+     * Default is zero (disabled).
+     *
+     * @param prefixBloomLength prefix length in bytes, or zero to disable
+     * @throws IllegalArgumentException if {@code prefixBloomLength} is negative
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public synchronized void setPrefixBloomLength(int prefixBloomLength) {
+        Preconditions.checkArgument(prefixBloomLength >= 0, "prefixBloomLength < 0");
+        Preconditions.checkState(this.db == null, "already started");
+        this.prefixBloomLength = prefixBloomLength;
+    }
+
+    /**
+     * Get the number of bloom filter bits per key used when a {@linkplain #setPrefixBloomLength prefix bloom filter} is enabled.
+     *
+     * @return bloom filter bits per key
+     */
+    public synchronized int getBloomBitsPerKey() {
+        return this.bloomBitsPerKey;
+    }
+
+    /**
+     * Configure the number of bloom filter bits per key used when a {@linkplain #setPrefixBloomLength prefix bloom filter}
+     * is enabled.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_BLOOM_BITS_PER_KEY}.
+     *
+     * @param bloomBitsPerKey bloom filter bits per key
+     * @throws IllegalArgumentException if {@code bloomBitsPerKey} is not positive
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public synchronized void setBloomBitsPerKey(int bloomBitsPerKey) {
+        Preconditions.checkArgument(bloomBitsPerKey > 0, "bloomBitsPerKey <= 0");
+        Preconditions.checkState(this.db == null, "already started");
+        this.bloomBitsPerKey = bloomBitsPerKey;
+    }
+
+    /**
+     * Determine whether RocksDB statistics collection is enabled.
+     *
+     * @return true if statistics are collected
+     */
+    public synchronized boolean isStatisticsEnabled() {
+        return this.statisticsEnabled;
+    }
+
+    /**
+     * Configure whether to collect RocksDB statistics, which are then available via {@link #getStatistics}.
+     *
+     * <p>
+     * Statistics collection imposes a small overhead on every operation. Default is false.
+     *
+     * @param statisticsEnabled true to collect statistics
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public synchronized void setStatisticsEnabled(boolean statisticsEnabled) {
+        Preconditions.checkState(this.db == null, "already started");
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    /**
+     * Get the RocksDB statistics being collected by this instance.
+     *
+     * <p>
+     * The returned object is only valid while this instance remains {@link #start}ed.
+     *
+     * @return database statistics, or null if {@linkplain #setStatisticsEnabled statistics collection} is not enabled
+     * @throws IllegalStateException if this instance is not {@link #start}ed
+     */
+    public synchronized Statistics getStatistics() {
+        Preconditions.checkState(this.db != null, "not started");
+        return this.statistics;
+    }
+
+    /**
+     * Get the value of a RocksDB database property, e.g., {@code "rocksdb.stats"}.
+     *
+     * @param name property name
+     * @return property value
+     * @throws IllegalArgumentException if {@code name} is null
+     * @throws IllegalStateException if this instance is not {@link #start}ed
+     * @throws RuntimeException if the property is unknown or RocksDB reports an error
+     */
+    public synchronized String getProperty(String name) {
+        Preconditions.checkArgument(name != null, "null name");
+        Preconditions.checkState(this.db != null, "not started");
+        try {
+            return this.db.getProperty(name);
+        } catch (RocksDBException e) {
+            throw new RuntimeException("error reading RocksDB property `" + name + "'", e);
+        }
+    }
+
 // Options
 
     /**
@@ -167,12 +317,29 @@ public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVS
         if (!this.directory.isDirectory())
             throw new RuntimeException("file `" + this.directory + "' is not a directory");
 
+        // Apply our settings to a copy of the configured options, so they don't leak into the caller's object
+        this.dbOptions = new Options(this.options);
+
+        // Configure prefix bloom filter
+        if (this.prefixBloomLength > 0) {
+            this.bloomFilter = new BloomFilter(this.bloomBitsPerKey, false);
+            this.dbOptions.useCappedPrefixExtractor(this.prefixBloomLength);
+            this.dbOptions.setTableFormatConfig(new BlockBasedTableConfig().setFilter(this.bloomFilter));
+        }
+
+        // Configure statistics
+        if (this.statisticsEnabled) {
+            this.statistics = new Statistics();
+            this.dbOptions.setStatistics(this.statistics);
+        }
+
         // Open database
         if (this.log.isDebugEnabled())
             this.log.debug("opening " + this + " RocksDB database");
         try {
-            this.db = RocksDB.open(this.options, this.directory.toString());
+            this.db = RocksDB.open(this.dbOptions, this.directory.toString());
         } catch (RocksDBException e) {
+            this.closeNativeConfig();
             throw new RuntimeException("RocksDB database startup failed", e);
         }
 
@@ -212,6 +379,25 @@ public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVS
             this.log.error("caught exception closing database during shutdown (ignoring)", e);
         }
         this.db = null;
+
+        // Release native configuration objects
+        this.closeNativeConfig();
+    }
+
+    private void closeNativeConfig() {
+        assert Thread.holdsLock(this);
+        if (this.dbOptions != null) {
+            this.dbOptions.close();
+            this.dbOptions = null;
+        }
+        if (this.statistics != null) {
+            this.statistics.close();
+            this.statistics = null;
+        }
+        if (this.bloomFilter != null) {
+            this.bloomFilter.close();
+            this.bloomFilter = null;
+        }
     }
 
 // ForwardingKVStore
@@ -244,11 +430,11 @@ public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVS
                     final byte[] min = range.getMin();
                     final byte[] max = range.getMax();
                     if (min != null && max != null && ByteUtil.isConsecutive(min, max))
-                        batch.remove(min);
+                        batch.delete(min);
                     else {
                         try (RocksDBKVStore.Iterator i = this.kv.createIterator(iteratorOptions, min, max, false)) {
                             while (i.hasNext())
-                                batch.remove(i.next().getKey());
+                                batch.delete(i.next().getKey());
                         }
                     }
                 }
@@ -271,6 +457,83 @@ public class RocksDBAtomicKVStore extends ForwardingKVStore implements AtomicKVS
         }
     }
 
+    /**
+     * Load a sorted stream of key/value pairs into this instance.
+     *
+     * <p>
+     * The implementation in {@link RocksDBAtomicKVStore} writes the key/value pairs directly into one or more SST files,
+     * each containing approximately {@link #BULK_LOAD_FILE_SIZE} bytes of key and value data, in a temporary subdirectory
+     * of the database directory, and then ingests them via {@link RocksDB#ingestExternalFile RocksDB.ingestExternalFile()}.
+     * This bypasses the write-ahead log and memtables entirely. Ingested files are durably persisted before returning.
+     *
+     * @param pairs key/value pairs in strictly increasing key order
+     * @return the number of key/value pairs loaded
+     * @throws IllegalArgumentException if {@code pairs} is null
+     * @throws IllegalArgumentException if the keys in {@code pairs} are not strictly increasing
+     * @throws IllegalStateException if this instance is not started
+     */
+    @Override
+    public synchronized long bulkLoad(Iterator<KVPair> pairs) {
+        Preconditions.checkArgument(pairs != null, "null pairs");
+        Preconditions.checkState(this.db != null, "closed");
+        long count = 0;
+        File tempDir = null;
+        try {
+            tempDir = Files.createTempDirectory(this.directory.toPath(), "bulkload").toFile();
+            final ArrayList<String> sstFiles = new ArrayList<>();
+
+            // Write key/value pairs into SST files
+            try (final EnvOptions envOptions = new EnvOptions()) {
+                byte[] prev = null;
+                while (pairs.hasNext()) {
+                    final File sstFile = new File(tempDir, String.format("bulkload-%05d.sst", sstFiles.size()));
+                    try (final SstFileWriter writer = new SstFileWriter(envOptions, this.dbOptions)) {
+                        writer.open(sstFile.toString());
+                        long fileSize = 0;
+                        while (fileSize < BULK_LOAD_FILE_SIZE && pairs.hasNext()) {
+                            final KVPair pair = pairs.next();
+                            final byte[] key = pair.getKey();
+                            final byte[] value = pair.getValue();
+                            Preconditions.checkArgument(prev == null || ByteUtil.compare(key, prev) > 0, "key <= previous key");
+                            writer.put(key, value);
+                            fileSize += key.length + value.length;
+                            prev = key;
+                            count++;
+                        }
+                        writer.finish();
+                    }
+                    sstFiles.add(sstFile.toString());
+                }
+            }
+
+            // Ingest them
+            if (!sstFiles.isEmpty()) {
+                try (final IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+                    ingestOptions.setMoveFiles(true);
+                    this.db.ingestExternalFile(sstFiles, ingestOptions);
+                }
+            }
+        } catch (IOException | RocksDBException e) {
+            throw new RuntimeException("error bulk loading into RocksDB", e);
+        } finally {
+            if (tempDir != null)
+                this.deleteTempDirectory(tempDir);
+        }
+        return count;
+    }
+
+    private void deleteTempDirectory(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete())
+                    this.log.warn("failed to delete " + file);
+            }
+        }
+        if (!dir.delete())
+            this.log.warn("failed to delete " + dir);
+    }
+
 // Object
 
     /**
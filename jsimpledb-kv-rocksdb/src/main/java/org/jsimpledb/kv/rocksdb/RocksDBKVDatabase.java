@@ -7,6 +7,7 @@ package org.jsimpledb.kv.rocksdb;
 
 import org.jsimpledb.kv.mvcc.MutableView;
 import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.rocksdb.Statistics;
 
 /**
  * {@link org.jsimpledb.kv.KVDatabase} implementation based on a {@link RocksDBAtomicKVStore}, providing concurrent transactions
@@ -29,6 +30,33 @@ public class RocksDBKVDatabase extends SnapshotKVDatabase {
         super.setKVStore(kvstore);
     }
 
+// Statistics
+
+    /**
+     * Get the RocksDB statistics being collected by the underlying {@link RocksDBAtomicKVStore}.
+     *
+     * @return database statistics, or null if {@linkplain RocksDBAtomicKVStore#setStatisticsEnabled statistics collection}
+     *  is not enabled
+     * @throws IllegalStateException if this instance is not {@link #start}ed
+     * @see RocksDBAtomicKVStore#getStatistics
+     */
+    public Statistics getStatistics() {
+        return ((RocksDBAtomicKVStore)this.getKVStore()).getStatistics();
+    }
+
+    /**
+     * Get the value of a RocksDB database property, e.g., {@code "rocksdb.stats"}.
+     *
+     * @param name property name
+     * @return property value
+     * @throws IllegalArgumentException if {@code name} is null
+     * @throws IllegalStateException if this instance is not {@link #start}ed
+     * @see RocksDBAtomicKVStore#getProperty
+     */
+    public String getProperty(String name) {
+        return ((RocksDBAtomicKVStore)this.getKVStore()).getProperty(name);
+    }
+
 // KVDatabase
 
     @Override
@@ -18,13 +18,31 @@ public class RocksDBKVImplementation extends KVImplementation {
     public String[][] getCommandLineOptions() {
         return new String[][] {
             { "--rocksdb directory", "Use RocksDB key/value database in the specified directory" },
+            { "--rocksdb-prefix-bloom length", "Enable RocksDB prefix bloom filters using the given key prefix length" },
+            { "--rocksdb-statistics", "Enable RocksDB statistics collection" },
         };
     }
 
     @Override
-    public File parseCommandLineOptions(ArrayDeque<String> options) {
-        final String arg = this.parseCommandLineOption(options, "--rocksdb");
-        return arg != null ? new File(arg) : null;
+    public Config parseCommandLineOptions(ArrayDeque<String> options) {
+        final String dir = this.parseCommandLineOption(options, "--rocksdb");
+        if (dir == null)
+            return null;
+        final Config config = new Config(new File(dir));
+        final String length = this.parseCommandLineOption(options, "--rocksdb-prefix-bloom");
+        if (length != null) {
+            try {
+                final int value = Integer.parseInt(length, 10);
+                if (value <= 0)
+                    throw new NumberFormatException("value must be positive");
+                config.setPrefixBloomLength(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid prefix length `" + length + "' for `--rocksdb-prefix-bloom': "
+                  + e.getMessage(), e);
+            }
+        }
+        config.setStatisticsEnabled(this.parseCommandLineFlag(options, "--rocksdb-statistics"));
+        return config;
     }
 
     @Override
@@ -36,13 +54,51 @@ public class RocksDBKVImplementation extends KVImplementation {
 
     @Override
     public RocksDBAtomicKVStore createAtomicKVStore(Object configuration) {
+        final Config config = (Config)configuration;
         final RocksDBAtomicKVStore kvstore = new RocksDBAtomicKVStore();
-        kvstore.setDirectory((File)configuration);
+        kvstore.setDirectory(config.getDirectory());
+        kvstore.setPrefixBloomLength(config.getPrefixBloomLength());
+        kvstore.setStatisticsEnabled(config.isStatisticsEnabled());
         return kvstore;
     }
 
     @Override
     public String getDescription(Object configuration) {
-        return "RocksDB " + ((File)configuration).getName();
+        return "RocksDB " + ((Config)configuration).getDirectory().getName();
+    }
+
+// Config
+
+    private static class Config {
+
+        private File dir;
+        private int prefixBloomLength;
+        private boolean statisticsEnabled;
+
+        Config(File dir) {
+            if (dir == null)
+                throw new IllegalArgumentException("null dir");
+            this.dir = dir;
+        }
+
+        public File getDirectory() {
+            return this.dir;
+        }
+
+        public int getPrefixBloomLength() {
+            return this.prefixBloomLength;
+        }
+
+        public void setPrefixBloomLength(int prefixBloomLength) {
+            this.prefixBloomLength = prefixBloomLength;
+        }
+
+        public boolean isStatisticsEnabled() {
+            return this.statisticsEnabled;
+        }
+
+        public void setStatisticsEnabled(boolean statisticsEnabled) {
+            this.statisticsEnabled = statisticsEnabled;
+        }
     }
 }
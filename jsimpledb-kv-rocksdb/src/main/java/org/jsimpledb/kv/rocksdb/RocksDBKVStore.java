@@ -20,6 +20,7 @@ import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
 import org.rocksdb.WriteBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,11 @@ import org.slf4j.LoggerFactory;
  * Straightforward {@link org.jsimpledb.kv.KVStore} view of a RocksDB database.
  *
  * <p>
+ * Iterators returned by {@link #getRange getRange()} are given RocksDB iterate lower and upper bounds corresponding to the
+ * requested range, so RocksDB itself stops at the range boundaries instead of reading (and discarding) keys beyond them.
+ * The native resources associated with an iterator are released as soon as the iterator is exhausted or closed.
+ *
+ * <p>
  * Instances must be {@link #close}'d when no longer needed to avoid leaking resources associated with iterators.
  */
 public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore {
@@ -119,18 +125,18 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         value.getClass();
         Preconditions.checkState(!this.closed, "closed");
         this.cursorTracker.poll();
-        if (this.writeBatch != null) {
-            assert RocksDBUtil.isInitialized(this.writeBatch);
-            synchronized (this.writeBatch) {
-                this.writeBatch.put(key, value);
-            }
-        } else {
-            assert RocksDBUtil.isInitialized(this.db);
-            try {
+        try {
+            if (this.writeBatch != null) {
+                assert RocksDBUtil.isInitialized(this.writeBatch);
+                synchronized (this.writeBatch) {
+                    this.writeBatch.put(key, value);
+                }
+            } else {
+                assert RocksDBUtil.isInitialized(this.db);
                 this.db.put(key, value);
-            } catch (RocksDBException e) {
-                throw new RuntimeException("RocksDB error", e);
             }
+        } catch (RocksDBException e) {
+            throw new RuntimeException("RocksDB error", e);
         }
     }
 
@@ -139,18 +145,18 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         key.getClass();
         Preconditions.checkState(!this.closed, "closed");
         this.cursorTracker.poll();
-        if (this.writeBatch != null) {
-            assert RocksDBUtil.isInitialized(this.writeBatch);
-            synchronized (this.writeBatch) {
-                this.writeBatch.remove(key);
-            }
-        } else {
-            assert RocksDBUtil.isInitialized(this.db);
-            try {
-                this.db.remove(key);
-            } catch (RocksDBException e) {
-                throw new RuntimeException("RocksDB error", e);
+        try {
+            if (this.writeBatch != null) {
+                assert RocksDBUtil.isInitialized(this.writeBatch);
+                synchronized (this.writeBatch) {
+                    this.writeBatch.delete(key);
+                }
+            } else {
+                assert RocksDBUtil.isInitialized(this.db);
+                this.db.delete(key);
             }
+        } catch (RocksDBException e) {
+            throw new RuntimeException("RocksDB error", e);
         }
     }
 
@@ -190,18 +196,18 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         Preconditions.checkState(!this.closed, "closed");
         this.cursorTracker.poll();
         final byte[] value = this.encodeCounter(amount);
-        if (this.writeBatch != null) {
-            assert RocksDBUtil.isInitialized(this.writeBatch);
-            synchronized (this.writeBatch) {
-                this.writeBatch.merge(key, value);
-            }
-        } else {
-            assert RocksDBUtil.isInitialized(this.db);
-            try {
+        try {
+            if (this.writeBatch != null) {
+                assert RocksDBUtil.isInitialized(this.writeBatch);
+                synchronized (this.writeBatch) {
+                    this.writeBatch.merge(key, value);
+                }
+            } else {
+                assert RocksDBUtil.isInitialized(this.db);
                 this.db.merge(key, value);
-            } catch (RocksDBException e) {
-                throw new RuntimeException("RocksDB error", e);
             }
+        } catch (RocksDBException e) {
+            throw new RuntimeException("RocksDB error", e);
         }
     }
 
@@ -254,16 +260,32 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
 // Iterator
 
     Iterator createIterator(ReadOptions readOptions, byte[] minKey, byte[] maxKey, boolean reverse) {
+        Preconditions.checkArgument(minKey == null || maxKey == null || ByteUtil.compare(minKey, maxKey) <= 0, "minKey > maxKey");
         Preconditions.checkState(!this.closed, "closed");
         this.cursorTracker.poll();
         assert RocksDBUtil.isInitialized(this.db);
         assert RocksDBUtil.isInitialized(readOptions);
-        assert readOptions.snapshot() == null || RocksDBUtil.isInitialized(readOptions.snapshot());
-        return new Iterator(this.db.newIterator(readOptions), minKey, maxKey, reverse);
+
+        // Create per-iterator read options that bound the native iterator to the requested range; we must always
+        // use total order seek because a prefix extractor may be configured and our range can span multiple prefixes.
+        // RocksJava only supports an upper bound; the initial seek() takes care of the lower bound for forward iteration.
+        final Slice upperBound = maxKey != null ? new Slice(maxKey) : null;
+        final ReadOptions iteratorOptions = new ReadOptions()
+          .setSnapshot(readOptions.snapshot())
+          .setFillCache(readOptions.fillCache())
+          .setVerifyChecksums(readOptions.verifyChecksums())
+          .setTotalOrderSeek(true);
+        if (upperBound != null)
+            iteratorOptions.setIterateUpperBound(upperBound);
+
+        // Create iterator
+        return new Iterator(new CursorCloser(this.db.newIterator(iteratorOptions), iteratorOptions, upperBound),
+          minKey, maxKey, reverse);
     }
 
     final class Iterator implements CloseableIterator<KVPair> {
 
+        private final CursorCloser closer;
         private final RocksIterator cursor;
         private final byte[] minKey;
         private final byte[] maxKey;
@@ -274,18 +296,15 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         private boolean finished;
         private boolean closed;
 
-        private Iterator(final RocksIterator cursor, byte[] minKey, byte[] maxKey, boolean reverse) {
+        private Iterator(CursorCloser closer, byte[] minKey, byte[] maxKey, boolean reverse) {
 
             // Make sure we eventually close the cursor
-            RocksDBKVStore.this.cursorTracker.add(this, new CursorCloser(cursor));
-
-            // Sanity checks
-            Preconditions.checkArgument(minKey == null || maxKey == null || ByteUtil.compare(minKey, maxKey) <= 0,
-              "minKey > maxKey");
+            RocksDBKVStore.this.cursorTracker.add(this, closer);
 
             // Initialize
-            assert RocksDBUtil.isInitialized(cursor);
-            this.cursor = cursor;
+            assert RocksDBUtil.isInitialized(closer.cursor);
+            this.closer = closer;
+            this.cursor = closer.cursor;
             this.minKey = minKey;
             this.maxKey = maxKey;
             this.reverse = reverse;
@@ -336,7 +355,7 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
             }
             assert !this.cursor.isValid() || (this.reverse ?
               maxKey == null || ByteUtil.compare(this.cursor.key(), maxKey) < 0 :
-              minKey != null && ByteUtil.compare(this.cursor.key(), minKey) >= 0) :
+              minKey == null || ByteUtil.compare(this.cursor.key(), minKey) >= 0) :
               "first key " + ByteUtil.toString(this.cursor.key())
               + (reverse ? " >= " + ByteUtil.toString(maxKey) + " max key" : " < " + ByteUtil.toString(minKey) + " min key");
 
@@ -411,7 +430,7 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
             // Have we run off the end?
             assert RocksDBUtil.isInitialized(this.cursor);
             if (!this.cursor.isValid()) {
-                this.finished = true;
+                this.finish();
                 return false;
             }
 
@@ -427,7 +446,7 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
               (this.maxKey != null && ByteUtil.compare(key, this.maxKey) >= 0)) {
                 if (RocksDBKVStore.this.log.isTraceEnabled())
                     RocksDBKVStore.this.log.trace("stop at bound " + ByteUtil.toString(this.reverse ? this.minKey : this.maxKey));
-                this.finished = true;
+                this.finish();
                 return false;
             }
 
@@ -436,6 +455,12 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
             return true;
         }
 
+        // Release native resources as soon as we know we no longer need them
+        private void finish() {
+            this.finished = true;
+            this.closer.close();
+        }
+
     // Closeable
 
         @Override
@@ -445,7 +470,7 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
             this.closed = true;
             if (RocksDBKVStore.this.log.isTraceEnabled())
                 RocksDBKVStore.this.log.trace("closing " + this);
-            new CursorCloser(this.cursor).close();
+            this.closer.close();
         }
 
     // Object
@@ -462,27 +487,41 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
 
 // CursorCloser
 
-    // This needs to be a static class so it doesn't have a strong reference to the Iterator that created it
+    // This needs to be a static class so it doesn't have a strong reference to the Iterator that created it.
+    // It owns the native iterator plus the read options and bound slice, which must outlive the iterator.
     private static class CursorCloser implements Closeable {
 
-        private final RocksIterator cursor;
+        final RocksIterator cursor;
+        private final ReadOptions readOptions;
+        private final Slice upperBound;
+
+        private boolean closed;
 
-        CursorCloser(RocksIterator cursor) {
+        CursorCloser(RocksIterator cursor, ReadOptions readOptions, Slice upperBound) {
             this.cursor = cursor;
+            this.readOptions = readOptions;
+            this.upperBound = upperBound;
         }
 
         @Override
-        public void close() {
+        public synchronized void close() {
 
             // RocksDB objects implement AutoCloseable, not Closeable, so we have to close them exactly once
-            synchronized (this.cursor) {
-                if (RocksDBUtil.isInitialized(this.cursor)) {
-                    try {
-                        this.cursor.close();
-                    } catch (Throwable e) {
-                        LoggerFactory.getLogger(this.getClass()).debug("caught exception closing db iterator (ignoring)", e);
-                    }
-                }
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.close(this.cursor);
+            this.close(this.readOptions);
+            this.close(this.upperBound);
+        }
+
+        private void close(AutoCloseable obj) {
+            if (obj == null)
+                return;
+            try {
+                obj.close();
+            } catch (Throwable e) {
+                LoggerFactory.getLogger(this.getClass()).debug("caught exception closing " + obj + " (ignoring)", e);
             }
         }
     }
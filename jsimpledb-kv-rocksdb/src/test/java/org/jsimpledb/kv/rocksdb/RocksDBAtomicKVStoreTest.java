@@ -0,0 +1,20 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.rocksdb;
+
+import java.io.File;
+
+import org.jsimpledb.kv.test.AtomicKVStoreTest;
+
+public class RocksDBAtomicKVStoreTest extends AtomicKVStoreTest {
+
+    @Override
+    protected RocksDBAtomicKVStore createAtomicKVStore(File dir) throws Exception {
+        final RocksDBAtomicKVStore kvstore = new RocksDBAtomicKVStore();
+        kvstore.setDirectory(dir);
+        return kvstore;
+    }
+}
@@ -7,28 +7,37 @@ package org.jsimpledb.kv.rocksdb;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.test.KVDatabaseTest;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.CloseableIterator;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.Options;
+import org.rocksdb.TickerType;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
 
 public class RocksDBKVDatabaseTest extends KVDatabaseTest {
 
     private RocksDBKVDatabase rocksdbKV;
+    private String rocksDBDirPrefix;
 
     @BeforeClass(groups = "configure")
     @Parameters("rocksDbDirPrefix")
     public void setRocksDBDirPrefix(@Optional String rocksDBDirPrefix) throws IOException {
+        this.rocksDBDirPrefix = rocksDBDirPrefix;
         if (rocksDBDirPrefix != null) {
-            final File dir = File.createTempFile(rocksDBDirPrefix, null);
-            Assert.assertTrue(dir.delete());
-            Assert.assertTrue(dir.mkdirs());
-            dir.deleteOnExit();
             final RocksDBAtomicKVStore kvstore = new RocksDBAtomicKVStore();
-            kvstore.setDirectory(dir);
+            kvstore.setDirectory(this.createRocksDBDirectory());
             this.rocksdbKV = new RocksDBKVDatabase();
             this.rocksdbKV.setKVStore(kvstore);
         }
@@ -38,5 +47,90 @@ public class RocksDBKVDatabaseTest extends KVDatabaseTest {
     protected KVDatabase getKVDatabase() {
         return this.rocksdbKV;
     }
+
+    @Test
+    public void testPrefixBloomAndStatistics() throws Exception {
+        if (this.rocksDBDirPrefix == null)
+            return;
+        final Options options = new Options().setCreateIfMissing(true);
+        final RocksDBAtomicKVStore kvstore = new RocksDBAtomicKVStore();
+        kvstore.setDirectory(this.createRocksDBDirectory());
+        kvstore.setOptions(options);
+        kvstore.setPrefixBloomLength(8);
+        kvstore.setStatisticsEnabled(true);
+
+        // Populate several eight byte prefixes, with keys both shorter and longer than the prefix, and flush to table files
+        final ArrayList<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final byte[] prefix = new byte[8];
+            prefix[0] = (byte)(0x10 + i * 8);
+            keys.add(Arrays.copyOf(prefix, 1 + this.random.nextInt(7)));
+            for (int j = 0; j < 5; j++) {
+                final byte[] key = Arrays.copyOf(prefix, 9);
+                key[8] = (byte)(j * 3);
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys, ByteUtil.COMPARATOR);
+        kvstore.start();
+        try {
+            for (byte[] key : keys)
+                kvstore.put(key, key);
+            kvstore.getDB().flush(new FlushOptions().setWaitForFlush(true));
+
+            // Bounded iterators must see exactly the keys in range, regardless of how many prefixes the range spans
+            for (int i = 0; i < 200; i++) {
+                final int minIndex = this.random.nextInt(keys.size());
+                final int maxIndex = minIndex + this.random.nextInt(keys.size() - minIndex + 1);
+                final byte[] minKey = minIndex > 0 || this.random.nextBoolean() ? keys.get(minIndex) : null;
+                final byte[] maxKey = maxIndex < keys.size() ? keys.get(maxIndex) : null;
+                final List<byte[]> expected = keys.subList(minIndex, maxIndex);
+                final boolean reverse = this.random.nextBoolean();
+                final ArrayList<byte[]> actual = new ArrayList<>();
+                try (CloseableIterator<KVPair> iter = kvstore.getRange(minKey, maxKey, reverse)) {
+                    while (iter.hasNext())
+                        actual.add(iter.next().getKey());
+                }
+                if (reverse)
+                    Collections.reverse(actual);
+                Assert.assertEquals(actual.size(), expected.size(), "wrong count for range " + minIndex + "-" + maxIndex);
+                for (int j = 0; j < actual.size(); j++)
+                    Assert.assertEquals(actual.get(j), expected.get(j));
+            }
+
+            // Point lookups for keys with absent prefixes are answered by the bloom filter
+            for (int i = 0; i < 100; i++) {
+                final byte[] key = new byte[] { (byte)(0x11 + i % 20 * 8), 0, 0, 0, 0, 0, 0, 0, (byte)i };
+                Assert.assertNull(kvstore.get(key));
+            }
+            Assert.assertNotNull(kvstore.getStatistics());
+            Assert.assertTrue(kvstore.getStatistics().getTickerCount(TickerType.NUMBER_KEYS_WRITTEN) >= keys.size());
+            Assert.assertTrue(kvstore.getStatistics().getTickerCount(TickerType.BLOOM_FILTER_USEFUL) > 0);
+            Assert.assertNotNull(kvstore.getProperty("rocksdb.stats"));
+        } finally {
+            kvstore.stop();
+        }
+
+        // The caller's options must not have been modified
+        Assert.assertNull(options.statistics());
+
+        // Restart without statistics, reusing the same options
+        kvstore.setStatisticsEnabled(false);
+        kvstore.start();
+        try {
+            Assert.assertNull(kvstore.getStatistics());
+            Assert.assertEquals(kvstore.get(keys.get(0)), keys.get(0));
+        } finally {
+            kvstore.stop();
+        }
+    }
+
+    private File createRocksDBDirectory() throws IOException {
+        final File dir = File.createTempFile(this.rocksDBDirPrefix, null);
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        return dir;
+    }
 }
 
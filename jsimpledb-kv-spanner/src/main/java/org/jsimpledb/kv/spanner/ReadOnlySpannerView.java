@@ -17,9 +17,11 @@ import com.google.cloud.spanner.Statement;
 import com.google.cloud.spanner.Struct;
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.function.Function;
 
 import org.jsimpledb.kv.AbstractKVStore;
@@ -94,6 +96,43 @@ public class ReadOnlySpannerView extends AbstractKVStore implements CloseableKVS
         }
     }
 
+    /**
+     * Get the values associated with multiple keys.
+     *
+     * <p>
+     * This implementation reads all of the keys in a single Spanner read operation.
+     */
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<byte[]> keyList = new ArrayList<>();
+        final KeySet.Builder keySet = KeySet.newBuilder();
+        for (byte[] key : keys) {
+            Preconditions.checkArgument(key != null, "null key");
+            keyList.add(key);
+            keySet.addKey(Key.of(ByteArray.copyFrom(key)));
+        }
+        final TreeMap<byte[], byte[]> found = new TreeMap<>(ByteUtil.COMPARATOR);
+        if (!keyList.isEmpty()) {
+            try (ResultSet resultSet = this.context.read(this.tableName, keySet.build(), KV_COL)) {
+                while (resultSet.next()) {
+                    final KVPair kv = ReadOnlySpannerView.kv(resultSet.getCurrentRowAsStruct());
+                    found.put(kv.getKey(), kv.getValue());
+                }
+            } catch (SpannerException e) {
+                throw this.exceptionMapper != null ? this.exceptionMapper.apply(e) : e;
+            }
+        }
+        final ArrayList<byte[]> values = new ArrayList<>(keyList.size());
+        for (byte[] key : keyList) {
+            final byte[] value = found.get(key);
+            values.add(value != null ? value.clone() : null);
+        }
+        if (this.log.isTraceEnabled())
+            this.log.trace("spanner: getMulti(): {} keys -> {} found", keyList.size(), found.size());
+        return values;
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         if (this.log.isTraceEnabled()) {
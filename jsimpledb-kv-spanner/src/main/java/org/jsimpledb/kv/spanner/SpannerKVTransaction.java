@@ -16,6 +16,7 @@ import com.google.cloud.spanner.TransactionContext;
 import com.google.cloud.spanner.TransactionRunner;
 import com.google.common.base.Preconditions;
 
+import java.util.List;
 import java.util.concurrent.Future;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -307,6 +308,16 @@ public class SpannerKVTransaction extends ForwardingKVStore implements KVTransac
         }
     }
 
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        try {
+            return super.getMulti(keys);
+        } catch (SpannerException e) {
+            this.rollback();
+            throw this.wrapException(e);
+        }
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         try {
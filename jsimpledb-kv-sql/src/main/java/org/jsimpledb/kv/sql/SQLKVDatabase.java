@@ -80,6 +80,8 @@ public class SQLKVDatabase implements KVDatabase {
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     volatile boolean rollbackForReadOnly = true;
+    volatile boolean batchWrites;
+    volatile boolean cacheStatements;
 
     /**
      * Get the {@link DataSource} used with this instance.
@@ -224,6 +226,63 @@ public class SQLKVDatabase implements KVDatabase {
         this.rollbackForReadOnly = rollbackForReadOnly;
     }
 
+    /**
+     * Get whether to buffer writes and apply them to the database in batches.
+     *
+     * <p>
+     * If true, each transaction's {@link SQLKVTransaction#put put()}, {@link SQLKVTransaction#remove remove()}, and
+     * {@link SQLKVTransaction#removeRange removeRange()} mutations are recorded in memory instead of being immediately
+     * sent to the database. The recorded mutations are then applied using JDBC batch updates, either at commit time
+     * or just prior to any read that would observe them. This can greatly reduce the number of database round-trips,
+     * at the cost of deferring any errors (e.g., constraint violations or lock timeouts) resulting from those mutations.
+     *
+     * <p>
+     * Default value is false.
+     *
+     * @return whether to batch writes
+     */
+    public boolean isBatchWrites() {
+        return this.batchWrites;
+    }
+
+    /**
+     * Configure whether to buffer writes and apply them to the database in batches.
+     *
+     * @param batchWrites true to buffer writes and apply them in batches
+     * @see #isBatchWrites
+     */
+    public void setBatchWrites(boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    /**
+     * Get whether to cache prepared statements.
+     *
+     * <p>
+     * If true, each transaction caches the {@link java.sql.PreparedStatement}s it creates and reuses them for
+     * subsequent queries and updates of the same type on the same {@link Connection}, instead of preparing and closing
+     * a new statement each time. Cached statements are closed when the transaction's {@link Connection} is closed.
+     * Statements whose result sets are being iterated are never shared.
+     *
+     * <p>
+     * Default value is false.
+     *
+     * @return whether to cache prepared statements
+     */
+    public boolean isCacheStatements() {
+        return this.cacheStatements;
+    }
+
+    /**
+     * Configure whether to cache prepared statements.
+     *
+     * @param cacheStatements true to cache prepared statements
+     * @see #isCacheStatements
+     */
+    public void setCacheStatements(boolean cacheStatements) {
+        this.cacheStatements = cacheStatements;
+    }
+
     @Override
     @PostConstruct
     public void start() {
@@ -455,6 +514,25 @@ public class SQLKVDatabase implements KVDatabase {
           + this.quote(this.tableName) + " WHERE " + this.quote(this.keyColumnName) + " = ?";
     }
 
+    /**
+     * Create an SQL statement that reads the key and value columns (in that order) associated with each of the
+     * keys <code>&#63;1</code> through <code>&#63;</code><i>count</i>, in any order. Keys having no value are omitted.
+     *
+     * @param count number of keys
+     * @return SQL query statement
+     * @throws IllegalArgumentException if {@code count} is not positive
+     */
+    public String createGetMultiStatement(int count) {
+        Preconditions.checkArgument(count > 0, "count <= 0");
+        final StringBuilder buf = new StringBuilder();
+        buf.append("SELECT ").append(this.quote(this.keyColumnName)).append(", ").append(this.quote(this.valueColumnName))
+          .append(" FROM ").append(this.quote(this.tableName)).append(" WHERE ").append(this.quote(this.keyColumnName))
+          .append(" IN (");
+        for (int i = 0; i < count; i++)
+            buf.append(i > 0 ? ", ?" : "?");
+        return buf.append(")").toString();
+    }
+
     /**
      * Create an SQL statement that reads the key and value columns (in that order) associated
      * with the smallest key greater than or equal to <code>&#63;1</code>, if any.
@@ -11,7 +11,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 
 import org.jsimpledb.kv.AbstractKVStore;
@@ -20,8 +26,10 @@ import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KVTransaction;
 import org.jsimpledb.kv.KVTransactionException;
+import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.StaleTransactionException;
 import org.jsimpledb.kv.mvcc.MutableView;
+import org.jsimpledb.kv.mvcc.Writes;
 import org.jsimpledb.kv.util.ForwardingKVStore;
 import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.CloseableIterator;
@@ -30,9 +38,18 @@ import org.slf4j.LoggerFactory;
 
 /**
  * {@link SQLKVDatabase} transaction.
+ *
+ * <p>
+ * If the associated database is configured to {@linkplain SQLKVDatabase#setBatchWrites batch writes}, mutations are
+ * recorded in a {@link Writes} instance and applied using JDBC batch updates, either on {@link #commit} or just prior
+ * to any read that overlaps them. If the associated database is configured to
+ * {@linkplain SQLKVDatabase#setCacheStatements cache statements}, {@link PreparedStatement}s are reused for the lifetime
+ * of the transaction's {@link Connection}.
  */
 public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction {
 
+    private static final int MAX_GET_MULTI_KEYS = 100;                      // max keys per multi-key query
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     protected final SQLKVDatabase database;
@@ -45,6 +62,9 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
     private boolean closed;
     private boolean stale;
 
+    private final Writes pendingWrites;                                     // null unless batching writes
+    private final EnumMap<StmtType, PreparedStatement> statementCache;      // null unless caching statements
+
     /**
      * Constructor.
      *
@@ -57,6 +77,8 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         Preconditions.checkArgument(connection != null, "null connection");
         this.database = database;
         this.connection = connection;
+        this.pendingWrites = database.batchWrites ? new Writes() : null;
+        this.statementCache = database.cacheStatements ? new EnumMap<>(StmtType.class) : null;
     }
 
     @Override
@@ -94,12 +116,35 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         if (this.stale)
             throw new StaleTransactionException(this);
         Preconditions.checkArgument(key != null, "null key");
+        this.flushWritesIfOverlap(key, ByteUtil.getNextKey(key));
         return this.queryBytes(StmtType.GET, this.encodeKey(key));
     }
 
+    private synchronized List<byte[]> getMultiSQL(Iterable<byte[]> keys) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<byte[]> keyList = new ArrayList<>();
+        for (byte[] key : keys) {
+            Preconditions.checkArgument(key != null, "null key");
+            this.flushWritesIfOverlap(key, ByteUtil.getNextKey(key));
+            keyList.add(key);
+        }
+        final TreeMap<byte[], byte[]> found = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int start = 0; start < keyList.size(); start += MAX_GET_MULTI_KEYS)
+            this.queryMulti(keyList.subList(start, Math.min(start + MAX_GET_MULTI_KEYS, keyList.size())), found);
+        final ArrayList<byte[]> values = new ArrayList<>(keyList.size());
+        for (byte[] key : keyList) {
+            final byte[] value = found.get(key);
+            values.add(value != null ? value.clone() : null);
+        }
+        return values;
+    }
+
     private synchronized KVPair getAtLeastSQL(byte[] minKey, byte[] maxKey) {
         if (this.stale)
             throw new StaleTransactionException(this);
+        this.flushWritesIfOverlap(minKey, maxKey);
         return minKey != null && minKey.length > 0 ?
           (maxKey != null ?
            this.queryKVPair(StmtType.GET_RANGE_FORWARD_SINGLE, this.encodeKey(minKey), this.encodeKey(maxKey)) :
@@ -112,6 +157,7 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
     private synchronized KVPair getAtMostSQL(byte[] maxKey, byte[] minKey) {
         if (this.stale)
             throw new StaleTransactionException(this);
+        this.flushWritesIfOverlap(minKey, maxKey);
         return maxKey != null ?
           (minKey != null && minKey.length > 0 ?
            this.queryKVPair(StmtType.GET_RANGE_REVERSE_SINGLE, this.encodeKey(minKey), this.encodeKey(maxKey)) :
@@ -126,6 +172,7 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
             throw new StaleTransactionException(this);
         if (minKey != null && minKey.length == 0)
             minKey = null;
+        this.flushWritesIfOverlap(minKey, maxKey);
         if (minKey == null && maxKey == null)
             return this.queryIterator(reverse ? StmtType.GET_ALL_REVERSE : StmtType.GET_ALL_FORWARD);
         if (minKey == null) {
@@ -146,6 +193,10 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         Preconditions.checkArgument(value != null, "null value");
         if (this.stale)
             throw new StaleTransactionException(this);
+        if (this.pendingWrites != null) {
+            this.pendingWrites.getPuts().put(key.clone(), value.clone());
+            return;
+        }
         this.update(StmtType.PUT, this.encodeKey(key), value, value);
     }
 
@@ -153,6 +204,11 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         Preconditions.checkArgument(key != null, "null key");
         if (this.stale)
             throw new StaleTransactionException(this);
+        if (this.pendingWrites != null) {
+            this.pendingWrites.getPuts().remove(key);
+            this.pendingWrites.getRemoves().add(new KeyRange(key));
+            return;
+        }
         this.update(StmtType.REMOVE, this.encodeKey(key));
     }
 
@@ -161,6 +217,13 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
             throw new StaleTransactionException(this);
         if (minKey != null && minKey.length == 0)
             minKey = null;
+        if (this.pendingWrites != null) {
+            final NavigableMap<byte[], byte[]> puts = this.pendingWrites.getPuts();
+            final byte[] min = minKey != null ? minKey : ByteUtil.EMPTY;
+            (maxKey != null ? puts.subMap(min, maxKey) : puts.tailMap(min)).clear();
+            this.pendingWrites.getRemoves().add(new KeyRange(min, maxKey));
+            return;
+        }
         if (minKey == null && maxKey == null)
             this.update(StmtType.REMOVE_ALL);
         else if (minKey == null)
@@ -184,8 +247,10 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         try {
             if (this.readOnly && !(this.view instanceof MutableView))
                 this.connection.rollback();
-            else
+            else {
+                this.flushWrites();
                 this.connection.commit();
+            }
         } catch (SQLException e) {
             throw this.handleException(e);
         } finally {
@@ -242,6 +307,16 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         if (this.closed)
             return;
         this.closed = true;
+        if (this.statementCache != null) {
+            for (PreparedStatement preparedStatement : this.statementCache.values()) {
+                try {
+                    preparedStatement.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+            this.statementCache.clear();
+        }
         try {
             this.connection.close();
         } catch (SQLException e) {
@@ -315,13 +390,11 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
 
     protected <T> T query(StmtType stmtType, ResultSetFunction<T> resultSetFunction, boolean close, byte[]... params) {
         try {
-            final PreparedStatement preparedStatement = stmtType.create(this.database, this.connection, this.log);
-            final int numParams = preparedStatement.getParameterMetaData().getParameterCount();
-            for (int i = 0; i < params.length && i < numParams; i++) {
-                if (this.log.isTraceEnabled())
-                    this.log.trace("setting ?" + (i + 1) + " = " + ByteUtil.toString(params[i]));
-                preparedStatement.setBytes(i + 1, params[i]);
-            }
+
+            // Statements whose result sets remain open after we return can't be shared
+            final PreparedStatement preparedStatement = close ?
+              this.prepareStatement(stmtType) : stmtType.create(this.database, this.connection, this.log);
+            this.setParameters(preparedStatement, params);
             preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
             if (this.log.isTraceEnabled())
                 this.log.trace("executing SQL query: " + preparedStatement + " in " + this);
@@ -329,7 +402,7 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
             final T result = resultSetFunction.apply(preparedStatement, resultSet);
             if (close) {
                 resultSet.close();
-                preparedStatement.close();
+                this.releaseStatement(stmtType, preparedStatement);
             }
             return result;
         } catch (SQLException e) {
@@ -337,23 +410,174 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         }
     }
 
+    // Query the values for multiple keys using a single statement; not cached because the statement depends on the number of keys
+    private void queryMulti(List<byte[]> keys, Map<byte[], byte[]> found) {
+        try (PreparedStatement preparedStatement = this.connection.prepareStatement(
+          this.database.createGetMultiStatement(keys.size()))) {
+            final byte[][] params = new byte[keys.size()][];
+            for (int i = 0; i < params.length; i++)
+                params[i] = this.encodeKey(keys.get(i));
+            this.setParameters(preparedStatement, params);
+            preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
+            if (this.log.isTraceEnabled())
+                this.log.trace("executing SQL query: " + preparedStatement + " in " + this);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next())
+                    found.put(this.decodeKey(resultSet.getBytes(1)), resultSet.getBytes(2));
+            }
+        } catch (SQLException e) {
+            throw this.handleException(e);
+        }
+    }
+
     protected void update(StmtType stmtType, byte[]... params) {
-        try (final PreparedStatement preparedStatement = stmtType.create(this.database, this.connection, this.log)) {
-            final int numParams = preparedStatement.getParameterMetaData().getParameterCount();
-            for (int i = 0; i < params.length && i < numParams; i++) {
+        try {
+            final PreparedStatement preparedStatement = this.prepareStatement(stmtType);
+            try {
+                this.setParameters(preparedStatement, this.getUpdateParameters(stmtType, params));
+                preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
                 if (this.log.isTraceEnabled())
-                    this.log.trace("setting ?" + (i + 1) + " = " + ByteUtil.toString(params[i]));
-                preparedStatement.setBytes(i + 1, params[i]);
+                    this.log.trace("executing SQL update: " + preparedStatement + " in " + this);
+                preparedStatement.executeUpdate();
+            } finally {
+                this.releaseStatement(stmtType, preparedStatement);
             }
-            preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
-            if (this.log.isTraceEnabled())
-                this.log.trace("executing SQL update: " + preparedStatement + " in " + this);
-            preparedStatement.executeUpdate();
         } catch (SQLException e) {
             throw this.handleException(e);
         }
     }
 
+    /**
+     * Get the actual parameters for an SQL update statement.
+     *
+     * <p>
+     * This method is used to adapt update parameters for databases whose SQL statements use the parameters
+     * in a different order or multiple times, for both single and {@linkplain SQLKVDatabase#setBatchWrites batched} updates.
+     *
+     * <p>
+     * The implementation in {@link SQLKVTransaction} just returns {@code params}.
+     *
+     * @param stmtType statement type
+     * @param params parameters as passed to {@link #update update()}
+     * @return actual statement parameters
+     */
+    protected byte[][] getUpdateParameters(StmtType stmtType, byte[]... params) {
+        return params;
+    }
+
+    /**
+     * Apply any mutations that have been recorded but not yet written to the database.
+     *
+     * <p>
+     * This method does nothing unless the associated database is configured to
+     * {@linkplain SQLKVDatabase#setBatchWrites batch writes}. Otherwise, all pending key range removals are
+     * applied, followed by all pending puts, using one JDBC batch per statement type.
+     */
+    protected synchronized void flushWrites() {
+        if (this.pendingWrites == null || this.pendingWrites.isEmpty())
+            return;
+        try {
+
+            // Build batches of removes
+            final EnumMap<StmtType, ArrayList<byte[][]>> batches = new EnumMap<>(StmtType.class);
+            for (KeyRange range : this.pendingWrites.getRemoves()) {
+                final byte[] minKey = range.getMin();
+                final byte[] maxKey = range.getMax();
+                if (range.isSingleKey())
+                    this.addBatch(batches, StmtType.REMOVE, this.encodeKey(minKey));
+                else if (minKey.length == 0 && maxKey == null)
+                    this.addBatch(batches, StmtType.REMOVE_ALL);
+                else if (minKey.length == 0)
+                    this.addBatch(batches, StmtType.REMOVE_AT_MOST, this.encodeKey(maxKey));
+                else if (maxKey == null)
+                    this.addBatch(batches, StmtType.REMOVE_AT_LEAST, this.encodeKey(minKey));
+                else
+                    this.addBatch(batches, StmtType.REMOVE_RANGE, this.encodeKey(minKey), this.encodeKey(maxKey));
+            }
+
+            // Apply removes first (they are all disjoint), then puts
+            this.executeBatches(batches);
+            batches.clear();
+            for (Map.Entry<byte[], byte[]> entry : this.pendingWrites.getPuts().entrySet()) {
+                final byte[] value = entry.getValue();
+                this.addBatch(batches, StmtType.PUT, this.encodeKey(entry.getKey()), value, value);
+            }
+            this.executeBatches(batches);
+        } catch (SQLException e) {
+            throw this.handleException(e);
+        } finally {
+            this.pendingWrites.clear();
+        }
+    }
+
+    private void addBatch(EnumMap<StmtType, ArrayList<byte[][]>> batches, StmtType stmtType, byte[]... params) {
+        batches.computeIfAbsent(stmtType, t -> new ArrayList<>()).add(this.getUpdateParameters(stmtType, params));
+    }
+
+    private void executeBatches(EnumMap<StmtType, ArrayList<byte[][]>> batches) throws SQLException {
+        for (Map.Entry<StmtType, ArrayList<byte[][]>> entry : batches.entrySet()) {
+            final StmtType stmtType = entry.getKey();
+            final ArrayList<byte[][]> paramsList = entry.getValue();
+            final PreparedStatement preparedStatement = this.prepareStatement(stmtType);
+            try {
+                for (byte[][] params : paramsList) {
+                    this.setParameters(preparedStatement, params);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
+                if (this.log.isTraceEnabled()) {
+                    this.log.trace("executing SQL batch of " + paramsList.size()
+                      + " update(s): " + preparedStatement + " in " + this);
+                }
+                preparedStatement.executeBatch();
+            } finally {
+                this.releaseStatement(stmtType, preparedStatement);
+            }
+        }
+    }
+
+    // Flush pending writes if any of them overlap the given key range
+    private void flushWritesIfOverlap(byte[] minKey, byte[] maxKey) {
+        assert Thread.holdsLock(this);
+        if (this.pendingWrites == null || this.pendingWrites.isEmpty())
+            return;
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        final NavigableMap<byte[], byte[]> puts = this.pendingWrites.getPuts();
+        if (!(maxKey != null ? puts.subMap(minKey, maxKey) : puts.tailMap(minKey)).isEmpty()
+          || this.pendingWrites.getRemoves().intersects(new KeyRange(minKey, maxKey)))
+            this.flushWrites();
+    }
+
+    private void setParameters(PreparedStatement preparedStatement, byte[][] params) throws SQLException {
+        final int numParams = preparedStatement.getParameterMetaData().getParameterCount();
+        for (int i = 0; i < params.length && i < numParams; i++) {
+            if (this.log.isTraceEnabled())
+                this.log.trace("setting ?" + (i + 1) + " = " + ByteUtil.toString(params[i]));
+            preparedStatement.setBytes(i + 1, params[i]);
+        }
+    }
+
+    // Get a statement, from the cache if enabled
+    private synchronized PreparedStatement prepareStatement(StmtType stmtType) throws SQLException {
+        if (this.statementCache == null)
+            return stmtType.create(this.database, this.connection, this.log);
+        PreparedStatement preparedStatement = this.statementCache.remove(stmtType);
+        if (preparedStatement == null)
+            preparedStatement = stmtType.create(this.database, this.connection, this.log);
+        return preparedStatement;
+    }
+
+    // Return a statement obtained from prepareStatement() to the cache, or close it
+    private synchronized void releaseStatement(StmtType stmtType, PreparedStatement preparedStatement) throws SQLException {
+        if (this.statementCache != null && !this.closed && !this.statementCache.containsKey(stmtType)) {
+            preparedStatement.clearParameters();
+            this.statementCache.put(stmtType, preparedStatement);
+            return;
+        }
+        preparedStatement.close();
+    }
+
     /**
      * Encode the given key for the underlying database key column.
      *
@@ -392,6 +616,11 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
             return SQLKVTransaction.this.getSQL(key);
         }
 
+        @Override
+        public List<byte[]> getMulti(Iterable<byte[]> keys) {
+            return SQLKVTransaction.this.getMultiSQL(keys);
+        }
+
         @Override
         public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
             return SQLKVTransaction.this.getAtLeastSQL(minKey, maxKey);
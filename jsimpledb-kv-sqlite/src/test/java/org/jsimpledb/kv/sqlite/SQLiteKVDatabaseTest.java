@@ -10,26 +10,37 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
 import org.jsimpledb.kv.test.KVDatabaseTest;
+import org.jsimpledb.util.CloseableIterator;
+import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
 
 public class SQLiteKVDatabaseTest extends KVDatabaseTest {
 
     private SQLiteKVDatabase kvdb;
+    private String filePrefix;
 
     @BeforeClass(groups = "configure")
-    @Parameters({ "sqliteFilePrefix", "exclusiveLocking", "pragmas" })
+    @Parameters({ "sqliteFilePrefix", "exclusiveLocking", "pragmas", "sqliteBatchWrites", "sqliteCacheStatements" })
     public void setFilePrefix(
       @Optional String filePrefix,
       @Optional("true") boolean exclusiveLocking,
-      @Optional String pragmas) throws IOException {
+      @Optional String pragmas,
+      @Optional("false") boolean batchWrites,
+      @Optional("false") boolean cacheStatements) throws IOException {
+        this.filePrefix = filePrefix;
         if (filePrefix != null) {
             final File file = File.createTempFile(filePrefix, ".sqlite3");
             this.kvdb = new SQLiteKVDatabase();
             this.kvdb.setDatabaseFile(file);
             this.kvdb.setExclusiveLocking(exclusiveLocking);
+            this.kvdb.setBatchWrites(batchWrites);
+            this.kvdb.setCacheStatements(cacheStatements);
             if (pragmas != null) {
                 final ArrayList<String> pragmaList = new ArrayList<>();
                 for (String pragma : pragmas.split("\\s*,\\s*"))
@@ -39,6 +50,109 @@ public class SQLiteKVDatabaseTest extends KVDatabaseTest {
         }
     }
 
+    @Test
+    public void testBatchedWritesFlushBeforeRead() throws Exception {
+        if (this.filePrefix == null)
+            return;
+        final File file = File.createTempFile(this.filePrefix, ".sqlite3");
+        final SQLiteKVDatabase batchingKV = this.startBatchingDatabase(file);
+        try {
+
+            // Reads that overlap pending writes must see them
+            KVTransaction tx = batchingKV.createTransaction();
+            tx.put(b("10"), b("01"));
+            tx.put(b("20"), b("02"));
+            Assert.assertEquals(tx.get(b("10")), b("01"));
+            tx.put(b("30"), b("03"));
+            Assert.assertEquals(tx.getAtLeast(b("21"), null), new KVPair(b("30"), b("03")));
+            tx.remove(b("10"));
+            Assert.assertNull(tx.get(b("10")));
+            tx.removeRange(b("20"), b("30"));
+            Assert.assertEquals(tx.getAtMost(b("40"), null), new KVPair(b("30"), b("03")));
+            try (CloseableIterator<KVPair> i = tx.getRange(null, null, false)) {
+                Assert.assertEquals(i.next(), new KVPair(b("30"), b("03")));
+                Assert.assertFalse(i.hasNext());
+            }
+            tx.commit();
+
+            // Flushed writes are discarded on rollback
+            tx = batchingKV.createTransaction();
+            tx.put(b("40"), b("04"));
+            Assert.assertEquals(tx.get(b("40")), b("04"));
+            tx.rollback();
+
+            // Verify
+            tx = batchingKV.createTransaction();
+            Assert.assertNull(tx.get(b("10")));
+            Assert.assertNull(tx.get(b("20")));
+            Assert.assertEquals(tx.get(b("30")), b("03"));
+            Assert.assertNull(tx.get(b("40")));
+            tx.commit();
+        } finally {
+            batchingKV.stop();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBatchedRemovesThenPuts() throws Exception {
+        if (this.filePrefix == null)
+            return;
+        final File file = File.createTempFile(this.filePrefix, ".sqlite3");
+        final SQLiteKVDatabase batchingKV = this.startBatchingDatabase(file);
+        try {
+            KVTransaction tx = batchingKV.createTransaction();
+            tx.put(b("10"), b("01"));
+            tx.put(b("11"), b("01"));
+            tx.put(b("12"), b("01"));
+            tx.put(b("20"), b("01"));
+            tx.commit();
+
+            // With no intervening reads, everything goes into one batch; removes are applied before puts
+            tx = batchingKV.createTransaction();
+            tx.removeRange(b("10"), b("20"));
+            tx.put(b("11"), b("02"));
+            tx.remove(b("12"));
+            tx.put(b("12"), b("03"));
+            tx.put(b("13"), b("04"));
+            tx.remove(b("13"));
+            tx.commit();
+
+            // Verify
+            tx = batchingKV.createTransaction();
+            Assert.assertNull(tx.get(b("10")));
+            Assert.assertEquals(tx.get(b("11")), b("02"));
+            Assert.assertEquals(tx.get(b("12")), b("03"));
+            Assert.assertNull(tx.get(b("13")));
+            Assert.assertEquals(tx.get(b("20")), b("01"));
+            tx.commit();
+
+            // Same thing when removing everything
+            tx = batchingKV.createTransaction();
+            tx.removeRange(null, null);
+            tx.put(b("14"), b("05"));
+            tx.commit();
+            tx = batchingKV.createTransaction();
+            try (CloseableIterator<KVPair> i = tx.getRange(null, null, false)) {
+                Assert.assertEquals(i.next(), new KVPair(b("14"), b("05")));
+                Assert.assertFalse(i.hasNext());
+            }
+            tx.commit();
+        } finally {
+            batchingKV.stop();
+            file.delete();
+        }
+    }
+
+    private SQLiteKVDatabase startBatchingDatabase(File file) {
+        final SQLiteKVDatabase batchingKV = new SQLiteKVDatabase();
+        batchingKV.setDatabaseFile(file);
+        batchingKV.setBatchWrites(true);
+        batchingKV.setCacheStatements(true);
+        batchingKV.start();
+        return batchingKV;
+    }
+
     protected boolean allowBothTransactionsToFail() {
         return true;
     }
@@ -13,6 +13,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -205,6 +206,49 @@ public abstract class AtomicKVStoreTest extends KVTestSupport {
         kvstore.stop();
     }
 
+    @Test(dataProvider = "kvstores")
+    public void testBulkLoad(AtomicKVStore kvstore) throws Exception {
+
+        // Start kvstore
+        kvstore.start();
+
+        // Bulk load into empty kvstore
+        final TreeMap<byte[], byte[]> map = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 1000; i++) {
+            final byte[] key = new byte[1 + this.random.nextInt(6)];
+            this.random.nextBytes(key);
+            map.put(key, LongEncoder.encode(i));
+        }
+        Assert.assertEquals(kvstore.bulkLoad(map.entrySet().stream()
+          .map(entry -> new KVPair(entry.getKey(), entry.getValue())).iterator()), map.size());
+        this.compare(this.read(0, kvstore), map);
+
+        // Normal mutations still work afterward
+        final Writes writes = this.getPuts(1, map);
+        kvstore.mutate(writes, true);
+        this.compare(this.read(1, kvstore), map);
+
+        // Bulk load into non-empty kvstore
+        final TreeMap<byte[], byte[]> map2 = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 100; i++)
+            map2.put(new byte[] { (byte)0xff, (byte)i }, LongEncoder.encode(-i));
+        Assert.assertEquals(kvstore.bulkLoad(map2.entrySet().stream()
+          .map(entry -> new KVPair(entry.getKey(), entry.getValue())).iterator()), map2.size());
+        map.putAll(map2);
+        this.compare(this.read(2, kvstore), map);
+
+        // Out-of-order keys are rejected
+        try {
+            kvstore.bulkLoad(Arrays.asList(new KVPair(KEY2, VAL2), new KVPair(KEY1, VAL1)).iterator());
+            assert false : "out-of-order keys not detected";
+        } catch (IllegalArgumentException e) {
+            this.log.debug("got expected " + e);
+        }
+
+        // Stop kvstore
+        kvstore.stop();
+    }
+
     protected void compact(AtomicKVStore kvstore) throws Exception {
         // Subclass can do something here
     }
@@ -10,6 +10,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
@@ -232,6 +233,37 @@ public abstract class KVDatabaseTest extends KVTestSupport {
         return true;
     }
 
+    @Test(dataProvider = "kvdbs")
+    public void testGetMulti(KVDatabase store) throws Exception {
+
+        // Debug
+        this.log.info("starting testGetMulti() on " + store);
+
+        // Put some data in database
+        this.tryNtimes(store, tx -> {
+            tx.removeRange(null, null);
+            tx.put(b("10"), b("01"));
+            tx.put(b("20"), b("02"));
+            tx.put(b("30"), b("03"));
+        });
+
+        // Read committed and uncommitted data
+        this.tryNtimes(store, tx -> {
+            tx.put(b("40"), b("04"));
+            tx.remove(b("30"));
+            final List<byte[]> values = tx.getMulti(Arrays.asList(b("00"), b("10"), b("30"), b("40"), b("20"), b("10")));
+            Assert.assertEquals(values.size(), 6);
+            Assert.assertNull(values.get(0));
+            Assert.assertEquals(values.get(1), b("01"));
+            Assert.assertNull(values.get(2));
+            Assert.assertEquals(values.get(3), b("04"));
+            Assert.assertEquals(values.get(4), b("02"));
+            Assert.assertEquals(values.get(5), b("01"));
+            Assert.assertTrue(tx.getMulti(new ArrayList<byte[]>()).isEmpty());
+        });
+        this.log.info("finished testGetMulti() on " + store);
+    }
+
     private byte[] randomBytes(int index) {
         final byte[] array = new byte[this.random.nextInt(10) + 1];
         this.random.nextBytes(array);
@@ -488,17 +520,26 @@ public abstract class KVDatabaseTest extends KVTestSupport {
                 finished = false;
                 Future<?> rf = this.executor.submit(new Reader(txs[i], new byte[] { (byte)i }, true));
                 Future<?> wf = this.executor.submit(new Writer(txs[i], new byte[] { (byte)(i + 128) }, b("02")));
+
+                // If either one needs a retry, the other may have failed with a StaleTransactionException as a result
+                boolean retry = false;
+                ExecutionException failure = null;
                 for (Future<?> f : new Future<?>[] { rf, wf }) {
                     try {
                         f.get();
                     } catch (ExecutionException e) {
-                        if (e.getCause() instanceof RetryTransactionException) {
-                            txs[i] = this.createKVTransaction(store);
-                            break;
-                        }
-                        throw e;
+                        if (e.getCause() instanceof RetryTransactionException)
+                            retry = true;
+                        else if (failure == null)
+                            failure = e;
                     }
                 }
+                if (retry) {
+                    txs[i] = this.createKVTransaction(store);
+                    continue;
+                }
+                if (failure != null)
+                    throw failure;
             }
             if (finished)
                 break;
@@ -7,6 +7,9 @@ package org.jsimpledb.kv;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jsimpledb.util.CloseableIterator;
 
 /**
@@ -54,6 +57,36 @@ public interface KVStore {
      */
     byte[] get(byte[] key);
 
+    /**
+     * Get the values associated with multiple keys in a single operation.
+     *
+     * <p>
+     * This method is equivalent to invoking {@link #get get()} for each key in {@code keys}, in order,
+     * and collecting the results. Implementations whose underlying storage is remote or natively asynchronous
+     * should override this method to fetch all of the keys in as few round trips as possible.
+     *
+     * <p>
+     * Modifications to the returned {@code byte[]} arrays do not affect this instance.
+     *
+     * <p>
+     * The implementation in {@link KVStore} simply invokes {@link #get get()} for each key.
+     *
+     * @param keys keys to retrieve
+     * @return list of values, in the same order as {@code keys}, with null elements for keys that were not found
+     * @throws IllegalArgumentException if {@code keys} is null
+     * @throws IllegalArgumentException if any key starts with {@code 0xff} and such keys are not supported
+     * @throws StaleTransactionException if an underlying transaction is no longer usable
+     * @throws RetryTransactionException if an underlying transaction must be retried and is no longer usable
+     * @throws NullPointerException if any key in {@code keys} is null
+     */
+    default List<byte[]> getMulti(Iterable<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<byte[]> values = new ArrayList<>();
+        for (byte[] key : keys)
+            values.add(this.get(key));
+        return values;
+    }
+
     /**
      * Get the key/value pair having the smallest key greater than or equal to the given minimum, if any.
      *
@@ -8,6 +8,7 @@ package org.jsimpledb.kv;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.UnmodifiableIterator;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -24,19 +25,28 @@ import java.util.stream.Stream;
 import org.jsimpledb.kv.util.KeyListEncoder;
 import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ImmutableNavigableSet;
+import org.jsimpledb.util.LongEncoder;
 import org.jsimpledb.util.UnsignedIntEncoder;
 
 /**
  * A fixed set of {@link KeyRange} instances that can be treated as a unified whole, in particular as a {@link KeyFilter}.
  *
  * <p>
+ * Immutable instances created by {@link #immutableSnapshot} or {@link #KeyRanges(InputStream, boolean)} use a compact
+ * representation in which all of the range boundaries are packed into a single byte array; {@link KeyRange} objects
+ * are only created if/when needed, e.g., by {@link #asSet}. Such instances support allocation-free versions of
+ * {@link #contains(byte[])}, {@link #intersects(KeyRange)}, {@link #containsAny containsAny()},
+ * {@link #intersectsAny intersectsAny()}, and {@link #serialize serialize()}.
+ *
+ * <p>
  * Instances are not thread safe.
  *
  * @see KeyRange
  */
 public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
 
-    private /*final*/ NavigableSet<KeyRange> ranges;
+    private /*final*/ NavigableSet<KeyRange> ranges;                        // null if packed and not yet materialized
+    private /*final*/ Packed packed;                                        // non-null only for packed immutable instances
 
     private transient KeyRange lastContainingKeyRange;                      // used for optimization
 
@@ -107,7 +117,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     @SuppressWarnings("unchecked")
     public KeyRanges(KeyRanges ranges) {
         Preconditions.checkArgument(ranges != null, "null ranges");
-        this.ranges = new TreeSet<>(ranges.ranges);
+        this.ranges = new TreeSet<>(ranges.ranges());
         this.lastContainingKeyRange = ranges.lastContainingKeyRange;
         assert this.checkMinimal();
     }
@@ -176,22 +186,21 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public KeyRanges(InputStream input, boolean immutable) throws IOException {
         Preconditions.checkArgument(input != null, "null input");
+        if (immutable) {
+            this.packed = Packed.read(input);
+            assert this.checkMinimal();
+            return;
+        }
         final int count = UnsignedIntEncoder.read(input);
-        final KeyRange[] array = new KeyRange[count];
+        this.ranges = new TreeSet<>(KeyRange.SORT_BY_MIN);
         byte[] prev = null;
         for (int i = 0; i < count; i++) {
             final byte[] min = KeyListEncoder.read(input, prev);
             final byte[] max = KeyListEncoder.read(input, min);
             Preconditions.checkArgument(prev == null || ByteUtil.compare(min, prev) > 0, "invalid input");
-            array[i] = new KeyRange(min, Arrays.equals(min, max) ? null : max);         // map final [min, min) to [min, null]
+            this.ranges.add(new KeyRange(min, Arrays.equals(min, max) ? null : max));   // map final [min, min) to [min, null]
             prev = max;
         }
-        if (immutable)
-            this.ranges = new ImmutableNavigableSet<>(array, KeyRange.SORT_BY_MIN);
-        else {
-            this.ranges = new TreeSet<>(KeyRange.SORT_BY_MIN);
-            this.ranges.addAll(Arrays.asList(array));
-        }
         assert this.checkMinimal();
     }
 
@@ -242,7 +251,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public List<KeyRange> asList() {
         assert this.checkMinimal();
-        return new ArrayList<>(this.ranges);
+        return new ArrayList<>(this.ranges());
     }
 
     /**
@@ -255,8 +264,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public NavigableSet<KeyRange> asSet() {
         assert this.checkMinimal();
-        return this.ranges instanceof ImmutableNavigableSet ?
-          this.ranges : Collections.unmodifiableNavigableSet(this.ranges);
+        final NavigableSet<KeyRange> set = this.ranges();
+        return set instanceof ImmutableNavigableSet ? set : Collections.unmodifiableNavigableSet(set);
     }
 
     /**
@@ -266,6 +275,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public int size() {
         assert this.checkMinimal();
+        if (this.packed != null)
+            return this.packed.size();
         return this.ranges.size();
     }
 
@@ -276,7 +287,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public void clear() {
         assert this.checkMinimal();
-        this.ranges.clear();
+        this.ranges().clear();
     }
 
     /**
@@ -286,6 +297,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public boolean isEmpty() {
         assert this.checkMinimal();
+        if (this.packed != null)
+            return this.packed.size() == 0;
         return this.ranges.isEmpty();
     }
 
@@ -296,6 +309,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public boolean isFull() {
         assert this.checkMinimal();
+        if (this.packed != null)
+            return this.packed.isFull();
         return !this.ranges.isEmpty() && this.ranges.first().isFull();
     }
 
@@ -306,6 +321,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public byte[] getMin() {
         assert this.checkMinimal();
+        if (this.packed != null)
+            return this.packed.size() > 0 ? this.packed.getBoundary(0) : null;
         return !this.ranges.isEmpty() ? this.ranges.first().getMin() : null;
     }
 
@@ -317,6 +334,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public byte[] getMax() {
         assert this.checkMinimal();
+        if (this.packed != null)
+            return this.packed.size() > 0 ? this.packed.getBoundary(this.packed.size() * 2 - 1) : null;
         return !this.ranges.isEmpty() ? this.ranges.last().getMax() : null;
     }
 
@@ -330,7 +349,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public KeyRanges prefixedBy(final byte[] prefix) {
         assert this.checkMinimal();
         Preconditions.checkArgument(prefix != null, "null prefix");
-        return new KeyRanges(this.ranges.stream().map(range -> range.prefixedBy(prefix)));
+        return new KeyRanges(this.ranges().stream().map(range -> range.prefixedBy(prefix)));
     }
 
     /**
@@ -340,7 +359,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public KeyRanges inverse() {
         assert this.checkMinimal();
-        final Iterator<KeyRange> i = this.ranges.iterator();
+        final Iterator<KeyRange> i = this.ranges().iterator();
         if (!i.hasNext())
             return KeyRanges.full();
         final TreeSet<KeyRange> inverseRanges = new TreeSet<>(KeyRange.SORT_BY_MIN);
@@ -371,7 +390,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public boolean contains(KeyRanges ranges) {
         Preconditions.checkArgument(ranges != null, "null ranges");
         assert this.checkMinimal();
-        for (KeyRange range : ranges.ranges) {
+        for (KeyRange range : ranges.ranges()) {
             if (!this.contains(range))
                 return false;
         }
@@ -407,6 +426,14 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         Preconditions.checkArgument(range != null, "null range");
         assert this.checkMinimal();
 
+        // Handle empty range
+        if (range.isEmpty())
+            return false;
+
+        // Handle packed case
+        if (this.packed != null)
+            return this.packed.intersects(range, this.packed.search(range.min, 0));
+
         // Get search key
         final KeyRange searchKey = new KeyRange(range.min, range.min);
         assert !this.ranges.contains(searchKey);
@@ -425,6 +452,91 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         return false;
     }
 
+    /**
+     * Determine whether this instance contains any of the given keys.
+     *
+     * <p>
+     * For instances using the packed representation (see {@link #immutableSnapshot}), keys that are sorted
+     * in increasing order are checked in a single merge-style pass through this instance's range boundaries.
+     * Keys may be given in any order, but unsorted keys require a separate search for each key.
+     *
+     * @param keys keys to test
+     * @return true if this instance contains any key in {@code keys}, otherwise false
+     * @throws IllegalArgumentException if {@code keys} or any key therein is null
+     */
+    public boolean containsAny(Iterator<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        assert this.checkMinimal();
+
+        // Handle non-packed case
+        if (this.packed == null) {
+            while (keys.hasNext()) {
+                if (this.contains(keys.next()))
+                    return true;
+            }
+            return false;
+        }
+
+        // Do merge-style intersection
+        byte[] prev = null;
+        int index = 0;
+        while (keys.hasNext()) {
+            final byte[] key = keys.next();
+            Preconditions.checkArgument(key != null, "null key");
+            if (prev != null && ByteUtil.compare(key, prev) < 0)
+                index = 0;
+            index = this.packed.search(key, index);
+            if ((index & 1) != 0)
+                return true;
+            prev = key;
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether this instance intersects any of the given {@link KeyRange}s.
+     *
+     * <p>
+     * For instances using the packed representation (see {@link #immutableSnapshot}), ranges that are sorted
+     * in increasing order (e.g., the ranges in another {@link KeyRanges}) are checked in a single merge-style pass
+     * through this instance's range boundaries. Ranges may be given in any order, but unsorted ranges require
+     * a separate search for each range.
+     *
+     * @param ranges key ranges to test
+     * @return true if this instance intersects any {@link KeyRange} in {@code ranges}, otherwise false
+     * @throws IllegalArgumentException if {@code ranges} or any {@link KeyRange} therein is null
+     */
+    public boolean intersectsAny(Iterator<? extends KeyRange> ranges) {
+        Preconditions.checkArgument(ranges != null, "null ranges");
+        assert this.checkMinimal();
+
+        // Handle non-packed case
+        if (this.packed == null) {
+            while (ranges.hasNext()) {
+                if (this.intersects(ranges.next()))
+                    return true;
+            }
+            return false;
+        }
+
+        // Do merge-style intersection
+        byte[] prev = null;
+        int index = 0;
+        while (ranges.hasNext()) {
+            final KeyRange range = ranges.next();
+            Preconditions.checkArgument(range != null, "null range");
+            if (range.isEmpty())
+                continue;
+            if (prev != null && ByteUtil.compare(range.min, prev) < 0)
+                index = 0;
+            index = this.packed.search(range.min, index);
+            if (this.packed.intersects(range, index))
+                return true;
+            prev = range.min;
+        }
+        return false;
+    }
+
     /**
      * Find the contiguous {@link KeyRange}(s) within this instance containing, or adjacent to, the given key.
      *
@@ -449,22 +561,22 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         // Optimization: assume previous success is likely to repeat
         final KeyRange likelyKeyRange = this.lastContainingKeyRange;
         if (likelyKeyRange != null) {
-            if (likelyKeyRange.contains(key) && this.ranges.contains(likelyKeyRange))
+            if (likelyKeyRange.contains(key) && this.ranges().contains(likelyKeyRange))
                 return new KeyRange[] { likelyKeyRange, likelyKeyRange };
             this.lastContainingKeyRange = null;
         }
 
         // Check nearest neighbors
         final KeyRange searchKey = new KeyRange(key, key);
-        assert !this.ranges.contains(searchKey);
-        final KeyRange lower = this.ranges.lower(searchKey);
+        assert !this.ranges().contains(searchKey);
+        final KeyRange lower = this.ranges().lower(searchKey);
         if (lower != null) {
             if (lower.contains(key)) {
                 this.lastContainingKeyRange = lower;
                 return new KeyRange[] { lower, lower };
             }
         }
-        final KeyRange higher = this.ranges.higher(searchKey);
+        final KeyRange higher = this.ranges().higher(searchKey);
         if (higher != null) {
             if (higher.contains(key)) {
                 this.lastContainingKeyRange = higher;
@@ -492,18 +604,18 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         // Handle trivial cases
         if (range.isEmpty())
             return;
-        if (this.ranges.isEmpty()) {
-            this.ranges.add(range);
+        if (this.ranges().isEmpty()) {
+            this.ranges().add(range);
             assert this.checkMinimal();
             return;
         }
 
         // Get search key
         final KeyRange searchKey = new KeyRange(range.min, range.min);
-        assert !this.ranges.contains(searchKey);
+        assert !this.ranges().contains(searchKey);
 
         // Check for intersection with next lower range
-        final KeyRange prev = this.ranges.lower(searchKey);
+        final KeyRange prev = this.ranges().lower(searchKey);
         if (prev != null) {
 
             // Check if 'prev' contains - or is adjacent to - 'range's min key
@@ -516,13 +628,13 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
                 }
 
                 // Absorb 'prev' into 'range'
-                this.ranges.remove(prev);
+                this.ranges().remove(prev);
                 range = new KeyRange(prev.min, range.max);
             }
         }
 
         // Check for intersection with higher ranges
-        for (Iterator<KeyRange> i = this.ranges.tailSet(searchKey, false).iterator(); i.hasNext(); ) {
+        for (Iterator<KeyRange> i = this.ranges().tailSet(searchKey, false).iterator(); i.hasNext(); ) {
             final KeyRange next = i.next();
 
             // Does 'next' overlap or touch 'range'? If not, we're done looking
@@ -538,7 +650,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         }
 
         // Finally, add the new range
-        this.ranges.add(range);
+        this.ranges().add(range);
         assert this.checkMinimal();
     }
 
@@ -556,28 +668,28 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         assert this.checkMinimal();
 
         // Handle trivial cases
-        if (range.isEmpty() || this.ranges.isEmpty())
+        if (range.isEmpty() || this.ranges().isEmpty())
             return;
 
         // Get search key
         final KeyRange searchKey = new KeyRange(range.min, range.min);
-        assert !this.ranges.contains(searchKey);
+        assert !this.ranges().contains(searchKey);
 
         // Check for intersection with next lower range
-        final KeyRange prev = this.ranges.lower(searchKey);
+        final KeyRange prev = this.ranges().lower(searchKey);
         if (prev != null && prev.contains(range.min)) {     // if 'prev' contains 'range's min key, subtract 'range' from 'prev'
-            this.ranges.remove(prev);
+            this.ranges().remove(prev);
             if (KeyRange.compare(prev.min, range.min) < 0)
-                this.ranges.add(new KeyRange(prev.min, range.min));
+                this.ranges().add(new KeyRange(prev.min, range.min));
             if (KeyRange.compare(prev.max, range.max) > 0) {
-                this.ranges.add(new KeyRange(range.max, prev.max));
+                this.ranges().add(new KeyRange(range.max, prev.max));
                 assert this.checkMinimal();
                 return;
             }
         }
 
         // Check for intersection with higher ranges
-        for (Iterator<KeyRange> i = this.ranges.tailSet(searchKey, false).iterator(); i.hasNext(); ) {
+        for (Iterator<KeyRange> i = this.ranges().tailSet(searchKey, false).iterator(); i.hasNext(); ) {
             final KeyRange next = i.next();
 
             // Does 'next' overlap 'range'? If not, we're done looking
@@ -592,7 +704,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
                 continue;
 
             // Replace 'next' with a truncated version
-            this.ranges.add(new KeyRange(range.max, next.max));
+            this.ranges().add(new KeyRange(range.max, next.max));
             break;
         }
 
@@ -622,7 +734,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public void add(KeyRanges ranges) {
         Preconditions.checkArgument(ranges != null, "null ranges");
         assert this.checkMinimal();
-        ranges.ranges.forEach(this::add);
+        ranges.ranges().forEach(this::add);
     }
 
     /**
@@ -634,9 +746,9 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public void remove(KeyRanges ranges) {
         Preconditions.checkArgument(ranges != null, "null ranges");
         assert this.checkMinimal();
-        if (this.ranges.isEmpty())
+        if (this.ranges().isEmpty())
             return;
-        ranges.ranges.forEach(this::remove);
+        ranges.ranges().forEach(this::remove);
     }
 
     /**
@@ -671,6 +783,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      */
     public void serialize(OutputStream out) throws IOException {
         assert this.checkMinimal();
+        if (this.packed != null) {
+            this.packed.write(out);
+            return;
+        }
         UnsignedIntEncoder.write(out, this.ranges.size());
         byte[] prev = null;
         for (KeyRange range : this.ranges) {
@@ -689,6 +805,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      * @return number of serialized bytes
      */
     public long serializedLength() {
+        if (this.packed != null)
+            return this.packed.writeLength();
         long total = UnsignedIntEncoder.encodeLength(this.ranges.size());
         byte[] prev = null;
         for (KeyRange range : this.ranges) {
@@ -762,6 +880,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     @Override
     public boolean contains(byte[] key) {
         assert this.checkMinimal();
+        if (this.packed != null) {
+            Preconditions.checkArgument(key != null, "null key");
+            return (this.packed.search(key, 0) & 1) != 0;
+        }
         final KeyRange[] neighbors = this.findKey(key);
         return neighbors[0] == neighbors[1] && neighbors[0] != null;
     }
@@ -769,6 +891,13 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     @Override
     public byte[] seekHigher(byte[] key) {
         assert this.checkMinimal();
+        if (this.packed != null) {
+            Preconditions.checkArgument(key != null, "null key");
+            final int index = this.packed.search(key, 0);
+            if ((index & 1) != 0)
+                return key;
+            return index < this.packed.size() * 2 ? this.packed.getBoundary(index) : null;
+        }
         final KeyRange[] neighbors = this.findKey(key);
         if (neighbors[0] == neighbors[1])
             return neighbors[0] != null ? key : null;
@@ -780,11 +909,17 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         Preconditions.checkArgument(key != null, "null key");
         assert this.checkMinimal();
         if (key.length == 0) {
-            if (this.ranges.isEmpty())
+            if (this.isEmpty())
                 return null;
-            final byte[] lastMax = this.ranges.last().getMax();
+            final byte[] lastMax = this.getMax();
             return lastMax != null ? lastMax : ByteUtil.EMPTY;
         }
+        if (this.packed != null) {
+            final int index = this.packed.search(key, 0);
+            if ((index & 1) != 0)
+                return key;
+            return index > 0 ? this.packed.getBoundary(index - 1) : null;
+        }
         final KeyRange[] neighbors = this.findKey(key);
         if (neighbors[0] == neighbors[1])
             return neighbors[0] != null ? key : null;
@@ -809,7 +944,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
-        clone.ranges = new TreeSet<>(clone.ranges);
+        clone.ranges = new TreeSet<>(this.ranges());
+        clone.packed = null;
         assert clone.checkMinimal();
         return clone;
     }
@@ -820,7 +956,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
      * @return immutable snapshot
      */
     public KeyRanges immutableSnapshot() {
-        if (this.ranges instanceof ImmutableNavigableSet)
+        if (this.packed != null)
             return this;
         final KeyRanges clone;
         try {
@@ -828,7 +964,9 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
-        clone.ranges = new ImmutableNavigableSet<>(clone.ranges);
+        clone.ranges = null;
+        clone.packed = Packed.pack(this.ranges);
+        clone.lastContainingKeyRange = null;
         assert clone.checkMinimal();
         return clone;
     }
@@ -842,12 +980,14 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         if (obj == null || obj.getClass() != this.getClass())
             return false;
         final KeyRanges that = (KeyRanges)obj;
-        return this.ranges.equals(that.ranges);
+        if (this.packed != null && that.packed != null)
+            return this.packed.equals(that.packed);
+        return this.ranges().equals(that.ranges());
     }
 
     @Override
     public int hashCode() {
-        return this.ranges.hashCode();
+        return this.ranges().hashCode();
     }
 
     @Override
@@ -856,7 +996,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         buf.append('[');
         int index = 0;
     rangeLoop:
-        for (KeyRange range : this.ranges) {
+        for (KeyRange range : this.ranges()) {
             switch (index++) {
             case 0:
                 break;
@@ -875,14 +1015,306 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
 
 // Internal methods
 
+    private NavigableSet<KeyRange> ranges() {
+        if (this.ranges == null) {
+            assert this.packed != null;
+            this.ranges = new ImmutableNavigableSet<>(this.packed.unpack(), KeyRange.SORT_BY_MIN);
+        }
+        return this.ranges;
+    }
+
     private boolean checkMinimal() {
+        if (this.packed != null)
+            return this.packed.checkMinimal();
         KeyRange prev = null;
-        for (KeyRange range : this.ranges) {
+        for (KeyRange range : this.ranges()) {
             assert !range.isEmpty() : "contains empty range: " + range;
             assert prev == null || KeyRange.compare(prev.max, range.min) < 0 : "touching ranges: " + prev + ", " + range;
             prev = range;
         }
         return true;
     }
+
+// Packed
+
+    /**
+     * Compact representation of a minimal list of key ranges as a sorted list of boundary keys packed into a single array.
+     *
+     * <p>
+     * Boundary {@code 2 * i} is the minimum key of range {@code i} and boundary {@code 2 * i + 1} is its maximum key.
+     * If the last range has no upper bound, its maximum boundary is omitted. Because the ranges are minimal, the
+     * boundaries are strictly increasing, so a key is contained if and only if an odd number of boundaries are
+     * less than or equal to it.
+     */
+    private static final class Packed {
+
+        private final byte[] data;                                  // boundary keys, concatenated
+        private final int[] offsets;                                // offset of each boundary in data, plus end offset
+        private final int size;                                     // number of ranges
+        private final boolean unbounded;                            // last range has no upper bound
+
+        Packed(byte[] data, int[] offsets, int size, boolean unbounded) {
+            assert offsets.length == size * 2 + (unbounded ? 0 : 1);
+            this.data = data;
+            this.offsets = offsets;
+            this.size = size;
+            this.unbounded = unbounded;
+        }
+
+        static Packed pack(NavigableSet<KeyRange> ranges) {
+            final int size = ranges.size();
+            final boolean unbounded = size > 0 && ranges.last().max == null;
+            final int[] offsets = new int[size * 2 + (unbounded ? 0 : 1)];
+            int length = 0;
+            for (KeyRange range : ranges)
+                length += range.min.length + (range.max != null ? range.max.length : 0);
+            final byte[] data = new byte[length];
+            int index = 0;
+            int offset = 0;
+            for (KeyRange range : ranges) {
+                offsets[index++] = offset;
+                System.arraycopy(range.min, 0, data, offset, range.min.length);
+                offset += range.min.length;
+                if (range.max != null) {
+                    offsets[index++] = offset;
+                    System.arraycopy(range.max, 0, data, offset, range.max.length);
+                    offset += range.max.length;
+                }
+            }
+            offsets[index] = offset;
+            return new Packed(data, offsets, size, unbounded);
+        }
+
+        static Packed read(InputStream input) throws IOException {
+
+            // Read count and allocate arrays
+            final int size = UnsignedIntEncoder.read(input);
+            Preconditions.checkArgument(size <= (Integer.MAX_VALUE - 1) / 2, "invalid input");
+            int[] offsets = new int[size * 2 + 1];
+            byte[] data = new byte[Math.max(32, Math.min(size, 1024) * 16)];
+
+            // Decode boundaries directly into the data array
+            boolean unbounded = false;
+            int length = 0;
+            for (int i = 0; i < size * 2; i++) {
+
+                // Decode key length and shared prefix length
+                final long encodedLength = LongEncoder.read(input);
+                Preconditions.checkArgument(encodedLength == (int)encodedLength, "invalid input");
+                int keyLength = (int)encodedLength;
+                int prefixLength = 0;
+                if (keyLength < 0) {
+                    Preconditions.checkArgument(i > 0, "invalid input");
+                    prefixLength = ~keyLength + 2;
+                    Preconditions.checkArgument(prefixLength <= length - offsets[i - 1], "invalid input");
+                    keyLength = prefixLength + UnsignedIntEncoder.read(input);
+                    Preconditions.checkArgument(keyLength >= 0, "invalid input");
+                }
+
+                // Make room for key
+                Preconditions.checkArgument(length + keyLength >= 0, "invalid input");
+                if (length + keyLength > data.length)
+                    data = Arrays.copyOf(data, (int)Math.max(length + keyLength, Math.min(data.length * 2L, Integer.MAX_VALUE)));
+
+                // Copy prefix and read suffix
+                offsets[i] = length;
+                if (prefixLength > 0)
+                    System.arraycopy(data, offsets[i - 1], data, length, prefixLength);
+                for (int off = prefixLength; off < keyLength; ) {
+                    final int num = input.read(data, length + off, keyLength - off);
+                    if (num == -1)
+                        throw new EOFException();
+                    off += num;
+                }
+                length += keyLength;
+                offsets[i + 1] = length;
+
+                // Verify boundaries are strictly increasing; map final [min, min) to [min, null)
+                if (i > 0) {
+                    final int diff = Packed.compare(data, offsets[i - 1], offsets[i], offsets[i], offsets[i + 1]);
+                    if (diff == 0 && i == size * 2 - 1) {
+                        unbounded = true;
+                        length = offsets[i];
+                        break;
+                    }
+                    Preconditions.checkArgument(diff < 0, "invalid input");
+                }
+            }
+
+            // Trim arrays
+            if (unbounded)
+                offsets = Arrays.copyOf(offsets, offsets.length - 1);
+            if (data.length != length)
+                data = Arrays.copyOf(data, length);
+            return new Packed(data, offsets, size, unbounded);
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        boolean isFull() {
+            return this.size == 1 && this.unbounded && this.offsets[1] == 0;
+        }
+
+        // Get boundary key, or null if index refers to the (omitted) upper bound of an unbounded last range
+        byte[] getBoundary(int index) {
+            if (index == this.offsets.length - 1) {
+                assert this.unbounded;
+                return null;
+            }
+            return Arrays.copyOfRange(this.data, this.offsets[index], this.offsets[index + 1]);
+        }
+
+        /**
+         * Count the boundary keys less than or equal to the given key.
+         *
+         * <p>
+         * The caller asserts that all boundaries prior to {@code from} are less than or equal to {@code key}.
+         * The search gallops forward from {@code from}, so an increasing sequence of keys can be searched
+         * in a single merge-style pass by passing the previous result as {@code from}.
+         *
+         * @param key key to find
+         * @param from starting boundary index
+         * @return number of boundary keys less than or equal to {@code key}, which is odd if and only if {@code key} is contained
+         */
+        int search(byte[] key, int from) {
+            final int count = this.offsets.length - 1;
+            assert from >= 0 && from <= count;
+            assert from == 0 || this.compare(from - 1, key) <= 0;
+
+            // Gallop forward to bracket the answer
+            int lo = from;
+            int hi = from;
+            for (int step = 1; hi < count && this.compare(hi, key) <= 0; step <<= 1) {
+                lo = hi + 1;
+                hi = (int)Math.min((long)lo + step, count);
+            }
+
+            // Binary search within the bracket
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.compare(mid, key) <= 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        // Determine whether the given non-empty range intersects, where index = search(range.min, *)
+        boolean intersects(KeyRange range, int index) {
+            if ((index & 1) != 0)
+                return true;
+            return index < this.offsets.length - 1 && (range.max == null || this.compare(index, range.max) < 0);
+        }
+
+        KeyRange[] unpack() {
+            final KeyRange[] array = new KeyRange[this.size];
+            for (int i = 0; i < this.size; i++)
+                array[i] = new KeyRange(this.getBoundary(i * 2), this.getBoundary(i * 2 + 1));
+            return array;
+        }
+
+        void write(OutputStream out) throws IOException {
+            UnsignedIntEncoder.write(out, this.size);
+            for (int i = 0; i < this.size * 2; i++)
+                this.writeBoundary(out, i);
+        }
+
+        long writeLength() {
+            long total = UnsignedIntEncoder.encodeLength(this.size);
+            try {
+                for (int i = 0; i < this.size * 2; i++)
+                    total += this.writeBoundary(null, i);
+            } catch (IOException e) {
+                throw new RuntimeException("unexpected exception", e);
+            }
+            return total;
+        }
+
+        // Encode boundary like KeyListEncoder.write() (if out is not null) and return the encoded length.
+        // The omitted upper bound of an unbounded last range is encoded as a copy of its lower bound.
+        private int writeBoundary(OutputStream out, int index) throws IOException {
+            final int keyIndex = index == this.offsets.length - 1 ? index - 1 : index;
+            final int off = this.offsets[keyIndex];
+            final int len = this.offsets[keyIndex + 1] - off;
+            int prefixLength = 0;
+            if (index > 0) {
+                final int prevOff = this.offsets[index - 1];
+                final int prevLen = this.offsets[index] - prevOff;
+                while (prefixLength < len && prefixLength < prevLen
+                  && this.data[off + prefixLength] == this.data[prevOff + prefixLength])
+                    prefixLength++;
+            }
+            if (prefixLength > 1) {
+                final int suffixLength = len - prefixLength;
+                if (out != null) {
+                    LongEncoder.write(out, ~(prefixLength - 2));
+                    UnsignedIntEncoder.write(out, suffixLength);
+                    out.write(this.data, off + prefixLength, suffixLength);
+                }
+                return LongEncoder.encodeLength(~(prefixLength - 2)) + UnsignedIntEncoder.encodeLength(suffixLength) + suffixLength;
+            }
+            if (out != null) {
+                LongEncoder.write(out, len);
+                out.write(this.data, off, len);
+            }
+            return LongEncoder.encodeLength(len) + len;
+        }
+
+        boolean checkMinimal() {
+            for (int i = 1; i < this.offsets.length - 1; i++)
+                assert this.compare(i - 1, i) < 0 : "boundaries not strictly increasing";
+            return true;
+        }
+
+        private int compare(int index1, int index2) {
+            return Packed.compare(this.data, this.offsets[index1], this.offsets[index1 + 1],
+              this.offsets[index2], this.offsets[index2 + 1]);
+        }
+
+        private int compare(int index, byte[] key) {
+            final int off = this.offsets[index];
+            final int len = this.offsets[index + 1] - off;
+            final int shared = Math.min(len, key.length);
+            for (int i = 0; i < shared; i++) {
+                final int diff = (this.data[off + i] & 0xff) - (key[i] & 0xff);
+                if (diff != 0)
+                    return diff;
+            }
+            return len - key.length;
+        }
+
+        private static int compare(byte[] data, int off1, int end1, int off2, int end2) {
+            final int len1 = end1 - off1;
+            final int len2 = end2 - off2;
+            final int shared = Math.min(len1, len2);
+            for (int i = 0; i < shared; i++) {
+                final int diff = (data[off1 + i] & 0xff) - (data[off2 + i] & 0xff);
+                if (diff != 0)
+                    return diff;
+            }
+            return len1 - len2;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (obj == null || obj.getClass() != this.getClass())
+                return false;
+            final Packed that = (Packed)obj;
+            return this.size == that.size
+              && this.unbounded == that.unbounded
+              && Arrays.equals(this.offsets, that.offsets)
+              && Arrays.equals(this.data, that.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.data) ^ Arrays.hashCode(this.offsets);
+        }
+    }
 }
 
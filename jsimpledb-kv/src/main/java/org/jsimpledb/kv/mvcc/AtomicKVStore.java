@@ -5,8 +5,14 @@
 
 package org.jsimpledb.kv.mvcc;
 
+import com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+
 import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.util.ByteUtil;
 
 /**
  * Extension of the {@link KVStore} interface for implementations that support atomic, batched reads and writes.
@@ -14,9 +20,16 @@ import org.jsimpledb.kv.KVStore;
  * <p>
  * Atomic batch reads are available via {@link #snapshot}, which returns a consistent point-in-time views of the {@link KVStore}.
  * Atomic batch writes are available via {@link #mutate mutate()}, which applies a set of mutations in an "all or none" fashion.
+ * Large initial imports may use {@link #bulkLoad bulkLoad()}, which implementations may optimize for their native format.
  */
 public interface AtomicKVStore extends KVStore {
 
+    /**
+     * Approximate number of key and value bytes per {@link #mutate mutate()} batch used by the default implementation
+     * of {@link #bulkLoad bulkLoad()} ({@value #BULK_LOAD_BATCH_SIZE}).
+     */
+    int BULK_LOAD_BATCH_SIZE = 4 * 1024 * 1024;
+
 // Lifecycle
 
     /**
@@ -87,5 +100,59 @@ public interface AtomicKVStore extends KVStore {
      * @throws IllegalStateException if this instance is not {@link #start}ed
      */
     void mutate(Mutations mutations, boolean sync);
-}
 
+    /**
+     * Load a sorted stream of key/value pairs into this instance.
+     *
+     * <p>
+     * This method is intended for initial imports and restores into a database that is otherwise idle; it is
+     * not atomic, and other threads may observe partially loaded data. The keys in {@code pairs} must be
+     * strictly increasing. Key/value pairs already present in this instance are overwritten if present in
+     * {@code pairs} and otherwise left alone.
+     *
+     * <p>
+     * When this method returns normally, all of the loaded key/value pairs have been durably persisted, exactly as if
+     * they had been applied via {@link #mutate mutate(mutations, true)}. If this method throws an exception, some subset
+     * of the key/value pairs may have been loaded, and these may or may not be durable.
+     *
+     * <p>
+     * Implementations may bypass their normal write path, e.g., by writing directly into their native on-disk format,
+     * but may not weaken the durability guarantee above.
+     *
+     * <p>
+     * The implementation in {@link AtomicKVStore} applies the key/value pairs via a series of {@link #mutate mutate()}
+     * calls, each containing approximately {@link #BULK_LOAD_BATCH_SIZE} bytes of key and value data, the last of which
+     * is synchronous.
+     *
+     * @param pairs key/value pairs in strictly increasing key order
+     * @return the number of key/value pairs loaded
+     * @throws IllegalArgumentException if {@code pairs} is null
+     * @throws IllegalArgumentException if the keys in {@code pairs} are not strictly increasing
+     * @throws IllegalStateException if this instance is not {@link #start}ed
+     */
+    default long bulkLoad(Iterator<KVPair> pairs) {
+        Preconditions.checkArgument(pairs != null, "null pairs");
+        Writes writes = new Writes();
+        long batchSize = 0;
+        long count = 0;
+        byte[] prev = null;
+        while (pairs.hasNext()) {
+            final KVPair pair = pairs.next();
+            final byte[] key = pair.getKey();
+            final byte[] value = pair.getValue();
+            Preconditions.checkArgument(prev == null || ByteUtil.compare(key, prev) > 0, "key <= previous key");
+            writes.getPuts().put(key, value);
+            batchSize += key.length + value.length;
+            if (batchSize >= BULK_LOAD_BATCH_SIZE) {
+                this.mutate(writes, !pairs.hasNext());
+                writes = new Writes();
+                batchSize = 0;
+            }
+            prev = key;
+            count++;
+        }
+        if (!writes.isEmpty())
+            this.mutate(writes, true);
+        return count;
+    }
+}
@@ -7,7 +7,9 @@ package org.jsimpledb.kv.mvcc;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -191,6 +193,55 @@ public class MutableView extends AbstractKVStore implements Cloneable {
         return value;
     }
 
+    /**
+     * Get the values associated with multiple keys in a single operation.
+     *
+     * <p>
+     * Keys whose values are determined by the local mutations in this instance are answered directly;
+     * all other keys are retrieved from the underlying {@link KVStore} in a single
+     * {@link KVStore#getMulti getMulti()} operation.
+     */
+    @Override
+    public synchronized List<byte[]> getMulti(Iterable<byte[]> keys) {
+
+        // Sanity check
+        Preconditions.checkArgument(keys != null, "null keys");
+
+        // Answer what we can from the local mutations, gathering the remaining keys
+        final ArrayList<byte[]> values = new ArrayList<>();
+        final ArrayList<byte[]> readKeys = new ArrayList<>();
+        final ArrayList<Integer> readIndexes = new ArrayList<>();
+        for (byte[] key : keys) {
+            byte[] value = this.writes.getPuts().get(key);
+            if (value != null)
+                value = this.applyCounterAdjustment(key, value).clone();
+            else if (!this.writes.getRemoves().contains(key)) {         // we can ignore adjustments of missing values
+                readKeys.add(key);
+                readIndexes.add(values.size());
+            }
+            values.add(value);
+        }
+        if (readKeys.isEmpty())
+            return values;
+
+        // Read the remaining keys from underlying k/v store
+        final List<byte[]> readValues = this.kv.getMulti(readKeys);
+        assert readValues.size() == readKeys.size();
+
+        // Record the reads and apply counter adjustments
+        for (int i = 0; i < readKeys.size(); i++) {
+            final byte[] key = readKeys.get(i);
+            this.recordReads(key, ByteUtil.getNextKey(key));
+            byte[] value = readValues.get(i);
+            if (value != null)                                          // we can ignore adjustments of missing values
+                value = this.applyCounterAdjustment(key, value).clone();
+            values.set(readIndexes.get(i), value);
+        }
+
+        // Done
+        return values;
+    }
+
     @Override
     public synchronized CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
         return new RangeIterator(minKey, maxKey, reverse);
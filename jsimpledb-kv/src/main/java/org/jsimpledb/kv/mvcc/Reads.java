@@ -6,6 +6,7 @@
 package org.jsimpledb.kv.mvcc;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -59,6 +60,24 @@ public class Reads extends KeyRanges {
         super(input);
     }
 
+    /**
+     * Constructor to deserialize an instance created by {@link #serialize serialize()}.
+     *
+     * <p>
+     * Immutable instances use a compact representation and are the most efficient choice
+     * when the purpose is conflict checking via {@link #isConflict isConflict()}.
+     *
+     * @param input input stream containing data from {@link #serialize serialize()}
+     * @param immutable whether this new instance should be immutable
+     * @throws IOException if an I/O error occurs
+     * @throws java.io.EOFException if the input ends unexpectedly
+     * @throws IllegalArgumentException if {@code input} is null
+     * @throws IllegalArgumentException if {@code input} is invalid
+     */
+    public Reads(InputStream input, boolean immutable) throws IOException {
+        super(input, immutable);
+    }
+
 // MVCC
 
     /**
@@ -81,22 +100,16 @@ public class Reads extends KeyRanges {
         Preconditions.checkArgument(mutations != null, "null mutations");
 
         // Check for read/remove conflicts
-        for (KeyRange remove : mutations.getRemoveRanges()) {
-            if (this.intersects(remove))
-                return true;
-        }
+        if (this.intersectsAny(mutations.getRemoveRanges().iterator()))
+            return true;
 
         // Check for read/write conflicts
-        for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs()) {
-            if (this.contains(entry.getKey()))
-                return true;
-        }
+        if (this.containsAny(Iterators.transform(mutations.getPutPairs().iterator(), e -> e.getKey())))
+            return true;
 
         // Check for read/adjust conflicts
-        for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs()) {
-            if (this.contains(entry.getKey()))
-                return true;                    // read/adjust conflict
-        }
+        if (this.containsAny(Iterators.transform(mutations.getAdjustPairs().iterator(), e -> e.getKey())))
+            return true;
 
         // No conflicts
         return false;
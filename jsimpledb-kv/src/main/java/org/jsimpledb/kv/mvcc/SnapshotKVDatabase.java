@@ -6,12 +6,19 @@
 package org.jsimpledb.kv.mvcc;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -20,6 +27,8 @@ import javax.annotation.concurrent.ThreadSafe;
 
 import org.jsimpledb.kv.CloseableKVStore;
 import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KVTransactionException;
 import org.jsimpledb.kv.RetryTransactionException;
 import org.jsimpledb.kv.StaleTransactionException;
@@ -48,6 +57,23 @@ import org.slf4j.LoggerFactory;
  * <p>
  * {@linkplain SnapshotKVTransaction#watchKey Key watches} are supported.
  *
+ * <p><b>Group Commit</b>
+ *
+ * <p>
+ * Normally each committing transaction's mutations are applied via a separate {@link AtomicKVStore#mutate mutate()} call,
+ * made while holding this instance's lock. When {@linkplain #setGroupCommit group commit} is enabled, committing transactions
+ * are instead validated and then queued into a "commit group". The mutations of all of the transactions in a group are merged
+ * and applied via a single {@link AtomicKVStore#mutate mutate()} call (and therefore a single sync), which is performed without
+ * holding this instance's lock; meanwhile, newly committing transactions accumulate in the next group. A transaction joining
+ * a group is validated against the writes of the transactions already in that group (and the group being written, if any),
+ * so the transactions within a group never conflict with each other. The new version becomes visible, and open transactions
+ * are checked for conflicts, only after the group's mutations have been durably applied.
+ *
+ * <p>
+ * Separately, if a {@linkplain #setConflictCheckExecutor conflict check executor} is configured, the per-transaction
+ * conflict checks performed after each new version is committed are spread across that executor whenever the number of
+ * open transactions reaches the {@linkplain #setParallelConflictCheckThreshold parallel conflict check threshold}.
+ *
  * @see AtomicKVDatabase
  */
 @ThreadSafe
@@ -55,6 +81,15 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
 
 // Locking order: (1) SnapshotKVTransaction, (2) SnapshotKVDatabase, (3) MutableView
 
+    /**
+     * Default minimum number of open transactions required before conflict checks are
+     * spread across the {@linkplain #setConflictCheckExecutor conflict check executor}
+     * ({@value #DEFAULT_PARALLEL_CONFLICT_CHECK_THRESHOLD}).
+     *
+     * @see #setParallelConflictCheckThreshold
+     */
+    public static final int DEFAULT_PARALLEL_CONFLICT_CHECK_THRESHOLD = 64;
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
 /*
@@ -71,6 +106,11 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
    and replaced with a new snapshot of the key/value store, and the MutableView's associated with all other open
    (and non-conflicting) transactions are updated with the new snapshot.
 
+   When group commit is enabled, committed transactions are removed from this.transactions and added to
+   this.pendingGroup. At most one group (this.flushingGroup) is being written to the key/value store at any time,
+   and this is done without holding the lock on this instance. Until that write completes, this.snapshot (and
+   this.currentVersion) continue to reflect the prior version.
+
 */
 
     @GuardedBy("this")
@@ -88,6 +128,16 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
     private boolean started;
     @GuardedBy("this")
     private boolean stopping;
+    @GuardedBy("this")
+    private boolean groupCommit;
+    @GuardedBy("this")
+    private CommitGroup pendingGroup;                                       // group accumulating new commits
+    @GuardedBy("this")
+    private CommitGroup flushingGroup;                                      // group being written to the kvstore
+    @GuardedBy("this")
+    private ExecutorService conflictCheckExecutor;
+    @GuardedBy("this")
+    private int parallelConflictCheckThreshold = DEFAULT_PARALLEL_CONFLICT_CHECK_THRESHOLD;
 
 // Constructors
 
@@ -143,6 +193,92 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         return this.currentVersion;
     }
 
+    /**
+     * Determine whether group commit is enabled.
+     *
+     * @return true if group commit is enabled
+     */
+    public synchronized boolean isGroupCommit() {
+        return this.groupCommit;
+    }
+
+    /**
+     * Configure whether to enable group commit.
+     *
+     * <p>
+     * When enabled, the mutations of concurrently committing, non-conflicting transactions are merged and applied
+     * to the underlying {@link AtomicKVStore} via a single {@link AtomicKVStore#mutate mutate()} call, and therefore a single
+     * sync. This increases commit throughput when many transactions commit concurrently, at the cost of a small
+     * amount of additional overhead when they don't.
+     *
+     * <p>
+     * Default is false.
+     *
+     * @param groupCommit true to enable group commit
+     * @throws IllegalStateException if this instance is already started
+     */
+    public synchronized void setGroupCommit(boolean groupCommit) {
+        Preconditions.checkState(!this.started, "already started");
+        this.groupCommit = groupCommit;
+    }
+
+    /**
+     * Get the {@link ExecutorService} used to perform conflict checks in parallel, if any.
+     *
+     * @return conflict check executor, or null if conflict checks are always performed by the committing thread
+     */
+    public synchronized ExecutorService getConflictCheckExecutor() {
+        return this.conflictCheckExecutor;
+    }
+
+    /**
+     * Configure an {@link ExecutorService} used to perform conflict checks in parallel.
+     *
+     * <p>
+     * Each time a new version is committed, every open transaction must be checked for conflicts with the newly
+     * committed writes. If this property is set and the number of open transactions is at least the
+     * {@linkplain #setParallelConflictCheckThreshold parallel conflict check threshold}, these checks are
+     * divided among tasks submitted to the given executor.
+     *
+     * <p>
+     * The given executor is not shutdown by {@link #stop}.
+     *
+     * <p>
+     * Default is null, meaning all conflict checks are performed by the committing thread.
+     *
+     * @param conflictCheckExecutor conflict check executor, or null for none
+     */
+    public synchronized void setConflictCheckExecutor(ExecutorService conflictCheckExecutor) {
+        this.conflictCheckExecutor = conflictCheckExecutor;
+    }
+
+    /**
+     * Get the minimum number of open transactions required to perform conflict checks in parallel.
+     *
+     * @return parallel conflict check threshold
+     */
+    public synchronized int getParallelConflictCheckThreshold() {
+        return this.parallelConflictCheckThreshold;
+    }
+
+    /**
+     * Configure the minimum number of open transactions required to perform conflict checks in parallel.
+     * This is also the number of transactions checked by each parallel task.
+     *
+     * <p>
+     * This property has no effect unless a {@linkplain #setConflictCheckExecutor conflict check executor} is configured.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_PARALLEL_CONFLICT_CHECK_THRESHOLD}.
+     *
+     * @param parallelConflictCheckThreshold parallel conflict check threshold
+     * @throws IllegalArgumentException if {@code parallelConflictCheckThreshold} is less than one
+     */
+    public synchronized void setParallelConflictCheckThreshold(int parallelConflictCheckThreshold) {
+        Preconditions.checkArgument(parallelConflictCheckThreshold > 0, "parallelConflictCheckThreshold <= 0");
+        this.parallelConflictCheckThreshold = parallelConflictCheckThreshold;
+    }
+
 // KVDatabase
 
     @Override
@@ -173,6 +309,7 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         // Finish up
         synchronized (this) {
             assert this.started;
+            this.waitForCommitGroups();
             if (this.snapshot != null) {
                 this.snapshot.unref();
                 this.snapshot = null;
@@ -216,6 +353,56 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         return tx;
     }
 
+// Bulk Loading
+
+    /**
+     * Load a sorted stream of key/value pairs directly into the underlying {@link AtomicKVStore}, bypassing
+     * transactions and conflict checking entirely.
+     *
+     * <p>
+     * This is intended for initial imports and restores. There must be no open transactions; new transactions
+     * will block until the load completes. Upon completion, the database version is advanced and any key watches
+     * are triggered.
+     *
+     * @param pairs key/value pairs in strictly increasing key order
+     * @return the number of key/value pairs loaded
+     * @throws IllegalArgumentException if {@code pairs} is null
+     * @throws IllegalArgumentException if the keys in {@code pairs} are not strictly increasing
+     * @throws IllegalStateException if not {@link #start}ed, {@link #stop}ing, or there are open transactions
+     * @see AtomicKVStore#bulkLoad
+     */
+    public synchronized long bulkLoad(Iterator<KVPair> pairs) {
+
+        // Sanity check
+        Preconditions.checkArgument(pairs != null, "null pairs");
+        Preconditions.checkState(this.started, "not started");
+        Preconditions.checkState(!this.stopping, "stopping");
+        this.waitForCommitGroups();
+        Preconditions.checkState(this.transactions.isEmpty(),
+          "bulk load requires no open transactions (" + this.transactions.size() + " open)");
+
+        // Load data
+        if (this.log.isDebugEnabled())
+            this.log.debug("starting bulk load at version " + this.currentVersion);
+        final long count;
+        try {
+            count = this.kvstore.bulkLoad(pairs);
+        } finally {
+
+            // Discard the obsolete snapshot and advance the database version
+            if (this.snapshot != null) {
+                this.snapshot.unref();
+                this.snapshot = null;
+            }
+            this.currentVersion++;
+            if (this.keyWatchTracker != null)
+                this.keyWatchTracker.triggerAll();
+        }
+        if (this.log.isDebugEnabled())
+            this.log.debug("bulk loaded " + count + " key/value pairs, now at version " + this.currentVersion);
+        return count;
+    }
+
 // Key Watches
 
     synchronized ListenableFuture<Void> watchKey(byte[] key) {
@@ -233,6 +420,7 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
           + "[kvstore=" + this.kvstore
           + ",started=" + this.started
           + ",currentVersion=" + this.currentVersion
+          + (this.groupCommit ? ",groupCommit" : "")
           + "]";
     }
 
@@ -299,14 +487,19 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
     /**
      * Commit a transaction.
      */
-    synchronized void commit(SnapshotKVTransaction tx, boolean readOnly) {
+    void commit(SnapshotKVTransaction tx, boolean readOnly) {
         assert Thread.holdsLock(tx);
-        try {
-            this.doCommit(tx, readOnly);
-        } finally {
-            tx.error = null;                                // from this point on, throw a StaleTransactionException if accessed
-            this.cleanupTransaction(tx);
+        final CommitGroup group;
+        synchronized (this) {
+            try {
+                group = this.doCommit(tx, readOnly);
+            } finally {
+                tx.error = null;                            // from this point on, throw a StaleTransactionException if accessed
+                this.cleanupTransaction(tx);
+            }
         }
+        if (group != null)
+            this.awaitCommitGroup(tx, group);
     }
 
     /**
@@ -331,7 +524,8 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
 
 // Internal methods
 
-    private synchronized void doCommit(SnapshotKVTransaction tx, boolean readOnly) {
+    // Returns the commit group that tx was added to, or null if tx has already been fully committed
+    private CommitGroup doCommit(SnapshotKVTransaction tx, boolean readOnly) {
 
         // Sanity checks
         assert Thread.holdsLock(tx);
@@ -352,8 +546,10 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         assert this.snapshot != null;
 
         // Grab transaction reads & writes, set to immutable
+        final Reads txReads;
         final Writes txWrites;
         synchronized (tx.view) {
+            txReads = tx.view.getReads();
             txWrites = tx.getMutableView().getWrites();
             tx.view.disableReadTracking();
             tx.view.setReadOnly();
@@ -363,9 +559,13 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         if (readOnly || txWrites.isEmpty()) {
             if (this.log.isTraceEnabled())
                 this.log.trace("no mutations in " + tx + ", staying at version " + this.currentVersion);
-            return;
+            return null;
         }
 
+        // Handle group commit
+        if (this.groupCommit)
+            return this.joinCommitGroup(tx, txReads, txWrites);
+
         // Apply the transaction's mutations
         if (this.log.isTraceEnabled()) {
             this.log.trace("applying " + tx + " mutations and advancing version from "
@@ -373,46 +573,32 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         }
         this.kvstore.mutate(txWrites, true);
 
+        // Advance the database version
+        this.advanceVersion(txWrites, tx);
+        return null;
+    }
+
+    // Advance to the next version, after the given mutations have been applied to the underlying kvstore
+    private void advanceVersion(Writes writes, Object committer) {
+        assert Thread.holdsLock(this);
+
         // Discard the obsolete snapshot and advance the database version
         final SnapshotRefs oldSnapshot = this.snapshot;
         this.snapshot = null;
         this.currentVersion++;
 
         // Check concurrent transactions and invalidate any that have conflicts, or rebase them on the new version
+        final KVStore newSnapshot = this.getCurrentSnapshot().getKVStore();
+        final ArrayList<SnapshotKVTransaction> victims = new ArrayList<>(this.transactions);
+        final boolean[] conflicts = this.checkConflicts(victims, writes, committer, newSnapshot);
         int numTx = this.transactions.size();                                                       // only used for logging
-        for (Iterator<SnapshotKVTransaction> i = this.transactions.iterator(); i.hasNext(); ) {
-            final SnapshotKVTransaction victim = i.next();
-            assert victim.error == null;
-            synchronized (victim.view) {
-
-                // Check for conflict
-                final boolean conflict = victim.view.getReads().isConflict(txWrites);
-                if (this.log.isTraceEnabled()) {
-                    this.log.trace("ordering " + victim + " after " + tx + " writes in version " + this.currentVersion
-                      + " results in " + (conflict ? "" : "no ") + "conflict");
-//                    if (conflict)
-//                        this.log.trace("conflicts: {}", victim.view.getReads().getConflicts(txWrites));
-                }
-                if (conflict) {
-
-                    // Mark transaction for failure
-                    i.remove();
-                    victim.error = new RetryTransactionException(victim, "transaction is based on version "
-                      + victim.baseVersion + " but the transaction committed at version "
-                      + this.currentVersion + " contains conflicting writes");
-                    if (this.log.isTraceEnabled())
-                        this.log.trace("removed conflicting transaction " + victim + " (new total " + --numTx + ")");
-
-                    // This looks weird. What it's really doing is ensuring that any subsequent attempt to access the
-                    // data in the transaction via iterators that have already been created will "fail fast" and throw the
-                    // RetryTransactionException created above. This happens because those accesses go through victim.delegate().
-                    victim.view.setKVStore(victim);
-                    continue;
-                }
-
-                // There was no conflict, so we can safely "rebase" this transaction on the new snapshot
-                victim.view.setKVStore(this.getCurrentSnapshot().getKVStore());
-            }
+        for (int i = 0; i < conflicts.length; i++) {
+            if (!conflicts[i])
+                continue;
+            final SnapshotKVTransaction victim = victims.get(i);
+            this.transactions.remove(victim);
+            if (this.log.isTraceEnabled())
+                this.log.trace("removed conflicting transaction " + victim + " (new total " + --numTx + ")");
         }
 
         // Close the old snapshot (but only after rebasing remaining transactions)
@@ -420,7 +606,234 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
 
         // Notify watches
         if (this.keyWatchTracker != null)
-            this.keyWatchTracker.trigger(txWrites);
+            this.keyWatchTracker.trigger(writes);
+    }
+
+    // Check victims for conflicts, using the conflict check executor if appropriate
+    private boolean[] checkConflicts(List<SnapshotKVTransaction> victims,
+      Writes writes, Object committer, KVStore newSnapshot) {
+        assert Thread.holdsLock(this);
+
+        // Check sequentially if there is no executor or not enough transactions
+        final boolean[] conflicts = new boolean[victims.size()];
+        if (this.conflictCheckExecutor == null || victims.size() < this.parallelConflictCheckThreshold) {
+            for (int i = 0; i < conflicts.length; i++)
+                conflicts[i] = this.checkConflict(victims.get(i), writes, committer, newSnapshot);
+            return conflicts;
+        }
+
+        // Divide the victims among parallel tasks; each task updates its own portion of the array
+        final int chunkSize = this.parallelConflictCheckThreshold;
+        final List<List<SnapshotKVTransaction>> chunks = Lists.partition(victims, chunkSize);
+        final ArrayList<Callable<Void>> tasks = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            final List<SnapshotKVTransaction> chunk = chunks.get(i);
+            final int offset = i * chunkSize;
+            tasks.add(() -> {
+                for (int j = 0; j < chunk.size(); j++)
+                    conflicts[offset + j] = this.checkConflict(chunk.get(j), writes, committer, newSnapshot);
+                return null;
+            });
+        }
+        if (this.log.isTraceEnabled())
+            this.log.trace("checking " + victims.size() + " transactions for conflicts using " + tasks.size() + " tasks");
+
+        // Run tasks and wait for them to complete
+        boolean interrupted = false;
+        try {
+            List<Future<Void>> futures = null;
+            while (futures == null) {
+                try {
+                    futures = this.conflictCheckExecutor.invokeAll(tasks);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            for (Future<Void> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        final Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException)
+                            throw (RuntimeException)cause;
+                        if (cause instanceof Error)
+                            throw (Error)cause;
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        return conflicts;
+    }
+
+    // Check one victim for conflicts and either mark it for failure or rebase it on the new snapshot
+    private boolean checkConflict(SnapshotKVTransaction victim, Writes writes, Object committer, KVStore newSnapshot) {
+        assert victim.error == null;
+        synchronized (victim.view) {
+
+            // Check for conflict
+            final boolean conflict = victim.view.getReads().isConflict(writes);
+            if (this.log.isTraceEnabled()) {
+                this.log.trace("ordering " + victim + " after " + committer + " writes in version " + this.currentVersion
+                  + " results in " + (conflict ? "" : "no ") + "conflict");
+//                if (conflict)
+//                    this.log.trace("conflicts: {}", victim.view.getReads().getConflicts(writes));
+            }
+            if (conflict) {
+
+                // Mark transaction for failure
+                victim.error = new RetryTransactionException(victim, "transaction is based on version "
+                  + victim.baseVersion + " but the transaction committed at version "
+                  + this.currentVersion + " contains conflicting writes");
+
+                // This looks weird. What it's really doing is ensuring that any subsequent attempt to access the
+                // data in the transaction via iterators that have already been created will "fail fast" and throw the
+                // RetryTransactionException created above. This happens because those accesses go through victim.delegate().
+                victim.view.setKVStore(victim);
+                return true;
+            }
+
+            // There was no conflict, so we can safely "rebase" this transaction on the new snapshot
+            victim.view.setKVStore(newSnapshot);
+            return false;
+        }
+    }
+
+// Group commit
+
+    // Validate tx against the writes of groups not yet committed, then add it to the pending group
+    private CommitGroup joinCommitGroup(SnapshotKVTransaction tx, Reads txReads, Writes txWrites) {
+        assert Thread.holdsLock(this);
+        assert this.groupCommit;
+
+        // Check for conflicts with transactions that are ordered before tx but not yet committed
+        for (CommitGroup group : new CommitGroup[] { this.flushingGroup, this.pendingGroup }) {
+            if (group != null && txReads.isConflict(group.writes)) {
+
+                // Wait for the conflicting group to be written, so a retry will see its writes and not fail the same way
+                this.waitForCommitGroup(group);
+                throw this.logException(new RetryTransactionException(tx, "transaction is based on version "
+                  + tx.baseVersion + " but conflicts with " + group + " committed concurrently"));
+            }
+        }
+
+        // Add tx to the pending group
+        if (this.pendingGroup == null)
+            this.pendingGroup = new CommitGroup(this.kvstore);
+        this.pendingGroup.add(txWrites);
+        if (this.log.isTraceEnabled())
+            this.log.trace("added " + tx + " to " + this.pendingGroup);
+        return this.pendingGroup;
+    }
+
+    // Wait for the group containing tx to be committed, writing the group ourselves if it's our turn
+    private void awaitCommitGroup(SnapshotKVTransaction tx, CommitGroup group) {
+        assert !Thread.holdsLock(this);
+        boolean interrupted = false;
+        try {
+            while (true) {
+
+                // Wait until our group is done or it's our group's turn to be written
+                final AtomicKVStore groupKVStore;
+                synchronized (this) {
+                    if (group.done)
+                        break;
+                    if (this.flushingGroup != null || this.pendingGroup != group) {
+                        try {
+                            this.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                        continue;
+                    }
+
+                    // Start writing our group; new commits will go into the next group
+                    this.pendingGroup = null;
+                    this.flushingGroup = group;
+                    this.getCurrentSnapshot();                  // ensure new transactions are based on the current version
+                    groupKVStore = this.kvstore;
+                }
+
+                // Apply the group's mutations without holding the lock
+                if (this.log.isTraceEnabled())
+                    this.log.trace("applying mutations for " + group);
+                RuntimeException failure = null;
+                try {
+                    groupKVStore.mutate(group.writes, true);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+
+                // Advance the database version and wake up the group's other members
+                synchronized (this) {
+                    assert this.flushingGroup == group;
+                    try {
+                        if (failure == null) {
+                            if (this.log.isTraceEnabled()) {
+                                this.log.trace("applied mutations for " + group + ", advancing version from "
+                                  + this.currentVersion + " -> " + (this.currentVersion + 1));
+                            }
+                            this.advanceVersion(group.writes, group);
+                        }
+                    } finally {
+                        group.done = true;
+                        group.failure = failure;
+                        group.leader = tx;
+                        this.flushingGroup = null;
+                        this.notifyAll();
+                    }
+                }
+                break;
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        // Check for failure
+        if (group.failure != null) {
+            if (group.leader == tx)
+                throw group.failure;
+            throw this.logException(new KVTransactionException(tx, "commit of " + group + " failed: " + group.failure,
+              group.failure));
+        }
+    }
+
+    // Wait for the given commit group to be written
+    private void waitForCommitGroup(CommitGroup group) {
+        assert Thread.holdsLock(this);
+        boolean interrupted = false;
+        while (!group.done) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // Wait for any outstanding commit groups to be written
+    private void waitForCommitGroups() {
+        assert Thread.holdsLock(this);
+        boolean interrupted = false;
+        while (this.flushingGroup != null || this.pendingGroup != null) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
     }
 
     private void cleanupTransaction(SnapshotKVTransaction tx) {
@@ -445,5 +858,37 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         }
         return this.snapshot;
     }
-}
 
+// CommitGroup
+
+    // A group of non-conflicting transactions whose mutations are committed together
+    private static final class CommitGroup {
+
+        private static final AtomicLong COUNTER = new AtomicLong();
+
+        final long uniqueId = COUNTER.incrementAndGet();
+        final Writes writes = new Writes();
+        final MutableView merger;
+        int size;
+
+        // The following fields are guarded by the SnapshotKVDatabase
+        boolean done;
+        RuntimeException failure;
+        SnapshotKVTransaction leader;
+
+        CommitGroup(KVStore kvstore) {
+            this.merger = new MutableView(kvstore, null, this.writes);
+        }
+
+        // Merge in transaction's mutations; these are ordered after those already in the group
+        void add(Writes txWrites) {
+            Writes.apply(txWrites, this.merger);
+            this.size++;
+        }
+
+        @Override
+        public String toString() {
+            return "commit group #" + this.uniqueId + " (" + this.size + " transaction(s))";
+        }
+    }
+}
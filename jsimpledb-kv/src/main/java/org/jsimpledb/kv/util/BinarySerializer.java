@@ -0,0 +1,568 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Futures;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.mvcc.AtomicKVStore;
+import org.jsimpledb.util.CloseableIterator;
+import org.jsimpledb.util.LongEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Utility methods for serializing and deserializing the contents of a {@link KVStore} to/from a compact binary stream.
+ *
+ * <p>
+ * This is a faster and much more compact alternative to {@link XMLSerializer}, intended for dumping and reloading
+ * large databases. The format is:
+ *  <ul>
+ *  <li>A header consisting of the four bytes {@code "JSKV"}, a format version byte, and a flags byte</li>
+ *  <li>Zero or more blocks, each consisting of:
+ *      <ul>
+ *      <li>The number of key/value pairs in the block (non-zero), encoded via {@link UnsignedIntEncoder}</li>
+ *      <li>The uncompressed length of the block payload, encoded via {@link UnsignedIntEncoder}</li>
+ *      <li>The stored length of the block payload, encoded via {@link UnsignedIntEncoder}</li>
+ *      <li>The CRC-32 of the uncompressed block payload, as a four byte big-endian value</li>
+ *      <li>The block payload, consisting of each key encoded via {@link KeyListEncoder} (relative to the previous
+ *          key in the same block) followed by its value, and compressed via {@link Deflater} if compression is enabled</li>
+ *      </ul>
+ *  </li>
+ *  <li>A zero byte, followed by the total number of key/value pairs encoded via {@link LongEncoder}</li>
+ *  </ul>
+ *
+ * <p>
+ * Because blocks are independent, encoding and compression (when writing) and decompression and decoding (when reading)
+ * may be performed by multiple threads; see {@link #setThreads setThreads()}. Blocks are always written and applied in order.
+ *
+ * <p>
+ * When reading into an {@link AtomicKVStore}, the key/value pairs are loaded via {@link AtomicKVStore#bulkLoad bulkLoad()}.
+ * Otherwise, key/value pairs are simply {@link KVStore#put put()}. The decoded key/value pairs are also available
+ * directly via {@link #readPairs readPairs()}.
+ */
+public class BinarySerializer {
+
+    /**
+     * Format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Default approximate uncompressed block size in bytes ({@value #DEFAULT_BLOCK_SIZE}).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final byte[] MAGIC = new byte[] { (byte)'J', (byte)'S', (byte)'K', (byte)'V' };
+    private static final int FLAG_COMPRESSED = 0x01;
+
+    private final KVStore kv;
+
+    private boolean compress = true;
+    private int threads = 1;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param kv key/value store on which to operate
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public BinarySerializer(KVStore kv) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        this.kv = kv;
+    }
+
+// Properties
+
+    /**
+     * Get whether block payloads are compressed when writing.
+     *
+     * <p>
+     * Default is true.
+     *
+     * @return true if output is compressed
+     */
+    public boolean isCompress() {
+        return this.compress;
+    }
+
+    /**
+     * Set whether block payloads are compressed when writing.
+     *
+     * @param compress true to compress output
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Get the number of threads used to encode or decode blocks.
+     *
+     * <p>
+     * Default is 1, meaning all work is done in the calling thread.
+     *
+     * @return number of worker threads
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Set the number of threads used to encode or decode blocks.
+     *
+     * @param threads number of worker threads
+     * @throws IllegalArgumentException if {@code threads} is less than one
+     */
+    public void setThreads(int threads) {
+        Preconditions.checkArgument(threads >= 1, "threads < 1");
+        this.threads = threads;
+    }
+
+    /**
+     * Get the approximate uncompressed block size in bytes used when writing.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_BLOCK_SIZE}.
+     *
+     * @return approximate block size
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Set the approximate uncompressed block size in bytes used when writing.
+     *
+     * @param blockSize approximate block size
+     * @throws IllegalArgumentException if {@code blockSize} is not positive
+     */
+    public void setBlockSize(int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize <= 0");
+        this.blockSize = blockSize;
+    }
+
+// Reading
+
+    /**
+     * Import key/value pairs into the {@link KVStore} associated with this instance from the given binary input.
+     *
+     * <p>
+     * The {@code input} is not closed by this method.
+     *
+     * @param input binary input
+     * @return the number of key/value pairs read
+     * @throws IOException if an I/O error occurs
+     * @throws java.io.EOFException if the input is truncated
+     * @throws IllegalArgumentException if {@code input} is null
+     * @throws IllegalArgumentException if {@code input} contains invalid data or a checksum mismatch is detected
+     */
+    public long read(InputStream input) throws IOException {
+        Preconditions.checkArgument(input != null, "null input");
+        try (CloseableIterator<KVPair> i = BinarySerializer.readPairs(input, this.threads)) {
+            if (this.kv instanceof AtomicKVStore)
+                return ((AtomicKVStore)this.kv).bulkLoad(i);
+            long count = 0;
+            while (i.hasNext()) {
+                final KVPair pair = i.next();
+                this.kv.put(pair.getKey(), pair.getValue());
+                count++;
+            }
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Decode the key/value pairs in the given binary input without applying them to any {@link KVStore}.
+     *
+     * <p>
+     * The header is read immediately; the remainder of the input is read on demand during iteration,
+     * with up to {@code threads} blocks being decompressed and decoded concurrently.
+     * If an {@link IOException} occurs during iteration, the returned iterator throws an {@link UncheckedIOException};
+     * if invalid input is encountered, it throws an {@link IllegalArgumentException}.
+     *
+     * <p>
+     * The returned iterator must be {@link CloseableIterator#close close()}'d when no longer needed;
+     * the {@code input} itself is not closed.
+     *
+     * @param input binary input
+     * @param threads number of threads used to decode blocks
+     * @return iteration of key/value pairs in the order written
+     * @throws IOException if an I/O error occurs reading the header
+     * @throws IllegalArgumentException if {@code input} is null or {@code threads} is less than one
+     * @throws IllegalArgumentException if {@code input} does not contain a valid header
+     */
+    public static CloseableIterator<KVPair> readPairs(InputStream input, int threads) throws IOException {
+        Preconditions.checkArgument(input != null, "null input");
+        Preconditions.checkArgument(threads >= 1, "threads < 1");
+        final DataInputStream data = new DataInputStream(input);
+
+        // Read header
+        final byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IllegalArgumentException("input does not contain binary key/value data (invalid header)");
+        final int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION)
+            throw new IllegalArgumentException("unsupported binary key/value format version " + version);
+        final int flags = data.readUnsignedByte();
+        if ((flags & ~FLAG_COMPRESSED) != 0)
+            throw new IllegalArgumentException(String.format("invalid binary key/value format flags 0x%02x", flags));
+
+        // Return iterator
+        return new BlockIterator(data, (flags & FLAG_COMPRESSED) != 0, threads);
+    }
+
+    private static List<KVPair> decodeBlock(int blockNum, int numPairs, int rawLength, int crc, boolean compressed, byte[] payload)
+      throws IOException {
+
+        // Decompress
+        byte[] raw = payload;
+        if (compressed) {
+            raw = new byte[rawLength];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(payload);
+                int len = 0;
+                while (len < rawLength && !inflater.finished()) {
+                    final int r = inflater.inflate(raw, len, rawLength - len);
+                    if (r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    len += r;
+                }
+                if (len != rawLength || !inflater.finished())
+                    throw new IllegalArgumentException("block #" + blockNum + " decompressed length mismatch");
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("block #" + blockNum + " contains invalid compressed data", e);
+            } finally {
+                inflater.end();
+            }
+        } else if (payload.length != rawLength)
+            throw new IllegalArgumentException("block #" + blockNum + " length mismatch");
+
+        // Verify checksum
+        final CRC32 crc32 = new CRC32();
+        crc32.update(raw);
+        if ((int)crc32.getValue() != crc)
+            throw new IllegalArgumentException("block #" + blockNum + " checksum mismatch");
+
+        // Decode key/value pairs
+        final ArrayList<KVPair> pairs = new ArrayList<>(numPairs);
+        final ByteArrayInputStream in = new ByteArrayInputStream(raw);
+        byte[] prev = null;
+        for (int i = 0; i < numPairs; i++) {
+            final byte[] key = KeyListEncoder.read(in, prev);
+            final byte[] value = KeyListEncoder.read(in, null);
+            pairs.add(new KVPair(key, value));
+            prev = key;
+        }
+        if (in.available() != 0)
+            throw new IllegalArgumentException("block #" + blockNum + " contains trailing garbage");
+        return pairs;
+    }
+
+// Writing
+
+    /**
+     * Export all key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     *
+     * @param output binary output
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public long write(OutputStream output) throws IOException {
+        return this.write(output, null, null);
+    }
+
+    /**
+     * Export a range of key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     *
+     * @param output binary output
+     * @param minKey minimum key (inclusive), or null for none
+     * @param maxKey maximum key (exclusive), or null for none
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public long write(OutputStream output, byte[] minKey, byte[] maxKey) throws IOException {
+        Preconditions.checkArgument(output != null, "null output");
+        final boolean compressed = this.compress;
+        final int maxBlockSize = this.blockSize;
+
+        // Write header
+        output.write(MAGIC);
+        output.write(FORMAT_VERSION);
+        output.write(compressed ? FLAG_COMPRESSED : 0);
+
+        // Gather key/value pairs into blocks, encoding them in parallel (if configured) and writing them in order
+        final Pipeline<byte[]> pipeline = new Pipeline<>(this.threads);
+        try {
+            long count = 0;
+            try (CloseableIterator<KVPair> i = this.kv.getRange(minKey, maxKey)) {
+                ArrayList<KVPair> block = new ArrayList<>();
+                long blockBytes = 0;
+                while (i.hasNext()) {
+                    final KVPair pair = i.next();
+                    block.add(pair);
+                    blockBytes += pair.getKey().length + pair.getValue().length + 4;
+                    count++;
+                    if (blockBytes >= maxBlockSize) {
+                        this.writeBlock(pipeline, block, compressed, output);
+                        block = new ArrayList<>();
+                        blockBytes = 0;
+                    }
+                }
+                if (!block.isEmpty())
+                    this.writeBlock(pipeline, block, compressed, output);
+            }
+            for (byte[] encoded; (encoded = pipeline.next()) != null; )
+                output.write(encoded);
+
+            // Write trailer
+            output.write(0);
+            LongEncoder.write(output, count);
+            return count;
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private void writeBlock(Pipeline<byte[]> pipeline, ArrayList<KVPair> pairs, boolean compressed, OutputStream output)
+      throws IOException {
+        pipeline.submit(() -> BinarySerializer.encodeBlock(pairs, compressed));
+        while (pipeline.size() > pipeline.getMaxPending())
+            output.write(pipeline.next());
+    }
+
+    private static byte[] encodeBlock(ArrayList<KVPair> pairs, boolean compressed) throws IOException {
+
+        // Encode key/value pairs
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] prev = null;
+        for (KVPair pair : pairs) {
+            final byte[] key = pair.getKey();
+            KeyListEncoder.write(buf, key, prev);
+            KeyListEncoder.write(buf, pair.getValue(), null);
+            prev = key;
+        }
+        final byte[] raw = buf.toByteArray();
+
+        // Compute checksum
+        final CRC32 crc32 = new CRC32();
+        crc32.update(raw);
+
+        // Compress
+        byte[] payload = raw;
+        if (compressed) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                buf.reset();
+                final byte[] chunk = new byte[Math.max(64, Math.min(raw.length, 64 * 1024))];
+                while (!deflater.finished())
+                    buf.write(chunk, 0, deflater.deflate(chunk));
+                payload = buf.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        // Build framed block
+        buf.reset();
+        final DataOutputStream out = new DataOutputStream(buf);
+        UnsignedIntEncoder.write(out, pairs.size());
+        UnsignedIntEncoder.write(out, raw.length);
+        UnsignedIntEncoder.write(out, payload.length);
+        out.writeInt((int)crc32.getValue());
+        out.write(payload);
+        out.flush();
+        return buf.toByteArray();
+    }
+
+// BlockIterator
+
+    private static class BlockIterator extends AbstractIterator<KVPair> implements CloseableIterator<KVPair> {
+
+        private final DataInputStream data;
+        private final boolean compressed;
+        private final Pipeline<List<KVPair>> pipeline;
+
+        private Iterator<KVPair> block = Collections.<KVPair>emptyIterator();
+        private int blockNum;
+        private long count;
+        private boolean eof;
+
+        BlockIterator(DataInputStream data, boolean compressed, int threads) {
+            this.data = data;
+            this.compressed = compressed;
+            this.pipeline = new Pipeline<>(threads);
+        }
+
+        @Override
+        protected KVPair computeNext() {
+            try {
+                while (!this.block.hasNext()) {
+
+                    // Keep the pipeline full by reading ahead
+                    while (!this.eof && this.pipeline.size() <= this.pipeline.getMaxPending())
+                        this.readBlock();
+
+                    // Get next block in order
+                    final List<KVPair> pairs = this.pipeline.next();
+                    if (pairs == null) {
+                        this.close();
+                        return this.endOfData();
+                    }
+                    this.block = pairs.iterator();
+                }
+            } catch (IOException e) {
+                this.close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                this.close();
+                throw e;
+            }
+            return this.block.next();
+        }
+
+        private void readBlock() throws IOException {
+            final int numPairs = UnsignedIntEncoder.read(this.data);
+            if (numPairs == 0) {
+                final long expectedCount = LongEncoder.read(this.data);
+                if (expectedCount != this.count) {
+                    throw new IllegalArgumentException("read " + this.count
+                      + " key/value pairs but trailer indicates " + expectedCount);
+                }
+                this.eof = true;
+                return;
+            }
+            final int rawLength = UnsignedIntEncoder.read(this.data);
+            final int storedLength = UnsignedIntEncoder.read(this.data);
+            final int crc = this.data.readInt();
+            final byte[] payload = new byte[storedLength];
+            this.data.readFully(payload);
+            final int num = this.blockNum++;
+            final boolean inflate = this.compressed;
+            this.pipeline.submit(() -> BinarySerializer.decodeBlock(num, numPairs, rawLength, crc, inflate, payload));
+            this.count += numPairs;
+        }
+
+        @Override
+        public void close() {
+            this.pipeline.shutdown();
+        }
+    }
+
+// Pipeline
+
+    /**
+     * Runs block tasks, possibly in parallel, while returning their results in submission order.
+     * With only one thread, tasks are simply executed inline.
+     */
+    private static class Pipeline<T> {
+
+        private final ExecutorService executor;
+        private final int maxPending;
+        private final ArrayDeque<Future<T>> pending = new ArrayDeque<>();
+
+        Pipeline(int threads) {
+            this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+            this.maxPending = threads > 1 ? threads * 2 : 0;
+        }
+
+        /**
+         * Get the number of outstanding tasks beyond which callers should consume results before submitting more.
+         */
+        int getMaxPending() {
+            return this.maxPending;
+        }
+
+        int size() {
+            return this.pending.size();
+        }
+
+        void submit(Callable<T> task) throws IOException {
+            this.pending.add(this.executor != null ? this.executor.submit(task) : Futures.immediateFuture(this.call(task)));
+        }
+
+        /**
+         * Wait for and return the oldest outstanding result, or null if there are none.
+         */
+        T next() throws IOException {
+            final Future<T> future = this.pending.poll();
+            if (future == null)
+                return null;
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException)cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                throw new RuntimeException(cause);
+            }
+        }
+
+        void shutdown() {
+            this.pending.forEach(future -> future.cancel(true));
+            this.pending.clear();
+            if (this.executor != null)
+                this.executor.shutdownNow();
+        }
+
+        private T call(Callable<T> task) throws IOException {
+            try {
+                return task.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@
 
 package org.jsimpledb.kv.util;
 
+import java.util.List;
+
 import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.util.CloseableIterator;
@@ -28,6 +30,11 @@ public abstract class ForwardingKVStore implements KVStore {
         return this.delegate().get(key);
     }
 
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        return this.delegate().getMulti(keys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         return this.delegate().getAtLeast(minKey, maxKey);
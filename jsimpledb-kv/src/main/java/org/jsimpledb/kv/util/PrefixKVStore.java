@@ -6,9 +6,12 @@
 package org.jsimpledb.kv.util;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.primitives.Bytes;
 
+import java.util.List;
+
 import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.util.ByteUtil;
@@ -68,6 +71,12 @@ public abstract class PrefixKVStore extends ForwardingKVStore {
         return this.delegate().get(this.addPrefix(key));
     }
 
+    @Override
+    public List<byte[]> getMulti(Iterable<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        return this.delegate().getMulti(Iterables.transform(keys, this::addPrefix));
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         final KVPair pair = this.delegate().getAtLeast(this.addMinPrefix(minKey), this.addMaxPrefix(maxKey));
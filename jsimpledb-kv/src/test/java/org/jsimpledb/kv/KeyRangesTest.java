@@ -5,6 +5,8 @@
 
 package org.jsimpledb.kv;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -298,6 +300,73 @@ public class KeyRangesTest extends KeyRangeTestSupport {
         return paramsList.toArray(new Object[paramsList.size()][]);
     }
 
+///////////// Packed
+
+    @Test(dataProvider = "KeyRanges")
+    public void testPacked(KeyRanges ranges) throws Exception {
+
+        // Create packed versions via immutableSnapshot() and deserialization
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ranges.serialize(output);
+        final byte[] bytes = output.toByteArray();
+        final KeyRanges packed1 = ranges.immutableSnapshot();
+        final KeyRanges packed2 = new KeyRanges(new ByteArrayInputStream(bytes), true);
+
+        // Compare packed versions with original
+        for (KeyRanges packed : new KeyRanges[] { packed1, packed2 }) {
+            Assert.assertEquals(packed, ranges);
+            Assert.assertEquals(packed.hashCode(), ranges.hashCode());
+            Assert.assertEquals(packed.size(), ranges.size());
+            Assert.assertEquals(packed.isEmpty(), ranges.isEmpty());
+            Assert.assertEquals(packed.isFull(), ranges.isFull());
+            Assert.assertEquals(packed.getMin(), ranges.getMin());
+            Assert.assertEquals(packed.getMax(), ranges.getMax());
+            Assert.assertEquals(packed.serializedLength(), (long)bytes.length);
+            final ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+            packed.serialize(output2);
+            Assert.assertEquals(output2.toByteArray(), bytes);
+
+            // Compare individual key and range queries
+            final ArrayList<byte[]> keys = new ArrayList<>();
+            final ArrayList<KeyRange> rangeList = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final byte[] key = this.randomBytes(false);
+                final KeyRange range = this.randomKeyRange();
+                keys.add(key);
+                rangeList.add(range);
+                Assert.assertEquals(packed.contains(key), ranges.contains(key), "contains " + s(key) + " in " + ranges);
+                Assert.assertEquals(packed.seekHigher(key), ranges.seekHigher(key), "seekHigher " + s(key) + " in " + ranges);
+                Assert.assertEquals(packed.seekLower(key), ranges.seekLower(key), "seekLower " + s(key) + " in " + ranges);
+                Assert.assertEquals(packed.intersects(range), ranges.intersects(range), "intersects " + range + " in " + ranges);
+            }
+
+            // Compare bulk queries, both unsorted and sorted
+            for (int i = 0; i < 2; i++) {
+                final boolean anyKey = keys.stream().anyMatch(ranges::contains);
+                final boolean anyRange = rangeList.stream().anyMatch(ranges::intersects);
+                Assert.assertEquals(packed.containsAny(keys.iterator()), anyKey);
+                Assert.assertEquals(ranges.containsAny(keys.iterator()), anyKey);
+                Assert.assertEquals(packed.intersectsAny(rangeList.iterator()), anyRange);
+                Assert.assertEquals(ranges.intersectsAny(rangeList.iterator()), anyRange);
+                keys.sort(ByteUtil::compare);
+                rangeList.sort(KeyRange.SORT_BY_MIN);
+            }
+
+            // Check immutability and mutable clone
+            Assert.assertSame(packed.immutableSnapshot(), packed);
+            try {
+                packed.add(KeyRange.FULL);
+                assert false;
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            final KeyRanges clone = packed.clone();
+            clone.add(KeyRange.FULL);
+            Assert.assertTrue(clone.isFull());
+            Assert.assertEquals(packed, ranges);
+        }
+    }
+
 ///////////// Empty
 
     @Test(dataProvider = "empty")
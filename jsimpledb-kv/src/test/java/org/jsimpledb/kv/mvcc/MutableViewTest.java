@@ -7,11 +7,13 @@ package org.jsimpledb.kv.mvcc;
 
 import com.google.common.collect.Lists;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.kv.util.NavigableMapKVStore;
 import org.jsimpledb.kv.util.UnmodifiableKVStore;
@@ -86,6 +88,29 @@ public class MutableViewTest extends TestSupport {
         Assert.assertEquals(mv.getReads(), new Reads(new KeyRanges(min, max)));
     }
 
+    @Test
+    public void testGetMulti() throws Exception {
+        final KVStore kvstore = new NavigableMapKVStore();
+        this.setup(kvstore);
+        final MutableView mv = new MutableView(kvstore);
+        mv.put(KEY_10, VAL_07);
+        mv.put(KEY_20, VAL_02);
+        mv.remove(KEY_40);
+        mv.adjustCounter(KEY_F8, 5);
+        final List<byte[]> keys = Arrays.asList(KEY_00, KEY_10, KEY_20, KEY_40, KEY_60, KEY_F8, KEY_60);
+        final List<byte[]> values = mv.getMulti(keys);
+        Assert.assertEquals(values.size(), keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            Assert.assertEquals(values.get(i), mv.get(keys.get(i)), "wrong value for " + ByteUtil.toString(keys.get(i)));
+        Assert.assertNull(values.get(0));
+        Assert.assertEquals(values.get(2), VAL_02);
+        Assert.assertNull(values.get(3));
+        Assert.assertEquals(values.get(4), VAL_03);
+        Assert.assertEquals(mv.decodeCounter(values.get(5)), 5);
+        Assert.assertEquals(mv.getReads(),
+          new Reads(new KeyRanges(new KeyRange(KEY_00), new KeyRange(KEY_60), new KeyRange(KEY_F8))));
+    }
+
     @Test
     public void testRandomWrites() throws Exception {
         KVStore kvstore = new NavigableMapKVStore();
@@ -11,6 +11,7 @@ import java.io.ByteArrayOutputStream;
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.test.TestSupport;
+import org.jsimpledb.util.ByteUtil;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -30,6 +31,52 @@ public class ReadsTest extends TestSupport {
         Assert.assertEquals(output2.toByteArray(), output.toByteArray());
     }
 
+    @Test
+    public void testConflicts() throws Exception {
+        for (int i = 0; i < 500; i++) {
+
+            // Build random reads
+            final Reads reads = new Reads();
+            final int numReads = this.random.nextInt(20);
+            for (int j = 0; j < numReads; j++)
+                reads.add(this.randomKeyRange());
+
+            // Build random writes
+            final Writes writes = new Writes();
+            final int numRemoves = this.random.nextInt(4);
+            for (int j = 0; j < numRemoves; j++)
+                writes.getRemoves().add(this.randomKeyRange());
+            final int numPuts = this.random.nextInt(6);
+            for (int j = 0; j < numPuts; j++)
+                writes.getPuts().put(this.randomBytes(false), this.randomBytes(false));
+            final int numAdjusts = this.random.nextInt(3);
+            for (int j = 0; j < numAdjusts; j++)
+                writes.getAdjusts().put(this.randomBytes(false), (long)this.random.nextInt(10));
+
+            // Get packed version of reads
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            reads.serialize(output);
+            final Reads packed = new Reads(new ByteArrayInputStream(output.toByteArray()), true);
+            Assert.assertEquals(packed, reads);
+
+            // Compare conflict checks
+            final boolean expected = !reads.getConflicts(writes).isEmpty();
+            Assert.assertEquals(reads.isConflict(writes), expected, "reads " + reads + " writes " + writes);
+            Assert.assertEquals(packed.isConflict(writes), expected, "reads " + reads + " writes " + writes);
+            Assert.assertEquals(packed.isConflict(writes.immutableSnapshot()), expected, "reads " + reads + " writes " + writes);
+            Assert.assertEquals(packed.getConflicts(writes), reads.getConflicts(writes));
+        }
+    }
+
+    private KeyRange randomKeyRange() {
+        while (true) {
+            final byte[] min = this.randomBytes(0, 4, false);
+            final byte[] max = this.randomBytes(0, 4, true);
+            if (max == null || ByteUtil.compare(min, max) <= 0)
+                return new KeyRange(min, max);
+        }
+    }
+
     @DataProvider(name = "ranges")
     private KeyRanges[][] genReads() throws Exception {
         return new KeyRanges[][] {
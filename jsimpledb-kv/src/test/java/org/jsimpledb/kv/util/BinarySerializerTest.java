@@ -0,0 +1,174 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.mvcc.AtomicKVStore;
+import org.jsimpledb.kv.mvcc.Mutations;
+import org.jsimpledb.kv.mvcc.Writes;
+import org.jsimpledb.test.TestSupport;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BinarySerializerTest extends TestSupport {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        // Populate
+        final NavigableMapKVStore kv1 = new NavigableMapKVStore();
+        final ConcurrentSkipListMap<byte[], byte[]> data1 = kv1.getNavigableMap();
+        for (int i = 0; i < 5000; i++) {
+            final byte[] key = new byte[1 + this.random.nextInt(12)];
+            this.random.nextBytes(key);
+            final byte[] value = new byte[this.random.nextInt(4) == 0 ? 0 : this.random.nextInt(40)];
+            this.random.nextBytes(value);
+            data1.put(key, value);
+        }
+
+        for (boolean compress : new boolean[] { false, true }) {
+            for (int threads : new int[] { 1, 4 }) {
+
+                // Write
+                final BinarySerializer writer = new BinarySerializer(kv1);
+                writer.setCompress(compress);
+                writer.setThreads(threads);
+                writer.setBlockSize(1000);
+                final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                Assert.assertEquals(writer.write(buf), data1.size());
+                final byte[] bytes = buf.toByteArray();
+
+                // Read back into plain key/value store
+                final NavigableMapKVStore kv2 = new NavigableMapKVStore();
+                final BinarySerializer reader = new BinarySerializer(kv2);
+                reader.setThreads(threads);
+                Assert.assertEquals(reader.read(new ByteArrayInputStream(bytes)), data1.size());
+                this.assertSameContent(kv2.getNavigableMap(), data1);
+
+                // Read back into atomic key/value store
+                final RecordingAtomicKVStore kv3 = new RecordingAtomicKVStore();
+                Assert.assertEquals(new BinarySerializer(kv3).read(new ByteArrayInputStream(bytes)), data1.size());
+                this.assertSameContent(kv3.getNavigableMap(), data1);
+                Assert.assertFalse(kv3.syncs.isEmpty());
+                Assert.assertEquals(kv3.syncs.indexOf(true), kv3.syncs.size() - 1);
+
+                // Decode without applying
+                try (CloseableIterator<KVPair> i = BinarySerializer.readPairs(new ByteArrayInputStream(bytes), threads)) {
+                    final RecordingAtomicKVStore kv5 = new RecordingAtomicKVStore();
+                    Assert.assertEquals(kv5.bulkLoad(i), data1.size());
+                    this.assertSameContent(kv5.getNavigableMap(), data1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        final NavigableMapKVStore kv1 = new NavigableMapKVStore();
+        for (int i = 0; i < 100; i++)
+            kv1.put(new byte[] { (byte)i }, new byte[] { (byte)~i });
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Assert.assertEquals(new BinarySerializer(kv1).write(buf, new byte[] { 10 }, new byte[] { 20 }), 10);
+        final NavigableMapKVStore kv2 = new NavigableMapKVStore();
+        Assert.assertEquals(new BinarySerializer(kv2).read(new ByteArrayInputStream(buf.toByteArray())), 10);
+        this.assertSameContent(kv2.getNavigableMap(), kv1.getNavigableMap().subMap(new byte[] { 10 }, new byte[] { 20 }));
+
+        // Empty
+        buf.reset();
+        Assert.assertEquals(new BinarySerializer(new NavigableMapKVStore()).write(buf), 0);
+        Assert.assertEquals(new BinarySerializer(kv2).read(new ByteArrayInputStream(buf.toByteArray())), 0);
+    }
+
+    @Test
+    public void testCorruption() throws Exception {
+        final NavigableMapKVStore kv1 = new NavigableMapKVStore();
+        for (int i = 0; i < 100; i++)
+            kv1.put(ByteUtil.parse(String.format("%04x", i)), ByteUtil.parse(String.format("%08x", i * 12345)));
+        for (boolean compress : new boolean[] { false, true }) {
+            final BinarySerializer writer = new BinarySerializer(kv1);
+            writer.setCompress(compress);
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            writer.write(buf);
+            final byte[] bytes = buf.toByteArray();
+
+            // Flip a bit in the payload
+            final byte[] corrupt = bytes.clone();
+            corrupt[corrupt.length - 20] ^= 0x10;
+            try {
+                new BinarySerializer(new NavigableMapKVStore()).read(new ByteArrayInputStream(corrupt));
+                assert false : "corruption not detected";
+            } catch (IllegalArgumentException e) {
+                this.log.debug("got expected " + e);
+            }
+
+            // Truncate
+            try {
+                new BinarySerializer(new NavigableMapKVStore()).read(
+                  new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+                assert false : "truncation not detected";
+            } catch (EOFException e) {
+                this.log.debug("got expected " + e);
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadOrder() throws Exception {
+        final RecordingAtomicKVStore kv = new RecordingAtomicKVStore();
+        try {
+            kv.bulkLoad(Arrays.asList(new KVPair(b("02"), b("")), new KVPair(b("01"), b(""))).iterator());
+            assert false : "out-of-order keys not detected";
+        } catch (IllegalArgumentException e) {
+            this.log.debug("got expected " + e);
+        }
+    }
+
+    private void assertSameContent(NavigableMap<byte[], byte[]> actual, NavigableMap<byte[], byte[]> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet())
+            Assert.assertEquals(actual.get(entry.getKey()), entry.getValue());
+    }
+
+// RecordingAtomicKVStore
+
+    private static class RecordingAtomicKVStore extends NavigableMapKVStore implements AtomicKVStore {
+
+        private static final long serialVersionUID = 4621873094472530916L;
+
+        final ArrayList<Boolean> syncs = new ArrayList<>();
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CloseableKVStore snapshot() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void mutate(Mutations mutations, boolean sync) {
+            Writes.apply(mutations, this);
+            this.syncs.add(sync);
+        }
+    }
+}
@@ -67,6 +67,7 @@ public class JClass<T> extends JSchemaObject {
     ArrayList<OnVersionChangeScanner<T>.MethodInfo> onVersionChangeMethods;
 
     boolean requiresDefaultValidation;
+    boolean prefetch;
     boolean hasSnapshotCreateOrChangeMethods;
     AnnotatedElement elementRequiringJSR303Validation;
     int[] simpleFieldStorageIds;
@@ -162,6 +163,7 @@ public class JClass<T> extends JSchemaObject {
 
         // Auto-generate properties?
         final JSimpleClass jsimpleClass = Util.getAnnotation(this.type, JSimpleClass.class);
+        this.prefetch = jsimpleClass != null && jsimpleClass.prefetch();
 
         // Scan for Simple and Counter fields
         final JFieldScanner<T> simpleFieldScanner = new JFieldScanner<>(this, jsimpleClass);
@@ -122,6 +122,7 @@ public class JSimpleDB {
     final HashMap<Integer, IndexInfo> indexInfoMap = new HashMap<>();
     final LongMap<JField> typeFieldMap = new LongMap<>();
     final HashSet<Integer> fieldsRequiringDefaultValidation = new HashSet<>();
+    final HashSet<Integer> prefetchStorageIds = new HashSet<>();
     final ReferencePathCache referencePathCache = new ReferencePathCache(this);
     final ClassGenerator<UntypedJObject> untypedClassGenerator;
     final ArrayList<ClassGenerator<?>> classGenerators;
@@ -430,6 +431,11 @@ public class JSimpleDB {
         this.hasOnVersionChangeMethods = anyOnVersionChangeMethods;
         this.hasUpgradeConversions = anyUpgradeConversions;
 
+        // Determine which object types have prefetch enabled
+        this.jclasses.values().stream()
+          .filter(jclass -> jclass.prefetch)
+          .forEach(jclass -> this.prefetchStorageIds.add(jclass.storageId));
+
         // Validate schema
         this.db.validateSchema(this.getSchemaModel());
 
@@ -260,6 +260,10 @@ public class JTransaction {
             jdb.listenerSets[listenerSetIndex] = tx.snapshotListeners();
         } else
             tx.setListeners(listenerSet);
+
+        // Enable prefetch for object types that want it
+        if (!isSnapshot)
+            jdb.prefetchStorageIds.forEach(storageId -> tx.setPrefetchEnabled(storageId, true));
     }
 
     // Register listeners for the given situation
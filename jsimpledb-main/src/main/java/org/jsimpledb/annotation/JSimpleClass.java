@@ -187,5 +187,20 @@ public @interface JSimpleClass {
      * @see JField#upgradeConversion
      */
     UpgradeConversionPolicy autogenUpgradeConversion() default UpgradeConversionPolicy.ATTEMPT;
+
+    /**
+     * Whether to read all of an instance's simple fields from the key/value store at once, the first time any
+     * one of them is read in a transaction.
+     *
+     * <p>
+     * If true, reading any simple field of an instance of this class reads the instance's meta-data and all of its
+     * simple field values in a single key range query, and caches the values for the remainder of the transaction.
+     * This is useful when the key/value store is remote and instances are typically read in their entirety.
+     * This property has no effect in snapshot transactions.
+     *
+     * @return whether to prefetch all simple fields of an instance when one of them is first read
+     * @see org.jsimpledb.core.Transaction#setPrefetchEnabled Transaction.setPrefetchEnabled()
+     */
+    boolean prefetch() default false;
 }
 
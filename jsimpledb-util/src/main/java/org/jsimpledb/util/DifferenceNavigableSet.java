@@ -17,7 +17,7 @@ import java.util.NavigableSet;
 /**
  * Provides a read-only view of the difference of two or more {@link NavigableSet}s.
  */
-class DifferenceNavigableSet<E> extends AbstractMultiNavigableSet<E> {
+class DifferenceNavigableSet<E> extends AbstractMultiNavigableSet<E> implements SizeEstimating {
 
     /**
      * Constructor.
@@ -54,6 +54,17 @@ class DifferenceNavigableSet<E> extends AbstractMultiNavigableSet<E> {
         return this.list.get(0).contains(obj) && !this.list.get(1).contains(obj);
     }
 
+    /**
+     * Estimate size.
+     *
+     * <p>
+     * The implementation in {@link DifferenceNavigableSet} returns the estimated size of the first set.
+     */
+    @Override
+    public long estimateSize() {
+        return SizeEstimating.estimateSize(this.list.get(0));
+    }
+
     @Override
     public Iterator<E> iterator() {
         return Iterators.filter(this.list.get(0).iterator(), Predicates.not(Predicates.in(this.list.get(1))));
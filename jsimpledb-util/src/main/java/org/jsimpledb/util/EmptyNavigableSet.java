@@ -12,7 +12,7 @@ import java.util.Iterator;
 /**
  * An empty {@link java.util.NavigableSet} implementation.
  */
-class EmptyNavigableSet<E> extends AbstractNavigableSet<E> {
+class EmptyNavigableSet<E> extends AbstractNavigableSet<E> implements SizeEstimating {
 
     private final Comparator<? super E> comparator;
 
@@ -50,6 +50,11 @@ class EmptyNavigableSet<E> extends AbstractNavigableSet<E> {
         return 0;
     }
 
+    @Override
+    public long estimateSize() {
+        return 0;
+    }
+
     @Override
     public Iterator<E> iterator() {
         return Collections.emptyIterator();
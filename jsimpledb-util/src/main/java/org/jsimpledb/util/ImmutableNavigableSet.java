@@ -21,7 +21,7 @@ import java.util.Spliterators;
  * @param <E> element type
  */
 @SuppressWarnings("serial")
-public class ImmutableNavigableSet<E> extends AbstractNavigableSet<E> {
+public class ImmutableNavigableSet<E> extends AbstractNavigableSet<E> implements SizeEstimating {
 
     private final E[] elems;
     private final int minIndex;
@@ -101,6 +101,11 @@ public class ImmutableNavigableSet<E> extends AbstractNavigableSet<E> {
         return this.maxIndex - this.minIndex;
     }
 
+    @Override
+    public long estimateSize() {
+        return this.size();
+    }
+
     @Override
     public boolean contains(Object obj) {
         return this.find(obj) >= 0;
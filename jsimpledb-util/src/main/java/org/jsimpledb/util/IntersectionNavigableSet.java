@@ -5,17 +5,41 @@
 
 package org.jsimpledb.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
 
 /**
  * Provides a read-only view of the intersection of two or more {@link NavigableSet}s.
- * A complete iteration takes <i>O(N * M)</i> queries, where <i>N</i> is the number of
- * elements in the smallest set and <i>M</i> is the number of sets.
+ *
+ * <p>
+ * Iteration is driven by the smallest set, using {@link SizeEstimating} estimates where available, or else by probing
+ * the first few elements of each set. The other sets are advanced in leapfrog fashion: each one is first stepped forward
+ * a few elements through its open iterator, and if that doesn't reach the current candidate, it is repositioned with a
+ * single {@link NavigableSet#tailSet tailSet()} seek. For key/value store backed sets, this means a complete iteration
+ * takes roughly <i>O(N * M)</i> seeks, where <i>N</i> is the number of elements in the smallest set and <i>M</i>
+ * is the number of sets, regardless of the sizes of the other sets.
+ *
+ * <p>
+ * The nested sets' iterators may hold resources (e.g., key/value store iterators), and callers often stop iterating
+ * early without closing anything. Therefore, nested iterators are only kept open while searching for the next element;
+ * each subsequent search starts with a new {@link NavigableSet#tailSet tailSet()} seek in every set.
  */
-class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
+class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> implements SizeEstimating {
+
+    /**
+     * Maximum number of elements read from a set without a known size estimate to determine whether it is small.
+     */
+    private static final int PROBE_LIMIT = 16;
+
+    /**
+     * Maximum number of elements stepped through in a set's open iterator before repositioning via a new seek.
+     */
+    private static final int GALLOP_STEPS = 8;
 
     /**
      * Constructor.
@@ -54,19 +78,53 @@ class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
         return true;
     }
 
+    /**
+     * Estimate size.
+     *
+     * <p>
+     * The implementation in {@link IntersectionNavigableSet} returns the smallest of the nested sets' estimated sizes.
+     */
+    @Override
+    public long estimateSize() {
+        long min = Long.MAX_VALUE;
+        for (NavigableSet<E> set : this.list)
+            min = Math.min(min, SizeEstimating.estimateSize(set));
+        return min;
+    }
+
     @Override
-    public java.util.Iterator<E> iterator() {
+    public boolean isEmpty() {
+        try (CloseableIterator<E> i = this.iterator()) {
+            return !i.hasNext();
+        }
+    }
+
+    @Override
+    public E first() {
+        try (CloseableIterator<E> i = this.iterator()) {
+            return i.next();
+        }
+    }
+
+    @Override
+    public E last() {
+        return this.descendingSet().first();
+    }
+
+    @Override
+    public CloseableIterator<E> iterator() {
         return new Iterator();
     }
 
 // Iterator
 
-    private class Iterator implements java.util.Iterator<E> {
+    private class Iterator implements CloseableIterator<E> {
 
         private final Comparator<? super E> comparator = IntersectionNavigableSet.this.getComparator(false);
 
-        private boolean firstTime = true;
+        private List<NavigableSet<E>> sets;                 // smallest set first
         private boolean finished = IntersectionNavigableSet.this.list.isEmpty();
+        private boolean started;
         private boolean haveNext;
         private E next;
 
@@ -88,6 +146,13 @@ class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void close() {
+            this.finished = true;
+            this.haveNext = false;
+            this.next = null;
+        }
+
         private boolean advance() {
 
             // Finished?
@@ -95,39 +160,54 @@ class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
                 return false;
             assert !this.haveNext;
 
-            // Get initial candidate for the next iteration element
-            E candidate;
-            final NavigableSet<E> firstSet = IntersectionNavigableSet.this.list.get(0);
-            if (this.firstTime) {
-                this.firstTime = false;
-                try {
-                    candidate = firstSet.first();
-                } catch (NoSuchElementException e) {
-                    this.finished = true;
-                    return false;
-                }
-            } else if ((candidate = firstSet.higher(this.next)) == null && !this.hasNullInTailSet(firstSet, this.next, false)) {
+            // Order the sets smallest first the first time through
+            if (this.sets == null) {
+                final ArrayList<NavigableSet<E>> list = new ArrayList<>(IntersectionNavigableSet.this.list);
+                final IdentityHashMap<NavigableSet<E>, Long> estimates = new IdentityHashMap<>(list.size());
+                for (NavigableSet<E> set : list)
+                    estimates.put(set, IntersectionNavigableSet.this.estimateOrProbe(set));
+                list.sort(Comparator.comparingLong(estimates::get));
+                this.sets = list;
+            }
+
+            // Open a cursor into each set; all of them are closed again before we return
+            final ArrayList<Cursor> cursors = new ArrayList<>(this.sets.size());
+            try {
+                for (NavigableSet<E> set : this.sets)
+                    cursors.add(new Cursor(set, this.comparator));
+                return this.advance(cursors);
+            } finally {
+                for (Cursor cursor : cursors)
+                    cursor.close();
+            }
+        }
+
+        private boolean advance(List<Cursor> cursors) {
+
+            // Get initial candidate for the next iteration element from the smallest set
+            final Cursor first = cursors.get(0);
+            final boolean found = this.started ? first.seekHigher(this.next) : first.step();
+            this.started = true;
+            if (!found) {
                 this.finished = true;
                 return false;
             }
+            E candidate = first.current;
 
             // Cycle through the sets until we have found the candidate in every set, moving candidate forward as we go
-            final int maxMatches = IntersectionNavigableSet.this.list.size();
+            final int maxMatches = cursors.size();
             int numMatches = 1;
             for (int i = 1; numMatches < maxMatches; i = (i + 1) % maxMatches) {
-                final NavigableSet<E> set = IntersectionNavigableSet.this.list.get(i);
+                final Cursor cursor = cursors.get(i);
 
                 // Look for candidate in the next set, or else something higher
-                final E ceiling = set.ceiling(candidate);
-
-                // Distinguish between a normal but null element, and a null value meaning "no more elements"
-                if (ceiling == null && !this.hasNullInTailSet(set, candidate, true)) {
+                if (!cursor.seek(candidate)) {
                     this.finished = true;
                     return false;
                 }
 
                 // Did we get the same candidate element back, or some higher element?
-                final int diff = this.comparator.compare(ceiling, candidate);
+                final int diff = this.comparator.compare(cursor.current, candidate);
                 if (diff == 0) {
                     numMatches++;
                     continue;
@@ -136,13 +216,14 @@ class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
                 // If we got back an element greater than the current candidate, it becomes the new candidate
                 if (diff > 0) {
                     numMatches = 1;
-                    candidate = ceiling;
+                    candidate = cursor.current;
                     continue;
                 }
 
                 // Oops, sets are not ordered properly
-                throw new IllegalStateException("internal error: NavigableSet.ceiling() returned a mis-ordered element "
-                  + ceiling + " < " + candidate);
+                this.finished = true;
+                throw new IllegalStateException("internal error: NavigableSet.tailSet() returned a mis-ordered element "
+                  + cursor.current + " < " + candidate);
             }
 
             // We found candidate in all of the sets
@@ -150,16 +231,92 @@ class IntersectionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
             this.haveNext = true;
             return true;
         }
+    }
 
-        private boolean hasNullInTailSet(NavigableSet<E> set, E elem, boolean inclusive) {
-            NavigableSet<E> tailSet;
-            try {
-                tailSet = set.tailSet(elem, inclusive);
-            } catch (IllegalArgumentException e) {              // "candidate" is out of set's range, so we're done
+    // Get the estimated size of the given set, or if unknown, read the first few elements to see whether it is small
+    private long estimateOrProbe(NavigableSet<E> set) {
+        final long estimate = SizeEstimating.estimateSize(set);
+        if (estimate != Long.MAX_VALUE)
+            return estimate;
+        try (CloseableIterator<E> i = CloseableIterator.wrap(set.iterator())) {
+            for (int count = 0; count < PROBE_LIMIT; count++) {
+                if (!i.hasNext())
+                    return count;
+                i.next();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+// Cursor
+
+    // An iterator into one of the sets, opened lazily and only while advancing
+    private class Cursor implements AutoCloseable {
+
+        final NavigableSet<E> set;
+        final Comparator<? super E> comparator;
+
+        CloseableIterator<E> iterator;
+        E current;
+
+        Cursor(NavigableSet<E> set, Comparator<? super E> comparator) {
+            this.set = set;
+            this.comparator = comparator;
+        }
+
+        // Advance to the next element, starting at the beginning of the set
+        boolean step() {
+            if (this.iterator == null)
+                this.iterator = CloseableIterator.wrap(this.set.iterator());
+            if (!this.iterator.hasNext())
                 return false;
+            this.current = this.iterator.next();
+            return true;
+        }
+
+        // Advance to the first element greater than or equal to target
+        boolean seek(E target) {
+            if (this.iterator == null)
+                return this.reposition(target, true);
+            for (int steps = 0; this.comparator.compare(this.current, target) < 0; steps++) {
+                if (steps == GALLOP_STEPS)
+                    return this.reposition(target, true);
+                if (!this.step())
+                    return false;
+            }
+            return true;
+        }
+
+        // Advance to the first element strictly greater than target
+        boolean seekHigher(E target) {
+            assert this.iterator == null;
+            return this.reposition(target, false);
+        }
+
+        @Override
+        public void close() {
+            if (this.iterator != null) {
+                this.iterator.close();
+                this.iterator = null;
             }
-            return !tailSet.isEmpty();
+        }
+
+        // Replace our iterator with a new one starting at target
+        private boolean reposition(E target, boolean inclusive) {
+            this.close();
+            try {
+                this.iterator = CloseableIterator.wrap(this.set.tailSet(target, inclusive).iterator());
+            } catch (IllegalArgumentException e) {              // "target" is out of set's range, which may be above or below
+
+                // Find the first element in range past target, if any, and start there instead
+                final E start = inclusive ? this.set.ceiling(target) : this.set.higher(target);
+                if (start == null) {
+                    this.iterator = CloseableIterator.wrap(Collections.<E>emptyIterator());
+                    return false;
+                }
+                this.iterator = CloseableIterator.wrap(this.set.tailSet(start, true).iterator());
+            }
+            return this.step();
         }
     }
 }
-
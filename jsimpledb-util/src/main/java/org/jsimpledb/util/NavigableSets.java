@@ -29,6 +29,8 @@ public final class NavigableSets {
      * <p>
      * The returned intersection iterates efficiently: a complete iteration requires <i>O(N * M)</i> queries, where
      * <i>N</i> is the size of the smallest set, and <i>M</i> is the number of sets.
+     * Iteration is driven by the smallest set, as determined by {@link SizeEstimating} estimates or by probing,
+     * and the other sets are advanced using {@link NavigableSet#tailSet tailSet()} seeks.
      *
      * @param sets the sets to intersect
      * @param <E> element type
@@ -51,6 +53,8 @@ public final class NavigableSets {
      * <p>
      * The returned intersection iterates efficiently: a complete iteration takes time <i>O(N * M)</i> where
      * <i>N</i> is the size of the smallest set, and <i>M</i> is the number of sets.
+     * Iteration is driven by the smallest set, as determined by {@link SizeEstimating} estimates or by probing,
+     * and the other sets are advanced using {@link NavigableSet#tailSet tailSet()} seeks.
      *
      * @param sets the sets to intersect
      * @param <E> element type
@@ -14,7 +14,7 @@ import java.util.NavigableSet;
 /**
  * An singleton {@link NavigableSet} implementation.
  */
-class SingletonNavigableSet<E> extends AbstractNavigableSet<E> {
+class SingletonNavigableSet<E> extends AbstractNavigableSet<E> implements SizeEstimating {
 
     private final Comparator<? super E> comparator;
     private final E value;
@@ -73,6 +73,11 @@ class SingletonNavigableSet<E> extends AbstractNavigableSet<E> {
         return 1;
     }
 
+    @Override
+    public long estimateSize() {
+        return 1;
+    }
+
     @Override
     public Iterator<E> iterator() {
         return Iterators.singletonIterator(this.value);
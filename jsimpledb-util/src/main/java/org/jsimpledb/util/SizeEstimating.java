@@ -0,0 +1,47 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package org.jsimpledb.util;
+
+import java.util.Collection;
+
+/**
+ * Implemented by {@link Collection}s that can cheaply estimate their size, even when calculating the exact
+ * {@link Collection#size size()} would require a full iteration.
+ *
+ * <p>
+ * Estimates are used to choose an efficient evaluation order when combining collections, e.g., by
+ * {@link NavigableSets#intersection NavigableSets.intersection()}, which drives the intersection from the smallest set.
+ */
+public interface SizeEstimating {
+
+    /**
+     * Estimate the number of elements in this collection.
+     *
+     * <p>
+     * This method should be fast; in particular, it should not iterate the collection.
+     *
+     * @return estimated number of elements, or {@link Long#MAX_VALUE} if unknown
+     */
+    long estimateSize();
+
+    /**
+     * Estimate the size of the given collection.
+     *
+     * <p>
+     * If {@code collection} implements {@link SizeEstimating}, its {@link #estimateSize} is returned;
+     * otherwise, {@link Long#MAX_VALUE} is returned.
+     *
+     * @param collection collection to estimate
+     * @return estimated number of elements in {@code collection}, or {@link Long#MAX_VALUE} if unknown
+     * @throws IllegalArgumentException if {@code collection} is null
+     */
+    static long estimateSize(Collection<?> collection) {
+        if (collection == null)
+            throw new IllegalArgumentException("null collection");
+        return collection instanceof SizeEstimating ? ((SizeEstimating)collection).estimateSize() : Long.MAX_VALUE;
+    }
+}
+
@@ -16,7 +16,7 @@ import java.util.NavigableSet;
 /**
  * Provides a read-only view of the union of two or more {@link NavigableSet}s.
  */
-class UnionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
+class UnionNavigableSet<E> extends AbstractMultiNavigableSet<E> implements SizeEstimating {
 
     /**
      * Constructor.
@@ -54,6 +54,24 @@ class UnionNavigableSet<E> extends AbstractMultiNavigableSet<E> {
         return false;
     }
 
+    /**
+     * Estimate size.
+     *
+     * <p>
+     * The implementation in {@link UnionNavigableSet} returns the sum of the nested sets' estimated sizes.
+     */
+    @Override
+    public long estimateSize() {
+        long total = 0;
+        for (NavigableSet<E> set : this.list) {
+            final long estimate = SizeEstimating.estimateSize(set);
+            if (estimate >= Long.MAX_VALUE - total)
+                return Long.MAX_VALUE;
+            total += estimate;
+        }
+        return total;
+    }
+
     @Override
     @SuppressWarnings("rawtypes")   // https://bugs.openjdk.java.net/browse/JDK-8012685
     public Iterator<E> iterator() {
@@ -5,12 +5,18 @@
 
 package org.jsimpledb.util;
 
+import com.google.common.base.Converter;
 import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jsimpledb.test.TestSupport;
 import org.testng.Assert;
@@ -174,6 +180,117 @@ public class IntersectionNavigableSetTest extends TestSupport {
         TestSupport.checkSet(intersect4, buildSet(100, 200));
     }
 
+    @Test
+    public void testLopsidedIntersection() {
+
+        // Create one huge set and a couple of small ones, wrapped so we can count how many elements are read
+        final AtomicInteger reads = new AtomicInteger();
+        final Converter<Integer, Integer> converter = new Converter<Integer, Integer>() {
+            @Override
+            protected Integer doForward(Integer value) {
+                return value;
+            }
+            @Override
+            protected Integer doBackward(Integer value) {
+                reads.incrementAndGet();
+                return value;
+            }
+        };
+        final TreeSet<Integer> huge = new TreeSet<>();
+        for (int i = 0; i < 100000; i++)
+            huge.add(i * 2);
+        final NavigableSet<Integer> set1 = new ConvertedNavigableSet<>(huge, converter);
+        final NavigableSet<Integer> set2 = new ConvertedNavigableSet<>(
+          new TreeSet<>(Arrays.asList(6, 7, 5000, 5001, 123456, 199998)), converter);
+        final NavigableSet<Integer> set3 = new ConvertedNavigableSet<>(
+          new TreeSet<>(Arrays.asList(5000, 123456, 199998, 250000)), converter);
+
+        // The huge set should only be visited in the vicinity of the small sets' elements, regardless of its position
+        for (List<NavigableSet<Integer>> sets : Arrays.<List<NavigableSet<Integer>>>asList(
+          Arrays.asList(set1, set2), Arrays.asList(set2, set1), Arrays.asList(set1, set2, set3), Arrays.asList(set1, set3, set2))) {
+            final NavigableSet<Integer> expected = this.calculateIntersection(sets);
+            final IntersectionNavigableSet<Integer> actual = new IntersectionNavigableSet<>(sets);
+            reads.set(0);
+            Assert.assertEquals(Sets.newTreeSet(actual), expected);
+            Assert.assertTrue(reads.get() < 500, "too many reads: " + reads.get());
+            reads.set(0);
+            Assert.assertEquals(Sets.newTreeSet(actual.descendingSet()), expected);
+            Assert.assertTrue(reads.get() < 500, "too many reads: " + reads.get());
+        }
+    }
+
+    @Test
+    public void testRestrictedRange() {
+
+        // Candidates from the smaller set fall below and above the larger set's range
+        final TreeSet<Integer> large = new TreeSet<>();
+        for (int i = 0; i < 100; i++)
+            large.add(i);
+        final NavigableSet<Integer> small = new TreeSet<>(Arrays.asList(10, 56, 77, 95));
+        final NavigableSet<Integer> restricted = large.subSet(50, true, 90, false);
+        this.verifyIntersection(Arrays.asList(small, restricted));
+        this.verifyIntersection(Arrays.asList(restricted, small));
+        Assert.assertEquals(Sets.newTreeSet(NavigableSets.intersection(small, restricted)), Sets.newTreeSet(Arrays.asList(56, 77)));
+    }
+
+    @Test
+    public void testSizeEstimates() {
+        final NavigableSet<Integer> small = new ImmutableNavigableSet<>(new Integer[] { 1, 2, 3 }, null);
+        final NavigableSet<Integer> large = new ImmutableNavigableSet<>(new Integer[] { 1, 2, 3, 4, 5, 6, 7 }, null);
+        final NavigableSet<Integer> unknown = new TreeSet<>(Arrays.asList(1, 2));
+        Assert.assertEquals(SizeEstimating.estimateSize(unknown), Long.MAX_VALUE);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.intersection(small, large)), 3);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.intersection(unknown, large)), 7);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.union(small, large)), 10);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.union(small, unknown)), Long.MAX_VALUE);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.difference(large, unknown)), 7);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.singleton(4)), 1);
+        Assert.assertEquals(SizeEstimating.estimateSize(NavigableSets.<Integer>empty()), 0);
+    }
+
+    @Test
+    public void testIteratorClose() {
+        final AtomicInteger open = new AtomicInteger();
+        final ArrayList<Integer> values = new ArrayList<>();
+        for (int i = 1; i <= 50; i++)
+            values.add(i);
+        final NavigableSet<Integer> set1 = new TrackingSet(open, values);
+        final NavigableSet<Integer> set2 = new TrackingSet(open, Arrays.asList(2, 4, 6, 42));
+        final NavigableSet<Integer> empty = new TrackingSet(open, Arrays.<Integer>asList());
+        final IntersectionNavigableSet<Integer> intersect = new IntersectionNavigableSet<>(Arrays.asList(set1, set2));
+        final IntersectionNavigableSet<Integer> none = new IntersectionNavigableSet<>(Arrays.asList(set1, empty));
+
+        // Early exits from isEmpty() and first() must close all nested iterators
+        Assert.assertFalse(intersect.isEmpty());
+        Assert.assertEquals(open.get(), 0);
+        Assert.assertTrue(none.isEmpty());
+        Assert.assertEquals(open.get(), 0);
+        Assert.assertEquals(intersect.first(), (Integer)2);
+        Assert.assertEquals(open.get(), 0);
+        try {
+            none.first();
+            assert false : "expected NoSuchElementException";
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        Assert.assertEquals(open.get(), 0);
+
+        // Partial iteration does not leave nested iterators open, even if never closed
+        final Iterator<Integer> i = intersect.iterator();
+        Assert.assertEquals(i.next(), (Integer)2);
+        Assert.assertEquals(open.get(), 0);
+        Assert.assertEquals(i.next(), (Integer)4);
+        Assert.assertTrue(i.hasNext());
+        Assert.assertEquals(open.get(), 0);
+
+        // Iterating to the end closes them automatically, including after repositioning
+        final ArrayList<Integer> list = new ArrayList<>();
+        for (Integer value : intersect)
+            list.add(value);
+        Assert.assertEquals(list, Arrays.asList(2, 4, 6, 42));
+        Assert.assertEquals(open.get(), 0);
+    }
+
     private void verifyIntersection(List<NavigableSet<Integer>> sets) {
         final NavigableSet<Integer> expected = this.calculateIntersection(sets);
         final IntersectionNavigableSet<Integer> actual = new IntersectionNavigableSet<Integer>(sets);
@@ -204,5 +321,27 @@ public class IntersectionNavigableSetTest extends TestSupport {
         }
         return set;
     }
-}
 
+    // A set that counts how many of its iterators are open
+    @SuppressWarnings("serial")
+    private static class TrackingSet extends TreeSet<Integer> {
+
+        private final AtomicInteger open;
+
+        TrackingSet(AtomicInteger open, Collection<Integer> values) {
+            super(values);
+            this.open = open;
+        }
+
+        @Override
+        public CloseableIterator<Integer> iterator() {
+            this.open.incrementAndGet();
+            return CloseableIterator.wrap(super.iterator(), this.open::decrementAndGet);
+        }
+
+        @Override
+        public NavigableSet<Integer> tailSet(Integer min, boolean inclusive) {
+            return new TrackingSet(this.open, super.tailSet(min, inclusive));
+        }
+    }
+}